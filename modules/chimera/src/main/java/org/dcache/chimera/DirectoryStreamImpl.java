@@ -18,6 +18,7 @@ package org.dcache.chimera;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
@@ -36,12 +37,41 @@ public class DirectoryStreamImpl
             "UNION ALL " +
             "SELECT i.*, '..' FROM t_inodes i JOIN t_dirs d ON i.inumber = d.iparent WHERE d.ichild=?";
 
+    private static final String SORTED_QUERY =
+            "SELECT i.*, d.iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.ichild " +
+            "WHERE d.iparent=? AND d.iname > ? ORDER BY d.iname";
+
     private final ResultSet _resultSet;
     private final JdbcTemplate _jdbc;
     private final Connection _connection;
     private final PreparedStatement _statement;
 
     DirectoryStreamImpl(FsInode dir, JdbcTemplate jdbc)
+    {
+        this(jdbc, QUERY, 0, ps -> {
+            ps.setLong(1, dir.ino());
+            ps.setLong(2, dir.ino());
+            ps.setLong(3, dir.ino());
+        });
+    }
+
+    /**
+     * Streams the entries of a directory in order of their names, beginning
+     * with the first entry after {@code after}. The entries "." and ".."
+     * are not included.
+     *
+     * @param limit maximum number of entries, or zero for no limit
+     */
+    DirectoryStreamImpl(FsInode dir, String after, int limit, JdbcTemplate jdbc)
+    {
+        this(jdbc, SORTED_QUERY, limit, ps -> {
+            ps.setLong(1, dir.ino());
+            ps.setString(2, after);
+        });
+    }
+
+    private DirectoryStreamImpl(JdbcTemplate jdbc, String query, int limit,
+                                PreparedStatementSetter setter)
     {
         _jdbc = jdbc;
 
@@ -50,16 +80,15 @@ public class DirectoryStreamImpl
         ResultSet rs;
         try {
             connection = DataSourceUtils.getConnection(_jdbc.getDataSource());
-            ps = connection.prepareStatement(QUERY);
+            ps = connection.prepareStatement(query);
             ps.setFetchSize(50);
-            ps.setLong(1, dir.ino());
-            ps.setLong(2, dir.ino());
-            ps.setLong(3, dir.ino());
+            ps.setMaxRows(limit);
+            setter.setValues(ps);
             rs = ps.executeQuery();
         } catch (SQLException ex) {
             JdbcUtils.closeStatement(ps);
             DataSourceUtils.releaseConnection(connection, _jdbc.getDataSource());
-            throw _jdbc.getExceptionTranslator().translate("StatementExecution", QUERY, ex);
+            throw _jdbc.getExceptionTranslator().translate("StatementExecution", query, ex);
         }
         _connection = connection;
         _resultSet = rs;
@@ -128,6 +128,20 @@ public interface FileSystemProvider extends Closeable {
     DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir)
             throws ChimeraFsException;
 
+    /**
+     * Lists a directory in lexicographic order of the names of its entries,
+     * beginning with the first entry after a given name. The entries "." and
+     * ".." are not included. As the listing begins after a name rather than
+     * at a position, a large directory may be listed in successive calls
+     * without rescanning the entries listed before.
+     *
+     * @param dir the directory to list
+     * @param after name after which to begin; the empty string to begin with the first entry
+     * @param limit maximum number of entries, or zero for no limit
+     */
+    DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after, int limit)
+            throws ChimeraFsException;
+
     void remove(String path) throws ChimeraFsException;
 
     /**
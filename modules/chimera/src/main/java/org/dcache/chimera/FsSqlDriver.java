@@ -244,10 +244,25 @@ public class FsSqlDriver {
      * @return
      */
     DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir) {
+        return newDirectoryStream(dir, new DirectoryStreamImpl(dir, _jdbc));
+    }
+
+    /**
+     * Returns at most {@code limit} entries of a directory in order of their
+     * names, beginning after {@code after}; "." and ".." are not included.
+     *
+     * @param dir
+     * @param after name after which to begin; the empty string to begin with the first entry
+     * @param limit maximum number of entries, or zero for no limit
+     * @return
+     */
+    DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after, int limit) {
+        return newDirectoryStream(dir, new DirectoryStreamImpl(dir, after, limit, _jdbc));
+    }
+
+    private DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir, DirectoryStreamImpl stream) {
         return new DirectoryStreamB<HimeraDirectoryEntry>()
         {
-            final DirectoryStreamImpl stream = new DirectoryStreamImpl(dir, _jdbc);
-
             @Override
             public Iterator<HimeraDirectoryEntry> iterator()
             {
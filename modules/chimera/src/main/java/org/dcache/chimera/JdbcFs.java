@@ -469,6 +469,12 @@ public class JdbcFs implements FileSystemProvider {
         return _sqlDriver.newDirectoryStream(dir);
     }
 
+    @Override
+    public DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir, String after, int limit)
+            throws IOHimeraFsException {
+        return _sqlDriver.newDirectoryStream(dir, after, limit);
+    }
+
     @Override
     public void remove(String path) throws ChimeraFsException {
 
@@ -1107,6 +1107,29 @@ public class BasicTest extends ChimeraTestCaseHelper {
         }
     }
 
+    @Test
+    public void testSortedReaddirAfterName() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        dir.create("c", 0, 0, 0644);
+        dir.create("a", 0, 0, 0644);
+        dir.create("b", 0, 0, 0644);
+
+        assertThat(sortedNames(dir, "", 0), contains("a", "b", "c"));
+        assertThat(sortedNames(dir, "a", 0), contains("b", "c"));
+        assertThat(sortedNames(dir, "", 2), contains("a", "b"));
+        assertThat(sortedNames(dir, "c", 0), is(empty()));
+    }
+
+    private List<String> sortedNames(FsInode dir, String after, int limit) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStreamB<HimeraDirectoryEntry> dirStream = _fs.newDirectoryStream(dir, after, limit)) {
+            for (HimeraDirectoryEntry entry : dirStream) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
     private void assertHasChecksum(Checksum expectedChecksum, FsInode inode) throws Exception {
         for(Checksum checksum: _fs.getInodeChecksums(inode)) {
             if (checksum.equals(expectedChecksum)) {
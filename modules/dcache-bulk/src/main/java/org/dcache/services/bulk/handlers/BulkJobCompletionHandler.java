@@ -216,8 +216,8 @@ public class BulkJobCompletionHandler
         }
     }
 
-    public void signalWaiting() {
-        queue.signal();
+    public void signalWaiting(BulkJob job) {
+        queue.jobWaiting(job);
     }
 
     /**
@@ -272,6 +272,6 @@ public class BulkJobCompletionHandler
             descendants.notifyAll();
         }
 
-        queue.signal();
+        queue.jobTerminated(job);
     }
 }
@@ -116,6 +116,8 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
   private BulkJobFactory jobFactory;
   private BulkServiceStatistics statistics;
   private ExecutorService callbackExecutorService;
+  private ExecutorService listingExecutorService;
+  private int maxListingsPerJob;
 
   /**
    * Caused by an internal issue.
@@ -248,6 +250,16 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
     this.listHandler = listHandler;
   }
 
+  @Required
+  public void setListingExecutorService(ExecutorService service) {
+    listingExecutorService = service;
+  }
+
+  @Required
+  public void setMaxListingsPerJob(int maxListingsPerJob) {
+    this.maxListingsPerJob = maxListingsPerJob;
+  }
+
   @Required
   public void setQueue(BulkServiceQueue queue) {
     this.queue = queue;
@@ -314,6 +326,8 @@ public class BulkRequestHandler implements BulkSubmissionHandler, BulkRequestCom
      */
     TargetExpansionJob job = jobFactory.createTargetExpansionJob(target, attributes, parent);
     job.setListHandler(listHandler);
+    job.setListExecutor(listingExecutorService);
+    job.setMaxConcurrentListings(maxListingsPerJob);
     job.setSubmissionHandler(this);
     submit(job);
   }
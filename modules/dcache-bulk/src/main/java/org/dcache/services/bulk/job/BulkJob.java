@@ -338,7 +338,7 @@ public abstract class BulkJob implements Runnable, Comparable<BulkJob>
                         break;
                     case WAITING:
                         this.state = state;
-                        completionHandler.signalWaiting();
+                        completionHandler.signalWaiting(this);
                         break;
                     default:
                         throw new IllegalStateException(
@@ -61,6 +61,19 @@ package org.dcache.services.bulk.job;
 
 import com.google.common.collect.Range;
 
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FsPath;
 
@@ -79,6 +92,11 @@ import org.dcache.vehicles.FileAttributes;
  *
  *  These, along with what kinds of targets the expansion should submit as
  *  single target jobs, are determined by the specific activity.
+ *
+ *  The job walks the entire tree below its target, listing up to
+ *  {@link #setMaxConcurrentListings(int)} directories at the same time on
+ *  the list executor.  Children are submitted as single target jobs while
+ *  the listing of their directory is still being streamed.
  */
 public final class TargetExpansionJob extends MultipleTargetJob
 {
@@ -87,6 +105,34 @@ public final class TargetExpansionJob extends MultipleTargetJob
         BREADTH_FIRST, DEPTH_FIRST
     }
 
+    /**
+     *  A directory of the tree being walked.
+     */
+    private static final class Directory
+    {
+        final String         target;
+        final BulkJobKey     key;
+        final BulkJobKey     parentKey;
+        final FileAttributes attributes;
+        final Directory      parent;
+
+        /**
+         *  The listing of this directory plus the number of its
+         *  subdirectories whose subtrees have not yet been walked.
+         */
+        final AtomicInteger  outstanding = new AtomicInteger(1);
+
+        Directory(String target, BulkJobKey key, BulkJobKey parentKey,
+                  FileAttributes attributes, Directory parent)
+        {
+            this.target = target;
+            this.key = key;
+            this.parentKey = parentKey;
+            this.attributes = attributes;
+            this.parent = parent;
+        }
+    }
+
     /**
      *  Set on the basis of the specific request.
      */
@@ -97,6 +143,30 @@ public final class TargetExpansionJob extends MultipleTargetJob
      */
     private ListDirectoryHandler listHandler;
 
+    /**
+     *  Runs the listings of directories.
+     */
+    private ExecutorService listExecutor;
+
+    private int maxConcurrentListings = 1;
+
+    /**
+     *  Directories waiting to be listed.  Breadth-first takes them
+     *  in the order found, depth-first the most recently found first.
+     */
+    @GuardedBy("unlisted")
+    private final Deque<Directory> unlisted = new ArrayDeque<>();
+
+    /**
+     *  Directories whose subtree has been walked and which the job thread
+     *  still has to process.
+     */
+    private final BlockingQueue<Directory> walked = new LinkedBlockingQueue<>();
+
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    private Semaphore listings;
+
     public TargetExpansionJob(BulkJobKey key,
                               BulkJobKey parentKey,
                               BulkRequest request,
@@ -118,21 +188,35 @@ public final class TargetExpansionJob extends MultipleTargetJob
         return false;
     }
 
+    public void setListExecutor(ExecutorService listExecutor)
+    {
+        this.listExecutor = listExecutor;
+    }
+
     public void setListHandler(ListDirectoryHandler listHandler)
     {
         this.listHandler = listHandler;
     }
 
+    public void setMaxConcurrentListings(int maxConcurrentListings)
+    {
+        this.maxConcurrentListings = maxConcurrentListings;
+    }
+
     /**
      *  Entry point for the job.
      *
-     *  In breadth-first expansion, each directory encountered "forks"
-     *  a new job.
+     *  In breadth-first expansion, a directory is submitted as target
+     *  when it is found, before its children.
+     *
+     *  In depth-first expansion, a directory is submitted as target only
+     *  once all its descendants have terminated.  Sibling subtrees may
+     *  nevertheless be walked concurrently, as neither is the descendant
+     *  of the other.
      *
-     *  In depth-first expansion, the "root" expansion job is responsible
-     *  for all expansion of subdirectories (via recursion).  This
-     *  avoids a memory-unfriendly chain of job dependencies (breadth-first
-     *  expansions have no such chained dependencies).
+     *  In both cases, this job is responsible for the expansion of all
+     *  subdirectories; the listings are run on the list executor while the
+     *  job thread waits for subtrees to be completed.
      */
     @Override
     protected void doRun()
@@ -155,11 +239,23 @@ public final class TargetExpansionJob extends MultipleTargetJob
         }
 
         try {
-            expand(target, key, parentKey, attributes);
-            setState(State.COMPLETED);
+            if (walk()) {
+                setState(State.COMPLETED);
+            }
         } catch (CacheException | BulkServiceException e) {
             errorObject = e;
             completionHandler.jobFailed(this);
+        } catch (InterruptedException e) {
+            State state = getState();
+            if (state == State.CANCELLED) {
+                /*
+                 *  The call to cancel will have
+                 *  already notified the listener.
+                 */
+            } else {
+                setState(State.CANCELLED);
+                completionHandler.jobInterrupted(this);
+            }
         }
 
         LOGGER.trace("{}, doRun(), key {}, target {} exiting ...",
@@ -171,48 +267,43 @@ public final class TargetExpansionJob extends MultipleTargetJob
         completionHandler.jobCompleted(this);
     }
 
-    private void expand(String target,
-                        BulkJobKey key,
-                        BulkJobKey parentKey,
-                        FileAttributes attributes)
-                    throws CacheException, BulkServiceException
+    /**
+     *  @return true if the tree was walked completely, false if the job
+     *          was terminated before.
+     */
+    private boolean walk() throws CacheException, BulkServiceException,
+                    InterruptedException
     {
-        /*
-         *  Fail-fast in case the job has been cancelled.
-         */
-        if (isTerminated()) {
-            LOGGER.debug("{}, expansion job for {} {}; returning ...",
-                         loggingPrefix(), target, state.name());
-            return;
-        }
+        listings = new Semaphore(Math.max(1, maxConcurrentListings));
 
-        LOGGER.debug("{}, expand() called for {}: key {}, parent {}.",
-                     loggingPrefix(),
-                     target,
-                     key.getJobId(),
-                     parentKey.getJobId());
+        Directory root = new Directory(target, key, parentKey, attributes, null);
 
         if (expansionType == ExpansionType.BREADTH_FIRST) {
             /*
              *  In breadth-first it should not matter that directories
              *  are processed as targets before their children.
              */
-            checkForDirectoryTarget(target, parentKey, attributes);
+            checkForDirectoryTarget(root.target, root.parentKey, root.attributes);
         }
 
-        try {
-            LOGGER.debug("{}, listing target {}", key.getJobId(), target);
-            DirectoryStream stream = getDirectoryListing(target);
-            LOGGER.debug("{}, handling children", key.getJobId());
-            for (DirectoryEntry entry : stream) {
-                handleChildTarget(target, key, entry);
-                if (isTerminated()) {
-                    LOGGER.debug("{}, expansion job for {} {}; returning ...",
-                                 loggingPrefix(), target, state.name());
-                    return;
-                }
+        enqueue(root);
+
+        while (true) {
+            checkFailure();
+
+            /*
+             *  Fail-fast in case the job has been cancelled.
+             */
+            if (isTerminated()) {
+                LOGGER.debug("{}, expansion job for {} {}; returning ...",
+                             loggingPrefix(), target, state.name());
+                return false;
+            }
+
+            Directory directory = walked.poll(1, TimeUnit.SECONDS);
+            if (directory == null) {
+                continue;
             }
-            LOGGER.debug("{}, finished handling children", key.getJobId());
 
             if (expansionType == ExpansionType.DEPTH_FIRST) {
                 /*
@@ -229,50 +320,160 @@ public final class TargetExpansionJob extends MultipleTargetJob
                                              + "{} to terminate.",
                              loggingPrefix(),
                              expansionType.name(),
-                             key.getJobId());
+                             directory.key.getJobId());
 
-                completionHandler.waitForChildren(key.getJobId());
+                completionHandler.waitForChildren(directory.key.getJobId());
 
                 LOGGER.debug("{}, {}, children of " + "{} have terminated.",
                             loggingPrefix(),
                             expansionType.name(),
-                            key.getJobId());
+                            directory.key.getJobId());
 
-                /*
-                 *  In depth-first it may indeed be necessary to process
-                 *  directories as targets only after all their children
-                 *  have terminated, so we do this here.
-                 */
-                checkForDirectoryTarget(target, parentKey, attributes);
+                checkForDirectoryTarget(directory.target,
+                                        directory.parentKey,
+                                        directory.attributes);
             }
-        } catch (InterruptedException e) {
-            State state = getState();
-            if (state == State.CANCELLED) {
+
+            if (directory == root) {
+                return true;
+            }
+
+            subtreeWalked(directory.parent);
+        }
+    }
+
+    private void checkFailure() throws CacheException, BulkServiceException
+    {
+        Exception e = failure.get();
+        if (e instanceof CacheException) {
+            throw (CacheException) e;
+        } else if (e instanceof BulkServiceException) {
+            throw (BulkServiceException) e;
+        } else if (e != null) {
+            throw new BulkJobExecutionException(e.toString());
+        }
+    }
+
+    /**
+     *  Starts listings until either the maximum number of concurrent
+     *  listings is reached or there are no more directories to list.
+     */
+    private void dispatch()
+    {
+        while (listings.tryAcquire()) {
+            Directory next;
+            synchronized (unlisted) {
+                next = unlisted.poll();
+            }
+
+            if (next == null) {
+                listings.release();
                 /*
-                 *  The call to cancel will have
-                 *  already notified the listener.
+                 *  A directory enqueued while we held the permit would
+                 *  not have been able to start its listing.
                  */
+                synchronized (unlisted) {
+                    if (unlisted.isEmpty()) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                listExecutor.execute(() -> list(next));
+            } catch (RejectedExecutionException e) {
+                listings.release();
+                failure.compareAndSet(null, new BulkJobExecutionException(
+                                "could not list " + next.target + ": " + e));
+                return;
+            }
+        }
+    }
+
+    private void enqueue(Directory directory)
+    {
+        synchronized (unlisted) {
+            if (expansionType == ExpansionType.BREADTH_FIRST) {
+                unlisted.addLast(directory);
             } else {
-                setState(State.CANCELLED);
-                completionHandler.jobInterrupted(this);
+                unlisted.addFirst(directory);
             }
         }
+        dispatch();
+    }
 
-        LOGGER.trace("{}, expand() {}, exiting ...", loggingPrefix(), target);
+    /**
+     *  Lists the directory, submitting its children as they are received.
+     *  Runs on the list executor.
+     */
+    private void list(Directory directory)
+    {
+        try {
+            if (!isTerminated() && failure.get() == null) {
+                LOGGER.debug("{}, listing target {}", key.getJobId(),
+                             directory.target);
+                DirectoryStream stream = getDirectoryListing(directory.target);
+                for (DirectoryEntry entry : stream) {
+                    if (isTerminated() || failure.get() != null) {
+                        LOGGER.debug("{}, expansion job for {} {}; returning ...",
+                                     loggingPrefix(), directory.target,
+                                     getState().name());
+                        break;
+                    }
+                    handleChildTarget(directory, entry);
+                }
+                LOGGER.debug("{}, finished handling children of {}",
+                             key.getJobId(), directory.target);
+            }
+        } catch (CacheException | BulkServiceException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            LOGGER.error("{}, listing of {} failed unexpectedly.",
+                         loggingPrefix(), directory.target, e);
+        } finally {
+            listings.release();
+            dispatch();
+            subtreeWalked(directory);
+        }
+    }
+
+    /**
+     *  Called once for the listing of the directory and once for each
+     *  of its subdirectories when their subtree has been walked.
+     */
+    private void subtreeWalked(Directory directory)
+    {
+        if (directory.outstanding.decrementAndGet() > 0) {
+            return;
+        }
+
+        if (expansionType == ExpansionType.DEPTH_FIRST
+                        || directory.parent == null) {
+            /*
+             *  The job thread submits the directory once its
+             *  children have terminated.
+             */
+            walked.offer(directory);
+        } else {
+            subtreeWalked(directory.parent);
+        }
     }
 
     /*
      *  Creates single target jobs for files and for directories if
      *  they are not to be expanded but are targets.
      *
-     *  For breadth-first expansion of directories, a new job is submitted.
-     *  Each job carries this job's key as parent key.
-     *
-     *  Depth-first does not submit a new job, but calls expand recursively.
+     *  Directories to be expanded are queued for listing.  Their children
+     *  carry a new key as parent key; the key is merely a numerical marker
+     *  and does not actually represent a new job.  In depth-first expansion
+     *  waitForChildren uses it to identify which jobs belong to the barrier.
      */
-    private void handleChildTarget(String target,
-                                   BulkJobKey key,
-                                   DirectoryEntry entry)
+    private void handleChildTarget(Directory directory, DirectoryEntry entry)
                     throws CacheException, BulkServiceException
     {
         /*
@@ -280,14 +481,15 @@ public final class TargetExpansionJob extends MultipleTargetJob
          */
         if (isTerminated()) {
             LOGGER.debug("{}, expansion job for {} {}; returning ...",
-                         loggingPrefix(), target, state.name());
+                         loggingPrefix(), directory.target, getState().name());
             return;
         }
 
         LOGGER.trace("{}, handleChildTarget() called for {}, entry {}, parent {}.",
-                     loggingPrefix(), target, entry.getName(), key.getKey());
+                     loggingPrefix(), directory.target, entry.getName(),
+                     directory.key.getKey());
 
-        String childTarget = target + "/" + entry.getName();
+        String childTarget = directory.target + "/" + entry.getName();
         FileAttributes attributes = entry.getFileAttributes();
 
         switch (attributes.getFileType())
@@ -300,40 +502,28 @@ public final class TargetExpansionJob extends MultipleTargetJob
                                      expansionType.name(),
                                      childTarget);
 
-                        switch (expansionType)
-                        {
-                            case BREADTH_FIRST:
-                                submitTargetExpansionJob(childTarget, attributes);
-                                break;
-                            case DEPTH_FIRST:
-                                /*
-                                 *  The new key is merely a numerical marker
-                                 *  and does not actually represent a new job
-                                 *  (as in the case of breadth-first).
-                                 *
-                                 *  The expansion method gives all child tasks
-                                 *  this key as parent key, so that waitForChildren
-                                 *  can identify which jobs belong to the barrier.
-                                 *
-                                 *  This expansion only returns when all such
-                                 *  children complete.
-                                 */
-                                expand(childTarget,
-                                       BulkJobKey.newKey(request.getId()),
-                                       key,
-                                       attributes);
-                                break;
+                        if (expansionType == ExpansionType.BREADTH_FIRST) {
+                            checkForDirectoryTarget(childTarget,
+                                                    directory.key,
+                                                    attributes);
                         }
+
+                        directory.outstanding.incrementAndGet();
+                        enqueue(new Directory(childTarget,
+                                              BulkJobKey.newKey(request.getId()),
+                                              directory.key,
+                                              attributes,
+                                              directory));
                         break;
                     case TARGETS:
                         /*
                          *  We only need to check this if the directory
                          *  is not being expanded.  An expanded directory
-                         *  is checked for target status in the main
-                         *  expand method.
+                         *  is checked for target status when it is found
+                         *  (breadth-first) or walked (depth-first).
                          */
                         checkForDirectoryTarget(childTarget,
-                                                key,
+                                                directory.key,
                                                 attributes);
                         break;
                         /*
@@ -346,7 +536,7 @@ public final class TargetExpansionJob extends MultipleTargetJob
                 break;
             case LINK:
             case REGULAR:
-                checkForFileTarget(childTarget, key, attributes);
+                checkForFileTarget(childTarget, directory.key, attributes);
                 break;
             case SPECIAL:
             default:
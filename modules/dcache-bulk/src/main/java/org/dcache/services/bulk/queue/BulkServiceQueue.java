@@ -60,27 +60,19 @@ documents or software obtained from this server.
 package org.dcache.services.bulk.queue;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.TreeMultimap;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import org.dcache.services.bulk.BulkRequest;
 import org.dcache.services.bulk.BulkRequestStorageException;
 import org.dcache.services.bulk.BulkServiceException;
@@ -88,7 +80,6 @@ import org.dcache.services.bulk.handlers.BulkRequestCompletionHandler;
 import org.dcache.services.bulk.handlers.BulkSubmissionHandler;
 import org.dcache.services.bulk.job.BulkJob;
 import org.dcache.services.bulk.job.BulkRequestJob;
-import org.dcache.services.bulk.job.SingleTargetJob;
 import org.dcache.services.bulk.store.BulkRequestStore;
 import org.dcache.services.bulk.util.BulkServiceStatistics;
 import org.dcache.util.FireAndForgetTask;
@@ -97,13 +88,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 
 import static org.dcache.services.bulk.BulkRequestStatus.Status.STARTED;
+import static org.dcache.services.bulk.store.BulkRequestStore.uidGidKey;
 
 /**
  * The heart of the bulk service, encapsulating its queueing logic.
  *
- * <p>Initializes three processor threads, one to handle the promotion of jobs from waiting to
- * running, another to post-process terminated jobs, and a sweeper to clean up the ready and scan
- * the waiting queues. See comments to each processor for further details.
+ * <p>Initializes two processor threads, one to handle the promotion of jobs from waiting to
+ * running, another to post-process terminated jobs. See comments to each processor for further
+ * details.
+ *
+ * <p>The queues are only modified by the job processor thread. Other threads hand jobs to it
+ * through concurrent queues: newly submitted jobs, and jobs which have terminated or started
+ * waiting. A job changing state is thus moved between queues as the result of an event, without
+ * any of the queues being scanned. Only the running queue, which is bounded by the maximum number
+ * of running jobs, is checked on each pass.
  *
  * <p>For the moment, there is no retry policy for failed jobs.
  */
@@ -114,49 +112,30 @@ public class BulkServiceQueue implements SignalAware {
   private static final int DEFAULT_MAX_QUEUED_JOBS = 1_000_000;
   private static final int DEFAULT_AVG_JOBS_PER_REQUEST = 100_000;
 
-  /**
-   * Favoring single target jobs on the ready queue achieves two things: first, it constrains the
-   * size of the queue a bit more, because expansion is de-privileged and not allowed to
-   * continuously pile up new jobs. Second, it gives priority to the real work to be done by the
-   * various plugins.
+  /*
+   *  Top-level request jobs, held here until they complete
+   *  so that they can be accessed for cancellation.
    */
-  private static final Comparator<BulkJob> SINGLE_TARGET_PRIORITY =
-      (j1, j2) -> {
-        if (j1 instanceof SingleTargetJob) {
-          return (j2 instanceof SingleTargetJob) ? j1.compareTo(j2) : -1;
-        }
-
-        if (j2 instanceof SingleTargetJob) {
-          return 1;
-        }
-
-        return j1.compareTo(j2);
-      };
+  @VisibleForTesting
+  Map<String, BulkJob> submitted;
 
   /*
-   *  Submitted jobs that need to go onto the waiting/ready
-   *  queue.
-   *
-   *  Top-level request jobs are held here until they complete.
+   *  Submitted jobs that need to go onto the ready queue.
    */
   @VisibleForTesting
-  Map<String, BulkJob> submitted;
+  Queue<BulkJob> incoming;
 
   /*
    *  Ready jobs go here.
-   *
-   *  Maps request id to jobs; the id is ordered according to
-   *  time of arrival of its request, via a comparator which
-   *  accesses the request store's status map.
    */
   @VisibleForTesting
-  Multimap<String, BulkJob> readyQueue;
+  ReadyQueue readyQueue;
 
   /*
    *  Running jobs go here.
    */
   @VisibleForTesting
-  Queue<BulkJob> runningQueue;
+  Set<BulkJob> runningQueue;
 
   /*
    *  Synchronous jobs that are waiting for completion go here.
@@ -164,6 +143,13 @@ public class BulkServiceQueue implements SignalAware {
   @VisibleForTesting
   Set<BulkJob> waitingQueue;
 
+  /*
+   *  Jobs which have terminated or started waiting since the
+   *  last pass of the job processor.
+   */
+  @VisibleForTesting
+  Queue<BulkJob> transitions;
+
   /**
    * Used to fetch ready requests for queueing.
    */
@@ -182,12 +168,6 @@ public class BulkServiceQueue implements SignalAware {
   @VisibleForTesting
   JobPostProcessor postProcessor;
 
-  /**
-   * Cleans up the ready queue.
-   */
-  @VisibleForTesting
-  TerminalSweeper sweeper;
-
   /**
    * Computed (maxQueuedJobs/avgJobsPerRequest).
    */
@@ -216,7 +196,7 @@ public class BulkServiceQueue implements SignalAware {
   private ExecutorService cleanupExecutorService;
 
   /**
-   * Threads dedicated to running the three processors.
+   * Threads dedicated to running the processors.
    */
   private ExecutorService processorExecutorService;
 
@@ -238,7 +218,7 @@ public class BulkServiceQueue implements SignalAware {
   private int avgJobsPerRequest = DEFAULT_AVG_JOBS_PER_REQUEST;
 
   /**
-   * Uniformly for the three processors.
+   * Interval after which the job processor runs even when not signalled.
    */
   private long timeout = 30;
   private TimeUnit timeoutUnit = TimeUnit.SECONDS;
@@ -249,16 +229,15 @@ public class BulkServiceQueue implements SignalAware {
   private BulkServiceStatistics statistics;
 
   public void cancelRequestJob(String requestId) {
-    synchronized (submitted) {
-      BulkJob job = submitted.get(requestId);
-      if (job != null) {
-        if (!(job instanceof BulkRequestJob)) {
-          throw new RuntimeException(
-              "Job registered under request id " + requestId + " was not a request job!.");
-        }
-        job.cancel();
-        LOGGER.trace("Request job cancelled for {}.", requestId);
+    BulkJob job = submitted.get(requestId);
+    if (job != null) {
+      if (!(job instanceof BulkRequestJob)) {
+        throw new RuntimeException(
+            "Job registered under request id " + requestId + " was not a request job!.");
       }
+      job.cancel();
+      LOGGER.trace("Request job cancelled for {}.", requestId);
+      jobTerminated(job);
     }
   }
 
@@ -269,20 +248,31 @@ public class BulkServiceQueue implements SignalAware {
 
   public void initialize() {
     maxRequests = maxQueuedJobs / avgJobsPerRequest;
-    submitted = new LinkedHashMap<>();
-    runningQueue = new ArrayDeque<>();
-    waitingQueue = new HashSet<>();
-    readyQueue =
-        Multimaps.synchronizedMultimap(
-            TreeMultimap.create(requestStore.getStatusComparator(), SINGLE_TARGET_PRIORITY));
+    initializeQueues();
 
     jobProcessor = new NextJobProcessor();
     postProcessor = new JobPostProcessor();
-    sweeper = new TerminalSweeper();
 
     processorExecutorService.execute(jobProcessor);
     processorExecutorService.execute(postProcessor);
-    processorExecutorService.execute(sweeper);
+  }
+
+  /**
+   * Called when a job has terminated.
+   */
+  @Override
+  public void jobTerminated(BulkJob job) {
+    transitions.offer(job);
+    jobProcessor.signal();
+  }
+
+  /**
+   * Called when a running job has started waiting for completion.
+   */
+  @Override
+  public void jobWaiting(BulkJob job) {
+    transitions.offer(job);
+    jobProcessor.signal();
   }
 
   @Required
@@ -362,16 +352,14 @@ public class BulkServiceQueue implements SignalAware {
    * <p>Called by the queue handler.
    */
   public void submit(BulkJob job) {
-    synchronized (submitted) {
-      if (job instanceof BulkRequestJob) {
-        String requestId = job.getKey().getRequestId();
-        LOGGER.trace("submit top-level job for {}.", requestId);
-        submitted.put(requestId, job);
-      } else {
-        LOGGER.trace("submit {}.", job.getKey().getKey());
-        submitted.put(job.getKey().getKey(), job);
-      }
+    if (job instanceof BulkRequestJob) {
+      String requestId = job.getKey().getRequestId();
+      LOGGER.trace("submit top-level job for {}.", requestId);
+      submitted.put(requestId, job);
+    } else {
+      LOGGER.trace("submit {}.", job.getKey().getKey());
     }
+    incoming.offer(job);
     jobProcessor.signal();
   }
 
@@ -388,12 +376,23 @@ public class BulkServiceQueue implements SignalAware {
     }
   }
 
+  @VisibleForTesting
+  void initializeQueues() {
+    submitted = new ConcurrentHashMap<>();
+    incoming = new ConcurrentLinkedQueue<>();
+    transitions = new ConcurrentLinkedQueue<>();
+    runningQueue = ConcurrentHashMap.newKeySet();
+    waitingQueue = ConcurrentHashMap.newKeySet();
+    readyQueue = new ReadyQueue(this::ownerOf, statistics::jobQueueLatency);
+  }
+
   private void activateRequest(BulkRequest request) {
     LOGGER.trace("activateRequest {}.", request.getId());
     try {
       submissionHandler.submitRequest(request);
       LOGGER.debug("activateRequest, updating {} to STARTED.", request.getId());
       requestStore.update(request.getId(), STARTED);
+      recordRequestQueueLatency(request.getId());
     } catch (BulkRequestStorageException e) {
       LOGGER.error(
           "Unrecoverable storage update error for {}: {}; aborting.",
@@ -407,27 +406,31 @@ public class BulkServiceQueue implements SignalAware {
     }
   }
 
-  private void addToReady(BulkJob job) {
-    synchronized (readyQueue) {
-      readyQueue.put(job.getKey().getRequestId(), job);
-    }
-  }
-
-  private void addToWaiting(BulkJob job) {
-    synchronized (waitingQueue) {
-      waitingQueue.add(job);
+  /**
+   * Hands a job, which has been removed from the queues, to the post-processor.
+   */
+  private void jobRemoved(BulkJob job) {
+    if (job instanceof BulkRequestJob) {
+      submitted.remove(job.getKey().getRequestId(), job);
     }
+    postProcessor.offer(job);
   }
 
-  private void removeFromReady(BulkJob job) {
-    synchronized (readyQueue) {
-      readyQueue.remove(job.getKey().getRequestId(), job);
+  private String ownerOf(String requestId) {
+    try {
+      return uidGidKey(requestStore.getSubject(requestId).orElse(null));
+    } catch (BulkRequestStorageException e) {
+      return uidGidKey(null);
     }
   }
 
-  private void removeFromWaiting(BulkJob job) {
-    synchronized (waitingQueue) {
-      waitingQueue.remove(job);
+  private void recordRequestQueueLatency(String requestId) {
+    try {
+      requestStore.getStatus(requestId)
+          .ifPresent(s -> statistics.requestQueueLatency(
+              System.currentTimeMillis() - s.getFirstArrived()));
+    } catch (BulkRequestStorageException e) {
+      LOGGER.debug("could not get status of {}: {}.", requestId, e.toString());
     }
   }
 
@@ -437,20 +440,14 @@ public class BulkServiceQueue implements SignalAware {
       return;
     }
     LOGGER.trace("submitting job {} to executor.", job.getKey());
-    runningQueue.offer(job);
+    runningQueue.add(job);
     job.setFuture(bulkJobExecutorService.submit(new FireAndForgetTask(job)));
   }
 
-  private void updateReadyStats() {
-    synchronized (readyQueue) {
-      statistics.currentlyQueuedJobs(readyQueue.size());
-    }
-  }
-
-  private void updateWaitingStats() {
-    synchronized (waitingQueue) {
-      statistics.currentlyWaitingJobs(waitingQueue.size());
-    }
+  private void updateStats() {
+    statistics.currentlyQueuedJobs(readyQueue.size());
+    statistics.currentlyWaitingJobs(waitingQueue.size());
+    statistics.currentlyRunningJobs(runningQueue.size());
   }
 
   abstract class JobProcessor implements Runnable {
@@ -507,32 +504,31 @@ public class BulkServiceQueue implements SignalAware {
   /**
    * Does the main processing work.
    *
-   * <p>First it removes all terminated jobs from the running queue and passes them off to the
+   * <p>First it processes the jobs which have terminated or started waiting since the last pass,
+   * removing them from the queue they are on, and passing terminated jobs off to the
    * post-processor.
    *
-   * <p>Second, it elects from the store the next available requests to be submitted and calls
+   * <p>Second, it checks the running queue for jobs which have terminated or are waiting without
+   * having reported so.
+   *
+   * <p>Third, it elects from the store the next available requests to be submitted and calls
    * activate on them, converting them into BulkRequestJobs and placing them on the submitted
    * queue.
    *
-   * <p>Third, it appends the submitted jobs to the ready queue, again removing cancelled jobs
-   * there
-   * and passing them to post-processing.
+   * <p>Fourth, it appends the submitted jobs to the ready queue.
    *
-   * <p>Finally, it checks the size of the running queue for available slots, and fills these from
-   * the ready queue.
-   *
-   * <p>The sweeper is signalled/awakened and statistics are updated.
+   * <p>Finally, it fills the available slots of the running queue from the ready queue.
    */
   @VisibleForTesting
   class NextJobProcessor extends JobProcessor {
 
-    int lastIndex;
-
     protected void doRun() throws InterruptedException {
       LOGGER.trace("NextJobProcessor, starting doRun().");
 
       long start = System.currentTimeMillis();
 
+      processTransitions();
+
       removeFromRunning();
 
       if (Thread.interrupted()) {
@@ -553,7 +549,7 @@ public class BulkServiceQueue implements SignalAware {
 
       processNextReady();
 
-      sweeper.signal();
+      updateStats();
 
       statistics.sweepFinished(System.currentTimeMillis() - start);
 
@@ -565,49 +561,29 @@ public class BulkServiceQueue implements SignalAware {
     }
 
     /**
-     * Moves terminated (cancelled) request jobs to the post processor, merging the rest with the
-     * ready queue.
+     * Moves the newly submitted jobs to the ready queue, passing those already terminated (e.g.,
+     * cancelled) to the post-processor.
      *
      * <p>This method runs before the processNextReady() method, so that the ready queue is already
      * filled with all jobs currently available to run.
      */
     private void appendSubmitted() {
-      synchronized (submitted) {
-        LOGGER.trace("appendSubmitted(), {} submitted", submitted.size());
-
-        for (Iterator<BulkJob> jobIterator = submitted.values().iterator();
-            jobIterator.hasNext(); ) {
-          BulkJob job = jobIterator.next();
-          switch (job.getState()) {
-            case CANCELLED:
-            case FAILED:
-            case COMPLETED:
-              postProcessor.offer(job);
-              jobIterator.remove();
-              LOGGER.trace(
-                  "appendSubmitted(), removed job {} from " + "submitted queue", job.getKey());
-              break;
-            case CREATED:
-              BulkServiceQueue.this.addToReady(job);
-              LOGGER.trace(
-                  "appendSubmitted(), job {} will be put " + "on ready queue", job.getKey());
-              /*
-               *  Fall-through to check if we can remove the job.
-               */
-            default:
-              /*
-               *  Keep the BulkRequestJobs around in case we
-               *  need to access them for cancellation,
-               *  since they are not stored.
-               */
-              if (!(job instanceof BulkRequestJob)) {
-                jobIterator.remove();
-                LOGGER.trace(
-                    "appendSubmitted(), removed job {} " + "from  submitted " + "queue",
-                    job.getKey());
-              }
-              break;
-          }
+      for (BulkJob job = incoming.poll(); job != null; job = incoming.poll()) {
+        switch (job.getState()) {
+          case CANCELLED:
+          case FAILED:
+          case COMPLETED:
+            jobRemoved(job);
+            LOGGER.trace("appendSubmitted(), job {} already terminated.", job.getKey());
+            break;
+          case CREATED:
+            readyQueue.add(job);
+            LOGGER.trace("appendSubmitted(), job {} put on ready queue", job.getKey());
+            break;
+          default:
+            LOGGER.trace("appendSubmitted(), job {} in state {} ignored.",
+                job.getKey(), job.getState());
+            break;
         }
       }
     }
@@ -615,128 +591,39 @@ public class BulkServiceQueue implements SignalAware {
     /**
      * Populates the open slots on the running queue from the ready queue (calling startJob).
      *
-     * <p>Skips the terminated tasks, leaving their removal to the sweeper. Since the job is
-     * initialized when selected, jobs will not be selected more than once. This procedure makes for
-     * less efficient iteration of the queue by the inner loops, but allows for better slicing
-     * between the job processor and the sweeper.
+     * <p>Jobs are selected fairly among the owners of the requests and, for each owner, among
+     * its requests; see {@link ReadyQueue}. Jobs which have terminated while on the queue without
+     * this having been processed yet are passed to post-processing.
      */
     private void processNextReady() {
       LOGGER.trace("processNextReady().");
 
-      /*
-       *  StartJob synchronizes on the runningQueue,
-       *  so we avoid potential deadlocks via an intermediate queue.
-       */
-      List<BulkJob> toRun = new ArrayList<>();
-
-      int available;
-      int lastAvailable = 0;
-
-      synchronized (runningQueue) {
-        available = maxRunningJobs - runningQueue.size();
-      }
+      int available = maxRunningJobs - runningQueue.size();
 
       LOGGER.trace("processNextReady(): {} slots available.", available);
 
-      /*
-       *  A rudimentary fair-share algorithm which selects
-       *  one job from each request, prioritized according
-       *  to arrival time, then iterates until the max is reached.
-       *
-       *  As noted, the jobs are ordered on the ready queue such
-       *  that expansion/multiple target jobs go last.
-       *
-       *  We track the last index into the set of requests in order to begin there
-       *  on the next call of this method.
-       */
-      synchronized (readyQueue) {
-        int requests = readyQueue.asMap().keySet().size();
-
-        lastIndex = requests == 0 ? 0 : lastIndex % requests;
-
-        /*
-         *  Pointer as to where to begin the first pass through the while loop.
-         *  After the first pass, it will be equal to lastIndex.
-         */
-        int startingIndex = 0;
-
-        /*
-         *  The running index into the key set (request ids).
-         */
-        int currentIndex = 0;
-        while (available > 0 && lastAvailable != available) {
-          lastAvailable = available;
-
-          for (Iterator<Entry<String, Collection<BulkJob>>> i =
-              readyQueue.asMap().entrySet().iterator();
-              i.hasNext() && available > 0; ) {
-
-            /*
-             *  Find the last slot in the ordered set of requests we selected from.
-             *  Will occur at most once on the first pass of the outer while loop.
-             *  Since we checked the last index against the size of the set, we
-             *  do not need to call hasNext() in this loop.
-             */
-            while (startingIndex < lastIndex) {
-              i.next();
-              ++startingIndex;
-            }
-
-            Entry<String, Collection<BulkJob>> entry = i.next();
-
-            for (Iterator<BulkJob> j = entry.getValue().iterator(); j.hasNext(); ) {
-              BulkJob job = j.next();
-              if (job.isReady()) {
-                LOGGER.debug(
-                    "processNextReady(): selecting " + "for run {} " + "from ready queue.",
-                    job.getKey());
-                job.initialize();
-                toRun.add(job);
-                --available;
-
-                /*
-                 *  Maximum of one job per request per
-                 *  iteration.
-                 *
-                 *  Go back to the second loop and
-                 *  select from the next request.
-                 */
-                break;
-              }
-            }
-
-            currentIndex = (currentIndex + 1) % requests;
-          }
+      List<BulkJob> toRun = new ArrayList<>();
 
-          /*
-           *  If less jobs than available slots have been selected,
-           *  but there were new selections this iteration,
-           *  try again from the beginning.
-           */
+      while (available > 0) {
+        BulkJob job = readyQueue.poll();
+        if (job == null) {
+          break;
         }
 
-        lastIndex = currentIndex;
+        if (job.isReady()) {
+          LOGGER.debug("processNextReady(): selecting for run {} from ready queue.",
+              job.getKey());
+          job.initialize();
+          toRun.add(job);
+          --available;
+        } else if (job.isTerminated()) {
+          jobRemoved(job);
+        }
       }
 
-      /*
-       *  Remove without provoking a ConcurrentModificationException.
-       *  Synchronized on readyQueue.
-       */
-      toRun.stream().forEach(BulkServiceQueue.this::removeFromReady);
-      updateReadyStats();
-
-      /*
-       *  Synchronize on the running queue, again only to avoid
-       *  ConcurrentModificationExceptions, as only this thread touches it.
-       */
-      synchronized (runningQueue) {
-        toRun.stream().forEach(BulkServiceQueue.this::startJob);
-        statistics.currentlyRunningJobs(runningQueue.size());
-      }
+      toRun.forEach(BulkServiceQueue.this::startJob);
 
-      LOGGER.trace("processNextReady(), ready queue keys {}, size {}",
-          readyQueue.keySet().size(),
-          readyQueue.size());
+      LOGGER.trace("processNextReady(), ready queue size {}", readyQueue.size());
     }
 
     /**
@@ -772,146 +659,51 @@ public class BulkServiceQueue implements SignalAware {
     }
 
     /**
-     * Scans the running queue for terminal jobs and removes them, sending them to the
-     * post-processor. It also checks to see if the running job is in a waiting state, and if so, it
-     * removes it and places it on the waiting queue.
+     * Removes the jobs which have reported a change of state from the queue they are on. Terminated
+     * jobs are sent to post-processing; waiting jobs are moved from the running to the waiting
+     * queue.
      *
-     * <p>Synchronized on the running queue only to avoid ConcurrentModificationExceptions, as that
-     * queue is only accessed on this thread.
+     * <p>A job is only post-processed by whoever succeeds in removing it from a queue, so a job
+     * reported more than once, or also found by {@link #removeFromRunning()}, is post-processed
+     * only once.
      */
-    private void removeFromRunning() {
-      synchronized (runningQueue) {
-        for (Iterator<BulkJob> jiterator = runningQueue.iterator(); jiterator.hasNext(); ) {
-          BulkJob job = jiterator.next();
-          if (job.isTerminated()) {
-            postProcessor.offer(job);
-            jiterator.remove();
-          } else if (job.isWaiting()) {
-            addToWaiting(job);
-            jiterator.remove();
+    private void processTransitions() {
+      for (BulkJob job = transitions.poll(); job != null; job = transitions.poll()) {
+        if (job.isTerminated()) {
+          boolean removed = readyQueue.remove(job);
+          removed |= waitingQueue.remove(job);
+          removed |= runningQueue.remove(job);
+          if (removed) {
+            jobRemoved(job);
           }
+        } else if (job.isWaiting() && runningQueue.remove(job)) {
+          waitingQueue.add(job);
         }
-
-        LOGGER.trace(
-            "after remove, running {}, waiting {}.", runningQueue.size(), waitingQueue.size());
-      }
-
-      updateWaitingStats();
-    }
-  }
-
-  /**
-   * This sweeper has two purposes.
-   *
-   * <p>First, because the ready queue is unbounded, it can grow rather large as directories get
-   * expanded. Checking for cancelled jobs on the same thread as the one which activates new jobs
-   * does not scale. In order not to slow down the recycling of running slots, this extra thread is
-   * dedicated to sweeping the ready queue periodically to remove prematurely terminated jobs.
-   *
-   * <p>Before it does so, however, it first scans all the jobs synchronously waiting for
-   * completion
-   * to see if any have terminated.
-   *
-   * <p>Terminated jobs are removed from their respective queues and sent to post-processing.
-   */
-  @VisibleForTesting
-  class TerminalSweeper extends JobProcessor {
-
-    private AtomicInteger swept = new AtomicInteger(0);
-
-    @Override
-    protected void doRun() throws InterruptedException {
-      LOGGER.trace("TerminalSweeper, starting sweep.");
-
-      removeFromWaiting();
-      removeFromReady();
-
-      if (swept.get() > 0) {
-        swept.set(0);
-        jobProcessor.signal();
-      }
-
-      LOGGER.trace("TerminalSweeper, sweep completed");
-
-      if (Thread.interrupted()) {
-        throw new InterruptedException();
-      }
-    }
-
-    /*
-     *  To avoid ConcurrentModificationExceptions on
-     *  removal, selection to an intermediate list is
-     *  then followed by removal synchronized job-by-job.
-     *  The job has a 'valid' flag which is unset
-     *  when it is about to be removed, and checked
-     *  before including it for removal.
-     */
-    private List<BulkJob> findJobsToRemove(Collection<BulkJob> jobs) {
-      return jobs.stream()
-          .filter(BulkJob::isValid)
-          .filter(BulkJob::isTerminated)
-          .map(BulkJob::invalidate)
-          .collect(Collectors.toList());
-    }
-
-    private List<BulkJob> findReadyJobsToRemove() {
-      synchronized (readyQueue) {
-        if (readyQueue.isEmpty()) {
-          return Collections.EMPTY_LIST;
-        }
-
-        return findJobsToRemove(readyQueue.values());
-      }
-    }
-
-    private List<BulkJob> findWaitingJobsToRemove() {
-      synchronized (waitingQueue) {
-        if (waitingQueue.isEmpty()) {
-          return Collections.EMPTY_LIST;
-        }
-
-        return findJobsToRemove(waitingQueue);
       }
     }
 
     /**
-     * Scans the ready queue to see which jobs should be removed and removes them. Jobs are sent to
-     * the post-processing queue.
-     */
-    private void removeFromReady() {
-      List<BulkJob> jobs = findReadyJobsToRemove();
-      if (jobs.isEmpty()) {
-        return;
-      }
-
-      LOGGER.trace(
-          "{}, removeFromReady, processing {} jobs.",
-          Thread.currentThread().getName(),
-          jobs.size());
-      jobs.stream().forEach(BulkServiceQueue.this::removeFromReady);
-      updateReadyStats();
-      jobs.stream().forEach(postProcessor::offer);
-      swept.accumulateAndGet(jobs.size(), (x, y) -> x + y);
-    }
-
-    /**
-     * Scans the waiting queue to see which jobs have terminated and removes them. Jobs are sent to
-     * the post-processing queue.
+     * Checks the running queue for terminal jobs and removes them, sending them to the
+     * post-processor. It also checks to see if the running job is in a waiting state, and if so, it
+     * removes it and places it on the waiting queue.
+     *
+     * <p>The running queue is bounded by the maximum number of running jobs, so this does not
+     * grow with the number of queued jobs.
      */
-    private void removeFromWaiting() {
-      List<BulkJob> jobs = findWaitingJobsToRemove();
-      if (jobs.isEmpty()) {
-        return;
+    private void removeFromRunning() {
+      for (Iterator<BulkJob> jiterator = runningQueue.iterator(); jiterator.hasNext(); ) {
+        BulkJob job = jiterator.next();
+        if (job.isTerminated()) {
+          jiterator.remove();
+          jobRemoved(job);
+        } else if (job.isWaiting()) {
+          jiterator.remove();
+          waitingQueue.add(job);
+        }
       }
 
       LOGGER.trace(
-          "{}, removeFromWaiting, processing {} jobs.",
-          Thread.currentThread().getName(),
-          jobs.size());
-      jobs.stream().forEach(BulkServiceQueue.this::removeFromWaiting);
-      updateWaitingStats();
-      jobs.stream().forEach(postProcessor::offer);
-      swept.accumulateAndGet(jobs.size(), (x, y) -> x + y);
+          "after remove, running {}, waiting {}.", runningQueue.size(), waitingQueue.size());
     }
   }
 
@@ -928,7 +720,7 @@ public class BulkServiceQueue implements SignalAware {
   @VisibleForTesting
   class JobPostProcessor implements Runnable {
 
-    private final Queue<BulkJob> queue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<BulkJob> queue = new LinkedBlockingQueue<>();
 
     public void run() {
       try {
@@ -944,20 +736,15 @@ public class BulkServiceQueue implements SignalAware {
      * @param noWait only for testing purposes will this be set to true.
      */
     protected void doRun(boolean noWait) throws InterruptedException {
-      List<BulkJob> jobs;
-
-      synchronized (this) {
-        while (queue.isEmpty()) {
-          if (noWait) {
-            break;
-          }
-          wait();
-        }
-
-        jobs = queue.stream().limit(maxRunningJobs).collect(Collectors.toList());
-        queue.removeAll(jobs);
+      BulkJob first = noWait ? queue.poll() : queue.take();
+      if (first == null) {
+        return;
       }
 
+      List<BulkJob> jobs = new ArrayList<>();
+      jobs.add(first);
+      queue.drainTo(jobs, maxRunningJobs - 1);
+
       if (!cleanupExecutorService.isShutdown()) {
         cleanupExecutorService.submit(
             new FireAndForgetTask(
@@ -970,17 +757,15 @@ public class BulkServiceQueue implements SignalAware {
     /*
      *  For intercommunication with processor instances.
      */
-    synchronized void offer(BulkJob bulkJob) {
-        if (!queue.offer(bulkJob)) {
-          /*
-           *  Queue is unbounded, so this means something
-           *  is wrong.
-           */
-          throw new RuntimeException(
-              "Job post processor is refusing " + "new jobs; " + "this is a bug.");
-        }
-
-        notifyAll();
+    void offer(BulkJob bulkJob) {
+      if (!queue.offer(bulkJob)) {
+        /*
+         *  Queue is unbounded, so this means something
+         *  is wrong.
+         */
+        throw new RuntimeException(
+            "Job post processor is refusing " + "new jobs; " + "this is a bug.");
+      }
     }
 
     private void postProcessJob(BulkJob job) {
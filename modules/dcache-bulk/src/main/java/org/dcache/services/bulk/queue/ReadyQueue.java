@@ -0,0 +1,255 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.queue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import org.dcache.services.bulk.job.BulkJob;
+import org.dcache.services.bulk.job.SingleTargetJob;
+
+/**
+ * Index of the jobs that are ready to run, organized for fair selection.
+ *
+ * <p>Jobs are grouped by request and requests are grouped by owner. Each call to {@link #poll()}
+ * takes the next owner in round-robin order, then the next of that owner's requests in
+ * round-robin order, and selects one job of that request. A user with many large requests thus
+ * receives the same share of running slots as a user with a single small one.
+ *
+ * <p>Within a request, single target jobs are selected before expansion jobs. This constrains
+ * the size of the queue, because expansion is not allowed to continuously pile up new jobs, and
+ * gives priority to the real work to be done by the various plugins.
+ *
+ * <p>All operations take constant time, with the exception of removing the last job of a request,
+ * which is linear in the number of requests of the owner. In particular, a job terminated while
+ * ready can be removed without scanning the queue.
+ *
+ * <p>This class is not thread-safe. It is confined to the thread of the job processor; only the
+ * size may be read from other threads.
+ */
+class ReadyQueue {
+
+  /**
+   * The ready jobs of one request, in order of arrival, mapped to the time they became ready.
+   */
+  private static class RequestJobs {
+
+    final String requestId;
+    final Owner owner;
+    final Map<BulkJob, Long> singleTarget = new LinkedHashMap<>();
+    final Map<BulkJob, Long> other = new LinkedHashMap<>();
+
+    RequestJobs(String requestId, Owner owner) {
+      this.requestId = requestId;
+      this.owner = owner;
+    }
+
+    void add(BulkJob job, long now) {
+      if (job instanceof SingleTargetJob) {
+        singleTarget.put(job, now);
+      } else {
+        other.put(job, now);
+      }
+    }
+
+    boolean isEmpty() {
+      return singleTarget.isEmpty() && other.isEmpty();
+    }
+
+    Map.Entry<BulkJob, Long> poll() {
+      Map<BulkJob, Long> jobs = singleTarget.isEmpty() ? other : singleTarget;
+      Iterator<Map.Entry<BulkJob, Long>> iterator = jobs.entrySet().iterator();
+      Map.Entry<BulkJob, Long> next = iterator.next();
+      iterator.remove();
+      return next;
+    }
+
+    boolean remove(BulkJob job) {
+      return singleTarget.remove(job) != null || other.remove(job) != null;
+    }
+  }
+
+  /**
+   * The requests with ready jobs of one owner, in round-robin order.
+   */
+  private static class Owner {
+
+    final String name;
+    final Deque<RequestJobs> requests = new ArrayDeque<>();
+
+    Owner(String name) {
+      this.name = name;
+    }
+  }
+
+  private final Deque<Owner> owners = new ArrayDeque<>();
+  private final Map<String, Owner> ownersByName = new HashMap<>();
+  private final Map<String, RequestJobs> requests = new HashMap<>();
+
+  /**
+   * Maps request id to the owner of the request.
+   */
+  private final Function<String, String> ownerOfRequest;
+
+  /**
+   * Receives the time in milliseconds a job spent on the queue when it is selected.
+   */
+  private final LongConsumer queueLatency;
+
+  private volatile int size;
+
+  ReadyQueue(Function<String, String> ownerOfRequest, LongConsumer queueLatency) {
+    this.ownerOfRequest = ownerOfRequest;
+    this.queueLatency = queueLatency;
+  }
+
+  void add(BulkJob job) {
+    String requestId = job.getKey().getRequestId();
+    RequestJobs jobs = requests.get(requestId);
+    if (jobs == null) {
+      String name = ownerOfRequest.apply(requestId);
+      Owner owner = ownersByName.get(name);
+      if (owner == null) {
+        owner = new Owner(name);
+        ownersByName.put(name, owner);
+        owners.addLast(owner);
+      }
+      jobs = new RequestJobs(requestId, owner);
+      requests.put(requestId, jobs);
+      owner.requests.addLast(jobs);
+    }
+    jobs.add(job, System.currentTimeMillis());
+    ++size;
+  }
+
+  /**
+   * @return true if there are ready jobs for the request.
+   */
+  boolean contains(String requestId) {
+    return requests.containsKey(requestId);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes and returns the next job according to the fair-share policy.
+   *
+   * @return the job, or null if the queue is empty.
+   */
+  BulkJob poll() {
+    Owner owner = owners.pollFirst();
+    if (owner == null) {
+      return null;
+    }
+
+    RequestJobs jobs = owner.requests.pollFirst();
+    Map.Entry<BulkJob, Long> next = jobs.poll();
+
+    if (jobs.isEmpty()) {
+      requests.remove(jobs.requestId);
+    } else {
+      owner.requests.addLast(jobs);
+    }
+
+    if (owner.requests.isEmpty()) {
+      ownersByName.remove(owner.name);
+    } else {
+      owners.addLast(owner);
+    }
+
+    --size;
+    queueLatency.accept(System.currentTimeMillis() - next.getValue());
+    return next.getKey();
+  }
+
+  /**
+   * @return true if the job was on the queue.
+   */
+  boolean remove(BulkJob job) {
+    RequestJobs jobs = requests.get(job.getKey().getRequestId());
+    if (jobs == null || !jobs.remove(job)) {
+      return false;
+    }
+
+    if (jobs.isEmpty()) {
+      requests.remove(jobs.requestId);
+      Owner owner = jobs.owner;
+      owner.requests.remove(jobs);
+      if (owner.requests.isEmpty()) {
+        ownersByName.remove(owner.name);
+        owners.remove(owner);
+      }
+    }
+
+    --size;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+}
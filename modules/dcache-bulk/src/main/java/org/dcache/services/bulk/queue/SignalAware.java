@@ -59,6 +59,8 @@ documents or software obtained from this server.
  */
 package org.dcache.services.bulk.queue;
 
+import org.dcache.services.bulk.job.BulkJob;
+
 /**
  *  The purpose of this interface is to make explicit the handling of signals
  *  that are received while doing work outside of a synchronization block,
@@ -83,4 +85,22 @@ public interface SignalAware
      *         currently unprocessed.
      */
     int countSignals();
+
+    /**
+     *  Signals the queue that the job has terminated, allowing it
+     *  to remove the job without searching for it.
+     */
+    default void jobTerminated(BulkJob job)
+    {
+        signal();
+    }
+
+    /**
+     *  Signals the queue that the running job is now waiting for
+     *  completion.
+     */
+    default void jobWaiting(BulkJob job)
+    {
+        signal();
+    }
 }
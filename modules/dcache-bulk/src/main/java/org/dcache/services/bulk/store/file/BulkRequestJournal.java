@@ -0,0 +1,662 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.file;
+
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32;
+
+import org.dcache.services.bulk.BulkRequestStatus.Status;
+import org.dcache.services.bulk.BulkRequestStorageException;
+import org.dcache.services.bulk.BulkStorageException;
+import org.dcache.services.bulk.store.file.FileBulkRequestStore.FileBulkRequestWrapper;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *  Append-only log of the changes made to the requests of the store.
+ *  <p>
+ *  Storing a request writes the complete request once.  Every later change,
+ *  such as a target being added or completed or the status of the request
+ *  being updated, is written as a small record describing only that change.
+ *  The cost of persisting a change is thus independent of the number of
+ *  targets of the request.
+ *  <p>
+ *  The journal is organized in generations.  A snapshot of generation N
+ *  holds the state of all live requests at the moment journal N was started;
+ *  the state of the store is recovered by reading the latest complete snapshot
+ *  and replaying the journals of that and later generations.  Compacting the
+ *  journal starts a new generation and writes the snapshot for it in the
+ *  background; once the snapshot is complete, older files are deleted.
+ *  <p>
+ *  Each record is framed by its length and a checksum, so that a torn write
+ *  at the end of a journal is detected and ignored on recovery.
+ *  <p>
+ *  Records are buffered; status changes are written out immediately, whereas
+ *  target changes are written out on {@link #flush()}.
+ */
+class BulkRequestJournal
+{
+    private static final Logger LOGGER
+                    = LoggerFactory.getLogger(BulkRequestJournal.class);
+
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String OBJ_SUFFIX = ".obj";
+
+    private static final Pattern GENERATION
+                    = Pattern.compile("(" + JOURNAL_PREFIX + "|" + SNAPSHOT_PREFIX
+                                                      + ")(\\d+)");
+
+    /**
+     *  Upper bound for the size of a single record; anything larger
+     *  indicates a corrupt length field.
+     */
+    private static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private enum RecordType
+    {
+        STORE, TARGET_ADDED, TARGET_COMPLETED, TARGET_ABORTED, ABORTED,
+        STATUS, RESET, CLEAR
+    }
+
+    private final File storageDir;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+
+    @GuardedBy("this")
+    private long generation;
+
+    @GuardedBy("this")
+    private DataOutputStream out;
+
+    @GuardedBy("this")
+    private long size;
+
+    BulkRequestJournal(File storageDir)
+    {
+        requireNonNull(storageDir, "Request journal "
+                        + "must be given an explicit base directory to write to.");
+        this.storageDir = storageDir;
+    }
+
+    /**
+     *  Recovers the requests from the latest snapshot and the journals
+     *  following it, then starts a new generation with a snapshot of the
+     *  recovered requests.
+     *  <p>
+     *  Requests written by earlier versions as individual serialized files are
+     *  imported and the files removed once they are part of the snapshot.
+     *
+     *  @return the recovered requests by id.
+     */
+    synchronized Map<String, FileBulkRequestWrapper> open()
+                    throws BulkStorageException
+    {
+        if (!storageDir.exists()) {
+            storageDir.mkdirs();
+        }
+
+        Map<String, FileBulkRequestWrapper> requests = new LinkedHashMap<>();
+
+        OptionalLong snapshot = generations(SNAPSHOT_PREFIX).max();
+        long first = snapshot.orElse(0L);
+        if (snapshot.isPresent()) {
+            replay(snapshotFile(first), requests);
+        }
+
+        long[] journals = generations(JOURNAL_PREFIX).filter(g -> g >= first)
+                                                     .sorted()
+                                                     .toArray();
+        for (long journal : journals) {
+            replay(journalFile(journal), requests);
+        }
+
+        File[] legacy = storageDir.listFiles((d, n) -> n.endsWith(OBJ_SUFFIX));
+        if (legacy != null) {
+            Arrays.stream(legacy).forEach(file -> readLegacy(file, requests));
+        }
+
+        long last = Math.max(first, journals.length == 0 ? 0L
+                        : journals[journals.length - 1]);
+        generation = last;
+        long next = rotate();
+
+        if (!writeSnapshot(next, requests.values())) {
+            throw new BulkRequestStorageException("could not write snapshot of "
+                                                                  + "recovered "
+                                                                  + "requests.");
+        }
+
+        if (legacy != null) {
+            Arrays.stream(legacy).forEach(File::delete);
+        }
+
+        LOGGER.info("Recovered {} requests from generation {} to {}.",
+                    requests.size(), first, last);
+
+        return requests;
+    }
+
+    /**
+     *  Closes the current journal and starts a new, empty one.
+     *
+     *  @return the generation of the new journal; the caller is expected to
+     *          write the snapshot of that generation.
+     */
+    synchronized long rotate() throws BulkStorageException
+    {
+        long next = generation + 1;
+        File file = journalFile(next);
+        DataOutputStream stream;
+        try {
+            stream = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(file, true), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new BulkRequestStorageException("could not open journal "
+                                                                  + file, e);
+        }
+
+        closeJournal();
+        out = stream;
+        generation = next;
+        size = 0L;
+        return next;
+    }
+
+    /**
+     *  Writes the snapshot of the given generation and deletes all files
+     *  of earlier generations.  Does not hold the lock of the journal,
+     *  so that changes continue to be appended while the snapshot is
+     *  written.
+     *
+     *  @return true if the snapshot was written.
+     */
+    boolean writeSnapshot(long generation,
+                          Collection<FileBulkRequestWrapper> requests)
+    {
+        File snapshot = snapshotFile(generation);
+        File tmp = new File(storageDir, snapshot.getName() + TMP_SUFFIX);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        CRC32 checksum = new CRC32();
+
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream stream = new DataOutputStream(
+                             new BufferedOutputStream(fos, BUFFER_SIZE))) {
+            for (FileBulkRequestWrapper request : requests) {
+                bytes.reset();
+                writeStore(data, request);
+                writeRecord(stream, bytes, checksum);
+            }
+            stream.flush();
+            fos.getChannel().force(true);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write snapshot {}: {}.", snapshot,
+                        e.getMessage());
+            tmp.delete();
+            return false;
+        }
+
+        try {
+            Files.move(tmp.toPath(), snapshot.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to install snapshot {}: {}.", snapshot,
+                        e.getMessage());
+            tmp.delete();
+            return false;
+        }
+
+        deleteBefore(generation);
+
+        LOGGER.debug("Wrote snapshot {} of {} requests.", snapshot,
+                     requests.size());
+        return true;
+    }
+
+    /**
+     *  @return number of bytes written to the current journal.
+     */
+    synchronized long size()
+    {
+        return size;
+    }
+
+    synchronized void flush()
+    {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to flush journal: {}.", e.getMessage());
+            }
+        }
+    }
+
+    synchronized void close()
+    {
+        closeJournal();
+    }
+
+    synchronized void store(FileBulkRequestWrapper request)
+    {
+        buffer.reset();
+        try {
+            writeStore(record, request);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to serialize {}: {}.", request.requestId,
+                        e.getMessage());
+            return;
+        }
+        append(true);
+    }
+
+    synchronized void targetAdded(String requestId)
+    {
+        begin(RecordType.TARGET_ADDED, requestId);
+        append(false);
+    }
+
+    synchronized void targetCompleted(String requestId, String target,
+                                      Throwable exception)
+    {
+        begin(RecordType.TARGET_COMPLETED, requestId);
+        writeTarget(target, exception);
+        append(false);
+    }
+
+    synchronized void targetAborted(String requestId, String target,
+                                    Throwable exception)
+    {
+        begin(RecordType.TARGET_ABORTED, requestId);
+        writeTarget(target, exception);
+        append(false);
+    }
+
+    synchronized void aborted(String requestId, Throwable exception)
+    {
+        begin(RecordType.ABORTED, requestId);
+        writeTarget(null, exception);
+        append(true);
+    }
+
+    synchronized void status(String requestId, Status status, long lastModified)
+    {
+        begin(RecordType.STATUS, requestId);
+        try {
+            writeString(record, status.name());
+            record.writeLong(lastModified);
+        } catch (IOException e) {
+            throw new RuntimeException(e); /* Cannot happen. */
+        }
+        append(true);
+    }
+
+    synchronized void reset(String requestId)
+    {
+        begin(RecordType.RESET, requestId);
+        append(true);
+    }
+
+    synchronized void clear(String requestId)
+    {
+        begin(RecordType.CLEAR, requestId);
+        append(true);
+    }
+
+    @GuardedBy("this")
+    private void begin(RecordType type, String requestId)
+    {
+        buffer.reset();
+        try {
+            record.writeByte(type.ordinal());
+            writeString(record, requestId);
+        } catch (IOException e) {
+            throw new RuntimeException(e); /* Cannot happen. */
+        }
+    }
+
+    @GuardedBy("this")
+    private void writeTarget(String target, Throwable exception)
+    {
+        try {
+            writeString(record, target);
+            if (exception == null) {
+                writeString(record, null);
+                writeString(record, null);
+            } else {
+                Throwable cause = Throwables.getRootCause(exception);
+                writeString(record, cause.getClass().getCanonicalName());
+                writeString(record, cause.getMessage());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e); /* Cannot happen. */
+        }
+    }
+
+    @GuardedBy("this")
+    private void append(boolean flush)
+    {
+        if (out == null) {
+            LOGGER.warn("Journal is closed; change to request is not persisted.");
+            return;
+        }
+
+        try {
+            size += writeRecord(out, buffer, crc);
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to append to journal {}: {}.",
+                        journalFile(generation), e.getMessage());
+        }
+    }
+
+    @GuardedBy("this")
+    private void closeJournal()
+    {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close journal {}: {}.",
+                            journalFile(generation), e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private void deleteBefore(long generation)
+    {
+        File[] files = storageDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            Matcher matcher = GENERATION.matcher(file.getName());
+            if (matcher.matches() && Long.parseLong(matcher.group(2)) < generation) {
+                file.delete();
+            }
+        }
+    }
+
+    private LongStream generations(String prefix)
+    {
+        String[] names = storageDir.list();
+        if (names == null) {
+            return LongStream.empty();
+        }
+
+        return Arrays.stream(names)
+                     .map(GENERATION::matcher)
+                     .filter(Matcher::matches)
+                     .filter(m -> m.group(1).equals(prefix))
+                     .mapToLong(m -> Long.parseLong(m.group(2)));
+    }
+
+    private File journalFile(long generation)
+    {
+        return new File(storageDir, JOURNAL_PREFIX + generation);
+    }
+
+    private File snapshotFile(long generation)
+    {
+        return new File(storageDir, SNAPSHOT_PREFIX + generation);
+    }
+
+    private void readLegacy(File file, Map<String, FileBulkRequestWrapper> requests)
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            FileBulkRequestWrapper request = (FileBulkRequestWrapper) in.readObject();
+            requests.put(request.requestId, request);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOGGER.warn("Deserialization failed for {}: {}; file "
+                                        + "is corrupt or incomplete; "
+                                        + "removing ...",
+                        file, e.getMessage());
+        }
+    }
+
+    private void replay(File file, Map<String, FileBulkRequestWrapper> requests)
+    {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file), BUFFER_SIZE))) {
+            CRC32 checksum = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                long expected = in.readInt() & 0xFFFFFFFFL;
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    LOGGER.warn("{} is corrupt after {} records; ignoring "
+                                                + "remainder.", file, count);
+                    break;
+                }
+
+                byte[] data = new byte[length];
+                in.readFully(data);
+                checksum.reset();
+                checksum.update(data, 0, length);
+                if (checksum.getValue() != expected) {
+                    LOGGER.warn("{} is corrupt after {} records; ignoring "
+                                                + "remainder.", file, count);
+                    break;
+                }
+
+                apply(new DataInputStream(new ByteArrayInputStream(data)),
+                      requests);
+                ++count;
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("{} ends with an incomplete record after {} records; "
+                                        + "ignoring remainder.", file, count);
+        } catch (IOException | ClassNotFoundException e) {
+            LOGGER.warn("Failed to read {} after {} records: {}.",
+                        file, count, e.getMessage());
+        }
+
+        LOGGER.debug("Replayed {} records from {}.", count, file);
+    }
+
+    private static void apply(DataInputStream in,
+                              Map<String, FileBulkRequestWrapper> requests)
+                    throws IOException, ClassNotFoundException
+    {
+        RecordType type = RecordType.values()[in.readUnsignedByte()];
+
+        if (type == RecordType.STORE) {
+            try (ObjectInputStream object = new ObjectInputStream(in)) {
+                FileBulkRequestWrapper request
+                                = (FileBulkRequestWrapper) object.readObject();
+                requests.put(request.requestId, request);
+            }
+            return;
+        }
+
+        String requestId = readString(in);
+        FileBulkRequestWrapper request = requests.get(requestId);
+        if (request == null) {
+            /*
+             *  Changes to a request that was cleared.
+             */
+            return;
+        }
+
+        switch (type) {
+            case TARGET_ADDED:
+                request.targetAdded();
+                break;
+            case TARGET_COMPLETED:
+                request.targetCompleted(readString(in), readString(in),
+                                        readString(in));
+                break;
+            case TARGET_ABORTED:
+                request.targetAborted(readString(in), readString(in),
+                                      readString(in));
+                break;
+            case ABORTED:
+                readString(in);
+                request.aborted(readString(in), readString(in));
+                break;
+            case STATUS:
+                request.setStatus(Status.valueOf(readString(in)), in.readLong());
+                break;
+            case RESET:
+                request.reset();
+                break;
+            case CLEAR:
+                requests.remove(requestId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeStore(DataOutputStream out,
+                                   FileBulkRequestWrapper request)
+                    throws IOException
+    {
+        out.writeByte(RecordType.STORE.ordinal());
+        ObjectOutputStream object = new ObjectOutputStream(out);
+        object.writeObject(request);
+        object.flush();
+    }
+
+    /**
+     *  @return number of bytes written.
+     */
+    private static int writeRecord(DataOutputStream out,
+                                   ByteArrayOutputStream record,
+                                   CRC32 checksum) throws IOException
+    {
+        byte[] data = record.toByteArray();
+        checksum.reset();
+        checksum.update(data, 0, data.length);
+        out.writeInt(data.length);
+        out.writeInt((int) checksum.getValue());
+        out.write(data);
+        return data.length + 8;
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+                    throws IOException
+    {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -59,21 +59,30 @@ documents or software obtained from this server.
  */
 package org.dcache.services.bulk.store.file;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.security.auth.Subject;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
 import org.dcache.auth.attributes.Restriction;
@@ -95,17 +104,23 @@ import static org.dcache.services.bulk.store.BulkRequestStore.uidGidKey;
 /**
  *  Delegates main storage to in-memory implementation.
  *  <p>
- *  The file is written to disk only on store and on update of request
- *  to its terminal state.  Intermediate states are not persisted
- *  as the current implementation does not checkpoint and restore
- *  incomplete requests (such a procedure would in any case require a
- *  fully transactional database).
+ *  Every change is appended to a {@link BulkRequestJournal}: a request is
+ *  written in full when it is stored, while changes to its status and to its
+ *  targets are written as small delta records.  Persisting the completion of
+ *  a target thus costs a few bytes, no matter how many targets the request has.
  *  <p>
- *  At start-up, it reads back in the files and populates the in-memory store.
+ *  Target records are buffered and written out periodically; the journal is
+ *  compacted in the background once it exceeds the compaction threshold.
+ *  As incomplete requests are reset on restart, losing the last few target
+ *  records in a crash is of no consequence.
+ *  <p>
+ *  At start-up, it replays the journal and populates the in-memory store.
  */
-public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkRequestWrapper>
-                implements BulkRequestStore
+public class FileBulkRequestStore implements BulkRequestStore
 {
+    private static final Logger LOGGER
+                    = LoggerFactory.getLogger(FileBulkRequestStore.class);
+
     static class FileBulkRequestWrapper implements Serializable
     {
         private static final long serialVersionUID = 2678690448465233963L;
@@ -175,9 +190,11 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
             status.setStatus(this.status);
             status.setTargets(targets);
             status.setProcessed(processed);
-            BulkFailures bulkFailures = new BulkFailures();
-            bulkFailures.setFailures(failures);
-            status.setFailures(bulkFailures);
+            if (failures != null && !failures.isEmpty()) {
+                BulkFailures bulkFailures = new BulkFailures();
+                bulkFailures.setFailures(failures);
+                status.setFailures(bulkFailures);
+            }
             return status;
         }
 
@@ -186,6 +203,53 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
             return subject;
         }
 
+        /*
+         *  The following methods replay the changes recorded in the journal;
+         *  they mirror the corresponding updates of BulkRequestStatus.
+         */
+
+        void aborted(String errorType, String errorMessage)
+        {
+            if (target != null) {
+                ++processed;
+                addFailure(target, errorType, errorMessage);
+            }
+        }
+
+        void reset()
+        {
+            failures = null;
+            processed = 0;
+            targets = 0;
+            status = Status.QUEUED;
+        }
+
+        void setStatus(Status status, long lastModified)
+        {
+            this.status = status;
+            this.lastModified = lastModified;
+        }
+
+        void targetAdded()
+        {
+            ++targets;
+        }
+
+        void targetAborted(String target, String errorType, String errorMessage)
+        {
+            if (target != null) {
+                addFailure(relativeTarget(target), errorType, errorMessage);
+            }
+        }
+
+        void targetCompleted(String target, String errorType, String errorMessage)
+        {
+            if (target != null) {
+                ++processed;
+                addFailure(relativeTarget(target), errorType, errorMessage);
+            }
+        }
+
         void setRequest(BulkRequest request)
         {
             requestId = request.getId();
@@ -225,20 +289,65 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
         {
             this.subject = subject;
         }
+
+        private void addFailure(String target, String errorType,
+                                String errorMessage)
+        {
+            if (errorType == null) {
+                return;
+            }
+
+            if (failures == null) {
+                failures = new ConcurrentHashMap<>();
+            }
+
+            /*
+             *  Lists restored from a snapshot are immutable.
+             */
+            List<String> paths = failures.get(errorType);
+            if (!(paths instanceof ArrayList)) {
+                paths = paths == null ? new ArrayList<>() : new ArrayList<>(paths);
+                failures.put(errorType, paths);
+            }
+            paths.add(target + " : " + errorMessage);
+        }
+
+        private String relativeTarget(String target)
+        {
+            if (Strings.emptyToNull(targetPrefix) != null
+                            && target.startsWith(targetPrefix)) {
+                return target.substring(targetPrefix.length());
+            }
+            return target;
+        }
     }
 
     private final InMemoryBulkRequestStore delegate;
+    private final BulkRequestJournal journal;
+
+    /**
+     *  Changes to the delegate and their journal records are made while
+     *  holding the read lock; compaction takes the write lock to capture
+     *  a snapshot that is consistent with the start of the new journal.
+     */
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
 
     /**
-     *  For handling delayed clear requests.
+     *  For handling delayed clear requests and journal maintenance.
      */
     private ScheduledExecutorService scheduler;
 
+    private long flushInterval = 1;
+    private TimeUnit flushIntervalUnit = TimeUnit.SECONDS;
+    private long compactionThreshold = 64L * 1024 * 1024;
+
+    private ScheduledFuture<?> maintenance;
+
     public FileBulkRequestStore(File storageDir,
                                 InMemoryBulkRequestStore delegate)
     {
-        super(storageDir, FileBulkRequestWrapper.class);
         this.delegate = delegate;
+        this.journal = new BulkRequestJournal(storageDir);
     }
 
     @Override
@@ -262,7 +371,14 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
                                          + "caused the abort: {}.", requestId);
         }
 
-        delegate.abort(requestId, exception);
+        journalLock.readLock().lock();
+        try {
+            delegate.abort(requestId, exception);
+            journal.aborted(requestId, exception);
+            journalStatus(requestId);
+        } finally {
+            journalLock.readLock().unlock();
+        }
 
         if (request.isClearOnFailure()) {
             clear(requestId);
@@ -272,7 +388,13 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
     @Override
     public void addTarget(String requestId)
     {
-        delegate.addTarget(requestId);
+        journalLock.readLock().lock();
+        try {
+            delegate.addTarget(requestId);
+            journal.targetAdded(requestId);
+        } finally {
+            journalLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -307,13 +429,9 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
 
         Integer delay = request.get().getDelayClear();
         if (delay == null || delay == 0) {
-            delegate.clear(requestId);
-            deleteFromDisk(requestId);
+            clearNow(requestId);
         } else {
-            scheduler.schedule(() -> {
-                delegate.clear(requestId);
-                deleteFromDisk(requestId);
-            }, delay, TimeUnit.SECONDS);
+            scheduler.schedule(() -> clearNow(requestId), delay, TimeUnit.SECONDS);
         }
     }
 
@@ -409,12 +527,17 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
     }
 
     @Override
-    public void load()
+    public void load() throws BulkStorageException
     {
         LOGGER.trace("load called.");
 
-        readFromDisk();
+        journal.open().forEach(this::postProcessDeserialized);
         resetUnfinished();
+
+        maintenance = scheduler.scheduleWithFixedDelay(this::maintain,
+                                                       flushInterval,
+                                                       flushInterval,
+                                                       flushIntervalUnit);
     }
 
     @Override
@@ -429,14 +552,41 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
     public void reset(String requestId) throws BulkRequestStorageException
     {
         LOGGER.trace("reset {}.", requestId);
-        delegate.reset(requestId);
-        writeToDisk(requestId);
+        journalLock.readLock().lock();
+        try {
+            delegate.reset(requestId);
+            journal.reset(requestId);
+        } finally {
+            journalLock.readLock().unlock();
+        }
     }
 
+    /**
+     *  Compacts the journal and closes it.  Called on shutdown.
+     */
     @Override
     public void save()
     {
-        writeToDisk();
+        if (maintenance != null) {
+            maintenance.cancel(false);
+        }
+        compact();
+        journal.close();
+    }
+
+    public void setCompactionThreshold(long compactionThreshold)
+    {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public void setFlushInterval(long flushInterval)
+    {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setFlushIntervalUnit(TimeUnit flushIntervalUnit)
+    {
+        this.flushIntervalUnit = flushIntervalUnit;
     }
 
     @Required
@@ -453,10 +603,19 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
     {
         LOGGER.trace("store {}, subject {}.", request.getId(),
                      uidGidKey(subject));
-        delegate.store(subject, restriction, request, status);
-
         String requestId = request.getId();
-        writeToDisk(requestId);
+
+        journalLock.readLock().lock();
+        try {
+            delegate.store(subject, restriction, request, status);
+            journal.store(newInstance(requestId));
+        } catch (BulkStorageException e) {
+            LOGGER.warn("There was a problem instantiating wrapper for {}: {}; "
+                                        + "cannot write to journal.",
+                        requestId, e.getMessage());
+        } finally {
+            journalLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -467,7 +626,13 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
     {
         LOGGER.trace("targetAborted {}, {}, {}.", requestId, target,
                      exception.toString());
-        delegate.targetAborted(requestId, target, exception);
+        journalLock.readLock().lock();
+        try {
+            delegate.targetAborted(requestId, target, exception);
+            journal.targetAborted(requestId, target, exception);
+        } finally {
+            journalLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -477,7 +642,13 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
                     throws BulkRequestStorageException
     {
         LOGGER.trace("targetCompleted {}, {}.", requestId, target);
-        delegate.targetCompleted(requestId, target, exception);
+        journalLock.readLock().lock();
+        try {
+            delegate.targetCompleted(requestId, target, exception);
+            journal.targetCompleted(requestId, target, exception);
+        } finally {
+            journalLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -493,21 +664,15 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
                                                              + " not found.");
         }
 
-        boolean checkStatus = false;
-        switch (status)
-        {
-            case COMPLETED:
-                checkStatus = true;
-            case CANCELLED:
-                delegate.update(requestId, status);
-                writeToDisk(requestId);
-                break;
-            default:
-                delegate.update(requestId, status);
-                break;
-        }
-
-        if (checkStatus) {
+        journalLock.readLock().lock();
+        try {
+            delegate.update(requestId, status);
+            journalStatus(requestId);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+
+        if (status == Status.COMPLETED) {
             BulkRequest request = optionalRequest.get();
             Optional<BulkRequestStatus> optionalStatus
                             = delegate.getStatus(requestId);
@@ -547,7 +712,7 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
         return delegate.ids();
     }
 
-    protected FileBulkRequestWrapper newInstance(String id)  throws
+    private FileBulkRequestWrapper newInstance(String id)  throws
                     BulkStorageException
     {
         BulkRequest request = delegate.getRequest(id).orElse(null);
@@ -560,9 +725,8 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
         return new FileBulkRequestWrapper(request, status, subject, restriction);
     }
 
-    @Override
-    protected void postProcessDeserialized(String id,
-                                           FileBulkRequestWrapper wrapper)
+    private void postProcessDeserialized(String id,
+                                         FileBulkRequestWrapper wrapper)
     {
         /*
          *  Crashed or was saved in an incomplete state, jobs
@@ -579,6 +743,72 @@ public class FileBulkRequestStore extends AbstractObjectFileStore<FileBulkReques
                        wrapper.getStatus());
     }
 
+    private void clearNow(String requestId)
+    {
+        journalLock.readLock().lock();
+        try {
+            delegate.clear(requestId);
+            journal.clear(requestId);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+    /**
+     *  Starts a new journal and writes the snapshot of the live requests
+     *  for it.  Only capturing the snapshot blocks changes; writing it out
+     *  does not.
+     */
+    private synchronized void compact()
+    {
+        List<FileBulkRequestWrapper> snapshot = new ArrayList<>();
+        long generation;
+
+        journalLock.writeLock().lock();
+        try {
+            for (String id : delegate.ids()) {
+                try {
+                    snapshot.add(newInstance(id));
+                } catch (BulkStorageException e) {
+                    LOGGER.warn("There was a problem instantiating wrapper "
+                                                + "for {}: {}; not part of "
+                                                + "snapshot.",
+                                id, e.getMessage());
+                }
+            }
+            generation = journal.rotate();
+        } catch (BulkStorageException e) {
+            LOGGER.warn("Could not compact journal: {}.", e.getMessage());
+            return;
+        } finally {
+            journalLock.writeLock().unlock();
+        }
+
+        journal.writeSnapshot(generation, snapshot);
+    }
+
+    @GuardedBy("journalLock")
+    private void journalStatus(String requestId)
+    {
+        delegate.getStatus(requestId)
+                .ifPresent(s -> journal.status(requestId, s.getStatus(),
+                                               s.getLastModified()));
+    }
+
+    private void maintain()
+    {
+        try {
+            journal.flush();
+            if (journal.size() >= compactionThreshold) {
+                compact();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Bug detected during journal maintenance; "
+                                         + "please report this to "
+                                         + "<support@dcache.org>.", e);
+        }
+    }
+
     private void resetUnfinished()
     {
         LOGGER.trace("resetUnfinished called.");
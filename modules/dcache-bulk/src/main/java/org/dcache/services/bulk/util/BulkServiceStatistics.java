@@ -68,12 +68,39 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
 /**
  * Provides activity statistics since last restart via the CellInfo interface.
  */
 public class BulkServiceStatistics implements CellInfoProvider {
 
+  /**
+   * Time spent on a queue before being selected.
+   */
+  private static class Latency {
+
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+    private volatile long last;
+
+    void record(long millis) {
+      count.incrementAndGet();
+      total.addAndGet(millis);
+      max.accumulate(millis);
+      last = millis;
+    }
+
+    void print(PrintWriter pw, String name) {
+      long n = count.get();
+      pw.println(String.format(STATS_FORMAT, name + " (last)", last + " ms"));
+      pw.println(String.format(STATS_FORMAT, name + " (avg)",
+          (n == 0 ? 0 : total.get() / n) + " ms"));
+      pw.println(String.format(STATS_FORMAT, name + " (max)", max.get() + " ms"));
+    }
+  }
+
   private static final String LAST_START = "Running since: %s";
   private static final String UP_TIME = "Uptime %s days, %s hours," + " %s minutes, %s seconds";
   private static final String LAST_SWEEP = "Last job sweep at %s";
@@ -90,6 +117,8 @@ public class BulkServiceStatistics implements CellInfoProvider {
   private final AtomicLong jobsCancelled = new AtomicLong(0);
   private final Map<String, AtomicLong> requestTypes = new TreeMap<>();
   private final Map<String, AtomicLong> userRequests = new TreeMap<>();
+  private final Latency jobQueueLatency = new Latency();
+  private final Latency requestQueueLatency = new Latency();
 
   private long lastSweep = started.getTime();
   private long lastSweepDuration = 0;
@@ -172,6 +201,11 @@ public class BulkServiceStatistics implements CellInfoProvider {
     pw.println(String.format(STATS_FORMAT, "Waiting jobs", waitingJobs));
     pw.println(String.format(STATS_FORMAT, "Queued jobs", queuedJobs));
     pw.println(String.format(STATS_FORMAT, "Active requests", activeRequests));
+    pw.println();
+
+    pw.println("-------------------- QUEUE LATENCY -------------------");
+    requestQueueLatency.print(pw, "Request queued");
+    jobQueueLatency.print(pw, "Job queued");
   }
 
   public void incrementJobsAborted() {
@@ -202,6 +236,14 @@ public class BulkServiceStatistics implements CellInfoProvider {
     requestTypes.computeIfAbsent(activity, v -> new AtomicLong(0)).incrementAndGet();
   }
 
+  public void jobQueueLatency(long millis) {
+    jobQueueLatency.record(millis);
+  }
+
+  public void requestQueueLatency(long millis) {
+    requestQueueLatency.record(millis);
+  }
+
   public void sweepFinished(long duration) {
     lastSweep = System.currentTimeMillis();
     lastSweepDuration = duration;
@@ -61,14 +61,18 @@ package org.dcache.services.bulk.job;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import diskCacheV111.util.PnfsHandler;
 import diskCacheV111.util.PnfsId;
@@ -100,6 +104,8 @@ import static org.dcache.services.bulk.job.MultipleTargetJob.TargetType.FILE;
 import static org.dcache.services.bulk.job.TargetExpansionJob.ExpansionType.BREADTH_FIRST;
 import static org.dcache.services.bulk.job.TargetExpansionJob.ExpansionType.DEPTH_FIRST;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -150,6 +156,7 @@ public class BulkMultipleTargetJobTest implements SignalAware
     ListDirectoryHandler             listDirectoryHandler;
     BulkSubmissionHandler            submissionHandler;
     BulkJobCompletionHandler         completionHandler;
+    ExecutorService                  listExecutor;
 
     BulkRequest        request;
     BulkJobKey         requestKey;
@@ -219,13 +226,17 @@ public class BulkMultipleTargetJobTest implements SignalAware
     }
 
     @Test
-    public void breadthFirstExpansionShouldSubmitTargetExpansionJobOnce()
+    public void breadthFirstExpansionShouldSubmitNoExpansionJobForAll()
                     throws Exception
     {
         givenRequestWithTargetAndDepth("pnfs", ALL);
         givenExpansionWith("pnfs", BREADTH_FIRST, FILE);
         whenExpansionJobRuns();
-        assertThatExpansionSubmitWasCalled(1);
+        /*
+         *  Breadth-first also lists subdirectories itself,
+         *  rather than submitting new directory expansion tasks.
+         */
+        assertThatExpansionSubmitWasCalled(0);
     }
 
     @Test
@@ -237,7 +248,7 @@ public class BulkMultipleTargetJobTest implements SignalAware
         whenExpansionJobRuns();
         /*
          *  Depth-first does not submit new directory expansion tasks,
-         *  but does them recursively.
+         *  but lists subdirectories itself.
          */
         assertThatExpansionSubmitWasCalled(0);
     }
@@ -263,13 +274,13 @@ public class BulkMultipleTargetJobTest implements SignalAware
     }
 
     @Test
-    public void breadthFirstExpansionShouldSubmitTargetExpansionJobTwice()
+    public void breadthFirstExpansionShouldSubmitThirteenSingleTargetJobs()
                     throws Exception
     {
         givenRequestWithTargetAndDepth("pnfs", ALL);
-        givenExpansionWith("test", BREADTH_FIRST, FILE);
+        givenExpansionWith("pnfs", BREADTH_FIRST, TargetType.FILE);
         whenExpansionJobRuns();
-        assertThatExpansionSubmitWasCalled(2);
+        assertThatSingleTargetSubmitWasCalled(13);
     }
 
     @Test
@@ -383,20 +394,37 @@ public class BulkMultipleTargetJobTest implements SignalAware
     }
 
     @Test
-    public void breadthFirstExpansionShouldSubmitSelfAndFileSingleTargetJobs()
+    public void breadthFirstExpansionShouldSubmitEntireSubtreeAsSingleTargetJobs()
+                    throws Exception
+    {
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("test", BREADTH_FIRST, BOTH);
+        whenExpansionJobRuns();
+        assertThatSingleTargetSubmitWasCalled(11);
+    }
+
+    @Test
+    public void breadthFirstExpansionShouldSubmitDirectoryBeforeItsChildren()
                     throws Exception
     {
-        /*
-         *  Because a directory is treated "up front" as a target in
-         *  breadth-first, and this is deferred (done by the new
-         *  expansion job) when expansion is "on", we should see here
-         *  only the directory itself plus its file children submitted
-         *  as single target jobs.
-         */
         givenRequestWithTargetAndDepth("pnfs", ALL);
         givenExpansionWith("test", BREADTH_FIRST, BOTH);
         whenExpansionJobRuns();
-        assertThatSingleTargetSubmitWasCalled(3);
+        assertThatSingleTargetSubmitsWereInOrder("test",
+                                                 "test/test-child-2",
+                                                 "test/test-child-2/test-child-2-empty");
+    }
+
+    @Test
+    public void depthFirstExpansionShouldSubmitDirectoryAfterItsChildren()
+                    throws Exception
+    {
+        givenRequestWithTargetAndDepth("pnfs", ALL);
+        givenExpansionWith("test", DEPTH_FIRST, BOTH);
+        whenExpansionJobRuns();
+        assertThatSingleTargetSubmitsWereInOrder("test/test-child-2/test-child-2-empty",
+                                                 "test/test-child-2",
+                                                 "test");
     }
 
     @Before
@@ -409,6 +437,13 @@ public class BulkMultipleTargetJobTest implements SignalAware
         listDirectoryHandler = new ListDirectoryHandler(pnfsHandler);
         submissionHandler = mock(BulkSubmissionHandler.class);
         completionHandler = new BulkJobCompletionHandler(this);
+        listExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        listExecutor.shutdownNow();
     }
 
     @Override
@@ -432,6 +467,19 @@ public class BulkMultipleTargetJobTest implements SignalAware
                                                   any(MultipleTargetJob.class));
     }
 
+    private void assertThatSingleTargetSubmitsWereInOrder(String ... targets)
+                    throws Exception
+    {
+        InOrder inOrder = inOrder(submissionHandler);
+        for (String target : targets) {
+            inOrder.verify(submissionHandler)
+                   .submitSingleTargetJob(eq(target),
+                                          any(BulkJobKey.class),
+                                          any(),
+                                          any(MultipleTargetJob.class));
+        }
+    }
+
     private void assertThatSingleTargetSubmitWasCalled(int times)
         throws Exception
     {
@@ -467,6 +515,8 @@ public class BulkMultipleTargetJobTest implements SignalAware
         targetExpansionJob.setRestriction(Restrictions.none());
         targetExpansionJob.setSubmissionHandler(submissionHandler);
         targetExpansionJob.setListHandler(listDirectoryHandler);
+        targetExpansionJob.setListExecutor(listExecutor);
+        targetExpansionJob.setMaxConcurrentListings(3);
         targetExpansionJob.setCompletionHandler(completionHandler);
     }
 
@@ -59,15 +59,10 @@ documents or software obtained from this server.
  */
 package org.dcache.services.bulk.queue;
 
-import com.google.common.collect.Ordering;
-import com.google.common.collect.TreeMultimap;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayDeque;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 
@@ -130,14 +125,9 @@ public class BulkServiceQueueTest
             public void initialize()
             {
                 maxRequests=1;
-                submitted = new LinkedHashMap<>();
-                runningQueue = new ArrayDeque<>();
-                waitingQueue = new HashSet<>();
-                readyQueue = TreeMultimap.create(requestStore.getStatusComparator(),
-                                                 Ordering.natural());
+                initializeQueues();
                 jobProcessor = new NextJobProcessor();
                 postProcessor = new JobPostProcessor();
-                sweeper = new TerminalSweeper();
             }
         };
         store = new InMemoryBulkRequestStore();
@@ -301,11 +291,26 @@ public class BulkServiceQueueTest
         assertThatReadyQueueSizeIs(0);
     }
 
+    @Test
+    public void shouldRemoveTerminatedReadyJobWhenNotified() throws Exception
+    {
+        givenMaxRunningJobs(1);
+        givenReceptionOfNewRequest();
+        givenSubmissionOfJobs(3);
+        afterQueueSweep();
+        assertThatReadyQueueSizeIs(2);
+
+        whenReadyJobIsCancelled();
+        afterQueueSweep();
+
+        assertThatReadyQueueSizeIs(1);
+        verify(completionHandler).requestTargetCancelled(any(BulkJob.class));
+    }
+
     private void afterQueueSweep() throws Exception
     {
         queue.jobProcessor.doRun();
         queue.postProcessor.doRun(true);
-        queue.sweeper.doRun();
     }
 
     private void afterRequestCompletedHasBeenCalled()
@@ -320,7 +325,7 @@ public class BulkServiceQueueTest
 
     private void assertThatJobIsOnReadyQueue(String id)
     {
-        assertNotNull(queue.readyQueue.get(id));
+        assertTrue(queue.readyQueue.contains(id));
     }
 
     private void assertThatJobIsOnRunningQueue(BulkJob job)
@@ -420,7 +425,7 @@ public class BulkServiceQueueTest
     private void givenQueuedJobsEquals(int running) throws Exception
     {
         for (int j = 0; j < running; ++j) {
-            queue.readyQueue.put(request.getId(), new PlaceholderJob());
+            queue.readyQueue.add(new PlaceholderJob());
             queue.waitingQueue.add(new PlaceholderJob());
         }
     }
@@ -456,6 +461,14 @@ public class BulkServiceQueueTest
         queue.submit(requestJob);
     }
 
+    private void whenReadyJobIsCancelled() throws Exception
+    {
+        BulkJob job = queue.readyQueue.poll();
+        queue.readyQueue.add(job);
+        job.cancel();
+        queue.jobTerminated(job);
+    }
+
     private void whenRequestCompletes() throws Exception
     {
         when(jobCompletionHandler.isRequestCompleted()).thenReturn(true);
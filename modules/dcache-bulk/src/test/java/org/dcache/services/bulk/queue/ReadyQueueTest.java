@@ -0,0 +1,161 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.queue;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.dcache.services.bulk.job.BulkJob;
+import org.dcache.services.bulk.job.BulkJobKey;
+import org.dcache.services.bulk.job.SingleTargetJob;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ReadyQueueTest
+{
+    class PlaceholderJob extends SingleTargetJob
+    {
+        PlaceholderJob(String requestId) throws Exception
+        {
+            super(BulkJobKey.newKey(requestId),
+                  BulkJobKey.newKey(requestId),
+                  "test");
+        }
+
+        @Override
+        protected void doRun()
+        {
+        }
+    }
+
+    private static final Map<String, String> OWNERS
+                    = ImmutableMap.of("a1", "alice", "a2", "alice", "b1", "bob");
+
+    ReadyQueue queue;
+
+    @Before
+    public void setUp()
+    {
+        queue = new ReadyQueue(OWNERS::get, latency -> {});
+    }
+
+    @Test
+    public void shouldSelectJobsRoundRobinAcrossOwnersAndRequests() throws Exception
+    {
+        givenJobs("a1", 3);
+        givenJobs("a2", 3);
+        givenJobs("b1", 3);
+
+        assertThat(requestsOfNextJobs(6),
+                   contains("a1", "b1", "a2", "b1", "a1", "b1"));
+    }
+
+    @Test
+    public void shouldRemoveJobWithoutSelectingIt() throws Exception
+    {
+        BulkJob job = new PlaceholderJob("b1");
+        queue.add(job);
+        givenJobs("a1", 1);
+
+        assertTrue(queue.remove(job));
+
+        assertEquals(1, queue.size());
+        assertFalse(queue.contains("b1"));
+        assertThat(requestsOfNextJobs(1), contains("a1"));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldNotRemoveJobTwice() throws Exception
+    {
+        BulkJob job = new PlaceholderJob("a1");
+        queue.add(job);
+
+        assertTrue(queue.remove(job));
+        assertFalse(queue.remove(job));
+        assertTrue(queue.isEmpty());
+    }
+
+    private void givenJobs(String requestId, int count) throws Exception
+    {
+        for (int i = 0; i < count; ++i) {
+            queue.add(new PlaceholderJob(requestId));
+        }
+    }
+
+    private List<String> requestsOfNextJobs(int count)
+    {
+        List<String> requests = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            requests.add(queue.poll().getKey().getRequestId());
+        }
+        return requests;
+    }
+}
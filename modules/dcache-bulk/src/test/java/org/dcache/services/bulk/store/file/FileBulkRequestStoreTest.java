@@ -0,0 +1,250 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.services.bulk.store.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+import diskCacheV111.util.CacheException;
+
+import org.dcache.auth.Subjects;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.services.bulk.BulkRequest;
+import org.dcache.services.bulk.BulkRequest.Depth;
+import org.dcache.services.bulk.BulkRequestStatus;
+import org.dcache.services.bulk.BulkRequestStatus.Status;
+import org.dcache.services.bulk.store.memory.InMemoryBulkRequestStore;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class FileBulkRequestStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storageDir;
+    private FileBulkRequestStore store;
+    private BulkRequest request;
+
+    @Before
+    public void setup() throws Exception
+    {
+        storageDir = folder.newFolder("requests");
+        store = givenStore();
+    }
+
+    @Test
+    public void shouldRecoverTargetChangesAfterShutdown() throws Exception
+    {
+        givenStoredRequest();
+        givenTargetsAdded(3);
+        whenTargetCompleted("/data/a", null);
+        whenTargetCompleted("/data/b", new CacheException("no such file"));
+
+        store.save();
+        store = givenStore();
+
+        BulkRequestStatus status = store.getStatus(request.getId()).get();
+        assertThat(status.getTargets(), is(3));
+        assertThat(status.getProcessed(), is(2));
+        assertThat(status.getFailures().count(), is(1));
+    }
+
+    @Test
+    public void shouldReplayTargetChangesWrittenOutWithStatusChange() throws Exception
+    {
+        givenStoredRequest();
+        givenTargetsAdded(2);
+        whenTargetCompleted("/data/a", new CacheException("no such file"));
+        store.update(request.getId(), Status.CANCELLED);
+
+        store = givenStore();
+
+        BulkRequestStatus status = store.getStatus(request.getId()).get();
+        assertThat(status.getTargets(), is(2));
+        assertThat(status.getProcessed(), is(1));
+        assertThat(status.getFailures().count(), is(1));
+    }
+
+    @Test
+    public void shouldRecoverStatusChangesWithoutShutdown() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.STARTED);
+        store.update(request.getId(), Status.CANCELLED);
+
+        store = givenStore();
+
+        assertThat(store.getStatus(request.getId()).get().getStatus(),
+                   is(Status.CANCELLED));
+    }
+
+    @Test
+    public void shouldResetStartedRequestsOnRecovery() throws Exception
+    {
+        givenStoredRequest();
+        givenTargetsAdded(2);
+        store.update(request.getId(), Status.STARTED);
+        whenTargetCompleted("/data/a", null);
+
+        store.save();
+        store = givenStore();
+
+        BulkRequestStatus status = store.getStatus(request.getId()).get();
+        assertThat(status.getStatus(), is(Status.QUEUED));
+        assertThat(status.getProcessed(), is(0));
+        assertThat(status.getTargets(), is(0));
+        assertThat(status.getFailures(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotRecoverClearedRequests() throws Exception
+    {
+        givenStoredRequest();
+        store.clear(request.getId());
+
+        store = givenStore();
+
+        assertFalse(store.getRequest(request.getId()).isPresent());
+    }
+
+    @Test
+    public void shouldIgnoreIncompleteRecordAtEndOfJournal() throws Exception
+    {
+        givenStoredRequest();
+        store.update(request.getId(), Status.CANCELLED);
+        givenTornWriteAtEndOfJournal();
+
+        store = givenStore();
+
+        assertThat(store.getStatus(request.getId()).get().getStatus(),
+                   is(Status.CANCELLED));
+    }
+
+    @Test
+    public void shouldRemoveSupersededFilesOnCompaction() throws Exception
+    {
+        givenStoredRequest();
+        givenTargetsAdded(5);
+
+        store.save();
+
+        assertThat(storageDir.list().length, is(2));
+        store = givenStore();
+        assertThat(store.getStatus(request.getId()).get().getTargets(),
+                   is(equalTo(5)));
+        assertTrue(store.getRequest(request.getId()).isPresent());
+    }
+
+    private FileBulkRequestStore givenStore() throws Exception
+    {
+        FileBulkRequestStore store
+                        = new FileBulkRequestStore(storageDir,
+                                                   new InMemoryBulkRequestStore());
+        store.setScheduler(mock(ScheduledExecutorService.class));
+        store.load();
+        return store;
+    }
+
+    private void givenStoredRequest()
+    {
+        request = new BulkRequest();
+        request.setExpandDirectories(Depth.NONE);
+        request.setActivity("test");
+        request.setTarget("/data");
+        request.setId(UUID.randomUUID().toString());
+        store.store(Subjects.ROOT, Restrictions.none(), request, null);
+    }
+
+    private void givenTargetsAdded(int count)
+    {
+        for (int i = 0; i < count; ++i) {
+            store.addTarget(request.getId());
+        }
+    }
+
+    private void givenTornWriteAtEndOfJournal() throws IOException
+    {
+        File[] journals = storageDir.listFiles((d, n) -> n.startsWith("journal-"));
+        try (FileOutputStream out = new FileOutputStream(journals[0], true)) {
+            out.write(new byte[] { 0, 0, 1, 0, 42, 42 });
+        }
+    }
+
+    private void whenTargetCompleted(String target, Throwable exception)
+                    throws Exception
+    {
+        store.targetCompleted(request.getId(), target, exception);
+    }
+}
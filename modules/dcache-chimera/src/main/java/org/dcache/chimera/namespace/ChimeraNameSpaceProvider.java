@@ -1,5 +1,6 @@
 package org.dcache.chimera.namespace;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -27,12 +28,14 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -113,6 +116,12 @@ public class ChimeraNameSpaceProvider
 
     private static final int INHERIT_MODE = -1;
 
+    /**
+     * Number of entries fetched per query when listing a directory in
+     * order of names.
+     */
+    private static final int SORTED_LIST_BATCH_SIZE = 1000;
+
     public static final String TAG_EXPECTED_SIZE = "ExpectedSize";
     public static final String TAG_PATH = "Path";
     public static final String TAG_WRITE_TOKEN = "WriteToken";
@@ -1021,29 +1030,7 @@ public class ChimeraNameSpaceProvider
         throws CacheException
     {
         try {
-            ExtendedInode inode = new ExtendedInode(_fs, pnfsId, STAT);
-
-            if (Subjects.isRoot(subject)) {
-                return getFileAttributes(inode, attr);
-            }
-
-            /* If we have to authorize the check then we fetch
-             * permission handler attributes in addition to the
-             * attributes requested by the caller.
-             */
-            Set<FileAttribute> required = EnumSet.noneOf(FileAttribute.class);
-            required.addAll(_permissionHandler.getRequiredAttributes());
-            required.addAll(attr);
-            FileAttributes fileAttributes =
-                getFileAttributes(inode, required);
-
-            /* The permission check is performed after we fetched the
-             * attributes to avoid fetching the attributes twice.
-             */
-            if (_permissionHandler.canGetAttributes(subject, fileAttributes, attr) != ACCESS_ALLOWED) {
-                throw new PermissionDeniedCacheException("Access denied: " + pnfsId);
-            }
-            return fileAttributes;
+            return getFileAttributes(subject, new ExtendedInode(_fs, pnfsId, STAT), attr);
         } catch (FileNotFoundHimeraFsException e) {
             throw new FileNotFoundCacheException("No such file or directory: " + pnfsId);
         } catch (IOException e) {
@@ -1052,6 +1039,120 @@ public class ChimeraNameSpaceProvider
         }
     }
 
+    private FileAttributes getFileAttributes(Subject subject, ExtendedInode inode,
+                                             Set<FileAttribute> attr)
+        throws ChimeraFsException, CacheException
+    {
+        if (Subjects.isRoot(subject)) {
+            return getFileAttributes(inode, attr);
+        }
+
+        /* If we have to authorize the check then we fetch
+         * permission handler attributes in addition to the
+         * attributes requested by the caller.
+         */
+        Set<FileAttribute> required = EnumSet.noneOf(FileAttribute.class);
+        required.addAll(_permissionHandler.getRequiredAttributes());
+        required.addAll(attr);
+        FileAttributes fileAttributes =
+            getFileAttributes(inode, required);
+
+        /* The permission check is performed after we fetched the
+         * attributes to avoid fetching the attributes twice.
+         */
+        if (_permissionHandler.canGetAttributes(subject, fileAttributes, attr) != ACCESS_ALLOWED) {
+            throw new PermissionDeniedCacheException("Access denied: " + inode.getPnfsId());
+        }
+        return fileAttributes;
+    }
+
+    /**
+     * Paths are grouped by parent directory. Each directory is resolved and
+     * authorized once for all its files, and files share the tags of the
+     * directory when their storage info is extracted. Symbolic links, special
+     * names and paths in directories that cannot be resolved are looked up
+     * individually, so that they fail exactly like an individual lookup.
+     */
+    @Override
+    public void getFileAttributesForPaths(Subject subject, Collection<String> paths,
+                                          Set<FileAttribute> attr,
+                                          BiConsumer<String,FileAttributes> onSuccess,
+                                          BiConsumer<String,CacheException> onFailure)
+    {
+        Map<String,List<String>> byParent = new LinkedHashMap<>();
+        List<String> individually = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            String name = file.getName();
+            if (file.getParent() == null || name.isEmpty() || name.equals(".") ||
+                    name.equals("..") || name.startsWith(".(")) {
+                individually.add(path);
+            } else {
+                byParent.computeIfAbsent(file.getParent(), p -> new ArrayList<>()).add(path);
+            }
+        }
+
+        for (Map.Entry<String,List<String>> entry : byParent.entrySet()) {
+            ExtendedInode dir;
+            try {
+                dir = lookupDirectory(subject, entry.getKey());
+            } catch (IOException | CacheException e) {
+                individually.addAll(entry.getValue());
+                continue;
+            }
+            for (String path : entry.getValue()) {
+                try {
+                    ExtendedInode inode = dir.inodeOf(new File(path).getName(), STAT);
+                    if (inode.isLink()) {
+                        individually.add(path);
+                    } else {
+                        onSuccess.accept(path, getFileAttributes(subject, inode, attr));
+                    }
+                } catch (FileNotFoundHimeraFsException e) {
+                    onFailure.accept(path, new FileNotFoundCacheException("No such file or directory " + path));
+                } catch (CacheException e) {
+                    onFailure.accept(path, e);
+                } catch (IOException e) {
+                    onFailure.accept(path, new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION,
+                                                              e.getMessage()));
+                }
+            }
+        }
+
+        NameSpaceProvider.super.getFileAttributesForPaths(subject, individually, attr,
+                                                          onSuccess, onFailure);
+    }
+
+    /**
+     * Resolves a directory and checks that the subject may look up entries in
+     * it, following the same rules as pathToInode applies to the parent of a
+     * path.
+     */
+    private ExtendedInode lookupDirectory(Subject subject, String path)
+        throws ChimeraFsException, CacheException
+    {
+        List<FsInode> inodes = _fs.path2inodes(path);
+        if (!Subjects.isRoot(subject)) {
+            for (FsInode inode: _verifyAllLookups ? inodes : Lists.reverse(inodes)) {
+                if (inode.isDirectory()) {
+                    FileAttributes attributes =
+                        getFileAttributesForPermissionHandler(inode);
+                    if (_permissionHandler.canLookup(subject, attributes) != ACCESS_ALLOWED) {
+                        throw new PermissionDeniedCacheException("Access denied: " + path);
+                    }
+                    if (!_verifyAllLookups) {
+                        break;
+                    }
+                }
+            }
+        }
+        ExtendedInode dir = new ExtendedInode(_fs, inodes.get(inodes.size() - 1));
+        if (!dir.isDirectory()) {
+            throw new NotDirChimeraException(dir);
+        }
+        return dir;
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId pnfsId,
                                   FileAttributes attr, Set<FileAttribute> acquire)
@@ -1202,21 +1303,7 @@ public class ChimeraNameSpaceProvider
     {
         try {
             Pattern pattern = (glob == null) ? null : glob.toPattern();
-            ExtendedInode dir = pathToInode(subject, path);
-            if (!dir.isDirectory()) {
-                throw new NotDirCacheException("Not a directory: " + path);
-            }
-
-            if (!Subjects.isRoot(subject)) {
-                FileAttributes attributes =
-                    getFileAttributesForPermissionHandler(dir);
-                if (!dir.isDirectory()) {
-                    throw new NotDirCacheException("Not a directory");
-                } else if (_permissionHandler.canListDir(subject, attributes) != ACCESS_ALLOWED) {
-                    throw new PermissionDeniedCacheException("Access denied: " +
-                                                             path);
-                }
-            }
+            ExtendedInode dir = getDirectoryToList(subject, path);
 
             int counter = 0;
             try (DirectoryStreamB<HimeraDirectoryEntry> dirStream = dir
@@ -1252,6 +1339,83 @@ public class ChimeraNameSpaceProvider
         }
     }
 
+    @Override
+    public void listAfter(Subject subject, String path, Glob glob, String after,
+                          Range<Integer> range, Set<FileAttribute> attrs, ListHandler handler)
+        throws CacheException
+    {
+        try {
+            Pattern pattern = (glob == null) ? null : glob.toPattern();
+            ExtendedInode dir = getDirectoryToList(subject, path);
+
+            /* Entries are fetched in batches, each continuing after the last
+             * name of the previous batch, so that the listing stops reading
+             * the directory once the range is exhausted.
+             */
+            String last = Strings.nullToEmpty(after);
+            int counter = 0;
+            int fetched;
+            do {
+                fetched = 0;
+                try (DirectoryStreamB<HimeraDirectoryEntry> dirStream =
+                             _fs.newDirectoryStream(dir, last, SORTED_LIST_BATCH_SIZE)) {
+                    for (HimeraDirectoryEntry entry : dirStream) {
+                        fetched++;
+                        last = entry.getName();
+                        if (pattern != null && !pattern.matcher(last).matches()) {
+                            continue;
+                        }
+                        if (isAboveRange(range, counter)) {
+                            return;
+                        }
+                        if (range.contains(counter++)) {
+                            try {
+                                FileAttributes fa =
+                                        attrs.isEmpty()
+                                                ? null
+                                                : getFileAttributes(new ExtendedInode(_fs, entry.getInode()), attrs);
+                                handler.addEntry(last, fa);
+                            } catch (FileNotFoundHimeraFsException e) {
+                                /* Not an error; files may be deleted during the
+                                 * list operation.
+                                 */
+                            }
+                        }
+                    }
+                }
+            } while (fetched == SORTED_LIST_BATCH_SIZE);
+        } catch (FileNotFoundHimeraFsException e) {
+            throw new FileNotFoundCacheException("No such file or directory: " + path);
+        } catch (IOException e) {
+            _log.error("Exception in list: {}", e);
+            throw new CacheException(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e.getMessage());
+        }
+    }
+
+    private static boolean isAboveRange(Range<Integer> range, int index)
+    {
+        return range.hasUpperBound() && index >= range.upperEndpoint() && !range.contains(index);
+    }
+
+    private ExtendedInode getDirectoryToList(Subject subject, String path)
+            throws ChimeraFsException, CacheException
+    {
+        ExtendedInode dir = pathToInode(subject, path);
+        if (!dir.isDirectory()) {
+            throw new NotDirCacheException("Not a directory: " + path);
+        }
+
+        if (!Subjects.isRoot(subject)) {
+            FileAttributes attributes =
+                getFileAttributesForPermissionHandler(dir);
+            if (_permissionHandler.canListDir(subject, attributes) != ACCESS_ALLOWED) {
+                throw new PermissionDeniedCacheException("Access denied: " +
+                                                         path);
+            }
+        }
+        return dir;
+    }
+
     private ExtendedInode mkdir(Subject subject, ExtendedInode parent, String name, int uid, int gid, int mode)
             throws ChimeraFsException, CacheException
     {
@@ -1,5 +1,6 @@
 package diskCacheV111.namespace;
 
+import com.google.common.collect.Range;
 import com.google.common.io.Resources;
 import junit.framework.JUnit4TestAdapter;
 import liquibase.Liquibase;
@@ -13,20 +14,29 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.NamespaceChangedNotificationMessage;
 import diskCacheV111.vehicles.PnfsAddCacheLocationMessage;
 import diskCacheV111.vehicles.PnfsCancelUpload;
 import diskCacheV111.vehicles.PnfsClearCacheLocationMessage;
@@ -38,6 +48,7 @@ import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.StorageInfo;
 
 import org.dcache.auth.Subjects;
+import org.dcache.cells.CellStub;
 import org.dcache.auth.attributes.Restrictions;
 import org.dcache.chimera.ChimeraFsException;
 import org.dcache.chimera.FileNotFoundHimeraFsException;
@@ -55,6 +66,7 @@ import org.dcache.util.Checksum;
 import org.dcache.util.ChecksumType;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesForPaths;
 import org.dcache.vehicles.PnfsSetFileAttributes;
 
 import static diskCacheV111.util.AccessLatency.NEARLINE;
@@ -63,8 +75,15 @@ import static org.dcache.namespace.FileAttribute.*;
 import static org.dcache.namespace.FileType.DIR;
 import static org.dcache.namespace.FileType.REGULAR;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
 
 public class PnfsManagerTest
 {
@@ -81,6 +100,9 @@ public class PnfsManagerTest
     private PnfsManagerV3 _pnfsManager;
     private Connection _conn;
     private FileSystemProvider _fs;
+    private ChimeraNameSpaceProvider _chimera;
+    private final List<Runnable> _scheduled = new ArrayList<>();
+    private final List<NamespaceChangedNotificationMessage> _namespaceChanges = new ArrayList<>();
 
     @Before
     public void setUp() throws Exception {
@@ -124,6 +146,7 @@ public class PnfsManagerTest
         chimera.setFileSystem(_fs);
         chimera.setUploadDirectory("/upload");
         chimera.setUploadSubDirectory("%d");
+        _chimera = chimera;
 
 
         _pnfsManager = new PnfsManagerV3();
@@ -332,6 +355,64 @@ public class PnfsManagerTest
     }
 
 
+    @Test
+    public void testGetFileAttributesForPaths() throws ChimeraFsException {
+        FsInode dir = _fs.path2inode("/pnfs/testRoot");
+        FsInode inode = _fs.createFile(dir, "testGetFileAttributesForPaths");
+
+        PnfsGetFileAttributesForPaths message =
+                new PnfsGetFileAttributesForPaths(Arrays.asList("/pnfs/testRoot/testGetFileAttributesForPaths",
+                                                                "/pnfs/testRoot/nonExistingFile"),
+                                                  EnumSet.of(PNFSID, TYPE));
+        _pnfsManager.getFileAttributesForPaths(message);
+
+        assertThat(message.getReturnCode(), is(0));
+        FileAttributes attributes = message.getFileAttributes().get("/pnfs/testRoot/testGetFileAttributesForPaths");
+        assertThat(attributes.getPnfsId(), is(new PnfsId(inode.statCache().getId())));
+        assertThat(attributes.getFileType(), is(REGULAR));
+        assertThat(message.getErrors().get("/pnfs/testRoot/nonExistingFile").getRc(),
+                   is(CacheException.FILE_NOT_FOUND));
+    }
+
+    @Test
+    public void testGetFileAttributesForPathsInSeveralDirectories() throws ChimeraFsException {
+        FsInode dir = _fs.mkdir("/pnfs/testRoot/testGetFileAttributesForPaths");
+        FsInode file1 = _fs.createFile(dir, "file1");
+        FsInode file2 = _fs.createFile(dir, "file2");
+        _fs.createLink(dir, "link", "/pnfs/testRoot/testGetFileAttributesForPaths/file1");
+        FsInode file3 = _fs.createFile(_fs.path2inode("/pnfs/testRoot"), "file3");
+
+        PnfsGetFileAttributesForPaths message =
+                new PnfsGetFileAttributesForPaths(Arrays.asList("/pnfs/testRoot/testGetFileAttributesForPaths/file1",
+                                                                "/pnfs/testRoot/testGetFileAttributesForPaths/file2",
+                                                                "/pnfs/testRoot/testGetFileAttributesForPaths/link",
+                                                                "/pnfs/testRoot/file3",
+                                                                "/pnfs/nonExistingDirectory/file"),
+                                                  EnumSet.of(PNFSID, TYPE, STORAGEINFO));
+        _pnfsManager.getFileAttributesForPaths(message);
+
+        PnfsGetFileAttributes single =
+                new PnfsGetFileAttributes("/pnfs/testRoot/file3", EnumSet.of(STORAGEINFO));
+        _pnfsManager.getFileAttributes(single);
+
+        assertThat(message.getReturnCode(), is(0));
+        Map<String,FileAttributes> attributes = message.getFileAttributes();
+        assertThat(attributes.get("/pnfs/testRoot/testGetFileAttributesForPaths/file1").getPnfsId(),
+                   is(new PnfsId(file1.statCache().getId())));
+        assertThat(attributes.get("/pnfs/testRoot/testGetFileAttributesForPaths/file2").getPnfsId(),
+                   is(new PnfsId(file2.statCache().getId())));
+        assertThat(attributes.get("/pnfs/testRoot/testGetFileAttributesForPaths/link").getPnfsId(),
+                   is(new PnfsId(file1.statCache().getId())));
+        assertThat(attributes.get("/pnfs/testRoot/file3").getPnfsId(),
+                   is(new PnfsId(file3.statCache().getId())));
+        assertThat(attributes.get("/pnfs/testRoot/file3").getStorageInfo().getStorageClass(),
+                   is(single.getFileAttributes().getStorageInfo().getStorageClass()));
+        assertThat(attributes.get("/pnfs/testRoot/file3").getStorageInfo().getKey("path"),
+                   is("/pnfs/testRoot/file3"));
+        assertThat(message.getErrors().get("/pnfs/nonExistingDirectory/file").getRc(),
+                   is(CacheException.FILE_NOT_FOUND));
+    }
+
     @Test
     public void testWriteTokenTag() throws ChimeraFsException {
 
@@ -588,6 +669,33 @@ public class PnfsManagerTest
                 stat.getMode() & ~UnixPermission.S_PERMS | mode , new_stat.getMode());
     }
 
+    @Test
+    public void testListAfterAcrossBatches() throws Exception {
+        FsInode dir = _fs.mkdir("/pnfs/testRoot/large");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1005; i++) {
+            String name = String.format("f%04d", i);
+            _fs.createFile(dir, name);
+            names.add(name);
+        }
+
+        assertThat(listAfter("/pnfs/testRoot/large", "", Range.all()), is(names));
+        assertThat(listAfter("/pnfs/testRoot/large", "", Range.closedOpen(998, 1003)),
+                contains("f0998", "f0999", "f1000", "f1001", "f1002"));
+        assertThat(listAfter("/pnfs/testRoot/large", "f0999", Range.closedOpen(0, 3)),
+                contains("f1000", "f1001", "f1002"));
+        assertThat(listAfter("/pnfs/testRoot/large", "f0004", Range.atLeast(0)),
+                is(names.subList(5, 1005)));
+    }
+
+    private List<String> listAfter(String path, String after, Range<Integer> range)
+            throws CacheException {
+        List<String> names = new ArrayList<>();
+        _chimera.listAfter(Subjects.ROOT, path, null, after, range,
+                Collections.emptySet(), (name, attrs) -> names.add(name));
+        return names;
+    }
+
     @Test
     public void testCreationTime() throws Exception {
         FsInode base = _fs.path2inode("/pnfs");
@@ -688,6 +796,90 @@ public class PnfsManagerTest
         assertTrue("atime is updated, but shouldn't", stat_after.getATime() == stat_before.getATime());
     }
 
+    @Test
+    public void testNamespaceChangesAreAnnounced() throws Exception {
+
+        PnfsManagerV3 pnfsManager = createMonitoredPnfsManager();
+        try {
+            PnfsId directory = new PnfsId(_fs.path2inode("/pnfs/testRoot").getId());
+
+            PnfsCreateEntryMessage create = new PnfsCreateEntryMessage("/pnfs/testRoot/announced",
+                    FileAttributes.ofFileType(REGULAR));
+            pnfsManager.createEntry(create);
+            assertThat(create.getReturnCode(), is(0));
+
+            NamespaceChangedNotificationMessage created = publishedNamespaceChange();
+            assertTrue("creation not announced", created.getChangedChildren().containsKey(directory));
+            assertThat(created.getChangedChildren().get(directory), hasItem("announced"));
+
+            PnfsSetFileAttributes update = new PnfsSetFileAttributes(create.getPnfsId(),
+                    FileAttributes.ofMode(0600));
+            pnfsManager.setFileAttributes(update);
+            assertThat(update.getReturnCode(), is(0));
+
+            NamespaceChangedNotificationMessage modified = publishedNamespaceChange();
+            assertThat(modified.getModified(), hasItem(create.getPnfsId()));
+
+            PnfsDeleteEntryMessage delete = new PnfsDeleteEntryMessage("/pnfs/testRoot/announced");
+            pnfsManager.deleteEntry(delete);
+            assertThat(delete.getReturnCode(), is(0));
+
+            NamespaceChangedNotificationMessage deleted = publishedNamespaceChange();
+            assertThat(deleted.getChangedChildren().get(directory), hasItem("announced"));
+        } finally {
+            pnfsManager.shutdown();
+        }
+    }
+
+    /**
+     * Returns a PnfsManager that announces namespace changes on a topic, as
+     * configured when pnfsmanager.enable.namespace-change-notification is true.
+     */
+    private PnfsManagerV3 createMonitoredPnfsManager()
+    {
+        CellStub topic = mock(CellStub.class);
+        willAnswer(i -> _namespaceChanges.add(i.getArgument(0)))
+                .given(topic).notify(any(Serializable.class));
+
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        given(executor.schedule(any(Runnable.class), anyLong(), any())).willAnswer(i -> {
+                    _scheduled.add(i.getArgument(0));
+                    return mock(ScheduledFuture.class);
+                });
+
+        NamespaceChangePublisher publisher = new NamespaceChangePublisher();
+        publisher.setTopic(topic);
+        publisher.setExecutor(executor);
+        publisher.setDelay(100);
+        publisher.setDelayUnit(TimeUnit.MILLISECONDS);
+        publisher.setMaximumChanges(100);
+
+        MonitoringNameSpaceProvider monitor = new MonitoringNameSpaceProvider();
+        monitor.setNameSpaceProvider(_pnfsManager.getNameSpaceProvider());
+        monitor.setEventReceiver(publisher);
+
+        PnfsManagerV3 pnfsManager = new PnfsManagerV3();
+        pnfsManager.setThreads(1);
+        pnfsManager.setListThreads(1);
+        pnfsManager.setCacheModificationRelay(null);
+        pnfsManager.setLogSlowThreshold(0);
+        pnfsManager.setNameSpaceProvider(monitor);
+        pnfsManager.setQueueMaxSize(0);
+        pnfsManager.setFolding(true);
+        pnfsManager.setDirectoryListLimit(100);
+        pnfsManager.init();
+        return pnfsManager;
+    }
+
+    private NamespaceChangedNotificationMessage publishedNamespaceChange()
+    {
+        List<Runnable> tasks = new ArrayList<>(_scheduled);
+        _scheduled.clear();
+        tasks.forEach(Runnable::run);
+        assertThat("expected exactly one announcement", _namespaceChanges.size(), is(1));
+        return _namespaceChanges.remove(0);
+    }
+
     private void assertNotExists(String path) throws ChimeraFsException
     {
         try {
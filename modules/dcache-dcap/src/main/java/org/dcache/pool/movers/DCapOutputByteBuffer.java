@@ -101,6 +101,12 @@ public class DCapOutputByteBuffer  {
             put( data , offset , size ) ;
         _buffer.flip();
     }
+    public void writeDATA_BLOCK_HEADER( int size )
+    {
+        _buffer.clear();
+        _buffer.putInt( size ) ;
+        _buffer.flip();
+    }
     public void writeEND_OF_BLOCK(){
         _buffer.clear();
         _buffer.putInt( 0 ).
@@ -1,5 +1,8 @@
 package org.dcache.pool.movers;
 
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,12 +64,35 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
     private final CellEndpoint     _cell;
 
     private Args _args;
-    private long _bytesTransferred   = -1;
-    private long _transferStarted;
-    private long _transferTime       = -1;
-    private long _lastTransferred    = System.currentTimeMillis();
+    /*
+     * Only written by the mover thread, but read by other threads.
+     */
+    private volatile long _bytesTransferred   = -1;
+    private volatile long _transferStarted;
+    private volatile long _transferTime       = -1;
+    private volatile long _lastTransferred    = System.currentTimeMillis();
+    private volatile long _blocksSent;
+    private volatile long _bytesSentZeroCopy;
 
+    /**
+     * Pooled direct buffer backing _bigBuffer; null if _bigBuffer is not
+     * pooled.
+     */
+    private ByteBuf _pooledBuffer;
     private ByteBuffer _bigBuffer;
+
+    /**
+     * Length prefix of data blocks, sent with gathering writes or ahead
+     * of zero-copy transfers.
+     */
+    private final DCapOutputByteBuffer _blockHeader =
+        new DCapOutputByteBuffer(ByteBuffer.allocateDirect(4));
+
+    /**
+     * Whether file data is sent with RepositoryChannel#transferTo,
+     * avoiding copying it through user space.
+     */
+    private boolean _zeroCopy;
     private String  _status          = "None";
     private boolean _io_ok           = true;
     private Exception ioException    = null;
@@ -95,16 +121,29 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
 
     }
 
-    private void initialiseBuffer(MoverIoBuffer bufferSize) {
+    @VisibleForTesting
+    void initialiseBuffer(MoverIoBuffer bufferSize) {
+        if (_bigBuffer != null) {
+            return;
+        }
+        int size = bufferSize.getIoBufferSize();
         try {
-            _bigBuffer = _bigBuffer
-                    == null ? ByteBuffer.allocate(bufferSize.getIoBufferSize()) :
-                        _bigBuffer;
+            _pooledBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(size, size);
+            _bigBuffer = _pooledBuffer.nioBuffer(0, size);
         } catch (OutOfMemoryError om) {
+            releaseBuffer();
             _bigBuffer = ByteBuffer.allocate(KiB.toBytes(32));
         }
     }
 
+    private void releaseBuffer() {
+        if (_pooledBuffer != null) {
+            _pooledBuffer.release();
+            _pooledBuffer = null;
+        }
+        _bigBuffer = null;
+    }
+
     private MoverIoBuffer prepareBufferSize(StorageInfo storage) {
         MoverIoBuffer bufferSize = new MoverIoBuffer(_defaultBufferSize);
         String tmp;
@@ -227,7 +266,8 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
         _log.info("DCapProtocol_3 (nio) created $Id: DCapProtocol_3_nio.java,v 1.17 2007-10-02 13:35:52 tigran Exp $");
     }
 
-    private void configureBufferSizes()
+    @VisibleForTesting
+    void configureBufferSizes()
     {
         //
         // we are created for each request. So our data
@@ -246,6 +286,14 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
         _log.info("Setup : Defaults Buffer Sizes  : {}", _defaultBufferSize);
         _log.info("Setup : Max Buffer Sizes       : {}", _maxBufferSize);
 
+        _zeroCopy = getParameterBoolean("zeroCopy", true);
+        _log.info("Setup : Zero-copy reads        : {}", _zeroCopy);
+
+    }
+    private synchronized boolean getParameterBoolean(String name, boolean defaultValue){
+        String stringValue = (String)_context.get("dCap3-"+name);
+        stringValue = stringValue == null ? _args.getOpt(name) : stringValue;
+        return stringValue == null ? defaultValue : Boolean.parseBoolean(stringValue);
     }
     private synchronized int getParameterInt(String name, int defaultValue){
         String stringValue = (String)_context.get("dCap3-"+name);
@@ -257,9 +305,24 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
         }
     }
 
+    /**
+     * Returns the mover status together with the transfer counters. This
+     * is shown as the mover's status in the pool.
+     */
     @Override
     public String toString(){
-        return _status;
+        return String.format("%s;rate=%.2fMB/s;blocks=%d;zero-copy=%d",
+                             _status, getThroughput(), _blocksSent, _bytesSentZeroCopy);
+    }
+
+    /**
+     * Returns the average throughput of the transfer in MB/s.
+     */
+    double getThroughput()
+    {
+        long bytes = _bytesTransferred;
+        long time = getTransferTime();
+        return (bytes > 0 && time > 0) ? bytes / (time * 1000.0) : 0.0;
     }
 
     private void addDesiredChecksums(RepositoryChannel fileChannel, DCapProtocolInfo info)
@@ -326,11 +389,24 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
 //        gets the buffervalues of the storageInfo keys
         MoverIoBuffer bufferSize = prepareBufferSize(storage);
         _log.info("Client : Buffer Sizes : {}", bufferSize);
-//        allocates the _bigBuffer
-        initialiseBuffer(bufferSize);
+        try {
+            // allocates the _bigBuffer
+            initialiseBuffer(bufferSize);
+            transfer(fileChannel, dcapProtocolInfo, storage, bufferSize, isWrite);
+        } finally {
+            releaseBuffer();
+        }
+    }
 
+    private void transfer(RepositoryChannel fileChannel,
+                          DCapProtocolInfo dcapProtocolInfo,
+                          StorageInfo storage,
+                          MoverIoBuffer bufferSize,
+                          boolean isWrite)
+        throws Exception
+    {
         SocketChannel socketChannel = null;
-        DCapOutputByteBuffer cntOut = new DCapOutputByteBuffer(KiB.toBytes(1));
+        DCapOutputByteBuffer cntOut = new DCapOutputByteBuffer(ByteBuffer.allocateDirect(KiB.toBytes(1)));
 
         _sessionId  = dcapProtocolInfo.getSessionId();
 
@@ -401,6 +477,8 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
         _transferStarted  = System.currentTimeMillis();
         _bytesTransferred = 0;
         _lastTransferred  = _transferStarted;
+        _blocksSent       = 0;
+        _bytesSentZeroCopy = 0;
 
         boolean      notDone      = true;
         RequestBlock requestBlock = new RequestBlock();
@@ -747,8 +825,14 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
                 _transferStarted;
             dcapProtocolInfo.setTransferTime(_transferTime);
 
-            _log.info("(Transfer finished : {} bytes in {} seconds) ",
-                    _bytesTransferred, _transferTime/1000);
+            if (_transferTime > 0) {
+                _log.info("(Transfer finished : {} bytes in {} seconds = {} MB/s; {} blocks sent, {} bytes with zero-copy) ",
+                        _bytesTransferred, _transferTime/1000.0, getThroughput(),
+                        _blocksSent, _bytesSentZeroCopy);
+            } else {
+                _log.info("(Transfer finished : {} bytes in less than 1 ms) ",
+                        _bytesTransferred);
+            }
 
             //
             // if we got an EOF from the inputstream
@@ -799,35 +883,131 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
             while(count > 0) {
 
                 int bytesToRead = maxBuffer > count ? count : maxBuffer;
-                int rc;
-                try{
-                    _bigBuffer.clear().limit(bytesToRead+4);
-                    _bigBuffer.position(4);
-                    rc = fileChannel.read(_bigBuffer, offset + (len - count));
-                    if(rc <= 0) {
-                        break;
-                    }
-                }catch (ClosedByInterruptException ee) {
-                    // clear interrupted state
-                    Thread.interrupted();
-                    throw new InterruptedException(ee.getMessage());
-                }catch(IOException ee){
-                    _io_ok = false;
+                int rc = sendDataBlock(fileChannel, socketChannel,
+                                       offset + (len - count), bytesToRead);
+                if(rc <= 0) {
                     break;
                 }
 
-                _bigBuffer.flip();
-                _bigBuffer.putInt(rc).rewind();
-                _log.debug("READV: sending: {} bytes", _bigBuffer.limit());
-                socketChannel.write(_bigBuffer);
-
                 count -= rc;
                 _bytesTransferred += rc;
+                _lastTransferred = System.currentTimeMillis();
 
             }
         }
 
     }
+
+    /**
+     * Sends up to size bytes of the file starting at position as a
+     * single data block.
+     *
+     * With zero-copy, the block header is written first and the data
+     * follows with RepositoryChannel#transferTo. Otherwise the data is
+     * read into the direct I/O buffer and written together with the
+     * header in a single gathering write.
+     *
+     * Disk errors detected before the block header was sent clear
+     * _io_ok; the caller then terminates the data chain. Once the header
+     * was sent the block cannot be completed, and any error is
+     * propagated.
+     *
+     * @return the number of bytes sent, or -1 at end of file or on disk
+     *         error
+     */
+    @VisibleForTesting
+    int sendDataBlock(RepositoryChannel fileChannel,
+                      SocketChannel socketChannel,
+                      long position, int size)
+        throws IOException, InterruptedException
+    {
+        try {
+            if (_zeroCopy) {
+                long available = fileChannel.size() - position;
+                if (available <= 0) {
+                    return -1;
+                }
+                int length = (int) Math.min(size, available);
+
+                _blockHeader.writeDATA_BLOCK_HEADER(length);
+                writeFully(socketChannel, _blockHeader.buffer());
+
+                long sent = 0;
+                while (sent < length) {
+                    long n;
+                    try {
+                        n = fileChannel.transferTo(position + sent, length - sent, socketChannel);
+                    } catch (ClosedByInterruptException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        if (isDiskError(fileChannel, position + sent)) {
+                            _io_ok = false;
+                            ioException = e;
+                        }
+                        throw e;
+                    }
+                    if (n == 0 && position + sent >= fileChannel.size()) {
+                        _io_ok = false;
+                        throw new IOException("File truncated during transfer");
+                    }
+                    sent += n;
+                }
+                _blocksSent++;
+                _bytesSentZeroCopy += length;
+                return length;
+            }
+
+            int rc;
+            try {
+                _bigBuffer.clear().limit(size);
+                rc = fileChannel.read(_bigBuffer, position);
+                if (rc <= 0) {
+                    return -1;
+                }
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (IOException e) {
+                _io_ok = false;
+                return -1;
+            }
+            _bigBuffer.flip();
+            _blockHeader.writeDATA_BLOCK_HEADER(rc);
+            ByteBuffer[] block = { _blockHeader.buffer(), _bigBuffer };
+            while (_bigBuffer.hasRemaining()) {
+                socketChannel.write(block);
+            }
+            _blocksSent++;
+            return rc;
+        } catch (ClosedByInterruptException ee) {
+            // clear interrupted state
+            Thread.interrupted();
+            throw new InterruptedException(ee.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if reading from the file at the given position
+     * fails, i.e. a failed transfer was caused by the disk rather than
+     * the network.
+     */
+    private static boolean isDiskError(RepositoryChannel fileChannel, long position)
+    {
+        try {
+            fileChannel.read(ByteBuffer.allocate(1), position);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void writeFully(SocketChannel socketChannel, ByteBuffer buffer)
+        throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            socketChannel.write(buffer);
+        }
+    }
+
     private void scanCloseBlock(RequestBlock requestBlock, StorageInfo storage) {
 
         //
@@ -1013,6 +1193,7 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
                 }
                 rest -= rc;
                 _bytesTransferred += rc;
+                _lastTransferred = System.currentTimeMillis();
                 if((_ioError > 0L) &&
                     (_bytesTransferred > _ioError)){ _io_ok = false; }
             }
@@ -1044,31 +1225,20 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
         int     size, rc;
 
         final int maxBuffer = _bigBuffer.capacity() - 4;
+        long position = fileChannel.position();
 
         while(! Thread.currentThread().isInterrupted()){
 
             size = maxBuffer > rest ? (int)rest : maxBuffer;
 
-            try{
-                _bigBuffer.clear().limit(size+4);
-                _bigBuffer.position(4);
-                rc = fileChannel.read(_bigBuffer);
-                if(rc <= 0) {
-                    break;
-                }
-            } catch (ClosedByInterruptException ee) {
-                // clear interrupted state
-                Thread.interrupted();
-                throw new InterruptedException(ee.getMessage());
-            }catch(IOException ee){
-                _io_ok = false;
+            rc = sendDataBlock(fileChannel, socketChannel, position, size);
+            if(rc <= 0) {
                 break;
             }
-            _bigBuffer.flip();
-            _bigBuffer.putInt(rc).rewind();
-            socketChannel.write(_bigBuffer);
+            position += rc;
             rest -= rc;
             _bytesTransferred += rc;
+            _lastTransferred = System.currentTimeMillis();
             if((_ioError > 0L) && (_bytesTransferred > _ioError)){
                 _io_ok = false;
                 break;
@@ -1077,6 +1247,7 @@ public class DCapProtocol_3_nio implements MoverProtocol, ChecksumMover, CellArg
                 break;
             }
         }
+        fileChannel.position(position);
         //
         // data chain delimiter
         //
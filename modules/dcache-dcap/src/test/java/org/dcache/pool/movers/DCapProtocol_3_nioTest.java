@@ -0,0 +1,163 @@
+package org.dcache.pool.movers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import dmg.cells.nucleus.CellEndpoint;
+
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.Args;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DCapProtocol_3_nioTest
+{
+    private static final int FILE_SIZE = 100_000;
+
+    private final Map<String,Object> context = new HashMap<>();
+    private Path file;
+    private RepositoryChannel fileChannel;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel peer;
+    private DCapProtocol_3_nio mover;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("dcap", null);
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(file, content);
+        fileChannel = new FileRepositoryChannel(file, EnumSet.of(READ));
+
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        peer = server.accept();
+
+        CellEndpoint cell = mock(CellEndpoint.class);
+        when(cell.getDomainContext()).thenReturn(context);
+        mover = new DCapProtocol_3_nio(cell);
+        mover.setCellArgs(new Args(""));
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        peer.close();
+        client.close();
+        server.close();
+        fileChannel.close();
+        Files.delete(file);
+    }
+
+    @Test
+    public void shouldSendDataBlockWithZeroCopy() throws Exception
+    {
+        givenZeroCopy(true);
+
+        int sent = mover.sendDataBlock(fileChannel, client, 1000, 5000);
+
+        assertThat(sent, is(5000));
+        assertReceivedBlock(1000, 5000);
+        assertThat(mover.toString(), containsString("zero-copy=5000"));
+    }
+
+    @Test
+    public void shouldSendDataBlockWithoutZeroCopy() throws Exception
+    {
+        givenZeroCopy(false);
+
+        int sent = mover.sendDataBlock(fileChannel, client, 1000, 5000);
+
+        assertThat(sent, is(5000));
+        assertReceivedBlock(1000, 5000);
+        assertThat(mover.toString(), containsString("zero-copy=0"));
+    }
+
+    @Test
+    public void shouldSendShortBlockAtEndOfFileWithZeroCopy() throws Exception
+    {
+        givenZeroCopy(true);
+
+        int sent = mover.sendDataBlock(fileChannel, client, FILE_SIZE - 100, 5000);
+
+        assertThat(sent, is(100));
+        assertReceivedBlock(FILE_SIZE - 100, 100);
+    }
+
+    @Test
+    public void shouldNotSendBlockBeyondEndOfFileWithZeroCopy() throws Exception
+    {
+        givenZeroCopy(true);
+
+        int sent = mover.sendDataBlock(fileChannel, client, FILE_SIZE, 5000);
+
+        assertThat(sent, is(-1));
+        assertThat(mover.toString(), containsString("blocks=0"));
+    }
+
+    @Test
+    public void shouldCountBlocks() throws Exception
+    {
+        givenZeroCopy(true);
+
+        mover.sendDataBlock(fileChannel, client, 0, 1000);
+        mover.sendDataBlock(fileChannel, client, 1000, 1000);
+
+        assertReceivedBlock(0, 1000);
+        assertReceivedBlock(1000, 1000);
+        assertThat(mover.toString(), containsString("blocks=2"));
+    }
+
+    private void givenZeroCopy(boolean zeroCopy)
+    {
+        context.put("dCap3-zeroCopy", String.valueOf(zeroCopy));
+        mover.configureBufferSizes();
+        mover.initialiseBuffer(new MoverIoBuffer(0, 0, 64 * 1024));
+    }
+
+    private void assertReceivedBlock(long position, int length) throws IOException
+    {
+        ByteBuffer header = readFully(4);
+        assertThat(header.getInt(), is(length));
+        ByteBuffer data = readFully(length);
+        for (int i = 0; i < length; i++) {
+            assertThat(data.get(), is((byte) (position + i)));
+        }
+    }
+
+    private ByteBuffer readFully(int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (peer.read(buffer) < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -25,6 +25,7 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Strings;
 import com.google.common.collect.EvictingQueue;
+import com.google.common.collect.MapMaker;
 import com.google.common.primitives.Ints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,17 +41,22 @@ import javax.ws.rs.sse.SseEventSink;
 
 import java.io.EOFException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import org.dcache.auth.Subjects;
@@ -59,6 +65,7 @@ import org.dcache.restful.events.spi.SelectionContext;
 import org.dcache.restful.events.spi.SelectionResult;
 import org.dcache.restful.events.spi.SelectionStatus;
 import org.dcache.restful.util.CloseableWithTasks;
+import org.dcache.util.SequentialExecutor;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -86,6 +93,20 @@ import static com.google.common.base.Preconditions.checkState;
  * As a compromise, previous events are kept in a fixed-size ring buffer.  If
  * the client reconnects "fast enough" then dCache is able to send all events
  * that were missed.
+ * <p>
+ * A client that cannot keep up with the events must not be able to make
+ * dCache accumulate an unlimited amount of work.  Therefore, only a limited
+ * number of events are written to the connection without the write having
+ * completed.  Further events wait in a bounded queue.  Should this queue
+ * overflow, the oldest waiting events are discarded and the client receives
+ * an EVENT_LOSS event before the remaining events.
+ * <p>
+ * Writing an event may block until the client has accepted it.  Events are
+ * therefore written by an executor of the channel, one at a time and without
+ * holding the channel's monitor, so that a slow client only delays its own
+ * events.  A client that does not accept an event within the disconnect
+ * timeout is treated like a client that has been disconnected for that long:
+ * the write is interrupted and the channel is closed.
  */
 public class Channel extends CloseableWithTasks
 {
@@ -136,8 +157,56 @@ public class Channel extends CloseableWithTasks
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Channel.class);
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The serialised form of recent event payloads.  Event streams deliver
+     * the same JsonNode object to all selections interested in some event,
+     * so the payload is serialised only once, no matter how many channels
+     * receive the event.
+     */
+    private static final Map<JsonNode,String> SERIALISED_PAYLOADS =
+            new MapMaker().weakKeys().makeMap();
+
     private final EvictingQueue<Event> ringBuffer;
+    private final int eventBacklog;
+    private final int maximumInFlight;
+    private final AtomicLong lostEvents = new AtomicLong();
+
+    /**
+     * Events waiting for the client to accept earlier events.
+     */
+    @GuardedBy("this")
+    private final Deque<Event> unsent = new ArrayDeque<>();
+
+    @GuardedBy("this")
+    private boolean isUnsentOverflow;
+
+    @GuardedBy("this")
+    private boolean isSendingUnsent;
+
     private final ScheduledExecutorService executor;
+
+    /**
+     * Writes events to the client in the order they were sent.
+     */
+    private final Executor writer;
+
+    /**
+     * The thread writing an event to the client, if any.
+     */
+    @GuardedBy("this")
+    private Thread writingThread;
+
+    @GuardedBy("this")
+    private long writeStarted;
+
+    @GuardedBy("this")
+    private boolean isWriteInterrupted;
+
+    @GuardedBy("this")
+    private boolean isStallCheckScheduled;
+
     private final AtomicInteger queueSize = new AtomicInteger();
     private final Map<SubscriptionId,Subscription> subscriptionsByIdentity
             = new ConcurrentHashMap<>();
@@ -152,17 +221,20 @@ public class Channel extends CloseableWithTasks
     private long timeout;
     private int nextEventId = 0;
 
-    public Channel(ScheduledExecutorService executor,
+    public Channel(ScheduledExecutorService executor, Executor writeExecutor,
             EventStreamRepository repository, Subject subject, long timeout,
             BiFunction<String,String,String> subscriptionValueBuilder,
-            int eventBacklog)
+            int eventBacklog, int maximumInFlight)
     {
         this.executor = executor;
+        this.writer = new SequentialExecutor(writeExecutor);
         this.repository = repository;
         this.owner = Subjects.getUid(subject);
 
         this.timeout = timeout;
         this.subscriptionValueBuilder = subscriptionValueBuilder;
+        this.eventBacklog = eventBacklog;
+        this.maximumInFlight = maximumInFlight;
         ringBuffer = EvictingQueue.create(eventBacklog);
 
         onClose(() -> {
@@ -175,6 +247,7 @@ public class Channel extends CloseableWithTasks
                             sse = null;
                         }
                         ringBuffer.clear();
+                        unsent.clear();
                         if (closeFuture != null) {
                             closeFuture.cancel(false); // do not interrupt ourself
                             closeFuture = null;
@@ -204,22 +277,98 @@ public class Channel extends CloseableWithTasks
 
         int eventId = nextEventId++;
 
-        ObjectNode eventEnvelope = JsonNodeFactory.instance.objectNode();
-        eventEnvelope.set("event", eventPayload);
-        eventEnvelope.put("subscription", subscriptionValueBuilder.apply(eventType, selectionId));
-
         try {
-            String eventData = new ObjectMapper().writeValueAsString(eventEnvelope);
+            String subscription = subscriptionValueBuilder.apply(eventType, selectionId);
+            String eventData = "{\"event\":" + serialise(eventPayload)
+                    + ",\"subscription\":" + MAPPER.writeValueAsString(subscription) + "}";
             Event event = new Event(eventId, eventType, eventData);
             ringBuffer.add(event);
-            event.sendEvent();
+            queueForSending(event);
         } catch (JsonProcessingException e) {
             LOGGER.error("Failed to serialise JSON: {}", e.getMessage());
         }
     }
 
+    private static String serialise(JsonNode payload) throws JsonProcessingException
+    {
+        String data = SERIALISED_PAYLOADS.get(payload);
+        if (data == null) {
+            data = MAPPER.writeValueAsString(payload);
+            SERIALISED_PAYLOADS.put(payload, data);
+        }
+        return data;
+    }
+
+    /**
+     * Queue an event for sending to the connected client.  If the client is
+     * not connected, the event is only available from the ring buffer.
+     */
+    @GuardedBy("this")
+    private void queueForSending(Event event)
+    {
+        if (sink == null) {
+            return;
+        }
+
+        if (unsent.size() == eventBacklog) {
+            unsent.poll();
+            isUnsentOverflow = true;
+            lostEvents.incrementAndGet();
+        }
+        unsent.add(event);
+        sendUnsentEvents();
+    }
+
     /**
-     * Send an event.
+     * Send waiting events while the number of events not yet written to the
+     * client is below the limit.
+     */
+    @GuardedBy("this")
+    private void sendUnsentEvents()
+    {
+        if (isSendingUnsent) {
+            // Called from a send that completed immediately; the outer call continues.
+            return;
+        }
+
+        isSendingUnsent = true;
+        try {
+            while (sink != null && !unsent.isEmpty() && queueSize.get() < maximumInFlight) {
+                if (isUnsentOverflow) {
+                    isUnsentOverflow = false;
+                    sendEvent(sse.newEventBuilder()
+                            .name("SYSTEM")
+                            .data("{\"type\":\"EVENT_LOSS\"}")
+                            .build());
+                } else {
+                    unsent.poll().sendEvent();
+                }
+            }
+        } finally {
+            isSendingUnsent = false;
+        }
+    }
+
+    /**
+     * The number of events waiting to be written to the client, including
+     * those being written.
+     */
+    public synchronized int getQueuedEventCount()
+    {
+        return unsent.size() + queueSize.get();
+    }
+
+    /**
+     * The number of events discarded because the client did not accept
+     * events fast enough.
+     */
+    public long getLostEventCount()
+    {
+        return lostEvents.get();
+    }
+
+    /**
+     * Send an event.  The event is written to the client asynchronously.
      * <p>
      * @return a CompletionStage that completes normally with a boolean value
      * describing whether the event was sent.  If the event was not sent then
@@ -234,13 +383,58 @@ public class Channel extends CloseableWithTasks
             return CompletableFuture.completedFuture(Boolean.FALSE);
         }
 
-        int newSize = queueSize.incrementAndGet();
-        if (newSize > 1) {
-            LOGGER.info("Queue size now {}", newSize);
-            // REVISIT should we kick out the client if the client too slow?
-        }
+        queueSize.incrementAndGet();
         SseEventSink thisSink = sink;
-        return sink.send(event).handle((o, t) -> {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            writer.execute(() -> write(thisSink, event).whenComplete((sent, t) -> {
+                        if (t != null) {
+                            result.completeExceptionally(t);
+                        } else {
+                            result.complete(sent);
+                        }
+                    }));
+        } catch (RejectedExecutionException e) {
+            queueSize.decrementAndGet();
+            LOGGER.debug("Event not sent: {}", e.toString());
+            result.complete(Boolean.FALSE);
+        }
+        return result;
+    }
+
+    /**
+     * Writes an event to the client.  Called without holding the channel's
+     * monitor, as the sink may block until the client accepts the event.
+     */
+    private CompletionStage<Boolean> write(SseEventSink thisSink, OutboundSseEvent event)
+    {
+        synchronized (this) {
+            writingThread = Thread.currentThread();
+            writeStarted = System.currentTimeMillis();
+            if (!isStallCheckScheduled) {
+                isStallCheckScheduled = true;
+                executor.schedule(this::checkForStalledWrite, timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        CompletionStage<?> sent;
+        try {
+            sent = thisSink.send(event);
+        } catch (RuntimeException e) {
+            CompletableFuture<?> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            sent = failed;
+        } finally {
+            synchronized (this) {
+                writingThread = null;
+                if (isWriteInterrupted) {
+                    isWriteInterrupted = false;
+                    Thread.interrupted(); // Do not leak the interrupt to the next task.
+                }
+            }
+        }
+
+        return sent.handle((o, t) -> {
                     queueSize.decrementAndGet();
 
                     // Jersey provides connection errors as normal result.
@@ -265,16 +459,49 @@ public class Channel extends CloseableWithTasks
                         LOGGER.warn("Send resulted in {}", o);
                     }
 
+                    synchronized (Channel.this) {
+                        sendUnsentEvents();
+                    }
                     return Boolean.TRUE;
                 });
     }
 
+    /**
+     * Close the channel if the client has not accepted the event being
+     * written within the disconnect timeout.  The write is interrupted, so
+     * that the stalled client does not occupy a writing thread.
+     */
+    private void checkForStalledWrite()
+    {
+        synchronized (this) {
+            isStallCheckScheduled = false;
+            if (writingThread == null || isClosed()) {
+                return;
+            }
+
+            long elapsed = System.currentTimeMillis() - writeStarted;
+            if (elapsed < timeout) {
+                isStallCheckScheduled = true;
+                executor.schedule(this::checkForStalledWrite, timeout - elapsed,
+                        TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            LOGGER.warn("Closing channel as client has not accepted an event for {} ms", elapsed);
+            isWriteInterrupted = true;
+            writingThread.interrupt();
+        }
+        close();
+    }
+
     @GuardedBy("this")
     private void sinkClosed(SseEventSink closedSink)
     {
         if (sink == closedSink) {
             sink = null;
             sse = null;
+            unsent.clear();
+            isUnsentOverflow = false;
             LOGGER.debug("Client has disconnected");
             scheduleClose();
         }
@@ -296,9 +523,10 @@ public class Channel extends CloseableWithTasks
                         .name("SYSTEM")
                         .data("{\"type\":\"COMPETING_CLIENT\"}")
                         .build();
+            SseEventSink competingSink = sink;
             sendEvent(event).thenAccept(wasSent -> {
                         if (wasSent) {
-                            sink.close();
+                            competingSink.close();
                         }
                     });
         }
@@ -312,6 +540,8 @@ public class Channel extends CloseableWithTasks
 
         sink = newSink;
         sse = newSse;
+        unsent.clear();
+        isUnsentOverflow = false;
 
         Integer id = Ints.tryParse(Strings.nullToEmpty(lastId));
         if (id != null) {
@@ -334,7 +564,7 @@ public class Channel extends CloseableWithTasks
             } else {
                 ringBuffer.stream()
                         .skip(1)
-                        .forEach(Event::sendEvent);
+                        .forEach(this::queueForSending);
             }
         }
     }
@@ -377,7 +607,7 @@ public class Channel extends CloseableWithTasks
                 event.put("type", type);
                 String url = subscriptionValueBuilder.apply(eventType, subscriptionId);
                 event.put("subscription", url);
-                String data = new ObjectMapper().writeValueAsString(event);
+                String data = MAPPER.writeValueAsString(event);
                 sendEvent(sse.newEventBuilder().name("SYSTEM").data(data).build());
             } catch (JsonProcessingException e) {
                 LOGGER.warn("Failed to build {} data: {}", type, e.toString());
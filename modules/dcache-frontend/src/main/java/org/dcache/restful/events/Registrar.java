@@ -25,6 +25,7 @@ import javax.inject.Inject;
 import javax.security.auth.Subject;
 import javax.ws.rs.ClientErrorException;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -33,8 +34,10 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellLifeCycleAware;
 
 import org.dcache.auth.Subjects;
@@ -42,7 +45,7 @@ import org.dcache.auth.Subjects;
 /**
  *  The Registrar is responsible for holding client channels.
  */
-public class Registrar implements CellLifeCycleAware
+public class Registrar implements CellLifeCycleAware, CellInfoProvider
 {
     @FunctionalInterface
     public interface SubscriptionValueBuilder
@@ -92,7 +95,9 @@ public class Registrar implements CellLifeCycleAware
     private final Random random = new Random();
     private int maximumChannelsPerUser;
     private int eventBacklog;
+    private int maximumInFlightEvents;
     private long defaultDisconnectTimeout;
+    private Executor writeExecutor;
 
     @Inject
     private ScheduledExecutorService executor;
@@ -112,6 +117,18 @@ public class Registrar implements CellLifeCycleAware
         eventBacklog = backlog;
     }
 
+    @Required
+    public void setMaximumInFlightEvents(int max)
+    {
+        maximumInFlightEvents = max;
+    }
+
+    @Required
+    public void setWriteExecutor(Executor executor)
+    {
+        writeExecutor = executor;
+    }
+
     public int getMaximumChannelsPerUser()
     {
         return maximumChannelsPerUser;
@@ -134,6 +151,25 @@ public class Registrar implements CellLifeCycleAware
         _channels.values().forEach(Channel::notifyOfShutdown);
     }
 
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        int queued = 0;
+        int maxQueued = 0;
+        long lost = 0;
+        for (Channel channel : _channels.values()) {
+            int count = channel.getQueuedEventCount();
+            queued += count;
+            maxQueued = Math.max(maxQueued, count);
+            lost += channel.getLostEventCount();
+        }
+        pw.println("Event channels:");
+        pw.println("    Channels        : " + _channels.size());
+        pw.println("    Queued events   : " + queued);
+        pw.println("    Longest queue   : " + maxQueued);
+        pw.println("    Lost events     : " + lost);
+    }
+
     public String newChannel(Subject user, String clientId, SubscriptionValueBuilder serialiser)
     {
         byte[] r = new byte[16]; // 128 bit is equivalent to a UUID.
@@ -158,8 +194,9 @@ public class Registrar implements CellLifeCycleAware
             existingClientIds.add(id);
         }
 
-        Channel channel = new Channel(executor, repository, user, defaultDisconnectTimeout,
-                (type, subId) -> serialiser.buildUrl(id, type, subId), eventBacklog);
+        Channel channel = new Channel(executor, writeExecutor, repository, user,
+                defaultDisconnectTimeout, (type, subId) -> serialiser.buildUrl(id, type, subId), eventBacklog,
+                maximumInFlightEvents);
         _channels.put(id, channel);
 
         channel.onClose(() -> {
@@ -119,6 +119,10 @@ public class JsonFileAttributes
     @ApiModelProperty("dCache file attributes for children, if this file is a directory.")
     private List<JsonFileAttributes> children;
 
+    @ApiModelProperty("Name to pass as 'after' to fetch the next page of children, "
+            + "if the directory is listed in name order; absent once the listing is complete.")
+    private String nextAfter;
+
     @ApiModelProperty("dCache file attributes of the file.")
     public FileAttributes attributes;
 
@@ -372,6 +376,14 @@ public class JsonFileAttributes
         return children;
     }
 
+    public void setNextAfter(String nextAfter) {
+        this.nextAfter = nextAfter;
+    }
+
+    public String getNextAfter() {
+        return nextAfter;
+    }
+
     public void setCurrentQos(String qos) {
         this.currentQos = qos;
     }
@@ -92,6 +92,13 @@ public class SnapshotList<T extends InvalidatableItem & Serializable>
                     + "list if the list has more elements; otherwise -1.")
     private int nextOffset = 0;
 
+    @ApiModelProperty("Opaque position from which to continue with the next "
+                    + "page, if the list may have more elements; otherwise "
+                    + "null.  Requesting the next page with the cursor "
+                    + "rather than an offset avoids rescanning the preceding "
+                    + "elements.")
+    private String nextCursor;
+
     @ApiModelProperty("Identifies the snapshot used to service this request. "
                     + "May be null only if transfers is empty.")
     private UUID currentToken;
@@ -115,6 +122,10 @@ public class SnapshotList<T extends InvalidatableItem & Serializable>
         return nextOffset;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     public long getTimeOfCreation() {
         return timeOfCreation;
     }
@@ -135,6 +146,10 @@ public class SnapshotList<T extends InvalidatableItem & Serializable>
         this.nextOffset = nextOffset;
     }
 
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public void setTimeOfCreation(long timeOfCreation) {
         this.timeOfCreation = timeOfCreation;
     }
@@ -149,9 +149,19 @@ public class EventResources
         @ApiModelProperty("The current disconnect timeout, in seconds.")
         public final long timeout;
 
+        @ApiModelProperty("The number of events waiting to be sent to the "
+                + "client.")
+        public final int queued;
+
+        @ApiModelProperty("The number of events discarded because the client "
+                + "did not receive events fast enough.")
+        public final long lost;
+
         public ChannelMetadata(Channel channel)
         {
             this.timeout = TimeUnit.MILLISECONDS.toSeconds(channel.getTimeout());
+            this.queued = channel.getQueuedEventCount();
+            this.lost = channel.getLostEventCount();
         }
     }
 
@@ -19,6 +19,7 @@ import org.springframework.stereotype.Component;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.naming.directory.NoSuchAttributeException;
+import javax.security.auth.Subject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
@@ -61,6 +62,7 @@ import diskCacheV111.vehicles.PnfsWriteExtendedAttributesMessage.Mode;
 
 import dmg.cells.nucleus.NoRouteToCellException;
 
+import org.dcache.auth.attributes.Restriction;
 import org.dcache.cells.CellStub;
 import org.dcache.http.PathMapper;
 import org.dcache.namespace.FileAttribute;
@@ -148,7 +150,13 @@ public class FileResources {
                                                 @ApiParam("Limit number of replies in directory listing.")
                                                 @QueryParam("limit") String limit,
                                                 @ApiParam("Number of entries to skip in directory listing.")
-                                                @QueryParam("offset") String offset) throws CacheException
+                                                @QueryParam("offset") String offset,
+                                                @ApiParam("List the directory in name order, starting after "
+                                                        + "this name. An empty value starts with the first "
+                                                        + "entry. To fetch the next page, pass the name of the "
+                                                        + "last entry of the previous page, as returned in "
+                                                        + "'nextAfter'.")
+                                                @QueryParam("after") String after) throws CacheException
     {
         JsonFileAttributes fileAttributes = new JsonFileAttributes();
         Set<FileAttribute> attributes =
@@ -189,13 +197,13 @@ public class FileResources {
 
                 List<JsonFileAttributes> children = new ArrayList<>();
 
-                DirectoryStream stream = listDirectoryHandler.list(
-                        HttpServletRequests.roleAwareSubject(request),
-                        HttpServletRequests.roleAwareRestriction(request),
-                        path,
-                        null,
-                        range,
-                        attributes);
+                DirectoryStream stream = listChildren(listDirectoryHandler,
+                                                      HttpServletRequests.roleAwareSubject(request),
+                                                      HttpServletRequests.roleAwareRestriction(request),
+                                                      path,
+                                                      after,
+                                                      range,
+                                                      attributes);
 
                 for (DirectoryEntry entry : stream) {
                     String fName = entry.getName();
@@ -218,6 +226,7 @@ public class FileResources {
                 }
 
                 fileAttributes.setChildren(children);
+                fileAttributes.setNextAfter(nextAfter(after, limit, children));
             }
 
         } catch (FileNotFoundCacheException e) {
@@ -234,6 +243,41 @@ public class FileResources {
         return fileAttributes;
     }
 
+    /**
+     * Lists a directory, in name order after the given name if {@code after}
+     * is not null.
+     */
+    static DirectoryStream listChildren(ListDirectoryHandler handler,
+                                        Subject subject,
+                                        Restriction restriction,
+                                        FsPath path,
+                                        String after,
+                                        Range<Integer> range,
+                                        Set<FileAttribute> attributes)
+            throws InterruptedException, CacheException
+    {
+        /* Unlike an offset, a name remains a valid position while
+         * the directory is modified, thus paging by name neither
+         * skips nor repeats entries that were not modified.
+         */
+        return (after == null)
+                ? handler.list(subject, restriction, path, null, range, attributes)
+                : handler.listAfter(subject, restriction, path, null, after, range, attributes);
+    }
+
+    /**
+     * The name from which to continue a listing in name order with the next
+     * page, or null if there is none.  Entries deleted while listing may
+     * leave a page short, thus only an empty page ends the listing.
+     */
+    static String nextAfter(String after, String limit, List<JsonFileAttributes> children)
+    {
+        if (after == null || limit == null || children.isEmpty()) {
+            return null;
+        }
+        return children.get(children.size() - 1).getFileName();
+    }
+
     @POST
     @ApiOperation(value="Modify a file or directory.")
     @Path("{path : .*}")
@@ -69,6 +69,7 @@ import org.springframework.beans.factory.annotation.Required;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
@@ -111,6 +112,7 @@ public final class RestoreResources {
                     + " appear here.  To see a listing of all stages/restores on a given"
                     + " pool, use the API for /pools/{pool}/nearline/queues?type=stage).")
     @ApiResponses({
+                @ApiResponse(code = 400, message = "Bad Request"),
                 @ApiResponse(code = 403, message = "Restores can only be accessed by admin users."),
                 @ApiResponse(code = 500, message = "Internal Server Error"),
             })
@@ -130,6 +132,10 @@ public final class RestoreResources {
                                                     + "need to recall the method without a "
                                                     + "token (refresh).")
                                                  @QueryParam("token") UUID token,
+                                                 @ApiParam("Continue from this position, as "
+                                                         + "returned by the previous request.  "
+                                                         + "Replaces token and offset.")
+                                                 @QueryParam("cursor") String cursor,
                                                  @ApiParam("The number of restores to skip.")
                                                  @QueryParam("offset") Integer offset,
                                                  @ApiParam("The maximum number of restores to return.")
@@ -151,6 +157,7 @@ public final class RestoreResources {
             }
 
             return service.get(token,
+                               cursor,
                                offset,
                                limit,
                                pnfsid,
@@ -158,6 +165,8 @@ public final class RestoreResources {
                                pool,
                                status,
                                sort);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
         } catch (CacheException e) {
             throw new InternalServerErrorException(e);
         }
@@ -68,6 +68,7 @@ import io.swagger.annotations.Authorization;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.InternalServerErrorException;
@@ -103,6 +104,7 @@ public final class TransferResources {
                     + "either queued or currently running.  Internal (pool-to-pool) "
                     + "transfers are excluded.")
     @ApiResponses({
+                    @ApiResponse(code = 400, message = "Bad Request"),
                     @ApiResponse(code = 403, message = "User subject must contain uid to access transfers."),
                     @ApiResponse(code = 500, message = "Internal Server Error"),
     })
@@ -122,6 +124,10 @@ public final class TransferResources {
                                                     + "need to recall the method without a "
                                                     + "token (refresh).")
                                                    @QueryParam("token") UUID token,
+                                                   @ApiParam("Continue from this position, as "
+                                                           + "returned by the previous request.  "
+                                                           + "Replaces token and offset.")
+                                                   @QueryParam("cursor") String cursor,
                                                    @ApiParam("The number of items to skip.")
                                                    @QueryParam("offset") Integer offset,
                                                    @ApiParam("The maximum number items to return.")
@@ -155,6 +161,7 @@ public final class TransferResources {
             Long suid = RequestUser.getSubjectUidForFileOperations(unlimitedOperationVisibility);
 
             return service.get(token,
+                               cursor,
                                offset,
                                limit,
                                suid == null ? null : String.valueOf(suid),
@@ -170,6 +177,8 @@ public final class TransferResources {
                                pool,
                                client,
                                sort);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
         } catch (CacheException e) {
             throw new InternalServerErrorException(e);
         }
@@ -72,6 +72,8 @@ public interface RestoresInfoService {
     /**
      * <p>Return the metadata objects.</p>
      *
+     * @param cursor    Continue from the position returned with the
+     *                  previous page; overrides token and offset.
      * @param offset    Return items beginning at this index.
      * @param limit     Return at most this number of items.
      * @param pnfsid    Filter on pnfsid.
@@ -82,6 +84,7 @@ public interface RestoresInfoService {
      * @return {@link SnapshotList<RestoreInfo>} containing list of beans.
      */
     SnapshotList<RestoreInfo> get(UUID token,
+                                  String cursor,
                                   Integer offset,
                                   Integer limit,
                                   String pnfsid,
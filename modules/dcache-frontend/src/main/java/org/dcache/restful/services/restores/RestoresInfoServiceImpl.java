@@ -176,10 +176,18 @@ public final class RestoresInfoServiceImpl extends
      * <p>Data store providing snapshots.</p>
      */
     private final SnapshotDataAccess<String, RestoreInfo>
-                    access = new SnapshotDataAccess<>();
+                    access = new SnapshotDataAccess<>(RestoresInfoServiceImpl::getSorter);
+
+    private static Comparator<RestoreInfo> getSorter(String sort) {
+        List<FieldSort> fields = Arrays.stream(sort.split(","))
+                                       .map(FieldSort::new)
+                                       .collect(Collectors.toList());
+        return FieldSort.getSorter(fields, nextComparator());
+    }
 
     @Override
     public SnapshotList<RestoreInfo> get(UUID token,
+                                         String cursor,
                                          Integer offset,
                                          Integer limit,
                                          String pnfsid,
@@ -194,12 +202,7 @@ public final class RestoresInfoServiceImpl extends
             sort = "pool,started";
         }
 
-        List<FieldSort> fields= Arrays.stream(sort.split(","))
-                                      .map(FieldSort::new)
-                                      .collect(Collectors.toList());
-        Comparator<RestoreInfo> sorter
-                        = FieldSort.getSorter(fields, nextComparator());
-        return access.getSnapshot(token, offset, limit, filter, sorter);
+        return access.getSnapshot(token, cursor, offset, limit, filter, sort);
     }
 
     @Override
@@ -88,6 +88,8 @@ public interface TransferInfoService {
      *                  the current list, the service will return a null token and
      *                  an empty list, and the client will need to recall the method
      *                  without a token (refresh).
+     * @param cursor    Continue from the position returned with the
+     *                  previous page; overrides token and offset.
      * @param offset    Return transfers beginning at this index.
      * @param limit     Return at most this number of items.
      * @param suid      Return transfers only belonging to this user (null returns all).
@@ -107,6 +109,7 @@ public interface TransferInfoService {
      * @return {@link SnapshotList<TransferInfo>} containing list of beans.
      */
     SnapshotList<TransferInfo> get(UUID token,
+                                   String cursor,
                                    Integer offset,
                                    Integer limit,
                                    String suid,
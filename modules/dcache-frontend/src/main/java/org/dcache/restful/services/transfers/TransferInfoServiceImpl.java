@@ -417,7 +417,14 @@ public class TransferInfoServiceImpl extends CellDataCollectingService<Map<Strin
      * <p>Data store providing snapshots.</p>
      */
     private final SnapshotDataAccess<String, TransferInfo>
-                                        access = new SnapshotDataAccess<>();
+                    access = new SnapshotDataAccess<>(TransferInfoServiceImpl::getSorter);
+
+    private static Comparator<TransferInfo> getSorter(String sort) {
+        List<FieldSort> fields = Arrays.stream(sort.split(","))
+                                       .map(FieldSort::new)
+                                       .collect(Collectors.toList());
+        return FieldSort.getSorter(fields, nextComparator());
+    }
 
     @Override
     public void setCancelled(String pool, int id) {
@@ -432,6 +439,7 @@ public class TransferInfoServiceImpl extends CellDataCollectingService<Map<Strin
 
     @Override
     public SnapshotList<TransferInfo> get(UUID token,
+                                          String cursor,
                                           Integer offset,
                                           Integer limit,
                                           String suid,
@@ -455,13 +463,8 @@ public class TransferInfoServiceImpl extends CellDataCollectingService<Map<Strin
             sort = "door,waiting";
         }
 
-        List<FieldSort> fields = Arrays.stream(sort.split(","))
-                                       .map(FieldSort::new)
-                                       .collect(Collectors.toList());
-        Comparator<TransferInfo> sorter
-                        = FieldSort.getSorter(fields, nextComparator());
         SnapshotList<TransferInfo> snapshotList =
-                        access.getSnapshot(token, offset, limit, filter, sorter);
+                        access.getSnapshot(token, cursor, offset, limit, filter, sort);
         snapshotList.getItems().stream().forEach((t) -> {
            if (!t.isValid()) {
                t.setMoverStatus("CANCELED");
@@ -61,20 +61,26 @@ package org.dcache.restful.util.admin;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.dcache.restful.providers.SnapshotList;
 import org.dcache.util.InvalidatableItem;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * <p>Shared functionality for services which support limit/offset
  * querying on dynamic data.</p>
@@ -83,17 +89,53 @@ import org.dcache.util.InvalidatableItem;
  *    of the underlying data.  In essence, refreshes generate a new id for
  *    the data set which is returned to the caller.</p>
  *
+ * <p>Each snapshot keeps an index, that is a sorted copy of the data, for
+ *    every sort order requested during its time-window.  On refresh, the
+ *    indexes of the sort orders requested during the time-window of the
+ *    previous snapshot are built before the new snapshot replaces it, so
+ *    requests do not have to sort.  Sort orders no longer requested are
+ *    thus dropped after one refresh.</p>
+ *
+ * <p>Besides offsets, pages may be requested with the opaque cursor
+ *    returned with the previous page.  The cursor records the position
+ *    in the index, so fetching the next page only visits the entries
+ *    of that page, whereas an offset requires filtering all preceding
+ *    entries.</p>
+ *
  * <p>Access is protected by read-write synchronization.</p>
  */
 public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializable> {
+    /**
+     * <p>Upper bound on the number of sort orders requested during the
+     *    time-window of a snapshot which are indexed; requests for other
+     *    sort orders sort the snapshot themselves.</p>
+     */
+    private static final int MAX_INDEXES = 16;
+
     private final ReentrantReadWriteLock lock     = new ReentrantReadWriteLock(true);
     private final ReadLock               readLock = lock.readLock();
     private final WriteLock              writeLock = lock.writeLock();
 
+    /**
+     * <p>Provides the ordering for a sort specification.</p>
+     */
+    private final Function<String, Comparator<V>> sorters;
+
     /**
      * <p>This is the current "frozen" view.</p>
      */
-    private final List<V> snapshot = new ArrayList<>();
+    private List<V> snapshot = Collections.emptyList();
+
+    /**
+     * <p>Sorted views of the current snapshot, by sort specification.</p>
+     */
+    private Map<String, List<V>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Sort specifications requested during the time-window of the
+     *    current snapshot.</p>
+     */
+    private Set<String> requested = ConcurrentHashMap.newKeySet();
 
     /**
      * <p>This token identifies the current snapshot.</p>
@@ -105,10 +147,62 @@ public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializa
      */
     private long lastUpdate = 0L;
 
+    /**
+     * <p>Position within the index of a snapshot, encoded as an opaque
+     *    string to be handed to clients.</p>
+     */
+    private static class Cursor {
+        final UUID   token;
+        final String sort;
+        final int    offset;
+        final int    position;
+
+        Cursor(UUID token, String sort, int offset, int position) {
+            this.token = token;
+            this.sort = sort;
+            this.offset = offset;
+            this.position = position;
+        }
+
+        static Cursor decode(String cursor) {
+            String[] fields;
+            try {
+                fields = new String(Base64.getUrlDecoder().decode(cursor),
+                                    UTF_8).split(":", 4);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+            try {
+                return new Cursor(UUID.fromString(fields[0]), fields[3],
+                                  Integer.parseInt(fields[1]),
+                                  Integer.parseInt(fields[2]));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+        }
+
+        String encode() {
+            String value = token + ":" + offset + ":" + position + ":" + sort;
+            return Base64.getUrlEncoder().withoutPadding()
+                         .encodeToString(value.getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * @param sorters provides the ordering for the sort specifications
+     *                passed to {@link #getSnapshot}.
+     */
+    public SnapshotDataAccess(Function<String, Comparator<V>> sorters) {
+        this.sorters = sorters;
+    }
+
     public List<V> getCurrent() {
         readLock.lock();
         try {
-            return snapshot.stream().collect(Collectors.toList());
+            return new ArrayList<>(snapshot);
         } finally {
             readLock.unlock();
         }
@@ -139,12 +233,31 @@ public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializa
      *    Thus the caller should check to see that the snapshot
      *    is accompanied by a non-null token, and if not, should recall
      *    the method without a token.</p>
+     *
+     * <p>If a cursor is given, it identifies both the snapshot and the
+     *    position at which to continue; token and offset are ignored.</p>
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or was
+     *                                  issued for a different sort order.
      */
     public SnapshotList<V> getSnapshot(UUID token,
+                                       String cursor,
                                        Integer offset,
                                        Integer limit,
                                        Predicate<V> filter,
-                                       Comparator<V> sorter) {
+                                       String sort) {
+        int position = 0;
+
+        if (cursor != null) {
+            Cursor decoded = Cursor.decode(cursor);
+            if (!decoded.sort.equals(sort)) {
+                throw new IllegalArgumentException("Cursor does not match sort order.");
+            }
+            token = decoded.token;
+            offset = decoded.offset;
+            position = decoded.position;
+        }
+
         if (offset == null) {
             offset = 0;
         }
@@ -155,23 +268,40 @@ public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializa
 
         boolean isInvalidToken = false;
 
-        List<V> items;
+        List<V> items = new ArrayList<>();
+        UUID snapshotToken;
+        int size;
+        long timeOfCreation;
 
         try {
             readLock.lock();
 
+            snapshotToken = current;
+            size = snapshot.size();
+            timeOfCreation = lastUpdate;
             isInvalidToken = token != null && !current.equals(token);
 
             if (isInvalidToken) {
-                items = Collections.EMPTY_LIST;
                 offset = 0;
             } else {
-                items = snapshot.stream()
-                                .filter(filter)
-                                .sorted(sorter)
-                                .skip(offset)
-                                .limit(limit)
-                                .collect(Collectors.toList());;
+                List<V> index = getIndex(sort);
+
+                if (cursor == null) {
+                    for (int skipped = 0; position < index.size()
+                                    && skipped < offset; ++position) {
+                        if (filter.test(index.get(position))) {
+                            ++skipped;
+                        }
+                    }
+                }
+
+                for (; position < index.size()
+                                && items.size() < limit; ++position) {
+                    V item = index.get(position);
+                    if (filter.test(item)) {
+                        items.add(item);
+                    }
+                }
             }
         } finally {
             readLock.unlock();
@@ -179,19 +309,25 @@ public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializa
 
         SnapshotList<V> snapshotList = new SnapshotList<V>();
         snapshotList.setCurrentOffset(offset);
-        snapshotList.setCurrentToken(isInvalidToken ? null : current);
+        snapshotList.setCurrentToken(isInvalidToken ? null : snapshotToken);
         int nextOffset = -1;
 
         if (items.size() == limit) {
             nextOffset = offset + limit;
 
-            if (nextOffset >= snapshot.size()) {
+            if (nextOffset >= size) {
                 nextOffset = -1;
             }
+
+            if (position < size) {
+                snapshotList.setNextCursor(new Cursor(snapshotToken, sort,
+                                                      offset + limit,
+                                                      position).encode());
+            }
         }
 
         snapshotList.setNextOffset(nextOffset);
-        snapshotList.setTimeOfCreation(lastUpdate);
+        snapshotList.setTimeOfCreation(timeOfCreation);
         snapshotList.setItems(items);
 
         return snapshotList;
@@ -200,20 +336,55 @@ public final class SnapshotDataAccess<K, V extends InvalidatableItem & Serializa
     /**
      * <p>Under write lock, clears current values and replaces them with new values.</p>
      *
+     * <p>The new snapshot and its indexes are built before taking the lock.</p>
+     *
      * @param updated newly collected values
      */
     public void refresh(Map<K, V> updated) {
+        List<V> refreshed = updated.keySet().stream()
+                                   .sorted(Comparator.comparing((k) -> k.toString()))
+                                   .map(updated::get)
+                                   .collect(Collectors.toList());
+
+        Map<String, List<V>> refreshedIndexes = new ConcurrentHashMap<>();
+        List<String> sorts;
+        readLock.lock();
+        try {
+            sorts = new ArrayList<>(requested);
+        } finally {
+            readLock.unlock();
+        }
+        for (String sort : sorts) {
+            refreshedIndexes.put(sort, sort(refreshed, sort));
+        }
+
         try {
             writeLock.lock();
-            snapshot.clear();
-            updated.keySet().stream()
-                            .sorted(Comparator.comparing((k) -> k.toString()))
-                            .map(updated::get)
-                            .forEach((v) -> snapshot.add(v));
+            snapshot = refreshed;
+            indexes = refreshedIndexes;
+            requested = ConcurrentHashMap.newKeySet();
             current = UUID.randomUUID();
             lastUpdate = System.currentTimeMillis();
         } finally {
             writeLock.unlock();
         }
     }
+
+    /**
+     * <p>Must be called with the read lock held.</p>
+     */
+    private List<V> getIndex(String sort) {
+        if (requested.contains(sort)
+                        || (requested.size() < MAX_INDEXES && requested.add(sort))) {
+            return indexes.computeIfAbsent(sort, s -> sort(snapshot, s));
+        }
+        List<V> index = indexes.get(sort);
+        return index == null ? sort(snapshot, sort) : index;
+    }
+
+    private List<V> sort(List<V> values, String sort) {
+        List<V> index = new ArrayList<>(values);
+        index.sort(sorters.apply(sort));
+        return index;
+    }
 }
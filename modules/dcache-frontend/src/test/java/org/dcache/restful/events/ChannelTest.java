@@ -0,0 +1,316 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.restful.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dcache.auth.Subjects;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChannelTest
+{
+    private final List<Object> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Object>> inFlight = new CopyOnWriteArrayList<>();
+    private final ExecutorService writers = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private Sse sse;
+    private SseEventSink sink;
+    private Channel channel;
+
+    @Before
+    public void setup()
+    {
+        sse = mock(Sse.class);
+        when(sse.newEventBuilder()).thenAnswer(i -> newBuilder());
+
+        sink = mock(SseEventSink.class);
+        when(sink.send(any())).thenAnswer(i -> {
+                    OutboundSseEvent event = i.getArgument(0);
+                    sent.add(event.getData());
+                    CompletableFuture<Object> future = new CompletableFuture<>();
+                    inFlight.add(future);
+                    return future;
+                });
+    }
+
+    @After
+    public void tearDown()
+    {
+        writers.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldWrapPayloadInEnvelope()
+    {
+        given(aChannel().withBacklog(10).withMaximumInFlight(2));
+
+        JsonNode payload = JsonNodeFactory.instance.objectNode().put("a", 1);
+        channel.sendEvent("inotify", "id", payload);
+
+        assertThat(sent, contains("{\"event\":{\"a\":1},\"subscription\":\"https://example.org/inotify/id\"}"));
+    }
+
+    @Test
+    public void shouldLimitEventsInFlight()
+    {
+        given(aChannel().withBacklog(10).withMaximumInFlight(2));
+
+        sendEvents("e0", "e1", "e2", "e3", "e4");
+
+        assertThat(sent.size(), equalTo(2));
+        assertThat(channel.getQueuedEventCount(), equalTo(5));
+    }
+
+    @Test
+    public void shouldSendQueuedEventsWhenClientCatchesUp()
+    {
+        given(aChannel().withBacklog(10).withMaximumInFlight(2));
+        sendEvents("e0", "e1", "e2", "e3", "e4");
+
+        inFlight.get(0).complete(null);
+
+        assertThat(sent.size(), equalTo(3));
+        assertThat(channel.getQueuedEventCount(), equalTo(4));
+    }
+
+    @Test
+    public void shouldSignalEventLossWhenQueueOverflows()
+    {
+        given(aChannel().withBacklog(2).withMaximumInFlight(1));
+        sendEvents("e0", "e1", "e2", "e3");
+
+        inFlight.get(0).complete(null);
+        inFlight.get(1).complete(null);
+        inFlight.get(2).complete(null);
+
+        assertThat(sent, contains(envelope("e0"), "{\"type\":\"EVENT_LOSS\"}",
+                envelope("e2"), envelope("e3")));
+        assertThat(channel.getLostEventCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldCloseOnlyCompetingClient()
+    {
+        given(aChannel().withBacklog(10).withMaximumInFlight(2));
+        SseEventSink newSink = mock(SseEventSink.class);
+
+        channel.acceptConnection(sse, newSink, null);
+        inFlight.get(0).complete(null);
+
+        assertThat(sent, contains("{\"type\":\"COMPETING_CLIENT\"}"));
+        verify(sink).close();
+        verify(newSink, never()).close();
+    }
+
+    @Test(timeout = 10_000)
+    public void shouldNotBlockPublisherOnSlowClient() throws Exception
+    {
+        CountDownLatch clientReads = new CountDownLatch(1);
+        givenSynchronousSink(clientReads);
+        given(aChannel().withBacklog(2).withMaximumInFlight(1).withWriteExecutor(writers));
+
+        sendEvents("e0", "e1", "e2", "e3", "e4");
+
+        assertThat(channel.getQueuedEventCount(), equalTo(3));
+        assertThat(channel.getLostEventCount(), equalTo(2L));
+
+        clientReads.countDown();
+        while (sent.size() < 4) {
+            Thread.sleep(10);
+        }
+
+        assertThat(sent, contains(envelope("e0"), "{\"type\":\"EVENT_LOSS\"}",
+                envelope("e3"), envelope("e4")));
+    }
+
+    @Test(timeout = 10_000)
+    public void shouldSendAllEventsToSynchronousClient() throws Exception
+    {
+        CountDownLatch clientReads = new CountDownLatch(0);
+        givenSynchronousSink(clientReads);
+        given(aChannel().withBacklog(10).withMaximumInFlight(2).withWriteExecutor(writers));
+
+        sendEvents("e0", "e1", "e2", "e3", "e4");
+        while (channel.getQueuedEventCount() > 0) {
+            Thread.sleep(10);
+        }
+
+        assertThat(sent, contains(envelope("e0"), envelope("e1"), envelope("e2"),
+                envelope("e3"), envelope("e4")));
+        assertThat(channel.getLostEventCount(), equalTo(0L));
+    }
+
+    @Test(timeout = 10_000)
+    public void shouldCloseChannelWhenClientStalls() throws Exception
+    {
+        CountDownLatch writeInterrupted = new CountDownLatch(1);
+        givenStalledSink(writeInterrupted);
+        given(aChannel().withBacklog(10).withMaximumInFlight(2)
+                .withWriteExecutor(writers).withScheduler(scheduler).withTimeout(100));
+
+        sendEvents("e0");
+
+        writeInterrupted.await();
+        verify(sink, timeout(1_000)).close();
+        assertThat(channel.isClosed(), equalTo(true));
+    }
+
+    /**
+     * Like Jersey's sink, the event is written before send returns.
+     */
+    private void givenSynchronousSink(CountDownLatch clientReads)
+    {
+        when(sink.send(any())).thenAnswer(i -> {
+                    OutboundSseEvent event = i.getArgument(0);
+                    sent.add(event.getData());
+                    clientReads.await();
+                    return CompletableFuture.completedFuture(null);
+                });
+    }
+
+    /**
+     * A client that never accepts events.  Like Jersey's sink, a failed write
+     * is reported as the result of send.
+     */
+    private void givenStalledSink(CountDownLatch writeInterrupted)
+    {
+        when(sink.send(any())).thenAnswer(i -> {
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        writeInterrupted.countDown();
+                        return CompletableFuture.completedFuture(new InterruptedIOException());
+                    }
+                    return CompletableFuture.completedFuture(null);
+                });
+    }
+
+    private void sendEvents(String... payloads)
+    {
+        for (String payload : payloads) {
+            channel.sendEvent("inotify", "id", JsonNodeFactory.instance.textNode(payload));
+        }
+    }
+
+    private static String envelope(String payload)
+    {
+        return "{\"event\":\"" + payload + "\",\"subscription\":\"https://example.org/inotify/id\"}";
+    }
+
+    private OutboundSseEvent.Builder newBuilder()
+    {
+        AtomicReference<Object> data = new AtomicReference<>();
+        OutboundSseEvent event = mock(OutboundSseEvent.class);
+        when(event.getData()).thenAnswer(i -> data.get());
+        OutboundSseEvent.Builder builder = mock(OutboundSseEvent.Builder.class, RETURNS_SELF);
+        when(builder.data(any())).thenAnswer(i -> {
+                    data.set(i.getArgument(0));
+                    return builder;
+                });
+        when(builder.build()).thenReturn(event);
+        return builder;
+    }
+
+    private void given(ChannelBuilder builder)
+    {
+        channel = builder.build();
+        channel.acceptConnection(sse, sink, null);
+    }
+
+    private ChannelBuilder aChannel()
+    {
+        return new ChannelBuilder();
+    }
+
+    private class ChannelBuilder
+    {
+        private int backlog;
+        private int maximumInFlight;
+        private Executor writeExecutor = Runnable::run;
+        private ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        private long timeout = 60_000;
+
+        ChannelBuilder withBacklog(int backlog)
+        {
+            this.backlog = backlog;
+            return this;
+        }
+
+        ChannelBuilder withMaximumInFlight(int max)
+        {
+            maximumInFlight = max;
+            return this;
+        }
+
+        ChannelBuilder withWriteExecutor(Executor executor)
+        {
+            writeExecutor = executor;
+            return this;
+        }
+
+        ChannelBuilder withScheduler(ScheduledExecutorService scheduler)
+        {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        ChannelBuilder withTimeout(long timeout)
+        {
+            this.timeout = timeout;
+            return this;
+        }
+
+        Channel build()
+        {
+            return new Channel(scheduler, writeExecutor,
+                    mock(EventStreamRepository.class), Subjects.ROOT, timeout,
+                    (type, id) -> "https://example.org/" + type + "/" + id,
+                    backlog, maximumInFlight);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.restful.resources.namespace;
+
+import com.google.common.collect.Range;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import diskCacheV111.util.FsPath;
+
+import org.dcache.auth.Subjects;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.restful.providers.JsonFileAttributes;
+import org.dcache.util.list.ListDirectoryHandler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FileResourcesTest
+{
+    private static final FsPath DIR = FsPath.create("/data");
+    private static final Set<FileAttribute> ATTRIBUTES = EnumSet.of(FileAttribute.TYPE);
+
+    private ListDirectoryHandler handler;
+
+    @Before
+    public void setup()
+    {
+        handler = mock(ListDirectoryHandler.class);
+    }
+
+    @Test
+    public void shouldListInNameOrderAfterGivenName() throws Exception
+    {
+        Range<Integer> range = Range.closedOpen(0, 10);
+
+        FileResources.listChildren(handler, Subjects.ROOT, Restrictions.none(),
+                DIR, "f0999", range, ATTRIBUTES);
+
+        verify(handler).listAfter(Subjects.ROOT, Restrictions.none(), DIR, null,
+                "f0999", range, ATTRIBUTES);
+        verify(handler, never()).list(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldListInNameOrderFromStartForEmptyName() throws Exception
+    {
+        Range<Integer> range = Range.closedOpen(0, 10);
+
+        FileResources.listChildren(handler, Subjects.ROOT, Restrictions.none(),
+                DIR, "", range, ATTRIBUTES);
+
+        verify(handler).listAfter(Subjects.ROOT, Restrictions.none(), DIR, null,
+                "", range, ATTRIBUTES);
+    }
+
+    @Test
+    public void shouldListByOffsetWithoutName() throws Exception
+    {
+        Range<Integer> range = Range.closedOpen(5, 10);
+
+        FileResources.listChildren(handler, Subjects.ROOT, Restrictions.none(),
+                DIR, null, range, ATTRIBUTES);
+
+        verify(handler).list(Subjects.ROOT, Restrictions.none(), DIR, null,
+                range, ATTRIBUTES);
+        verify(handler, never()).listAfter(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldContinueAfterLastListedName()
+    {
+        String next = FileResources.nextAfter("f0997", "3", children("f0998", "f0999", "f1000"));
+
+        assertThat(next, equalTo("f1000"));
+    }
+
+    @Test
+    public void shouldContinueAfterShortPage()
+    {
+        String next = FileResources.nextAfter("", "3", children("f0000"));
+
+        assertThat(next, equalTo("f0000"));
+    }
+
+    @Test
+    public void shouldEndListingOnEmptyPage()
+    {
+        String next = FileResources.nextAfter("f1000", "3", children());
+
+        assertThat(next, nullValue());
+    }
+
+    @Test
+    public void shouldNotContinueUnlimitedListing()
+    {
+        String next = FileResources.nextAfter("", null, children("f0000", "f0001"));
+
+        assertThat(next, nullValue());
+    }
+
+    @Test
+    public void shouldNotContinueListingByOffset()
+    {
+        String next = FileResources.nextAfter(null, "2", children("f0000", "f0001"));
+
+        assertThat(next, nullValue());
+    }
+
+    private static List<JsonFileAttributes> children(String... names)
+    {
+        return Arrays.stream(names)
+                .map(name -> {
+                    JsonFileAttributes child = new JsonFileAttributes();
+                    child.setFileName(name);
+                    return child;
+                })
+                .collect(Collectors.toList());
+    }
+}
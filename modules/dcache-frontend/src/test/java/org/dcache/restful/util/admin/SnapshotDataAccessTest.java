@@ -78,7 +78,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import diskCacheV111.util.TransferInfo;
 import diskCacheV111.util.UserInfo;
@@ -93,6 +95,8 @@ public final class SnapshotDataAccessTest {
 
     static final int[] TO_REMOVE = { 113, 234, 397, 401 };
 
+    static final String SORT = "natural";
+
     class TestTransferCollector {
         Map<String, TransferInfo> map;
 
@@ -201,19 +205,21 @@ public final class SnapshotDataAccessTest {
     private Integer                                  offset;
     private Integer                                  limit;
     private Predicate<TransferInfo>                  filter;
-    private Comparator<TransferInfo>                 sorter;
+    private String                                   cursor;
     private TransferInfo                             elementAtIndex;
+    private AtomicInteger                            sorted;
 
     @Before
     public void setUp() throws Exception {
         collector = new TestTransferCollector();
         collector.initialize();
-        snapshotDataAccess = new SnapshotDataAccess<>();
+        snapshotDataAccess = new SnapshotDataAccess<>(
+                        (s) -> Comparator.naturalOrder());
         snapshotDataAccess.refresh(collector.map);
         filter = (t) -> true;
-        sorter = Comparator.naturalOrder();
         setCurrentList();
         currentToken = null;
+        cursor = null;
         offset = null;
         limit = null;
 
@@ -291,6 +297,84 @@ public final class SnapshotDataAccessTest {
         assertThatNextOffSetIs(-1);
     }
 
+    @Test
+    public void shouldReturnSamePageWithCursorAsWithOffset() throws Exception {
+        whenFilterIsSetToPnfsid("0000E387208AEB3746038A4B66CC6B528C52");
+        whenLimitIsSetTo(10);
+        whenAccessIsRead();
+        whenCursorIsSaved();
+        whenAccessIsRead();
+        List<TransferInfo> pageByCursor = snapshotList.getItems();
+        whenCursorIsCleared();
+        whenOffsetIsSetTo(10);
+        whenAccessIsRead();
+        assertThatItemsAre(pageByCursor);
+        assertThatCurrentOffSetIs(10);
+    }
+
+    @Test
+    public void shouldReturnNoTokenWithEmptyListWhenCursorIsExpired()
+                    throws Exception {
+        whenLimitIsSetTo(100);
+        whenAccessIsRead();
+        whenCursorIsSaved();
+        whenAccessIsRefreshed();
+        whenAccessIsRead();
+        assertThatReturnedTokenIsNull();
+        assertThatSizeOfReturnedListIs(0);
+    }
+
+    @Test
+    public void shouldReturnNoCursorWhenLastPageIsRequested()
+                    throws Exception {
+        whenOffsetIsSetTo(1800);
+        whenLimitIsSetTo(100);
+        whenAccessIsRead();
+        assertNull("Cursor returned for last page!",
+                   snapshotList.getNextCursor());
+    }
+
+    @Test
+    public void shouldIndexSortOrderRequestedDuringPreviousSnapshot()
+                    throws Exception {
+        whenSortOrdersAreCounted();
+        whenAccessIsRead();
+        whenSnapshotIsRefreshed();
+        assertThatSortOrderWasSortedTimes(2);
+        whenAccessIsRead();
+        assertThatSortOrderWasSortedTimes(2);
+    }
+
+    @Test
+    public void shouldDropSortOrderNotRequestedDuringPreviousSnapshot()
+                    throws Exception {
+        whenSortOrdersAreCounted();
+        whenAccessIsRead();
+        whenSnapshotIsRefreshed();
+        whenSnapshotIsRefreshed();
+        assertThatSortOrderWasSortedTimes(2);
+        whenAccessIsRead();
+        assertThatSortOrderWasSortedTimes(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMalformedCursor() throws Exception {
+        cursor = "not-a-cursor";
+        whenAccessIsRead();
+    }
+
+    private void assertThatItemsAre(List<TransferInfo> items) {
+        assertEquals("Returned items are not correct",
+                     items.stream().map(this::elementId).collect(Collectors.toList()),
+                     snapshotList.getItems().stream().map(this::elementId)
+                                 .collect(Collectors.toList()));
+    }
+
+    private void assertThatSortOrderWasSortedTimes(int i) {
+        assertEquals("Sort order was not sorted the expected number of times",
+                     i, sorted.get());
+    }
+
     private void assertThatCurrentOffSetIs(int i) {
         assertEquals("Returned current offset of snapshot incorrect",
                      i, snapshotList.getCurrentOffset());
@@ -340,17 +424,19 @@ public final class SnapshotDataAccessTest {
         currentList = snapshotDataAccess.getSnapshot(null,
                                                      null,
                                                      null,
-                                                        filter ,
-                                                        sorter)
-                                                        .getItems();
+                                                     null,
+                                                     filter,
+                                                     SORT)
+                                        .getItems();
     }
 
     private void whenAccessIsRead() throws Exception {
         snapshotList = snapshotDataAccess.getSnapshot(currentToken,
+                                                      cursor,
                                                       offset,
                                                       limit,
                                                       filter,
-                                                      sorter);
+                                                      SORT);
     }
 
     private void whenAccessIsRefreshed()
@@ -359,6 +445,27 @@ public final class SnapshotDataAccessTest {
         setCurrentList();
     }
 
+    private void whenSortOrdersAreCounted() {
+        sorted = new AtomicInteger();
+        snapshotDataAccess = new SnapshotDataAccess<>((s) -> {
+            sorted.incrementAndGet();
+            return Comparator.naturalOrder();
+        });
+        snapshotDataAccess.refresh(collector.map);
+    }
+
+    private void whenSnapshotIsRefreshed() {
+        snapshotDataAccess.refresh(collector.map);
+    }
+
+    private void whenCursorIsCleared() {
+        cursor = null;
+    }
+
+    private void whenCursorIsSaved() {
+        cursor = snapshotList.getNextCursor();
+    }
+
     private void whenElementIsSavedAtIndex(int i) {
         elementAtIndex = snapshotList.getItems().get(i);
     }
@@ -2,8 +2,10 @@ package org.dcache.ftp.data;
 
 import java.io.PrintWriter;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -16,19 +18,36 @@ import static org.dcache.util.Strings.humanReadableSize;
  * maintained.
  *
  * Overlapping blocks are detected and reported via an exception.
+ * Adding a block takes logarithmic time in the number of fragments,
+ * and the number of consecutive bytes transferred from the beginning
+ * of the file is maintained incrementally.
  *
  * The class is thread safe.
  */
 public class BlockLog
 {
-    private final SortedMap<Long,Long> _blocks = new TreeMap<>();
+    /**
+     * Disjoint, non-adjacent intervals of the file that have been
+     * transferred, keyed by the first byte of the interval and mapping
+     * to the first byte after the interval.
+     */
+    private final NavigableMap<Long,Long> _blocks = new TreeMap<>();
     private boolean _eof;
 
+    /**
+     * Number of consecutive bytes from the beginning of the file that
+     * have been transferred.
+     */
+    private long _completed;
+
     private static final String _overlapMsg
             = "Overlapping block detected between ({0}-{1}) and ({2}-{3}).";
 
     private long _limit;
 
+    /** Actions resuming transfers suspended by the limit. */
+    private final List<Runnable> _suspended = new ArrayList<>();
+
     public BlockLog()
     {
         _limit = Long.MAX_VALUE;
@@ -52,12 +71,10 @@ public class BlockLog
         long begin = position;
         long end   = position + size;
 
-        SortedMap<Long,Long> headMap = _blocks.headMap(position);
-        SortedMap<Long,Long> tailMap = _blocks.tailMap(position);
-
-        if (!headMap.isEmpty()) {
-            long prevBegin = headMap.lastKey();
-            long prevEnd = _blocks.get(prevBegin);
+        Map.Entry<Long,Long> prev = _blocks.floorEntry(position);
+        if (prev != null) {
+            long prevBegin = prev.getKey();
+            long prevEnd = prev.getValue();
 
             /* Consistency check.
              */
@@ -67,17 +84,12 @@ public class BlockLog
                                              begin, end, prevBegin, prevEnd);
                 throw new FTPException(err);
             }
-
-            /* Merge blocks.
-             */
-            if (prevEnd == begin) {
-                begin = prevBegin;
-                _blocks.remove(prevBegin);
-            }
         }
-        if (!tailMap.isEmpty()) {
-            long nextBegin = tailMap.firstKey();
-            long nextEnd   = _blocks.get(nextBegin);
+
+        Map.Entry<Long,Long> next = _blocks.higherEntry(position);
+        if (next != null) {
+            long nextBegin = next.getKey();
+            long nextEnd   = next.getValue();
 
             /* Consistency check.
              */
@@ -96,24 +108,43 @@ public class BlockLog
             }
         }
 
+        /* Merge blocks. The previous block is extended in place.
+         */
+        if (prev != null && prev.getValue() == begin) {
+            begin = prev.getKey();
+        }
         _blocks.put(begin, end);
 
-        notifyAll();
-
-        /* The transfer can be throttled by setting a limit. Once
-         * everything up to that limit has been received, we block
-         * until the limit is raised. This assumes that addBlock was
-         * called from the same thread, which transfers the data.
+        /* Only wake up waiting threads if the completed prefix grew.
          */
-        try {
-            while (_limit <= getCompleted()) {
-                wait();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        if (begin == 0) {
+            _completed = end;
+            notifyAll();
         }
     }
 
+    /**
+     * Suspends the caller if the transfer is throttled.
+     *
+     * The transfer can be throttled by setting a limit. Once
+     * everything up to that limit has been transferred, the transfer
+     * is suspended until the limit is raised. Rather than blocking the
+     * caller, which may be a selector thread shared by several data
+     * channels, {@code suspend} is run immediately and {@code resume}
+     * once the limit has been raised.
+     *
+     * @return true if the transfer was suspended, false otherwise
+     */
+    public synchronized boolean suspendIfThrottled(Runnable suspend, Runnable resume)
+    {
+        if (_limit > _completed) {
+            return false;
+        }
+        suspend.run();
+        _suspended.add(resume);
+        return true;
+    }
+
     /**
      * Indicates that the end of the transfer has been reached. The
      * main purpose is to make sure that waitCompleted() returns.
@@ -158,7 +189,7 @@ public class BlockLog
      */
     public synchronized long getCompleted()
     {
-        return !_blocks.containsKey(0L) ? 0L : _blocks.get(0L);
+        return _completed;
     }
 
     /**
@@ -187,11 +218,12 @@ public class BlockLog
     /**
      * Sets the current transfer limit.
      *
-     * The <code>addBlock</code> method will block as soon as
-     * <code>getCompleted</code> would return something not smaller
-     * than <code>limit</code>. The idea is that the limit will
-     * throttle the transfer as soon as everything up to
-     * <code>limit</code> has been received.
+     * The <code>suspendIfThrottled</code> method will suspend the
+     * transfer as soon as <code>getCompleted</code> would return
+     * something not smaller than <code>limit</code>. The idea is that
+     * the limit will throttle the transfer as soon as everything up to
+     * <code>limit</code> has been received. Suspended transfers are
+     * resumed once the limit is raised beyond that point.
      *
      * Using Long.MAX_VALUE for the limit effectively disables
      * transfer throttling.
@@ -202,6 +234,11 @@ public class BlockLog
     {
         _limit = limit;
         notifyAll();
+        if (_limit > _completed && !_suspended.isEmpty()) {
+            List<Runnable> resumers = new ArrayList<>(_suspended);
+            _suspended.clear();
+            resumers.forEach(Runnable::run);
+        }
     }
 
     private Function<Map.Entry<Long,Long>,String> asHumanReadable()
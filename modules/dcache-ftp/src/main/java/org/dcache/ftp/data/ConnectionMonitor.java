@@ -4,4 +4,13 @@ public interface ConnectionMonitor
 {
     void receivedBlock(long position, long size) throws FTPException;
     void sentBlock(long position, long size) throws FTPException;
+
+    /**
+     * Suspends a data channel if the transfer is throttled. Must not
+     * block. If the channel is suspended, then {@code suspend} is run
+     * immediately and {@code resume} once the transfer may continue.
+     *
+     * @return true if the channel was suspended, false otherwise
+     */
+    boolean suspendIfThrottled(Runnable suspend, Runnable resume);
 }
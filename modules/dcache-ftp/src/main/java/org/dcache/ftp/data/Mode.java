@@ -56,6 +56,13 @@ public abstract class Mode extends AbstractMultiplexerListener
     /** Buffer for transferTo and transferFrom. */
     private final ByteBuffer        _buffer = ByteBuffer.allocate(KiB.toBytes(8));
 
+    /**
+     * Whether data may be moved between file and socket using
+     * RepositoryChannel#transferTo and RepositoryChannel#transferFrom,
+     * allowing the kernel to avoid copying the data through user space.
+     */
+    protected boolean           _zeroCopy;
+
     /** The address to connect to for outgoing connections. */
     private   InetSocketAddress     _address;
 
@@ -164,6 +171,18 @@ public abstract class Mode extends AbstractMultiplexerListener
         _bufferSize = value;
     }
 
+    /**
+     * Enable or disable zero-copy transfers.  Only relevant for modes
+     * that support zero-copy transfers.  Zero-copy is disabled by
+     * default, as FileChannel.transferTo and FileChannel.transferFrom
+     * have been subject to a large number of bugs throughout the
+     * history of Java.
+     */
+    public void setZeroCopy(boolean zeroCopy)
+    {
+        _zeroCopy = zeroCopy;
+    }
+
     /**
      * Sets the number of concurrent connections to use. Only relevant
      * for outgoing connections. Parallelism is not supported by all
@@ -205,28 +224,40 @@ public abstract class Mode extends AbstractMultiplexerListener
      */
     protected long transferTo(long position, long count, SocketChannel socket)
         throws IOException
+    {
+        return transferTo(position, count, socket, _buffer);
+    }
+
+    /**
+     * Like transferTo(long, long, SocketChannel), but using the given
+     * buffer.  Modes serving data channels from several threads must
+     * provide a buffer per data channel.
+     */
+    protected long transferTo(long position, long count, SocketChannel socket,
+                              ByteBuffer buffer)
+        throws IOException
     {
         long tr = 0;                        // Total bytes read
         long pos = position;
-        _buffer.clear();
+        buffer.clear();
         while (tr < count) {
-            _buffer.limit((int)Math.min((count - tr),
-                                        (long)_buffer.capacity()));
-            int nr = _file.read(_buffer, pos);
+            buffer.limit((int)Math.min((count - tr),
+                                       (long)buffer.capacity()));
+            int nr = _file.read(buffer, pos);
             if (nr < 0 && tr == 0) {
                 return -1;
             }
             if (nr <= 0) {
                 break;
             }
-            _buffer.flip();
-            int nw = socket.write(_buffer);
+            buffer.flip();
+            int nw = socket.write(buffer);
             tr += nw;
             if (nw != nr) {
                 break;
             }
             pos += nw;
-            _buffer.clear();
+            buffer.clear();
         }
         return tr;
     }
@@ -254,29 +285,41 @@ public abstract class Mode extends AbstractMultiplexerListener
      */
     protected long transferFrom(SocketChannel socket, long position, long count)
         throws IOException
+    {
+        return transferFrom(socket, position, count, _buffer);
+    }
+
+    /**
+     * Like transferFrom(SocketChannel, long, long), but using the
+     * given buffer.  Modes serving data channels from several threads
+     * must provide a buffer per data channel.
+     */
+    protected long transferFrom(SocketChannel socket, long position, long count,
+                                ByteBuffer buffer)
+        throws IOException
     {
         long tw = 0;                    // Total bytes written
         long pos = position;
         try {
-            _buffer.clear();
+            buffer.clear();
             while (tw < count) {
-                _buffer.limit((int)Math.min((count - tw),
-                                            (long)_buffer.capacity()));
-                int nr = socket.read(_buffer);
+                buffer.limit((int)Math.min((count - tw),
+                                           (long)buffer.capacity()));
+                int nr = socket.read(buffer);
                 if (nr < 0 && tw == 0) {
                     return -1;
                 }
                 if (nr <= 0) {
                     break;
                 }
-                _buffer.flip();
-                int nw = _file.write(_buffer, pos);
+                buffer.flip();
+                int nw = _file.write(buffer, pos);
                 tw += nw;
                 if (nw != nr) {
                     break;
                 }
                 pos += nw;
-                _buffer.clear();
+                buffer.clear();
             }
             return tw;
         } catch (IOException x) {
@@ -342,10 +385,12 @@ public abstract class Mode extends AbstractMultiplexerListener
                 }
                 LOGGER.warn("Problem with {}: {}", displayAddress, e.getMessage());
                 _lastFailure = e.toString();
-                _failed++;
+                synchronized (this) {
+                    _failed++;
 
-                if (allConnectionsEstablished()) {
-                    enableDisabledKeys();
+                    if (allConnectionsEstablished()) {
+                        enableDisabledKeys();
+                    }
                 }
             }
         }
@@ -424,9 +469,11 @@ public abstract class Mode extends AbstractMultiplexerListener
         SocketChannel channel = server.accept();
         if (channel != null) {
             Socket socket = channel.socket();
-            _opened++;
+            synchronized (this) {
+                _opened++;
+                _addresses.add((InetSocketAddress) socket.getRemoteSocketAddress());
+            }
             LOGGER.debug("Opened {}", socket);
-            _addresses.add((InetSocketAddress) socket.getRemoteSocketAddress());
             channel.configureBlocking(false);
             if (_bufferSize > 0) {
                 channel.socket().setSendBufferSize(_bufferSize);
@@ -453,20 +500,26 @@ public abstract class Mode extends AbstractMultiplexerListener
             SocketChannel channel = (SocketChannel)key.channel();
             if (channel.finishConnect()) {
                 Socket socket = channel.socket();
-                _opened++;
+                synchronized (this) {
+                    _opened++;
+                    _addresses.add((InetSocketAddress) socket.getLocalSocketAddress());
+                }
                 LOGGER.debug("Opened {}", socket);
-                _addresses.add((InetSocketAddress) socket.getLocalSocketAddress());
                 newConnection(multiplexer, channel);
             }
         } catch (IOException e) {
             _lastFailure = e.toString();
-            _failed++;
-            if (_failed == _parallelism) {
-                throw e;
+            synchronized (this) {
+                _failed++;
+                if (_failed == _parallelism) {
+                    throw e;
+                }
             }
         } finally {
-            if (allConnectionsEstablished()) {
-                enableDisabledKeys();
+            synchronized (this) {
+                if (allConnectionsEstablished()) {
+                    enableDisabledKeys();
+                }
             }
         }
     }
@@ -487,9 +540,31 @@ public abstract class Mode extends AbstractMultiplexerListener
         key.cancel();
         channel.close();
 
-        _closed++;
-        if (mayShutdown && _closed == _opened) {
-            multiplexer.shutdown();
+        synchronized (this) {
+            _closed++;
+            if (mayShutdown && _closed == _opened) {
+                multiplexer.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Stops notification of the given operation on a key for as long
+     * as the transfer is throttled. Called after a block has been
+     * transferred on the channel of the key.
+     */
+    protected void throttle(SelectionKey key, int op)
+    {
+        if (key.isValid()) {
+            _monitor.suspendIfThrottled(
+                    () -> key.interestOps(key.interestOps() & ~op),
+                    () -> {
+                        if (key.isValid()) {
+                            key.interestOps(key.interestOps() | op);
+                            /* The key may belong to a selector served by another thread. */
+                            key.selector().wakeup();
+                        }
+                    });
         }
     }
 
@@ -498,10 +573,13 @@ public abstract class Mode extends AbstractMultiplexerListener
      *
      * @see Mode#disableKey
      */
-    private void enableDisabledKeys()
+    private synchronized void enableDisabledKeys()
     {
         for (Map.Entry<SelectionKey,Integer> e : disabled.entrySet()) {
-            e.getKey().interestOps(e.getValue());
+            SelectionKey key = e.getKey();
+            key.interestOps(e.getValue());
+            /* The key may belong to a selector served by another thread. */
+            key.selector().wakeup();
         }
         disabled.clear();
     }
@@ -511,7 +589,7 @@ public abstract class Mode extends AbstractMultiplexerListener
      *
      * @see Mode#enableDisabledKeys
      */
-    private void disableKey(SelectionKey key)
+    private synchronized void disableKey(SelectionKey key)
     {
         if (!disabled.containsKey(key)) {
             disabled.put(key, key.interestOps());
@@ -523,7 +601,7 @@ public abstract class Mode extends AbstractMultiplexerListener
      * Returns true iff all connections have been either established
      * or failed.
      */
-    private boolean allConnectionsEstablished()
+    private synchronized boolean allConnectionsEstablished()
     {
         return (_opened + _failed >= _parallelism);
     }
@@ -537,7 +615,7 @@ public abstract class Mode extends AbstractMultiplexerListener
      * This call is only valid if the direction of the mode is set to
      * Outgoing.
      */
-    protected boolean waitForConnectionCompletion(SelectionKey key)
+    protected synchronized boolean waitForConnectionCompletion(SelectionKey key)
     {
         if (_direction != Direction.Outgoing) {
             throw new IllegalArgumentException("Call is only valid for outgoing connections");
@@ -1,5 +1,6 @@
 package org.dcache.ftp.data;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
@@ -10,6 +11,7 @@ import java.util.concurrent.atomic.LongAdder;
 
 import org.dcache.pool.repository.RepositoryChannel;
 
+import static org.dcache.util.ByteUnit.KiB;
 import static org.dcache.util.Exceptions.messageOrClassName;
 import static org.dcache.util.Strings.describeSize;
 import static org.dcache.util.Strings.toThreeSigFig;
@@ -48,6 +50,12 @@ public class ModeE extends Mode
      */
     private final int _blockSize;
 
+    /**
+     * Maximum size of the buffer used by each data channel for
+     * copying data between the file and the socket.
+     */
+    private static final int DATA_BUFFER_SIZE = KiB.toBytes(64);
+
     /** Position in file when sending data. Used by the sender. */
     private long _currentPosition;
 
@@ -59,7 +67,7 @@ public class ModeE extends Mode
     /**
      * EOD count received. Zero as long as no EOD count was received.
      */
-    private long _eodc;
+    private volatile long _eodc;
 
     /**
      * Whether the transfer has started.
@@ -76,13 +84,19 @@ public class ModeE extends Mode
      */
     private final LongAdder _errorDataChannels = new LongAdder();
 
-    private String _lastError;
+    private volatile String _lastError;
 
     /**
      * Implementation of send in mode E. There will be an instance per
      * data channel. The sender repeatedly bites _blockSize bytes of
      * the file and transfers it as a single block. I.e.
      * _currentPosition is incremented by _blockSize bytes at a time.
+     *
+     * Senders may be served by different selector threads, hence
+     * biting a block from the file is synchronized on the mode.
+     *
+     * Unless zero-copy is enabled, the header and the first part of
+     * the payload are written with a single gathering write.
      */
     private class Sender extends AbstractMultiplexerListener
     {
@@ -102,23 +116,43 @@ public class ModeE extends Mode
         /** Bytes remaining from current block. */
         protected long          _count;
 
+        /** True if the current block is the last on this channel. */
+        protected boolean       _last;
+
         /** True if this sender must send the EOF. */
         protected final boolean       _sendEOF;
 
         /** Buffer for sending the block header. */
         protected final ByteBuffer _header =
-            ByteBuffer.allocate(HEADER_LENGTH);
+            ByteBuffer.allocateDirect(HEADER_LENGTH);
+
+        /**
+         * Buffer holding file data not yet written to the socket.
+         * Null if zero-copy is enabled.
+         */
+        protected final ByteBuffer _data;
+
+        /** Header and data for gathering writes. */
+        protected final ByteBuffer[] _block;
 
         public Sender(SocketChannel socket) {
             _socket  = socket;
             _state   = PREPARE_BLOCK;
             _sendEOF = (_opened == 1); // First sender sends EOF
+            if (_zeroCopy) {
+                _data = null;
+                _block = null;
+            } else {
+                _data = ByteBuffer.allocateDirect(Math.min(_blockSize, DATA_BUFFER_SIZE));
+                _data.limit(0);
+                _block = new ByteBuffer[] { _header, _data };
+            }
         }
 
         @Override
         public void register(Multiplexer multiplexer) throws IOException
         {
-            multiplexer.register(this, SelectionKey.OP_WRITE, _socket);
+            multiplexer.distribute(this, SelectionKey.OP_WRITE, _socket);
         }
 
         @Override
@@ -142,10 +176,13 @@ public class ModeE extends Mode
                 /* Prepare new block. We 'bite' up to _blockSize bytes
                  * of the file and reserve it for this data channel.
                  */
-                _position         = _currentPosition;
-                _count            = Math.min(_currentCount, _blockSize);
-                _currentPosition += _count;
-                _currentCount    -= _count;
+                synchronized (ModeE.this) {
+                    _position         = _currentPosition;
+                    _count            = Math.min(_currentCount, _blockSize);
+                    _currentPosition += _count;
+                    _currentCount    -= _count;
+                }
+                _last = (_count == 0);
 
                 /* Prepare header.
                  */
@@ -179,11 +216,19 @@ public class ModeE extends Mode
                 _state = SEND_HEADER;
 
             case SEND_HEADER:
-                /* Send header.
+                /* Send header, together with the beginning of the
+                 * payload unless zero-copy is used.
                  */
-                _socket.write(_header);
+                if (_count > 0 && _data != null) {
+                    fill();
+                    int before = _data.position();
+                    _socket.write(_block);
+                    sent(key, _data.position() - before);
+                } else {
+                    _socket.write(_header);
+                }
 
-                if (_header.position() < _header.limit()) {
+                if (_header.hasRemaining()) {
                     break;
                 }
 
@@ -197,24 +242,67 @@ public class ModeE extends Mode
                  * sent EOF until all connections have been
                  * established.
                  */
-                if (_count == 0) {
+                if (_last) {
                     close(multiplexer, key, true);
                     _activeDataChannels.decrementAndGet();
                     break;
                 }
+                if (_count == 0) {
+                    _state = PREPARE_BLOCK;
+                    break;
+                }
                 _state = SEND_DATA;
 
             case SEND_DATA:
                 /* Send data.
                  */
-                long nbytes = transferTo(_position, _count, _socket);
+                if (_data == null) {
+                    long nbytes = _file.transferTo(_position, _count, _socket);
+                    if (nbytes == 0 && _position >= _file.size()) {
+                        throw new EOFException("File ended before offset " + _position);
+                    }
+                    sent(key, nbytes);
+                } else {
+                    fill();
+                    int before = _data.position();
+                    _socket.write(_data);
+                    sent(key, _data.position() - before);
+                }
+                break;
+            }
+        }
+
+        /**
+         * Reads the next part of the current block into the data
+         * buffer, unless the buffer still holds unsent data.
+         */
+        private void fill() throws IOException
+        {
+            if (!_data.hasRemaining()) {
+                _data.clear();
+                _data.limit((int) Math.min(_count, _data.capacity()));
+                long position = _position;
+                while (_data.hasRemaining()) {
+                    int nbytes = _file.read(_data, position);
+                    if (nbytes < 0) {
+                        throw new EOFException("File ended before offset " + position);
+                    }
+                    position += nbytes;
+                }
+                _data.flip();
+            }
+        }
+
+        private void sent(SelectionKey key, long nbytes) throws FTPException
+        {
+            if (nbytes > 0) {
                 _monitor.sentBlock(_position, nbytes);
-                _position  += nbytes;
-                _count     -= nbytes;
+                throttle(key, SelectionKey.OP_WRITE);
+                _position += nbytes;
+                _count    -= nbytes;
                 if (_count == 0) {
                     _state = PREPARE_BLOCK;
                 }
-                break;
             }
         }
     }
@@ -242,7 +330,11 @@ public class ModeE extends Mode
 
         /** Buffer for receiving the block header. */
         protected final ByteBuffer _header =
-            ByteBuffer.allocate(HEADER_LENGTH);
+            ByteBuffer.allocateDirect(HEADER_LENGTH);
+
+        /** Buffer for copying data from the socket to the file. */
+        protected final ByteBuffer _data =
+            ByteBuffer.allocateDirect(Math.min(_blockSize, DATA_BUFFER_SIZE));
 
         public Receiver(SocketChannel socket) {
             _socket   = socket;
@@ -255,7 +347,7 @@ public class ModeE extends Mode
         @Override
         public void register(Multiplexer multiplexer) throws IOException
         {
-            multiplexer.register(this, SelectionKey.OP_READ, _socket);
+            multiplexer.distribute(this, SelectionKey.OP_READ, _socket);
         }
 
         @Override
@@ -293,8 +385,7 @@ public class ModeE extends Mode
                     if (_used) {
                         throw new FTPException("Stream ended before EOD");
                     }
-                    close(multiplexer, key, _opened == _eodc);
-                    _activeDataChannels.decrementAndGet();
+                    closeReceiver(multiplexer, key);
                     return;
                 }
 
@@ -344,13 +435,15 @@ public class ModeE extends Mode
                  * send after EOF, however we handle that case.
                  */
                 if ((_flags & EOF_DESCRIPTOR) != 0) {
-                    if (_eodc != 0) {
-                        throw new FTPException("Multible EODC received");
-                    }
-                    if (_position <= 0) {
-                        throw new FTPException("Non-positive EODC received");
+                    synchronized (ModeE.this) {
+                        if (_eodc != 0) {
+                            throw new FTPException("Multible EODC received");
+                        }
+                        if (_position <= 0) {
+                            throw new FTPException("Non-positive EODC received");
+                        }
+                        _eodc = (int)_position;
                     }
-                    _eodc = (int)_position;
                     _count = _position = 0; // No data
                 }
 
@@ -362,33 +455,53 @@ public class ModeE extends Mode
                     /* If EOD was received, then close channel.
                      */
                     if ((_flags & EOD_DESCRIPTOR) != 0) {
-                        close(multiplexer, key, _opened == _eodc);
-                        _activeDataChannels.decrementAndGet();
+                        closeReceiver(multiplexer, key);
                     }
                     return;
                 }
 
             }
 
-            /* Receive data.
+            /* Receive data. Zero-copy transfers cannot detect the end
+             * of the stream and have been observed to spuriously
+             * return zero, so we fall back to copying in that case.
              */
-            long nbytes = transferFrom(_socket, _position, _count);
+            long nbytes = 0;
+            if (_zeroCopy) {
+                nbytes = _file.transferFrom(_socket, _position, _count);
+            }
+            if (nbytes == 0) {
+                nbytes = transferFrom(_socket, _position, _count, _data);
+            }
             if (nbytes == -1) {
                 throw new FTPException("Stream was closed in the middle of a block");
             }
             _monitor.receivedBlock(_position, nbytes);
+            throttle(key, SelectionKey.OP_READ);
             _position += nbytes;
             _count    -= nbytes;
 
             /* If EOD was received, then close channel.
              */
             if (_count == 0 && (_flags & EOD_DESCRIPTOR) != 0) {
-                close(multiplexer, key, _opened == _eodc);
-                _activeDataChannels.decrementAndGet();
+                closeReceiver(multiplexer, key);
             }
         }
     }
 
+    /**
+     * Closes the data channel of a receiver. The multiplexer is shut
+     * down once the EOF has been received and all announced data
+     * channels have been closed.  Synchronized as receivers may be
+     * served by different selector threads.
+     */
+    private synchronized void closeReceiver(Multiplexer multiplexer, SelectionKey key)
+            throws IOException
+    {
+        close(multiplexer, key, _opened == _eodc);
+        _activeDataChannels.decrementAndGet();
+    }
+
     public ModeE(Role role, RepositoryChannel file, ConnectionMonitor monitor,
                  int blockSize)
         throws IOException
@@ -401,7 +514,7 @@ public class ModeE extends Mode
     }
 
     @Override
-    public void setPartialRetrieveParameters(long position, long size)
+    public synchronized void setPartialRetrieveParameters(long position, long size)
     {
         super.setPartialRetrieveParameters(position, size);
         _currentPosition = getStartPosition();
@@ -431,7 +544,7 @@ public class ModeE extends Mode
     }
 
     @Override
-    public void getInfo(PrintWriter pw)
+    public synchronized void getInfo(PrintWriter pw)
     {
         super.getInfo(pw);
 
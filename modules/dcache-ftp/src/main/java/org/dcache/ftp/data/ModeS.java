@@ -56,6 +56,7 @@ public class ModeS extends Mode
         {
             long nbytes = transferTo(_position, _count, _socket);
             _monitor.sentBlock(_position, nbytes);
+            throttle(key, SelectionKey.OP_WRITE);
 
             _position += nbytes;
             _count    -= nbytes;
@@ -110,6 +111,7 @@ public class ModeS extends Mode
                 _transferCompleted = true;
             } else {
                 _monitor.receivedBlock(_position, nbytes);
+                throttle(key, SelectionKey.OP_READ);
                 _position += nbytes;
             }
         }
@@ -346,6 +346,7 @@ public class ModeX extends Mode
             case SEND_DATA:
                 long nbytes = transferTo(_position, _count, _socket);
                 _monitor.sentBlock(_position, nbytes);
+                throttle(key, SelectionKey.OP_WRITE);
                 _position  += nbytes;
                 _count     -= nbytes;
                 if (_count == 0) {
@@ -537,6 +538,7 @@ public class ModeX extends Mode
                     throw new FTPException("Stream was closed in the middle of a block");
                 }
                 _monitor.receivedBlock(_position, nbytes);
+                throttle(key, SelectionKey.OP_READ);
                 _position += nbytes;
                 _count    -= nbytes;
 
@@ -7,6 +7,8 @@ import java.io.IOException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Multiplexer implements an event loop around a normal Java NIO
@@ -16,22 +18,56 @@ import java.nio.channels.Selector;
  * Besides the infrastructure for registering listeners and the event
  * loop, this class provides little functionality.
  *
- * Notice that the multiplexer is not thread-safe.
+ * The thread calling loop() services the primary selector. Channels
+ * registered through register() are always handled by the primary
+ * selector.  Channels registered through distribute() are spread in a
+ * round-robin fashion over the primary selector and the selectors of
+ * a SelectorPool shared with other multiplexers.  This allows the
+ * data channels of a single transfer to be served by several cores,
+ * while bounding the number of selector threads regardless of the
+ * number of concurrent transfers.
+ *
+ * Listeners registered with distribute() must be thread-safe with
+ * respect to any state they share with other listeners.  A failure
+ * while handling a distributed channel terminates the event loop of
+ * the primary thread.
  */
 public class Multiplexer
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(Multiplexer.class);
 
-    protected boolean _shutdown;
+    protected volatile boolean _shutdown;
     protected Selector _selector;
 
+    /** Selector threads shared with other multiplexers. */
+    private final SelectorPool _pool;
+
+    /** Channels handed to the selector pool. */
+    private final Set<SelectableChannel> _distributed = ConcurrentHashMap.newKeySet();
+
+    /** Selector index to which the next distributed channel is assigned. */
+    private int _next;
+
+    /** First failure of any distributed channel. */
+    private volatile Exception _failure;
+
     /**
-     * Constructs a new multiplexer. The multiplexer must be destroyed
-     * by a call to close().
+     * Constructs a new multiplexer with a single selector thread. The
+     * multiplexer must be destroyed by a call to close().
      */
     public Multiplexer() throws IOException {
+        this(new SelectorPool("selector", 0));
+    }
+
+    /**
+     * Constructs a new multiplexer that distributes channels over its
+     * own selector and the selectors of {@code pool}. The multiplexer
+     * must be destroyed by a call to close().
+     */
+    public Multiplexer(SelectorPool pool) throws IOException {
         _shutdown      = false;
         _selector      = Selector.open();
+        _pool          = pool;
     }
 
     /**
@@ -49,23 +85,71 @@ public class Multiplexer
                 throw new InterruptedException();
             }
 
-            for (SelectionKey key : _selector.selectedKeys()) {
-                MultiplexerListener listener =
-                        (MultiplexerListener)key.attachment();
-                if (key.isValid() && key.isConnectable() ) {
-                    listener.connect(this, key);
-                }
-                if (key.isValid() && key.isAcceptable()) {
-                    listener.accept(this, key);
-                }
-                if (key.isValid() && key.isReadable()) {
-                    listener.read(this, key);
-                }
-                if (key.isValid() && key.isWritable()) {
-                    listener.write(this, key);
-                }
-            }
-            _selector.selectedKeys().clear();
+            rethrowFailure();
+
+            dispatch(_selector);
+        }
+        rethrowFailure();
+    }
+
+    private void dispatch(Selector selector)
+            throws IOException, FTPException, InterruptedException
+    {
+        for (SelectionKey key : selector.selectedKeys()) {
+            dispatch(key, (MultiplexerListener) key.attachment());
+        }
+        selector.selectedKeys().clear();
+    }
+
+    /**
+     * Delegates the ready operations of a key to a listener. Called by
+     * the thread servicing the selector of the key.
+     */
+    void dispatch(SelectionKey key, MultiplexerListener listener)
+            throws IOException, FTPException, InterruptedException
+    {
+        if (key.isValid() && key.isConnectable() ) {
+            listener.connect(this, key);
+        }
+        if (key.isValid() && key.isAcceptable()) {
+            listener.accept(this, key);
+        }
+        if (key.isValid() && key.isReadable()) {
+            listener.read(this, key);
+        }
+        if (key.isValid() && key.isWritable()) {
+            listener.write(this, key);
+        }
+    }
+
+    /**
+     * Terminates the event loop with the given failure. May be called
+     * from any thread.
+     */
+    void fail(Exception e)
+    {
+        if (_failure == null) {
+            _failure = e;
+        }
+        shutdown();
+    }
+
+    boolean isShutdown()
+    {
+        return _shutdown;
+    }
+
+    private void rethrowFailure() throws IOException, FTPException, InterruptedException
+    {
+        Exception failure = _failure;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof FTPException) {
+            throw (FTPException) failure;
+        } else if (failure instanceof InterruptedException) {
+            throw (InterruptedException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
         }
     }
 
@@ -84,6 +168,32 @@ public class Multiplexer
         return channel.register(_selector, op, listener);
     }
 
+    /**
+     * Register a listener on the given channel with either the primary
+     * selector or one of the selectors of the selector pool.  Selectors
+     * are chosen in a round-robin fashion.  Any existing registration
+     * of the channel with the primary selector is cancelled.  Must be
+     * called from the thread running the event loop.
+     */
+    public void distribute(MultiplexerListener listener,
+                           int op, SelectableChannel channel)
+            throws IOException
+    {
+        int index = _next;
+        _next = (_next + 1) % (_pool.size() + 1);
+
+        if (index == 0) {
+            register(listener, op, channel);
+        } else {
+            SelectionKey key = channel.keyFor(_selector);
+            if (key != null) {
+                key.cancel();
+            }
+            _distributed.add(channel);
+            _pool.register(this, listener, op, channel);
+        }
+    }
+
     /**
      * Add a listener to the multiplexer. This is equivalent to
      * calling listener.register(multiplexer).
@@ -93,10 +203,16 @@ public class Multiplexer
     }
 
     /**
-     * Closes the multiplexer. This closes the encapsulated selector
-     * and all channels currently registered in the selector.
+     * Closes the multiplexer. This closes the encapsulated selector,
+     * all channels currently registered in the selector and all
+     * channels distributed to the selector pool.
      */
     public void close() throws IOException {
+        shutdown();
+        for (SelectableChannel channel : _distributed) {
+            channel.close();
+        }
+        _pool.wakeup();
         for (SelectionKey key : _selector.keys()) {
             key.channel().close();
         }
@@ -106,9 +222,11 @@ public class Multiplexer
 
     /**
      * Shuts down the multiplexer, causing it to leave the event loop.
+     * May be called from any thread.
      */
     public void shutdown() {
         LOGGER.trace("Multiplexer shutting down");
         _shutdown = true;
+        _selector.wakeup();
     }
 }
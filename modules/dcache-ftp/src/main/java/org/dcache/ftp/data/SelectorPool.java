@@ -0,0 +1,185 @@
+package org.dcache.ftp.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dmg.cells.nucleus.CDC;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed number of selector threads shared by several multiplexers.
+ *
+ * Multiplexers distribute data channels over the selectors of the
+ * pool, thus the number of threads serving data channels is bounded
+ * independently of the number of concurrent transfers. Selector
+ * threads are started on demand and live as long as the JVM.
+ *
+ * A failure while handling a channel only affects the multiplexer
+ * that registered the channel.
+ */
+public class SelectorPool
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorPool.class);
+
+    private final String _name;
+    private final Worker[] _workers;
+    private final AtomicInteger _next = new AtomicInteger();
+
+    /**
+     * Associates a distributed channel with its multiplexer and
+     * listener.  The CDC of the thread distributing the channel is
+     * restored while handling events of the channel.
+     */
+    private static class Registration
+    {
+        final Multiplexer multiplexer;
+        final MultiplexerListener listener;
+        final CDC cdc;
+
+        Registration(Multiplexer multiplexer, MultiplexerListener listener)
+        {
+            this.multiplexer = multiplexer;
+            this.listener = listener;
+            this.cdc = new CDC();
+        }
+    }
+
+    /**
+     * A selector serviced by its own thread.  Registrations are queued
+     * and processed by the selector thread, since registering a channel
+     * with a selector blocks while that selector is selecting.
+     */
+    private class Worker implements Runnable
+    {
+        private final int _index;
+        private final Queue<Runnable> _registrations = new ConcurrentLinkedQueue<>();
+        private Selector _selector;
+
+        Worker(int index)
+        {
+            _index = index;
+        }
+
+        synchronized void register(Registration registration, int op, SelectableChannel channel)
+                throws IOException
+        {
+            if (_selector == null) {
+                _selector = Selector.open();
+                Thread thread = new Thread(this, _name + "-" + _index);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            _registrations.add(() -> {
+                        try {
+                            channel.register(_selector, op, registration);
+                        } catch (IOException e) {
+                            registration.multiplexer.fail(e);
+                        }
+                    });
+            _selector.wakeup();
+        }
+
+        synchronized void wakeup()
+        {
+            if (_selector != null) {
+                _selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                while (true) {
+                    try {
+                        _selector.select();
+                    } catch (IOException e) {
+                        LOGGER.error("Selector failed: {}", e.toString());
+                        continue;
+                    }
+                    Runnable registration;
+                    while ((registration = _registrations.poll()) != null) {
+                        registration.run();
+                    }
+                    for (SelectionKey key : _selector.selectedKeys()) {
+                        dispatch(key);
+                    }
+                    _selector.selectedKeys().clear();
+                }
+            } catch (ClosedSelectorException e) {
+                LOGGER.error("Selector was closed unexpectedly");
+            }
+        }
+
+        private void dispatch(SelectionKey key)
+        {
+            Registration registration = (Registration) key.attachment();
+            Multiplexer multiplexer = registration.multiplexer;
+            if (multiplexer.isShutdown()) {
+                key.cancel();
+                return;
+            }
+            try (CDC ignored = registration.cdc.restore()) {
+                multiplexer.dispatch(key, registration.listener);
+            } catch (IOException | FTPException | InterruptedException | RuntimeException e) {
+                key.cancel();
+                multiplexer.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Creates a pool of {@code threads} selector threads. Threads are
+     * named after {@code name}.
+     */
+    public SelectorPool(String name, int threads)
+    {
+        checkArgument(threads >= 0, "Number of threads must not be negative");
+        _name = name;
+        _workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            _workers[i] = new Worker(i + 1);
+        }
+    }
+
+    /**
+     * Returns the number of selector threads of the pool.
+     */
+    public int size()
+    {
+        return _workers.length;
+    }
+
+    /**
+     * Registers a listener on the given channel with one of the
+     * selectors of the pool.  Selectors are chosen in a round-robin
+     * fashion across all multiplexers using the pool.
+     */
+    void register(Multiplexer multiplexer, MultiplexerListener listener,
+                  int op, SelectableChannel channel) throws IOException
+    {
+        int index = Math.floorMod(_next.getAndIncrement(), _workers.length);
+        _workers[index].register(new Registration(multiplexer, listener), op, channel);
+    }
+
+    /**
+     * Wakes up all selector threads, e.g. to let them deregister
+     * channels that have been closed.
+     */
+    void wakeup()
+    {
+        for (Worker worker : _workers) {
+            worker.wakeup();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -47,6 +48,7 @@ import org.dcache.ftp.data.ModeS;
 import org.dcache.ftp.data.ModeX;
 import org.dcache.ftp.data.Multiplexer;
 import org.dcache.ftp.data.Role;
+import org.dcache.ftp.data.SelectorPool;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.repository.FileStore;
 import org.dcache.pool.repository.FileRepositoryChannel;
@@ -79,6 +81,14 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
             LoggerFactory.getLogger("logger.dev.org.dcache.poolspacemonitor." +
                                             GFtpProtocol_2_nio.class.getName());
 
+    /**
+     * Selector threads serving mode E data channels, shared by all
+     * transfers.
+     */
+    private static final SelectorPool SELECTORS =
+            new SelectorPool("ftp-selector",
+                             Math.max(Integer.getInteger("org.dcache.ftp.selector-threads", 0), 0));
+
     /** The minimum number of bytes to increment the space allocation. */
     public static final long SPACE_INC = MiB.toBytes(50);
 
@@ -119,9 +129,10 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
     protected Role         _role;
 
     /**
-     * The number of bytes that have been transferred.
+     * The number of bytes that have been transferred. Updated
+     * concurrently by all selector threads of the transfer.
      */
-    protected long         _bytesTransferred;
+    protected final LongAdder _bytesTransferred = new LongAdder();
 
     /**
      * The time stamp according to System.currentTimeMillis() for when
@@ -133,7 +144,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
      * The time stamp according to System.currentTimeMillis() for when
      * the last piece of data was transferred.
      */
-    protected long         _lastTransferred;
+    protected volatile long _lastTransferred;
 
     /**
      * All communication is asynchronous.
@@ -156,6 +167,11 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
      */
     private final boolean _logAbortedTransfer;
 
+    /**
+     * Whether mode E data channels may use zero-copy transfers.
+     */
+    private final boolean _zeroCopy;
+
     /**
      * The chunk size used when transferring files.
      *
@@ -194,6 +210,8 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
 
         String logAbortedTransfers = System.getProperty("org.dcache.ftp.log-aborted-transfers");
         _logAbortedTransfer = Boolean.valueOf(logAbortedTransfers);
+
+        _zeroCopy = Boolean.getBoolean("org.dcache.ftp.zero-copy");
     }
 
     /**
@@ -211,7 +229,9 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
         case 'E':
             blockSize =
                     (_blockSize == null) ? MODE_E_DEFAULT_BLOCK_SIZE : _blockSize;
-            return new ModeE(role, fileChannel, this, blockSize);
+            ModeE modeE = new ModeE(role, fileChannel, this, blockSize);
+            modeE.setZeroCopy(_zeroCopy);
+            return modeE;
         case 'X':
             blockSize =
                     (_blockSize == null) ? MODE_X_DEFAULT_BLOCK_SIZE : _blockSize;
@@ -235,14 +255,14 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
         /* Initialise transfer parameters.
          */
         _role             = role;
-        _bytesTransferred = 0;
+        _bytesTransferred.reset();
         _blockLog         = new BlockLog();
         _status           = "None";
 
-        /* Startup the transfer. The transfer is performed on a single
-         * thread, no matter the number of streams.
+        /* Startup the transfer. The data channels of the transfer
+         * are spread over this thread and the shared selector threads.
          */
-        _multiplexer = new Multiplexer();
+        _multiplexer = new Multiplexer(SELECTORS);
         try {
             _inProgress = true;
             _multiplexer.add(mode);
@@ -499,7 +519,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
             error = Optional.of(Exceptions.getMessageWithCauses(e));
             throw e;
         } finally {
-            if (_logAbortedTransfer && (!_blockLog.isComplete() || !mode.hasCompletedSuccessfully() || _bytesTransferred < mode.getSize())) {
+            if (_logAbortedTransfer && (!_blockLog.isComplete() || !mode.hasCompletedSuccessfully() || _bytesTransferred.sum() < mode.getSize())) {
                 StringWriter sw = new StringWriter();
                 PrintWriter pw = new LineIndentingPrintWriter(sw, "    ");
                 error.ifPresent(msg -> pw.println("Cause: " + msg));
@@ -530,13 +550,14 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
             try {
                 long fileSize = _fileChannel.size();
                 pw.println("File size: " + describeSize(fileSize));
-                String percent = toThreeSigFig(100 * _bytesTransferred / (double)fileSize, 1000);
-                pw.println("Transferred: " + describeSize(_bytesTransferred) + " (" + percent + "% of file)");
+                long transferred = _bytesTransferred.sum();
+                String percent = toThreeSigFig(100 * transferred / (double)fileSize, 1000);
+                pw.println("Transferred: " + describeSize(transferred) + " (" + percent + "% of file)");
             } catch (IOException e) {
-                pw.println("Transferred: " + describeSize(_bytesTransferred));
+                pw.println("Transferred: " + describeSize(_bytesTransferred.sum()));
             }
         } else {
-            pw.println("Transferred: " + describeSize(_bytesTransferred));
+            pw.println("Transferred: " + describeSize(_bytesTransferred.sum()));
         }
         Optional<Instant> started = _transferStarted == 0
                 ? Optional.empty()
@@ -556,7 +577,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
     @Override
     public long getBytesTransferred()
     {
-        return _bytesTransferred;
+        return _bytesTransferred.sum();
     }
 
     /** Part of the MoverProtocol interface. */
@@ -585,7 +606,7 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
         _log.trace("received {} {}", position, size);
 
         _blockLog.addBlock(position, size);
-        _bytesTransferred += size;
+        _bytesTransferred.add(size);
         _lastTransferred = System.currentTimeMillis();
     }
 
@@ -600,10 +621,17 @@ public class GFtpProtocol_2_nio implements ConnectionMonitor,
         _log.trace("send {} {}", position, size);
 
         _blockLog.addBlock(position, size);
-        _bytesTransferred += size;
+        _bytesTransferred.add(size);
         _lastTransferred = System.currentTimeMillis();
     }
 
+    /** Part of the ConnectionMonitor interface. */
+    @Override
+    public boolean suspendIfThrottled(Runnable suspend, Runnable resume)
+    {
+        return _blockLog.suspendIfThrottled(suspend, resume);
+    }
+
     /**
      * Returns the value of an option, or a default value if the
      * option has not been set.
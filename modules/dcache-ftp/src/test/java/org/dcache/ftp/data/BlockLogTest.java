@@ -0,0 +1,143 @@
+package org.dcache.ftp.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockLogTest {
+
+    private BlockLog log;
+
+    @Before
+    public void setUp() {
+        log = new BlockLog();
+    }
+
+    @Test
+    public void shouldMergeSequentialBlocks() throws Exception {
+        log.addBlock(0, 10);
+        log.addBlock(10, 10);
+        log.addBlock(20, 10);
+
+        assertEquals(1, log.getFragments());
+        assertEquals(30, log.getCompleted());
+    }
+
+    @Test
+    public void shouldMergeOutOfOrderBlocks() throws Exception {
+        log.addBlock(20, 10);
+        log.addBlock(40, 10);
+        assertEquals(0, log.getCompleted());
+        assertEquals(2, log.getFragments());
+
+        log.addBlock(30, 10);
+        assertEquals(1, log.getFragments());
+        assertEquals(0, log.getCompleted());
+
+        log.addBlock(0, 20);
+        assertEquals(1, log.getFragments());
+        assertEquals(50, log.getCompleted());
+    }
+
+    @Test(expected = FTPException.class)
+    public void shouldRejectOverlapWithPreviousBlock() throws Exception {
+        log.addBlock(0, 10);
+        log.addBlock(5, 10);
+    }
+
+    @Test(expected = FTPException.class)
+    public void shouldRejectOverlapWithNextBlock() throws Exception {
+        log.addBlock(10, 10);
+        log.addBlock(5, 10);
+    }
+
+    @Test(expected = FTPException.class)
+    public void shouldRejectBlockAtSamePosition() throws Exception {
+        log.addBlock(10, 10);
+        log.addBlock(10, 5);
+    }
+
+    @Test
+    public void shouldBeCompleteWhenSingleFragmentAndEof() throws Exception {
+        log.addBlock(10, 10);
+        log.addBlock(0, 10);
+        assertFalse(log.isComplete());
+
+        log.setEof();
+        assertTrue(log.isComplete());
+    }
+
+    @Test
+    public void shouldReturnFromWaitCompletedOnceDataArrives() throws Exception {
+        Thread writer = new Thread(() -> {
+            try {
+                log.addBlock(50, 50);
+                log.addBlock(0, 50);
+            } catch (FTPException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        log.waitCompleted(100);
+        assertEquals(100, log.getCompleted());
+        writer.join();
+    }
+
+    @Test
+    public void shouldNotSuspendBelowLimit() throws Exception {
+        log.setLimit(100);
+        log.addBlock(0, 50);
+
+        AtomicBoolean suspended = new AtomicBoolean();
+        assertFalse(log.suspendIfThrottled(() -> suspended.set(true), () -> {}));
+        assertFalse(suspended.get());
+    }
+
+    @Test
+    public void shouldSuspendWithoutBlockingOnceLimitIsReached() throws Exception {
+        log.setLimit(50);
+        log.addBlock(0, 50);
+
+        AtomicBoolean suspended = new AtomicBoolean();
+        AtomicBoolean resumed = new AtomicBoolean();
+        assertTrue(log.suspendIfThrottled(() -> suspended.set(true), () -> resumed.set(true)));
+        assertTrue(suspended.get());
+        assertFalse(resumed.get());
+    }
+
+    @Test
+    public void shouldResumeWhenLimitIsRaised() throws Exception {
+        log.setLimit(50);
+        log.addBlock(0, 50);
+        AtomicBoolean resumed = new AtomicBoolean();
+        log.suspendIfThrottled(() -> {}, () -> resumed.set(true));
+
+        log.setLimit(60);
+        assertTrue(resumed.get());
+    }
+
+    @Test
+    public void shouldResumeWhenWaitingBeyondLimit() throws Exception {
+        log.setLimit(50);
+        log.addBlock(0, 50);
+        AtomicBoolean resumed = new AtomicBoolean();
+        log.suspendIfThrottled(() -> {}, () -> {
+            resumed.set(true);
+            try {
+                log.addBlock(50, 50);
+            } catch (FTPException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        log.waitCompleted(100);
+        assertTrue(resumed.get());
+        assertEquals(100, log.getCompleted());
+    }
+}
@@ -3,6 +3,7 @@ package org.dcache.auth;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +13,7 @@ import javax.security.auth.Subject;
 import javax.security.auth.kerberos.KerberosPrincipal;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
@@ -19,6 +21,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -28,6 +32,7 @@ import diskCacheV111.util.FsPath;
 import diskCacheV111.util.PermissionDeniedCacheException;
 
 import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.EnvironmentAware;
 import dmg.util.Formats;
 import dmg.util.Replaceable;
@@ -46,13 +51,14 @@ import org.dcache.gplazma.monitor.LoginResult;
 import org.dcache.gplazma.monitor.LoginResultPrinter;
 import org.dcache.gplazma.monitor.RecordingLoginMonitor;
 import org.dcache.util.Args;
+import org.dcache.util.CDCExecutorServiceDecorator;
 
 /**
  * A LoginStrategy that delegates login requests to an instance of
  * org.dcache.gplazma.GPlazma.
  */
 public class Gplazma2LoginStrategy
-    implements LoginStrategy, EnvironmentAware, CellCommandListener
+    implements LoginStrategy, EnvironmentAware, CellCommandListener, CellInfoProvider
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(Gplazma2LoginStrategy.class);
 
@@ -71,6 +77,9 @@ public class Gplazma2LoginStrategy
     private Map<String,Object> _environment = Collections.emptyMap();
     private PluginFactory _factory;
     private Function<FsPath, PrefixRestriction> _createPrefixRestriction;
+    private boolean _isConcurrentAuthentication;
+    private int _authenticationThreads;
+    private ExecutorService _authenticationExecutor;
 
     static {
         Stopwatch reflectionTimer = Stopwatch.createStarted();
@@ -136,12 +145,32 @@ public class Gplazma2LoginStrategy
         return properties;
     }
 
+    /**
+     * Whether consecutive optional and sufficient auth plugins are called
+     * concurrently.
+     */
+    public void setConcurrentAuthentication(boolean isConcurrent)
+    {
+        _isConcurrentAuthentication = isConcurrent;
+    }
+
+    public void setAuthenticationThreads(int threads)
+    {
+        _authenticationThreads = threads;
+    }
+
     public void init()
     {
         ConfigurationLoadingStrategy configuration =
             new FromFileConfigurationLoadingStrategy(_configurationFile);
+        if (_isConcurrentAuthentication) {
+            _authenticationExecutor = new CDCExecutorServiceDecorator<>(
+                    Executors.newFixedThreadPool(_authenticationThreads,
+                            new ThreadFactoryBuilder().setNameFormat("gplazma-auth-%d").build()));
+        }
         _gplazma =
-            new GPlazma(configuration, getEnvironmentAsProperties(), _factory);
+            new GPlazma(configuration, getEnvironmentAsProperties(), _factory,
+                        _authenticationExecutor);
     }
 
     public void shutdown()
@@ -149,6 +178,17 @@ public class Gplazma2LoginStrategy
         if (_gplazma != null) {
             _gplazma.shutdown();
         }
+        if (_authenticationExecutor != null) {
+            _authenticationExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        if (_gplazma != null) {
+            _gplazma.getInfo(pw);
+        }
     }
 
     private LoginReply convertLoginReply(org.dcache.gplazma.LoginReply gPlazmaLoginReply)
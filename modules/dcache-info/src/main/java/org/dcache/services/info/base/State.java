@@ -9,8 +9,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This singleton class provides a (best-effort) complete representation of
@@ -36,6 +35,11 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * some synchronous classes also use this to build lists from dCache current
  * state (e.g., to send a message requesting data to each currently known
  * pool).
+ * <p>
+ * The state tree is never modified once published.  Updates build a new
+ * tree, sharing all branches that are not affected, and replace the root
+ * atomically.  Visitors therefore walk a consistent snapshot without
+ * locking and without delaying updates.
  *
  * @author Paul Millar <paul.millar@desy.de>
  */
@@ -53,16 +57,14 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
      * Class member variables...
      */
 
-    /** The root branch of the dCache state */
-    private final StateComposite _state;
+    /** The root branch of the dCache state; replaced on every update */
+    private volatile StateComposite _state;
 
     /** All registered StateWatchers */
     private volatile Collection<StateWatcherInfo> _watchers = new ArrayList<>();
 
-    /** Our read/write lock: we use the fair version to reduce the risk of writers constantly blocking a reader */
-    private final ReadWriteLock _stateRWLock = new ReentrantReadWriteLock(true);
-    private final Lock _stateReadLock = _stateRWLock.readLock();
-    private final Lock _stateWriteLock = _stateRWLock.writeLock();
+    /** Serialises updates, so each transition is built against the state it is applied to */
+    private final Lock _updateLock = new ReentrantLock();
 
     // TODO: remove this completely. It's only needed to support derived
     // metrics
@@ -148,9 +150,8 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
 
         StateTransition transition = new StateTransition();
 
+        _updateLock.lock();
         try {
-            _stateReadLock.lock();
-
             /**
              * Update our new StateTransition based on the StateUpdate.
              */
@@ -170,17 +171,17 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
                 _updateManager.enqueueUpdate(resultingUpdate);
             }
 
+            applyTransition(transition);
         } finally {
-            _stateReadLock.unlock();
+            _updateLock.unlock();
         }
-
-        applyTransition(transition);
     }
 
     /**
      * Apply a StateTransition to dCache state. This is the final step in
      * updating the dCache state where the proposed changes are made
-     * permanent. This requires obtaining a writer-lock on the state.
+     * permanent by publishing the updated tree. The caller must hold the
+     * update lock.
      *
      * @param transition
      *            the StateTransition to apply.
@@ -192,14 +193,7 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
                     transition.dumpContents());
         }
 
-        try {
-            _stateWriteLock.lock();
-
-            _state.applyTransition(null, transition);
-
-        } finally {
-            _stateWriteLock.unlock();
-        }
+        _state = _state.withTransition(null, transition);
     }
 
     /**
@@ -358,7 +352,7 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
      * <ol>
      */
     @Override
-    public synchronized void removeExpiredMetrics()
+    public void removeExpiredMetrics()
     {
         // A quick check before obtaining the lock
         Date expDate = getEarliestMetricExpiryDate();
@@ -370,9 +364,8 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
         LOGGER.trace("Building StateTransition for expired StateComponents");
         StateTransition transition = new StateTransition();
 
+        _updateLock.lock();
         try {
-            _stateReadLock.lock();
-
             _state.buildRemovalTransition(null, transition, false);
 
             StateUpdate resultingUpdate = checkWatchers(transition);
@@ -383,11 +376,10 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
                 _updateManager.enqueueUpdate(resultingUpdate);
             }
 
+            applyTransition(transition);
         } finally {
-            _stateReadLock.unlock();
+            _updateLock.unlock();
         }
-
-        applyTransition(transition);
     }
 
     /**
@@ -397,8 +389,9 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
      * <p>
      * The data obtained from a single call of <code>visitState()</code> is
      * protected from inconsistencies due to data being updated whilst the
-     * iteration is taking place. No such protection is available for
-     * multiple calls to <code>visitState()</code>.
+     * iteration is taking place: the visitor walks the tree as it was when
+     * the visit started. No such protection is available for multiple calls
+     * to <code>visitState()</code>.
      *
      * @param visitor
      *            the algorithm that wishes to visit our current state
@@ -408,28 +401,17 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
     {
         LOGGER.trace("visitor {} wishing to visit current state", visitor);
 
-        try {
-            long beforeLock = System.currentTimeMillis();
-
-            LOGGER.trace("visitor {} acquiring read lock", visitor);
-            _stateReadLock.lock();
-
-            long afterLock = System.currentTimeMillis();
-
-            LOGGER.trace("visitor {} acquired read lock (took {} ms), starting visit.",
-                    visitor, (afterLock - beforeLock) / 1000.0);
+        StateComposite state = _state;
+        long beforeVisit = System.currentTimeMillis();
 
-            if (visitor.isVisitable(null)) {
-                _state.acceptVisitor(null, visitor);
-            }
+        if (visitor.isVisitable(null)) {
+            state.acceptVisitor(null, visitor);
+        }
 
-            long afterVisit = System.currentTimeMillis();
+        long afterVisit = System.currentTimeMillis();
 
-            LOGGER.trace("visitor {} completed visit (took {} ms), releasing read lock.",
-                    visitor, (afterVisit - afterLock) / 1000.0);
-        } finally {
-            _stateReadLock.unlock();
-        }
+        LOGGER.trace("visitor {} completed visit (took {} ms).",
+                visitor, afterVisit - beforeVisit);
 
         LOGGER.trace("visitor {} finished.", visitor);
     }
@@ -103,6 +103,20 @@ public class StateComposite implements StateComponent
         _metadataRef = persistentMetadata;
     }
 
+    /**
+     * Build a shallow copy of a StateComposite.  The copy has the same
+     * children as the original, which are shared rather than copied.
+     * @param original the StateComposite to copy.
+     */
+    private StateComposite(StateComposite original)
+    {
+        _children.putAll(original._children);
+        _metadataRef = original._metadataRef;
+        _earliestChildExpiry = original._earliestChildExpiry;
+        _whenIShouldExpire = original._whenIShouldExpire;
+        _isEphemeral = original._isEphemeral;
+    }
+
     /**
      * Build an Immortal StateComposite with specific metadata link.
      * This should only be used by the State singleton.
@@ -267,7 +281,11 @@ public class StateComposite implements StateComponent
             StateComponent child = mapEntry.getValue();
             StatePath childPath = buildChildPath(path, childName);
             if (visitor.isVisitable(childPath)) {
-                child.acceptVisitor(childPath, visitor);
+                if (child instanceof StateComposite) {
+                    visitor.visitComposite(childPath, (StateComposite) child);
+                } else {
+                    child.acceptVisitor(childPath, visitor);
+                }
             }
         }
 
@@ -352,6 +370,29 @@ public class StateComposite implements StateComponent
      */
     @Override
     public void applyTransition(StatePath ourPath, StateTransition transition)
+    {
+        applyTransition(ourPath, transition, false);
+    }
+
+    /**
+     * Return a StateComposite that describes this branch after applying a
+     * transition.  This StateComposite is not modified.  Only those branches
+     * the transition iterates into are copied; all other children are shared
+     * between this StateComposite and the returned one.  Provided a tree is
+     * only ever updated this way, it may be visited while being updated.
+     * @param ourPath the path to this within dCache tree, or null for top-most StateComposite
+     * @param transition the StateTransition to apply
+     * @return the updated copy of this StateComposite
+     */
+    StateComposite withTransition(StatePath ourPath, StateTransition transition)
+    {
+        StateComposite copy = new StateComposite(this);
+        copy.applyTransition(ourPath, transition, true);
+        return copy;
+    }
+
+    private void applyTransition(StatePath ourPath, StateTransition transition,
+            boolean isCopyOnWrite)
     {
         StateChangeSet changeSet = transition.getStateChangeSet(ourPath);
 
@@ -409,7 +450,12 @@ public class StateComposite implements StateComponent
                 continue;
             }
 
-            child.applyTransition(buildChildPath(ourPath, childName), transition);
+            StatePath childPath = buildChildPath(ourPath, childName);
+            if (isCopyOnWrite && child instanceof StateComposite) {
+                _children.put(childName, ((StateComposite) child).withTransition(childPath, transition));
+            } else {
+                child.applyTransition(childPath, transition);
+            }
         }
 
         recalcEarliestChildExpiry();
@@ -19,6 +19,12 @@ import java.util.Map;
  * independent of the actual contents of the State tree; it is linked to a
  * nodes path within the state.
  * <p>
+ * StateComposites pass each child branch to visitComposite().  Branches of
+ * the dCache state are never modified: an update replaces the affected
+ * branches (see State).  A visitor may therefore recognise a branch from an
+ * earlier visit and reuse what it derived from it rather than descending
+ * again.
+ * <p>
  *
  * @author Paul Millar <paul.millar@desy.de>
  */
@@ -39,4 +45,11 @@ public interface StateVisitor extends StateGuide
     void visitCompositePreDescend(StatePath path, Map<String, String> metadata);
 
     void visitCompositePostDescend(StatePath path, Map<String, String> metadata);
+
+    /* Called for each child branch; the default descends into the branch */
+
+    default void visitComposite(StatePath path, StateComposite branch)
+    {
+        branch.acceptVisitor(path, this);
+    }
 }
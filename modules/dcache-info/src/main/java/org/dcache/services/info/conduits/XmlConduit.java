@@ -5,13 +5,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 
 import org.dcache.services.info.serialisation.StateSerialiser;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * Information Exporter class.<br>
  * This class is instantiated by the <code>InfoCollector</code> to send
@@ -142,8 +147,9 @@ public class XmlConduit extends AbstractThreadedConduit
 
             try {
                 _callCount++;
-                String data = _serialiser.serialise();
-                skt.getOutputStream().write(data.getBytes());
+                Writer out = new BufferedWriter(new OutputStreamWriter(skt.getOutputStream(), UTF_8));
+                _serialiser.serialise(out);
+                out.flush();
             } catch (IOException e) {
                 LOGGER.error("failed to write XML data", e);
             } catch (Exception e) {
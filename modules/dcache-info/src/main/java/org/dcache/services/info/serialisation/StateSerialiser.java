@@ -1,5 +1,8 @@
 package org.dcache.services.info.serialisation;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import org.dcache.services.info.base.StatePath;
 
 /**
@@ -17,4 +20,10 @@ public interface StateSerialiser
     String serialise();
 
     String serialise(StatePath start);
+
+    /** Write serialised version of dCache's current state */
+    default void serialise(Writer out) throws IOException
+    {
+        out.write(serialise());
+    }
 }
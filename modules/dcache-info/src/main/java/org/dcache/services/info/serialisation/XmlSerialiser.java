@@ -1,14 +1,21 @@
 package org.dcache.services.info.serialisation;
 
+import com.google.common.collect.MapMaker;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.dcache.services.info.base.BooleanStateValue;
 import org.dcache.services.info.base.FloatingPointStateValue;
 import org.dcache.services.info.base.IntegerStateValue;
 import org.dcache.services.info.base.State;
+import org.dcache.services.info.base.StateComposite;
 import org.dcache.services.info.base.StateExhibitor;
 import org.dcache.services.info.base.StatePath;
 import org.dcache.services.info.base.StringStateValue;
@@ -20,6 +27,14 @@ import org.dcache.services.info.base.StringStateValue;
  * For the most part, this is a simple mapping with some support for handling
  * branch-nodes with a known special parent branch differently.
  * <p>
+ * The XML of each branch is kept for as long as the branch is part of
+ * dCache state.  As branches are replaced rather than modified when the
+ * state is updated, only branches that have changed since the previous
+ * serialisation are rendered again; the XML of all other branches is
+ * reused.  The cached XML is held as fragments that refer to the fragments
+ * of their child branches, so the document is never assembled in memory
+ * when written with {@link #serialise(Writer)}.
+ * <p>
  * NB, instances of this Class are not thread-safe: the caller is responsible for
  * ensuring no concurrent calls to serialise().
  *
@@ -34,7 +49,10 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
 
     private static final String _xmlns = "http://www.dcache.org/2008/01/Info";
 
-    private StringBuilder _out;
+    /** XML of branches, keyed by branch identity; entries vanish with their branch */
+    private final Map<StateComposite,Fragment> _cache = new MapMaker().weakKeys().makeMap();
+
+    private Fragment _out;
     private int _indentationLevel;
     private String _indentationPrefix = "";
     private boolean _isTopBranch;
@@ -62,6 +80,54 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
         }
     }
 
+    /**
+     * Rendered XML of a branch.  A fragment consists of text interleaved
+     * with the fragments of child branches.
+     */
+    private static class Fragment
+    {
+        /** Either String or Fragment */
+        private final List<Object> _parts = new ArrayList<>();
+        private StringBuilder _text = new StringBuilder();
+
+        void append(String text)
+        {
+            _text.append(text);
+        }
+
+        void append(Fragment child)
+        {
+            flushText();
+            _parts.add(child);
+        }
+
+        Fragment complete()
+        {
+            flushText();
+            _text = null;
+            return this;
+        }
+
+        void writeTo(Appendable out) throws IOException
+        {
+            for (Object part : _parts) {
+                if (part instanceof Fragment) {
+                    ((Fragment) part).writeTo(out);
+                } else {
+                    out.append((String) part);
+                }
+            }
+        }
+
+        private void flushText()
+        {
+            if (_text.length() > 0) {
+                _parts.add(_text.toString());
+                _text.setLength(0);
+            }
+        }
+    }
+
     /**
      *  Serialise the current dCache state into XML;
      *  @return a String containing dCache current state as XML data.
@@ -82,7 +148,28 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
     @Override
     public String serialise(StatePath start)
     {
-        _out = new StringBuilder();
+        StringBuilder sb = new StringBuilder();
+        try {
+            render(start).writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw IOException
+        }
+        return sb.toString();
+    }
+
+    /**
+     *  Write the current dCache state as XML.
+     *  @param out the Writer to which the XML is written.
+     */
+    @Override
+    public void serialise(Writer out) throws IOException
+    {
+        render(null).writeTo(out);
+    }
+
+    private Fragment render(StatePath start)
+    {
+        _out = new Fragment();
         _isTopBranch = true;
         _haveLastBranch = false;
         _indentationLevel = 0;
@@ -109,7 +196,7 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
             emitLastBeginElement(true);
         }
 
-        return _out.toString();
+        return _out.complete();
     }
 
 
@@ -132,6 +219,32 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
         exitingBranch(path, metadata);
     }
 
+    /**
+     * Reuse the XML of an unchanged branch.  Branches that are only partly
+     * visited, as they lead to the subtree being serialised, are not cached.
+     */
+    @Override
+    public void visitComposite(StatePath path, StateComposite branch)
+    {
+        if (!isInsideScope(path)) {
+            branch.acceptVisitor(path, this);
+            return;
+        }
+
+        emitLastBeginElement(false);
+
+        Fragment fragment = _cache.get(branch);
+        if (fragment == null) {
+            Fragment parent = _out;
+            _out = new Fragment();
+            branch.acceptVisitor(path, this);
+            fragment = _out.complete();
+            _out = parent;
+            _cache.put(branch, fragment);
+        }
+        _out.append(fragment);
+    }
+
     /* Deal with metric values */
     @Override
     public void visitInteger(StatePath path, IntegerStateValue value)
@@ -272,9 +385,7 @@ public class XmlSerialiser extends SubtreeVisitor implements StateSerialiser
      */
     private void addElement(String element)
     {
-        _out.append(_indentationPrefix);
-        _out.append(element);
-        _out.append(_newline);
+        _out.append(_indentationPrefix + element + _newline);
     }
 
     /**
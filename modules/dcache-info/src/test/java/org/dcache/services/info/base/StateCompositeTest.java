@@ -367,6 +367,23 @@ public class StateCompositeTest extends InfoBaseTestHelper {
     }
 
 
+    @Test
+    public void testWithTransitionLeavesOriginalUnchanged() throws MetricStatePathException {
+        StatePath metricPath = BRANCH_MORTAL_PATH.newChild( "foo");
+        StateValue metricValue = new StringStateValue( "some dummy data");
+
+        VerifyingVisitor visitorNoMetric = newDefaultVisitor();
+        VerifyingVisitor visitorWithMetric = newDefaultVisitor();
+        visitorWithMetric.addExpectedMetric( metricPath, metricValue);
+
+        StateTransition transition = new StateTransition();
+        _rootComposite.buildTransition( null, metricPath, metricValue, transition);
+        StateComposite updated = _rootComposite.withTransition( null, transition);
+
+        visitorNoMetric.assertSatisfied( "original changed by transition", _rootComposite);
+        visitorWithMetric.assertSatisfied( "copy not updated by transition", updated);
+    }
+
     @Test
     public void testApplyTransitionRemovingMetrics() throws MetricStatePathException {
 
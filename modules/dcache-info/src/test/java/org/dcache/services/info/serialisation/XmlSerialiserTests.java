@@ -19,9 +19,13 @@ import org.xml.sax.helpers.XMLReaderFactory;
 import java.io.IOException;
 import java.io.StringReader;
 
+import org.dcache.services.info.base.State;
 import org.dcache.services.info.base.StatePath;
+import org.dcache.services.info.base.StateUpdate;
+import org.dcache.services.info.base.StringStateValue;
 import org.dcache.services.info.base.TestStateExhibitor;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 public class XmlSerialiserTests {
@@ -135,6 +139,27 @@ public class XmlSerialiserTests {
         assertXmlValidates( RNC_DCACHE_DOMAIN, result);
     }
 
+    @Test
+    public void testCachedBranchesMatchFreshSerialisation() {
+        State state = new State();
+        XmlSerialiser serialiser = new XmlSerialiser();
+        serialiser.setStateExhibitor(state);
+
+        StateUpdate update = new StateUpdate();
+        update.appendUpdate( StatePath.parsePath( "domains.dCacheDomain.version"), new StringStateValue( "1", 60));
+        update.appendUpdate( StatePath.parsePath( "domains.infoDomain.version"), new StringStateValue( "1", 60));
+        state.processUpdate( update);
+        serialiser.serialise();
+
+        update = new StateUpdate();
+        update.appendUpdate( StatePath.parsePath( "domains.infoDomain.version"), new StringStateValue( "2", 60));
+        state.processUpdate( update);
+
+        XmlSerialiser fresh = new XmlSerialiser();
+        fresh.setStateExhibitor(state);
+        assertEquals( fresh.serialise(), serialiser.serialise());
+    }
+
     private void assertXmlValidates( String rncGrammar, String xmlData) {
         Validator validator = createValidator( rncGrammar);
         XMLReader reader = createValidatingXmlReader( validator);
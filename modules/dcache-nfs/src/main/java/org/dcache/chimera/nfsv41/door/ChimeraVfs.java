@@ -40,6 +40,8 @@ import java.util.stream.Stream;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
+import diskCacheV111.util.PnfsId;
+
 import org.dcache.acl.ACE;
 import org.dcache.acl.enums.AceFlags;
 import org.dcache.acl.enums.AceType;
@@ -148,6 +150,21 @@ public class ChimeraVfs implements VirtualFileSystem, AclCheckable {
         }
     }
 
+    /**
+     * Get the {@code Inode} of the namespace object with the given PNFS-ID.
+     *
+     * @param id the PNFS-ID of the namespace object.
+     * @return inode of the object.
+     * @throws NoEntException if no such object exists.
+     */
+    public Inode inodeOf(PnfsId id) throws IOException {
+        try {
+            return toInode(_fs.id2inode(id.toString(), NO_STAT));
+        } catch (FileNotFoundHimeraFsException e) {
+            throw new NoEntException("Path Do not exist.");
+        }
+    }
+
     @Override
     public Inode create(Inode parent, Stat.Type type, String path, Subject subject, int mode) throws IOException {
         int uid = (int)UnixSubjects.getUid(subject);
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2021 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera.nfsv41.door;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.Subject;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.NamespaceChangedNotificationMessage;
+
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.v4.xdr.nfsace4;
+import org.dcache.nfs.vfs.DirectoryStream;
+import org.dcache.nfs.vfs.ForwardingFileSystem;
+import org.dcache.nfs.vfs.FsStat;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VfsCacheConfig;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A caching VirtualFileSystem that, unlike nfs4j's TTL-only {@code VfsCache},
+ * supports explicit invalidation.  Entries are dropped when this door modifies
+ * the namespace and when a {@link NamespaceChangedNotificationMessage}
+ * announces a modification made elsewhere in dCache.  This allows the cache
+ * lifetime to be long without serving stale information.
+ * <p>
+ * Three independent caches are maintained: the lookup cache (directory and
+ * name to inode), the attribute cache (inode to attributes) and the
+ * directory listing cache.  The file system statistics are cached for a
+ * fixed time, as they are not namespace information as such.
+ * <p>
+ * An invalidation that happens while a value is being fetched from the
+ * underlying file system prevents that value from being cached, as it
+ * may already be stale.
+ */
+public class CoherentVfsCache extends ForwardingFileSystem
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoherentVfsCache.class);
+
+    /**
+     * The key used to identify an inode.  Only the file-id is significant.
+     */
+    private static final class InodeKey
+    {
+        private final byte[] fileId;
+
+        InodeKey(Inode inode)
+        {
+            fileId = inode.getFileId();
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof InodeKey
+                    && Arrays.equals(fileId, ((InodeKey) other).fileId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(fileId);
+        }
+    }
+
+    /**
+     * The key used to identify a directory entry.
+     */
+    private static final class LookupKey
+    {
+        private final InodeKey parent;
+        private final String name;
+
+        LookupKey(InodeKey parent, String name)
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey that = (LookupKey) other;
+            return parent.equals(that.parent) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(parent, name);
+        }
+    }
+
+    private final VirtualFileSystem _inner;
+    private final ChimeraVfs _namespace;
+
+    private final Cache<LookupKey,Inode> _lookupCache;
+    private final Cache<InodeKey,Stat> _statCache;
+    private final Cache<InodeKey,DirectoryStream> _readdirCache;
+    private final Cache<Class<FsStat>,FsStat> _fsStatCache;
+
+    /**
+     * Incremented on every invalidation; used to detect that an invalidation
+     * took place while fetching a value from the underlying file system.
+     */
+    private final AtomicLong _generation = new AtomicLong();
+
+    private final LongAdder _lookupHits = new LongAdder();
+    private final LongAdder _lookupMisses = new LongAdder();
+    private final LongAdder _statHits = new LongAdder();
+    private final LongAdder _statMisses = new LongAdder();
+    private final LongAdder _readdirHits = new LongAdder();
+    private final LongAdder _readdirMisses = new LongAdder();
+    private final LongAdder _localInvalidations = new LongAdder();
+    private final LongAdder _remoteInvalidations = new LongAdder();
+    private final LongAdder _overflows = new LongAdder();
+
+    /**
+     * Create a new cache.
+     *
+     * @param inner the file system to which requests are forwarded.
+     * @param namespace used to resolve PNFS-IDs of remotely modified objects.
+     * @param config the cache sizes and lifetimes.
+     */
+    public CoherentVfsCache(VirtualFileSystem inner, ChimeraVfs namespace,
+            VfsCacheConfig config)
+    {
+        _inner = requireNonNull(inner);
+        _namespace = requireNonNull(namespace);
+
+        _lookupCache = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getLifeTime(), config.getTimeUnit())
+                .softValues()
+                .build();
+        _statCache = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getLifeTime(), config.getTimeUnit())
+                .softValues()
+                .build();
+        _readdirCache = CacheBuilder.newBuilder()
+                .maximumSize(config.getReaddirMaxEntries())
+                .expireAfterWrite(config.getReaddirLifeTime(), config.getReaddirLifeTimeUnit())
+                .softValues()
+                .build();
+        _fsStatCache = CacheBuilder.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(config.getFsStatLifeTime(), config.getFsStatTimeUnit())
+                .build();
+    }
+
+    @Override
+    protected VirtualFileSystem delegate()
+    {
+        return _inner;
+    }
+
+    @Override
+    public Inode lookup(Inode parent, String name) throws IOException
+    {
+        LookupKey key = new LookupKey(new InodeKey(parent), name);
+        Inode inode = _lookupCache.getIfPresent(key);
+        if (inode != null) {
+            _lookupHits.increment();
+            return inode;
+        }
+        _lookupMisses.increment();
+        long generation = _generation.get();
+        inode = super.lookup(parent, name);
+        if (generation == _generation.get()) {
+            _lookupCache.put(key, inode);
+        }
+        return inode;
+    }
+
+    @Override
+    public Stat getattr(Inode inode) throws IOException
+    {
+        InodeKey key = new InodeKey(inode);
+        Stat stat = _statCache.getIfPresent(key);
+        if (stat != null) {
+            _statHits.increment();
+            return stat;
+        }
+        _statMisses.increment();
+        long generation = _generation.get();
+        stat = super.getattr(inode);
+        if (generation == _generation.get()) {
+            _statCache.put(key, stat);
+        }
+        return stat;
+    }
+
+    @Override
+    public DirectoryStream list(Inode inode, byte[] verifier, long cookie)
+            throws IOException
+    {
+        /* The underlying ChimeraVfs always returns the complete directory
+         * listing, independent of the cookie, so a cached listing may be
+         * used for any cookie value.
+         */
+        InodeKey key = new InodeKey(inode);
+        DirectoryStream stream = _readdirCache.getIfPresent(key);
+        if (stream != null) {
+            _readdirHits.increment();
+            return stream;
+        }
+        _readdirMisses.increment();
+        long generation = _generation.get();
+        stream = super.list(inode, verifier, cookie);
+        if (generation == _generation.get()) {
+            _readdirCache.put(key, stream);
+        }
+        return stream;
+    }
+
+    @Override
+    public FsStat getFsStat() throws IOException
+    {
+        FsStat fsStat = _fsStatCache.getIfPresent(FsStat.class);
+        if (fsStat == null) {
+            fsStat = super.getFsStat();
+            _fsStatCache.put(FsStat.class, fsStat);
+        }
+        return fsStat;
+    }
+
+    @Override
+    public Inode create(Inode parent, Stat.Type type, String name,
+            Subject subject, int mode) throws IOException
+    {
+        try {
+            return super.create(parent, type, name, subject, mode);
+        } finally {
+            invalidateChildLocally(parent, name);
+        }
+    }
+
+    @Override
+    public Inode mkdir(Inode parent, String name, Subject subject, int mode)
+            throws IOException
+    {
+        try {
+            return super.mkdir(parent, name, subject, mode);
+        } finally {
+            invalidateChildLocally(parent, name);
+        }
+    }
+
+    @Override
+    public Inode link(Inode parent, Inode link, String name, Subject subject)
+            throws IOException
+    {
+        try {
+            return super.link(parent, link, name, subject);
+        } finally {
+            invalidateChildLocally(parent, name);
+            invalidateLocally(link);
+        }
+    }
+
+    @Override
+    public Inode symlink(Inode parent, String name, String target,
+            Subject subject, int mode) throws IOException
+    {
+        try {
+            return super.symlink(parent, name, target, subject, mode);
+        } finally {
+            invalidateChildLocally(parent, name);
+        }
+    }
+
+    @Override
+    public void remove(Inode parent, String name) throws IOException
+    {
+        try {
+            super.remove(parent, name);
+        } finally {
+            invalidateChildLocally(parent, name);
+        }
+    }
+
+    @Override
+    public boolean move(Inode src, String oldName, Inode dest, String newName)
+            throws IOException
+    {
+        try {
+            return super.move(src, oldName, dest, newName);
+        } finally {
+            invalidateChildLocally(src, oldName);
+            invalidateChildLocally(dest, newName);
+        }
+    }
+
+    @Override
+    public void setattr(Inode inode, Stat stat) throws IOException
+    {
+        try {
+            super.setattr(inode, stat);
+        } finally {
+            invalidateLocally(inode);
+        }
+    }
+
+    @Override
+    public void setAcl(Inode inode, nfsace4[] acl) throws IOException
+    {
+        try {
+            super.setAcl(inode, acl);
+        } finally {
+            invalidateLocally(inode);
+        }
+    }
+
+    @Override
+    public WriteResult write(Inode inode, byte[] data, long offset, int count,
+            StabilityLevel stabilityLevel) throws IOException
+    {
+        try {
+            return super.write(inode, data, offset, count, stabilityLevel);
+        } finally {
+            invalidateLocally(inode);
+        }
+    }
+
+    /**
+     * Discard any cached attributes of the given inode.
+     */
+    public void invalidateStatCache(Inode inode)
+    {
+        invalidateLocally(inode);
+    }
+
+    /**
+     * Discard cached information affected by changes announced by some
+     * other component of dCache.  Objects that no longer exist are ignored,
+     * as any cached information will be discarded when the corresponding
+     * directory entry is invalidated.
+     */
+    public void invalidate(NamespaceChangedNotificationMessage message)
+    {
+        if (message.isOverflow()) {
+            invalidateAll();
+            return;
+        }
+
+        for (PnfsId id : message.getModified()) {
+            resolve(id).ifPresent(inode -> {
+                        _remoteInvalidations.increment();
+                        invalidate(new InodeKey(inode));
+                    });
+        }
+
+        message.getChangedChildren().forEach((id, names) ->
+                resolve(id).ifPresent(dir -> {
+                            InodeKey parent = new InodeKey(dir);
+                            names.forEach(name -> {
+                                        _remoteInvalidations.increment();
+                                        invalidateChild(parent, name);
+                                    });
+                        }));
+    }
+
+    /**
+     * Discard everything from the cache.
+     */
+    public void invalidateAll()
+    {
+        _overflows.increment();
+        _generation.incrementAndGet();
+        _lookupCache.invalidateAll();
+        _statCache.invalidateAll();
+        _readdirCache.invalidateAll();
+    }
+
+    private Optional<Inode> resolve(PnfsId id)
+    {
+        try {
+            return Optional.of(_namespace.inodeOf(id));
+        } catch (NoEntException e) {
+            // Object has been deleted; nothing to invalidate.
+        } catch (IOException e) {
+            LOGGER.warn("Failed to resolve {}, dropping all cached entries: {}",
+                    id, e.toString());
+            invalidateAll();
+        }
+        return Optional.empty();
+    }
+
+    private void invalidateLocally(Inode inode)
+    {
+        _localInvalidations.increment();
+        invalidate(new InodeKey(inode));
+    }
+
+    private void invalidateChildLocally(Inode parent, String name)
+    {
+        _localInvalidations.increment();
+        invalidateChild(new InodeKey(parent), name);
+    }
+
+    private void invalidate(InodeKey key)
+    {
+        _generation.incrementAndGet();
+        _statCache.invalidate(key);
+    }
+
+    private void invalidateChild(InodeKey parent, String name)
+    {
+        _generation.incrementAndGet();
+        LookupKey key = new LookupKey(parent, name);
+        Inode child = _lookupCache.getIfPresent(key);
+        _lookupCache.invalidate(key);
+        if (child != null) {
+            _statCache.invalidate(new InodeKey(child));
+        }
+        _statCache.invalidate(parent);
+        _readdirCache.invalidate(parent);
+    }
+
+    public long getLookupHits()
+    {
+        return _lookupHits.sum();
+    }
+
+    public long getStatHits()
+    {
+        return _statHits.sum();
+    }
+
+    public long getReaddirHits()
+    {
+        return _readdirHits.sum();
+    }
+
+    public long getRemoteInvalidations()
+    {
+        return _remoteInvalidations.sum();
+    }
+
+    public void getInfo(PrintWriter pw)
+    {
+        pw.printf("    lookup  : %d hits, %d misses, %d entries\n",
+                _lookupHits.sum(), _lookupMisses.sum(), _lookupCache.size());
+        pw.printf("    getattr : %d hits, %d misses, %d entries\n",
+                _statHits.sum(), _statMisses.sum(), _statCache.size());
+        pw.printf("    readdir : %d hits, %d misses, %d entries\n",
+                _readdirHits.sum(), _readdirMisses.sum(), _readdirCache.size());
+        pw.printf("    invalidations: %d local, %d remote, %d full\n",
+                _localInvalidations.sum(), _remoteInvalidations.sum(), _overflows.sum());
+    }
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -38,6 +39,7 @@ import diskCacheV111.vehicles.DoorRequestInfoMessage;
 import diskCacheV111.vehicles.DoorTransferFinishedMessage;
 import diskCacheV111.vehicles.IoDoorEntry;
 import diskCacheV111.vehicles.IoDoorInfo;
+import diskCacheV111.vehicles.NamespaceChangedNotificationMessage;
 import diskCacheV111.vehicles.Pool;
 import diskCacheV111.vehicles.PoolMoverKillMessage;
 import diskCacheV111.vehicles.PoolPassiveIoFileMessage;
@@ -158,7 +160,6 @@ import org.dcache.nfs.v4.xdr.offset4;
 import org.dcache.nfs.v4.xdr.utf8str_mixed;
 import org.dcache.nfs.vfs.Inode;
 import org.dcache.nfs.vfs.Stat;
-import org.dcache.nfs.vfs.VfsCache;
 import org.dcache.nfs.vfs.VfsCacheConfig;
 import org.dcache.pool.assumption.Assumptions;
 import org.dcache.util.FireAndForgetTask;
@@ -181,6 +182,9 @@ import static java.util.stream.Collectors.toList;
 import javax.annotation.concurrent.GuardedBy;
 
 import diskCacheV111.namespace.EventNotifier;
+import diskCacheV111.namespace.EventReceiver;
+import diskCacheV111.namespace.MulticastEventReceiver;
+import diskCacheV111.namespace.NamespaceChangePublisher;
 
 import org.dcache.auth.attributes.Restrictions;
 import org.dcache.nfs.vfs.VirtualFileSystem;
@@ -280,7 +284,8 @@ public class NFSv41Door extends AbstractCellComponent implements
     private boolean _enableRpcsecGss;
 
     private EventNotifier _eventNotifier;
-    private VfsCache _vfsCache;
+    private NamespaceChangePublisher _namespaceChangePublisher;
+    private CoherentVfsCache _vfsCache;
     private ChimeraVfs _chimeraVfs;
     private VirtualFileSystem _vfs;
 
@@ -345,6 +350,10 @@ public class NFSv41Door extends AbstractCellComponent implements
         _eventNotifier = notifier;
     }
 
+    public void setNamespaceChangePublisher(NamespaceChangePublisher publisher) {
+        _namespaceChangePublisher = publisher;
+    }
+
     public void setEnableRpcsecGss(boolean enable) {
         _enableRpcsecGss = enable;
     }
@@ -419,19 +428,29 @@ public class NFSv41Door extends AbstractCellComponent implements
         _clientStore = clientStore;
     }
 
-    public VirtualFileSystem wrapWithMonitoring(VirtualFileSystem inner) {
+    public VirtualFileSystem wrapWithMonitoring(VirtualFileSystem inner, EventReceiver receiver) {
         MonitoringVfs monitor = new MonitoringVfs();
         monitor.setInner(inner);
         monitor.setFileSystemProvider(_fileFileSystemProvider);
-        monitor.setEventReceiver(_eventNotifier);
+        monitor.setEventReceiver(receiver);
         return monitor;
     }
 
     public void init() throws Exception {
 
         _chimeraVfs = new ChimeraVfs(_fileFileSystemProvider, _idMapper);
-        _vfsCache = new VfsCache(_chimeraVfs, _vfsCacheConfig);
-        _vfs = _eventNotifier == null ? _vfsCache : wrapWithMonitoring(_vfsCache);
+        _vfsCache = new CoherentVfsCache(_chimeraVfs, _chimeraVfs, _vfsCacheConfig);
+
+        List<EventReceiver> receivers = new ArrayList<>();
+        if (_eventNotifier != null) {
+            receivers.add(_eventNotifier);
+        }
+        if (_namespaceChangePublisher != null) {
+            receivers.add(_namespaceChangePublisher);
+        }
+        _vfs = receivers.isEmpty()
+                ? _vfsCache
+                : wrapWithMonitoring(_vfsCache, new MulticastEventReceiver(receivers));
 
 
 
@@ -600,6 +619,12 @@ public class NFSv41Door extends AbstractCellComponent implements
         return message;
     }
 
+    public void messageArrived(NamespaceChangedNotificationMessage message) {
+        if (_vfsCache != null) {
+            _vfsCache.invalidate(message);
+        }
+    }
+
     public void messageArrived(PoolStatusChangedMessage message) {
         if (message.getPoolState() == PoolStatusChangedMessage.DOWN) {
             _log.info("Pool disabled: {}", message.getPoolName());
@@ -925,6 +950,10 @@ public class NFSv41Door extends AbstractCellComponent implements
             pw.printf("  Active transfers        : %d\n", _transfers.values().size());
             pw.printf("  Known proxy adapters    : %d\n", _proxyIoFactory.getCount());
         }
+        if (_vfsCache != null) {
+            pw.println("  Namespace cache:");
+            _vfsCache.getInfo(pw);
+        }
     }
 
     @Override
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2021 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera.nfsv41.door;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.security.auth.Subject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diskCacheV111.namespace.NamespaceChangePublisher;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.NamespaceChangedNotificationMessage;
+
+import org.dcache.cells.CellStub;
+import org.dcache.chimera.FsFactory;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.namespace.FileType;
+import org.dcache.namespace.events.EventType;
+import org.dcache.nfs.util.UnixSubjects;
+import org.dcache.nfs.v4.NfsIdMapping;
+import org.dcache.nfs.vfs.DirectoryEntry;
+import org.dcache.nfs.vfs.DirectoryStream;
+import org.dcache.nfs.vfs.ForwardingFileSystem;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VfsCacheConfig;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Two NFS doors sharing one embedded Chimera database.  Each door has its own
+ * cache; changes made through one door must become visible through the other
+ * once the change notification has been delivered.
+ */
+public class CoherentVfsCacheTest
+{
+    private static final Subject USER = UnixSubjects.toSubject(1000, 1000);
+
+    /**
+     * Counts the requests that reach the database.
+     */
+    private static class CountingVfs extends ForwardingFileSystem
+    {
+        private final VirtualFileSystem inner;
+        private final AtomicInteger queries = new AtomicInteger();
+
+        CountingVfs(VirtualFileSystem inner)
+        {
+            this.inner = inner;
+        }
+
+        @Override
+        protected VirtualFileSystem delegate()
+        {
+            return inner;
+        }
+
+        @Override
+        public Inode lookup(Inode parent, String path) throws IOException
+        {
+            queries.incrementAndGet();
+            return super.lookup(parent, path);
+        }
+
+        @Override
+        public Stat getattr(Inode inode) throws IOException
+        {
+            queries.incrementAndGet();
+            return super.getattr(inode);
+        }
+
+        @Override
+        public DirectoryStream list(Inode inode, byte[] verifier, long cookie)
+                throws IOException
+        {
+            queries.incrementAndGet();
+            return super.list(inode, verifier, cookie);
+        }
+    }
+
+    private class Door
+    {
+        private final ChimeraVfs chimeraVfs;
+        private final CountingVfs counter;
+        private final CoherentVfsCache cache;
+        private final VirtualFileSystem vfs;
+
+        Door()
+        {
+            chimeraVfs = new ChimeraVfs(fs, mock(NfsIdMapping.class));
+            counter = new CountingVfs(chimeraVfs);
+            cache = new CoherentVfsCache(counter, chimeraVfs, config);
+
+            MonitoringVfs monitor = new MonitoringVfs();
+            monitor.setInner(cache);
+            monitor.setFileSystemProvider(fs);
+            monitor.setEventReceiver(publisher);
+            vfs = monitor;
+        }
+    }
+
+    private HikariDataSource dataSource;
+    private JdbcFs fs;
+    private VfsCacheConfig config;
+    private NamespaceChangePublisher publisher;
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Door> doors = new ArrayList<>();
+
+    private Door doorA;
+    private Door doorB;
+    private Inode dataDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dataSource = FsFactory.getDataSource("jdbc:hsqldb:mem:nfs-cache", "sa", "");
+        try (Connection conn = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(conn));
+            new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                    new ClassLoaderResourceAccessor(), database).update("");
+        }
+        fs = new JdbcFs(dataSource, new DataSourceTransactionManager(dataSource));
+        fs.mkdir("/data");
+
+        config = new VfsCacheConfig();
+        config.setMaxEntries(1000);
+        config.setLifeTime(1);
+        config.setTimeUnit(TimeUnit.HOURS);
+        config.setReaddirMaxEntries(100);
+        config.setReaddirLifeTime(1);
+        config.setReaddirLifeTimeUnit(TimeUnit.HOURS);
+        config.setFsStatLifeTime(1);
+        config.setFsStatTimeUnit(TimeUnit.HOURS);
+
+        CellStub topic = mock(CellStub.class);
+        willAnswer(i -> {
+                    NamespaceChangedNotificationMessage message = delivered(i.getArgument(0));
+                    doors.forEach(d -> d.cache.invalidate(message));
+                    return null;
+                }).given(topic).notify(any(Serializable.class));
+
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        given(executor.schedule(any(Runnable.class), anyLong(), any())).willAnswer(i -> {
+                    scheduled.add(i.getArgument(0));
+                    return mock(ScheduledFuture.class);
+                });
+
+        publisher = new NamespaceChangePublisher();
+        publisher.setTopic(topic);
+        publisher.setExecutor(executor);
+        publisher.setDelay(100);
+        publisher.setDelayUnit(TimeUnit.MILLISECONDS);
+        publisher.setMaximumChanges(100);
+
+        doorA = new Door();
+        doorB = new Door();
+        doors.add(doorA);
+        doors.add(doorB);
+
+        dataDir = doorA.vfs.lookup(doorA.vfs.getRootInode(), "data");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.createStatement().execute("SHUTDOWN;");
+        }
+        dataSource.close();
+        fs.close();
+    }
+
+    /**
+     * Returns a copy of the message as received by a subscriber.
+     */
+    private static NamespaceChangedNotificationMessage delivered(Serializable message)
+            throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (NamespaceChangedNotificationMessage) in.readObject();
+        }
+    }
+
+    private void deliverNotifications()
+    {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private static List<String> namesIn(DirectoryStream stream)
+    {
+        List<String> names = new ArrayList<>();
+        for (DirectoryEntry entry : stream) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void shouldServeRepeatedRequestsFromCache() throws Exception
+    {
+        Inode file = doorA.vfs.create(dataDir, Stat.Type.REGULAR, "file", USER, 0644);
+        deliverNotifications();
+        int before = doorA.counter.queries.get();
+
+        for (int i = 0; i < 100; i++) {
+            Inode found = doorA.vfs.lookup(dataDir, "file");
+            doorA.vfs.getattr(found);
+            doorA.vfs.list(dataDir, new byte[8], 0);
+        }
+
+        assertThat(doorA.counter.queries.get() - before, is(lessThanOrEqualTo(3)));
+        assertThat(doorA.cache.getStatHits(), is(greaterThanOrEqualTo(99L)));
+        assertThat(doorA.vfs.getattr(file).getMode() & 0777, is(0644));
+    }
+
+    @Test
+    public void shouldSeeEntryCreatedThroughOtherDoor() throws Exception
+    {
+        assertThat(namesIn(doorA.vfs.list(dataDir, new byte[8], 0)), is(empty()));
+
+        doorB.vfs.create(dataDir, Stat.Type.REGULAR, "new-file", USER, 0644);
+        deliverNotifications();
+
+        assertThat(namesIn(doorA.vfs.list(dataDir, new byte[8], 0)), hasItem("new-file"));
+        assertThat(doorA.cache.getRemoteInvalidations(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void shouldSeeAttributesChangedThroughOtherDoor() throws Exception
+    {
+        Inode file = doorB.vfs.create(dataDir, Stat.Type.REGULAR, "file", USER, 0644);
+        deliverNotifications();
+        Inode fileA = doorA.vfs.lookup(dataDir, "file");
+        assertThat(doorA.vfs.getattr(fileA).getMode() & 0777, is(0644));
+
+        Stat update = new Stat();
+        update.setMode(0600);
+        doorB.vfs.setattr(file, update);
+
+        assertThat(doorA.vfs.getattr(fileA).getMode() & 0777, is(0644));
+
+        deliverNotifications();
+
+        assertThat(doorA.vfs.getattr(fileA).getMode() & 0777, is(0600));
+    }
+
+    @Test
+    public void shouldNotFindEntryRemovedThroughOtherDoor() throws Exception
+    {
+        doorB.vfs.create(dataDir, Stat.Type.REGULAR, "file", USER, 0644);
+        deliverNotifications();
+        doorA.vfs.lookup(dataDir, "file");
+
+        doorB.vfs.remove(dataDir, "file");
+        deliverNotifications();
+
+        assertThat(namesIn(doorA.vfs.list(dataDir, new byte[8], 0)), not(hasItem("file")));
+        try {
+            doorA.vfs.lookup(dataDir, "file");
+            throw new AssertionError("lookup of removed file succeeded");
+        } catch (org.dcache.nfs.status.NoEntException expected) {
+        }
+    }
+
+    @Test
+    public void shouldSeeChangesAnnouncedByPnfsManager() throws Exception
+    {
+        Inode file = doorA.vfs.create(dataDir, Stat.Type.REGULAR, "file", USER, 0644);
+        deliverNotifications();
+        assertThat(doorA.vfs.getattr(file).getMode() & 0777, is(0644));
+
+        FsInode inode = fs.path2inode("/data/file");
+        org.dcache.chimera.posix.Stat stat = new org.dcache.chimera.posix.Stat();
+        stat.setMode(0640);
+        fs.setInodeAttributes(inode, 0, stat);
+
+        /* As announced by MonitoringNameSpaceProvider in PnfsManager. */
+        publisher.notifySelfEvent(EventType.IN_ATTRIB, new PnfsId(inode.getId()), FileType.REGULAR);
+
+        assertThat(doorA.vfs.getattr(file).getMode() & 0777, is(0644));
+
+        deliverNotifications();
+
+        assertThat(doorA.vfs.getattr(file).getMode() & 0777, is(0640));
+    }
+
+    @Test
+    public void shouldDropEverythingOnOverflow() throws Exception
+    {
+        Inode file = doorA.vfs.create(dataDir, Stat.Type.REGULAR, "file", USER, 0644);
+        deliverNotifications();
+        doorA.vfs.getattr(file);
+        int before = doorA.counter.queries.get();
+
+        for (int i = 0; i <= 100; i++) {
+            publisher.notifySelfEvent(EventType.IN_ATTRIB, new PnfsId(String.format("%036X", i)),
+                                      FileType.REGULAR);
+        }
+        deliverNotifications();
+        doorA.vfs.getattr(file);
+
+        assertThat(doorA.counter.queries.get() - before, is(1));
+    }
+}
@@ -62,14 +62,13 @@ package org.dcache.resilience.data;
 import com.google.common.annotations.VisibleForTesting;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PnfsId;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -116,7 +115,9 @@ import org.dcache.vehicles.FileAttributes;
  *      terminated tasks, and to launch new tasks for eligible operations if
  *      there are slots available.</p>
  *
- * <p>Fairness is defined here as the availability of the first copy.
+ * <p>Waiting operations are prioritized by the number of tasks they still
+ *      require (for a file lacking replicas, the number missing).  Within
+ *      a priority, fairness is defined as the availability of the first copy.
  *      This means that operations are processed FIFO, but those requiring more
  *      than one copy or remove task are requeued after each task has completed
  *      successfully.</p>
@@ -127,9 +128,11 @@ import org.dcache.vehicles.FileAttributes;
  *      is balanced in proportion to the number of waiting operations on each
  *      queue.</p>
  *
- * <p>A periodic checkpointer, if on, writes out selected data from each
- *      operation entry.  In the case of crash and restart of this domain,
- *      the checkpoint file is reloaded into memory.</p>
+ * <p>A periodic checkpointer, if on, appends selected data from each
+ *      operation entry which has changed since the last checkpoint.  The
+ *      file is rewritten from the index only when it has grown well beyond
+ *      the number of live operations.  In the case of crash and restart of
+ *      this domain, the checkpoint file is reloaded into memory.</p>
  *
  * <p>Access to the index map is not synchronized, because
  *      it is implemented using a ConcurrentHashMap.  This is the most
@@ -138,7 +141,8 @@ import org.dcache.vehicles.FileAttributes;
  *      updating of operation state or settings in fact is done through
  *      an index read, since the necessary synchronization of those
  *      values is handled inside the operation object.  Only the initial
- *      queueing and cancellation requests require additional synchronization.</p>
+ *      registration and final removal of an operation require additional
+ *      synchronization.</p>
  *
  * <p>However, since index reads are not blocked, the list and count methods,
  *      which filter against the index (and not the queues), along with
@@ -155,6 +159,12 @@ public class FileOperationMap extends RunnableModule {
 
     private static final String COUNTS_FORMAT = "    %-24s %15s\n";
 
+    /**
+     * <p>Number of superseded records tolerated in the checkpoint file
+     *      before it is rewritten, independently of the map size.</p>
+     */
+    private static final long MIN_CHECKPOINT_REWRITE = 100000L;
+
     final class Checkpointer implements Runnable {
         long     last;
         long     expiry;
@@ -162,10 +172,32 @@ public class FileOperationMap extends RunnableModule {
         String   path;
         Thread   thread;
 
+        /**
+         * <p>Operations added, updated or removed since the last save.</p>
+         */
+        final Set<PnfsId> changed = ConcurrentHashMap.newKeySet();
+
+        /**
+         * <p>Number of records in the checkpoint file.</p>
+         */
+        long records;
+
         volatile boolean running        = false;
         volatile boolean resetInterrupt = false;
         volatile boolean runInterrupt   = false;
 
+        /**
+         * <p>Set when changes may have gone unrecorded, in which case
+         *      the next save rewrites the file.</p>
+         */
+        volatile boolean rewrite        = true;
+
+        void changed(PnfsId pnfsId) {
+            if (running) {
+                changed.add(pnfsId);
+            }
+        }
+
         public void run() {
             running = true;
 
@@ -195,14 +227,45 @@ public class FileOperationMap extends RunnableModule {
             }
         }
 
+        void stop() {
+            running = false;
+            rewrite = true;
+            changed.clear();
+        }
+
         /**
-         * Writes out data from the operation map to the checkpoint file.
+         * <p>Appends the changed operations to the checkpoint file.</p>
+         *
+         * <p>The file is instead rewritten from the index if it does not
+         *      exist, if changes may have been missed, or if it holds more
+         *      than twice the number of live operations (plus a margin,
+         *      so that small maps are not rewritten at every pass).</p>
          */
         @VisibleForTesting
         void save() {
             long start = System.currentTimeMillis();
-            long count = CheckpointUtils.save(path, poolInfoMap,
-                                              index.values().iterator());
+            long count;
+            if (rewrite || !new File(path).exists()
+                            || records > 2 * index.size() + MIN_CHECKPOINT_REWRITE) {
+                /*
+                 *  Clear before iterating, so that changes made
+                 *  during the rewrite are appended next time.
+                 */
+                rewrite = !running;
+                changed.clear();
+                count = CheckpointUtils.save(path, poolInfoMap,
+                                             index.values().iterator());
+                records = count;
+            } else {
+                Collection<PnfsId> pnfsIds = new ArrayList<>();
+                for (Iterator<PnfsId> i = changed.iterator(); i.hasNext(); ) {
+                    pnfsIds.add(i.next());
+                    i.remove();
+                }
+                count = CheckpointUtils.append(path, poolInfoMap,
+                                               pnfsIds, index);
+                records += count;
+            }
             last = System.currentTimeMillis();
             counters.recordCheckpoint(last, last - start, count);
         }
@@ -212,8 +275,7 @@ public class FileOperationMap extends RunnableModule {
      * <p>Handles canceled operations.</p>
      *
      * <p>Searches the running queue to see which operations have completed.
-     *      Merges these with any cancelled operations.  It then appends
-     *      the incoming operations to the foreground/background queues.</p>
+     *      Merges these with any cancelled operations.</p>
      *
      * <p>Post-processing determines whether the operation can be permanently
      *      removed or needs to be requeued.</p>
@@ -222,7 +284,6 @@ public class FileOperationMap extends RunnableModule {
         private Collection<FileOperation> toProcess = new ArrayList<>();
 
         void processTerminated() {
-            appendIncoming();
             gatherTerminated();
             gatherCanceled();
 
@@ -238,23 +299,6 @@ public class FileOperationMap extends RunnableModule {
             toProcess.clear();
         }
 
-        private void appendIncoming() {
-            synchronized (incoming) {
-                while (true) {
-                    try {
-                        FileOperation operation = incoming.remove();
-                        if (operation.isBackground()) {
-                            background.addLast(operation);
-                        } else {
-                            foreground.addLast(operation);
-                        }
-                    } catch (NoSuchElementException e) {
-                        break;
-                    }
-                }
-            }
-        }
-
         /**
          *  <p>This is a potentially expensive operation (O[n] in the
          *     queue size), but should be called relatively infrequently.</p>
@@ -275,6 +319,15 @@ public class FileOperationMap extends RunnableModule {
             }
         }
 
+        private void cancel(FileOperationQueue queue,
+                            Collection<FileMatcher> filters,
+                            Collection<FileOperation> toProcess) {
+            queue.remove(operation -> filters.stream()
+                                             .anyMatch(f -> f.matches(operation, poolInfoMap)
+                                                             && cancel(operation, f.isForceRemoval())),
+                         toProcess);
+        }
+
         private boolean cancel(FileOperation operation, boolean remove) {
             if (operation.cancelCurrent()) {
                 if (remove) {
@@ -293,6 +346,10 @@ public class FileOperationMap extends RunnableModule {
                 cancelFilters.clear();
             }
 
+            if (filters.isEmpty()) {
+                return;
+            }
+
             cancel(running, filters, toProcess);
             cancel(foreground, filters, toProcess);
             cancel(background, filters, toProcess);
@@ -423,7 +480,8 @@ public class FileOperationMap extends RunnableModule {
              *  it is about to be removed, thus incrementing the count
              *  on this object instead of adding a fresh instance
              */
-            synchronized (incoming) {
+            synchronized (registration) {
+                checkpointer.changed(operation.getPnfsId());
                 if (operation.getOpCount() > 0) {
                     operation.resetOperation();
                     restore(operation, retry);
@@ -499,7 +557,7 @@ public class FileOperationMap extends RunnableModule {
          * <p>Dequeues up to the indicated number of operations and submits
          *      them.</p>
          */
-        private long promoteToRunning(Queue<FileOperation> queue, long limit) {
+        private long promoteToRunning(FileOperationQueue queue, long limit) {
             for (int i = 0; i < limit; i++) {
                 FileOperation operation = queue.poll();
                 if (operation == null) {
@@ -540,27 +598,31 @@ public class FileOperationMap extends RunnableModule {
     final Map<PnfsId, FileOperation> index = new ConcurrentHashMap<>();
 
     /**
-     *  <p>These queues are entirely used by the consumer thread. Hence
-     *      there is no need for synchronization on any of them.</p>
+     *  <p>The waiting queues are concurrent; new operations are added
+     *      directly by the handler threads, while the consumer thread
+     *      polls them and requeues operations.</p>
      *
-     *  <p>The order for election to run is FIFO.  The operation is
-     *      removed from these waiting queues and added to running;
-     *      an attempt at fairness is made by appending it back to
-     *      these queues when it successfully terminates, if more work
-     *      is to be done, but to restoring it to the head of the
-     *      queue if there is a retriable failure.</p>
+     *  <p>The order for election to run is by priority, then FIFO.
+     *      The operation is removed from these waiting queues and added
+     *      to running; an attempt at fairness is made by appending it back
+     *      to these queues when it successfully terminates, if more work
+     *      is to be done, but to restoring it to the head of its priority
+     *      if there is a retriable failure.</p>
+     */
+    final FileOperationQueue foreground = new FileOperationQueue();
+    final FileOperationQueue background = new FileOperationQueue();
+
+    /**
+     *  <p>Used only by the consumer thread, and bounded by the
+     *      number of copy threads.</p>
      */
-    final Deque<FileOperation> foreground = new LinkedList<>();
-    final Deque<FileOperation> background = new LinkedList<>();
     final Queue<FileOperation> running    = new LinkedList<>();
 
     /**
-     *  <p>Queue of incoming/ready operations.  This buffer is
-     *       shared between the handler and consumer threads, to avoid
-     *       synchronizing the internal queues.  The incoming operations
-     *       are appended to the latter during the consumer scan.</p>
+     *  <p>Serializes the registration of a new operation with its
+     *       removal from the index by the consumer.</p>
      */
-    final Queue<FileOperation> incoming = new LinkedList<>();
+    final Object registration = new Object();
 
     /**
      *  <p>List of filters for cancelling operations.  This buffer is
@@ -790,6 +852,7 @@ public class FileOperationMap extends RunnableModule {
      *    Interrupts the thread so that it resumes with the new settings.</p>
      */
     public void reset() {
+        checkpointer.rewrite = true;
         if (isCheckpointingOn()) {
             checkpointer.resetInterrupt = true;
             checkpointer.thread.interrupt();
@@ -939,7 +1002,7 @@ public class FileOperationMap extends RunnableModule {
     }
 
     public void stopCheckpointer() {
-        checkpointer.running = false;
+        checkpointer.stop();
         if (checkpointer.thread != null) {
             checkpointer.thread.interrupt();
         }
@@ -963,6 +1026,8 @@ public class FileOperationMap extends RunnableModule {
         if (target != null) {
             operation.setTarget(poolInfoMap.getPoolIndex(target));
         }
+
+        checkpointer.changed(pnfsId);
     }
 
     /**
@@ -1023,7 +1088,9 @@ public class FileOperationMap extends RunnableModule {
     }
 
     private boolean add(PnfsId pnfsId, FileOperation operation) {
-        synchronized (incoming) {
+        synchronized (registration) {
+            checkpointer.changed(pnfsId);
+
             FileOperation present = index.get(pnfsId);
 
             if (present != null) {
@@ -1032,7 +1099,11 @@ public class FileOperationMap extends RunnableModule {
             }
 
             index.put(pnfsId, operation);
-            incoming.add(operation);
+            if (operation.isBackground()) {
+                background.addLast(operation);
+            } else {
+                foreground.addLast(operation);
+            }
         }
 
         signalAll();
@@ -1049,9 +1120,6 @@ public class FileOperationMap extends RunnableModule {
         background.clear();
         running.clear();
         cancelFilters.clear();
-        synchronized (incoming) {
-            incoming.clear();
-        }
         index.clear();
     }
 
@@ -0,0 +1,154 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.resilience.data;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * <p>Queue of operations waiting to run.</p>
+ *
+ * <p>Operations are ordered first by the number of tasks they still
+ *      require, which for a file lacking replicas is the number missing,
+ *      so that the files at greatest risk are handled first.  Operations
+ *      of the same priority are FIFO, except that those restored after a
+ *      retriable failure go to the head of their priority.</p>
+ *
+ * <p>The priority is fixed when the operation is queued; a count incremented
+ *      while the operation waits takes effect when it is requeued.</p>
+ *
+ * <p>The queue is safe for concurrent use, so that producers may add
+ *      operations directly while the consumer polls.  Adding and polling
+ *      are O(log n).</p>
+ */
+final class FileOperationQueue {
+    private static final class Entry implements Comparable<Entry> {
+        final FileOperation operation;
+        final int           priority;
+        final long          sequence;
+
+        Entry(FileOperation operation, long sequence) {
+            this.operation = operation;
+            this.priority = operation.getOpCount();
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Integer.compare(other.priority, priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+
+    /*
+     *  Appended entries take increasing positive sequence numbers,
+     *  entries restored to the head decreasing negative ones.
+     */
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    void addFirst(FileOperation operation) {
+        queue.add(new Entry(operation, head.decrementAndGet()));
+    }
+
+    void addLast(FileOperation operation) {
+        queue.add(new Entry(operation, tail.incrementAndGet()));
+    }
+
+    void clear() {
+        queue.clear();
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    FileOperation poll() {
+        Entry entry = queue.poll();
+        return entry == null ? null : entry.operation;
+    }
+
+    /**
+     * <p>Removes the operations accepted by the filter.  This is O(n),
+     *      but is only used for cancellation.</p>
+     *
+     * @param filter which may also act on the operation.
+     * @param removed to which the removed operations are added.
+     */
+    void remove(Predicate<FileOperation> filter,
+                Collection<FileOperation> removed) {
+        for (Iterator<Entry> i = queue.iterator(); i.hasNext(); ) {
+            FileOperation operation = i.next().operation;
+            if (filter.test(operation)) {
+                i.remove();
+                removed.add(operation);
+            }
+        }
+    }
+
+    int size() {
+        return queue.size();
+    }
+}
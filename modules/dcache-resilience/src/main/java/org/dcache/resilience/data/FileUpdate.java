@@ -266,6 +266,14 @@ public final class FileUpdate {
         return type == POOL_STATUS_DOWN || type == POOL_STATUS_UP;
     }
 
+    /**
+     * <p>Used by the pool scan, which reads the attributes of the file
+     *      together with its pnfsid.</p>
+     */
+    public void setAttributes(FileAttributes attributes) {
+        this.attributes = attributes;
+    }
+
     public void setCount(Integer count) {
         this.count = count;
     }
@@ -69,20 +69,32 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import diskCacheV111.namespace.NameSpaceProvider;
+import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.FileNotFoundCacheException;
 import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
 
 import org.dcache.auth.Subjects;
 import org.dcache.chimera.BackEndErrorHimeraFsException;
 import org.dcache.chimera.IOHimeraFsException;
+import org.dcache.chimera.StorageGenericLocation;
+import org.dcache.namespace.FileAttribute;
 import org.dcache.resilience.data.FileOperationMap;
 import org.dcache.resilience.data.FileUpdate;
 import org.dcache.resilience.data.MessageType;
@@ -114,6 +126,22 @@ public class LocalNamespaceAccess implements NamespaceAccess {
                                     + "AND l.itype = 1 AND n.iaccess_latency = 1 "
                                     + "AND l.ilocation = ?";
 
+    static final String SQL_GET_ONLINE_WITH_ATTRIBUTES_FOR_LOCATION
+                    = "SELECT n.inumber, n.ipnfsid, n.isize, n.iatime, "
+                                    + "n.iaccess_latency, n.iretention_policy "
+                                    + "FROM t_locationinfo l, t_inodes n "
+                                    + "WHERE l.inumber = n.inumber "
+                                    + "AND l.itype = 1 AND n.iaccess_latency = 1 "
+                                    + "AND l.ilocation = ?";
+
+    static final String SQL_GET_LOCATIONS_FOR_INODES
+                    = "SELECT inumber, itype, ilocation FROM t_locationinfo "
+                                    + "WHERE itype IN (0, 1) AND inumber IN (%s)";
+
+    static final String SQL_GET_PARENTS_FOR_INODES
+                    = "SELECT ichild, iparent FROM t_dirs "
+                                    + "WHERE ichild IN (%s)";
+
     static final String SQL_GET_CONTAINED_IN
                     = "SELECT n.ipnfsid FROM t_locationinfo l, t_inodes n "
                                     + "WHERE n.inumber = l.inumber "
@@ -124,6 +152,49 @@ public class LocalNamespaceAccess implements NamespaceAccess {
                                     + "AND n.inumber = n1.inumber "
                                     + "AND l1.ilocation NOT IN (%s))";
 
+    /**
+     * <p>Attributes which depend on the storage info extractor and
+     *      directory tags and thus cannot be read from the inode table.</p>
+     */
+    private static final Set<FileAttribute> STORAGE_ATTRIBUTES
+                    = Collections.unmodifiableSet(EnumSet.of(FileAttribute.STORAGECLASS,
+                                                             FileAttribute.HSM));
+
+    /**
+     * <p>Number of files per batch when the fetch size is not set.</p>
+     */
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * <p>Maximum number of directories for which the storage class
+     *      and hsm are remembered during a scan.</p>
+     */
+    private static final int MAX_CACHED_DIRECTORIES = 10_000;
+
+    /**
+     * <p>A file returned by the scan query, together with what the
+     *      batch queries found out about its locations and links.</p>
+     */
+    private static class ScannedFile {
+        final FileAttributes attributes;
+        boolean onTape;
+        long parent;
+        int links;
+
+        ScannedFile(FileAttributes attributes) {
+            this.attributes = attributes;
+        }
+
+        /**
+         * <p>A file without tape locations and with a single link
+         *      derives its storage class and hsm from the tags of its
+         *      directory alone.</p>
+         */
+        boolean isStorageInfoInherited() {
+            return !onTape && links == 1;
+        }
+    }
+
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalNamespaceAccess.class);
 
     /**
@@ -273,19 +344,25 @@ public class LocalNamespaceAccess implements NamespaceAccess {
      *      have access latency = ONLINE.  These are sent one-by-one to the
      *      {@link FileOperationHandler} to either create or update a
      *      corresponding entry in the {@link FileOperationMap}.</p>
+     *
+     * <p>The size, access time, access latency and retention policy are
+     *      read together with the pnfsid.  The rows are collected into
+     *      batches bounded by the fetch size, and the locations of all
+     *      files in a batch are then read with a single query.  Only the
+     *      storage class and hsm are requested from the namespace.  As
+     *      most files derive these from the tags of their directory, they
+     *      are requested once per directory and remembered for the
+     *      remainder of the scan.</p>
      */
     private void handleQuery(Connection connection, ScanSummary scan)
                     throws SQLException, CacheException {
         PreparedStatement statement = null;
         ResultSet resultSet = null;
         String pool = scan.getPool();
-        MessageType type = scan.getType();
-        Integer group = scan.getGroup();
-        Integer storageUnit = scan.getStorageUnit();
-        boolean full = scan.isForced();
+        int batchSize = fetchSize > 0 ? fetchSize : DEFAULT_BATCH_SIZE;
 
         try {
-            statement = connection.prepareStatement(SQL_GET_ONLINE_FOR_LOCATION);
+            statement = connection.prepareStatement(SQL_GET_ONLINE_WITH_ATTRIBUTES_FOR_LOCATION);
             statement.setString(1, pool);
             statement.setFetchSize(fetchSize);
             if (scan.isCancelled()) {
@@ -294,17 +371,105 @@ public class LocalNamespaceAccess implements NamespaceAccess {
 
             resultSet = statement.executeQuery();
 
+            Map<Long, FileAttributes> directories
+                            = new LinkedHashMap<Long, FileAttributes>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, FileAttributes> eldest) {
+                    return size() > MAX_CACHED_DIRECTORIES;
+                }
+            };
+
+            Map<Long, ScannedFile> batch = new LinkedHashMap<>();
             while (resultSet.next() && !scan.isCancelled()) {
-                PnfsId pnfsId = new PnfsId(resultSet.getString(1));
-                FileUpdate data = new FileUpdate(pnfsId, pool, type, group, full);
-                try {
-                    LOGGER.debug("checking {}, {}.", pool, pnfsId);
-                    if (handler.handleScannedLocation(data, storageUnit)) {
-                        scan.incrementCount();
-                    }
-                    LOGGER.debug("after checking {}, {}, count is {}.", pool, pnfsId, scan.getCount());
-                } catch (CacheException e) {
-                    LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+                batch.put(resultSet.getLong(1), new ScannedFile(toAttributes(resultSet)));
+                if (batch.size() == batchSize) {
+                    handleBatch(connection, batch, directories, scan);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty() && !scan.isCancelled()) {
+                handleBatch(connection, batch, directories, scan);
+            }
+        } finally {
+            tryToClose(resultSet);
+            tryToClose(statement);
+        }
+    }
+
+    private void handleBatch(Connection connection,
+                             Map<Long, ScannedFile> batch,
+                             Map<Long, FileAttributes> directories,
+                             ScanSummary scan)
+                    throws SQLException {
+        String pool = scan.getPool();
+        MessageType type = scan.getType();
+        Integer group = scan.getGroup();
+        Integer storageUnit = scan.getStorageUnit();
+        boolean full = scan.isForced();
+
+        addLocations(connection, batch);
+        addParents(connection, batch);
+
+        for (ScannedFile file : batch.values()) {
+            if (scan.isCancelled()) {
+                return;
+            }
+
+            FileAttributes attributes = file.attributes;
+            PnfsId pnfsId = attributes.getPnfsId();
+            FileUpdate data = new FileUpdate(pnfsId, pool, type, group, full);
+            try {
+                if (attributes.getLocations().isEmpty()) {
+                    LOGGER.debug("{} no longer has locations; it has likely "
+                                                 + "been deleted from the "
+                                                 + "namespace.", pnfsId);
+                    continue;
+                }
+
+                if (attributes.isDefined(FileAttribute.RETENTION_POLICY)
+                                && attributes.isDefined(FileAttribute.ACCESS_TIME)) {
+                    data.setAttributes(withStorageAttributes(file, directories));
+                }
+
+                LOGGER.debug("checking {}, {}.", pool, pnfsId);
+                if (handler.handleScannedLocation(data, storageUnit)) {
+                    scan.incrementCount();
+                }
+                LOGGER.debug("after checking {}, {}, count is {}.", pool, pnfsId, scan.getCount());
+            } catch (FileNotFoundCacheException e) {
+                LOGGER.debug("{}; {} has likely been deleted from the namespace.",
+                             e.getMessage(), pnfsId);
+            } catch (CacheException e) {
+                LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+            }
+        }
+    }
+
+    /**
+     * <p>Reads the disk locations of all files in the batch, and
+     *      notes which files also have tape locations.</p>
+     */
+    private void addLocations(Connection connection,
+                              Map<Long, ScannedFile> batch)
+                    throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = prepareBatchStatement(connection,
+                                              SQL_GET_LOCATIONS_FOR_INODES,
+                                              batch);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                ScannedFile file = batch.get(resultSet.getLong(1));
+                if (file == null) {
+                    continue;
+                }
+                if (resultSet.getInt(2) == StorageGenericLocation.DISK) {
+                    file.attributes.getLocations().add(resultSet.getString(3));
+                } else {
+                    file.onTape = true;
                 }
             }
         } finally {
@@ -313,6 +478,98 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         }
     }
 
+    /**
+     * <p>Reads the directories linking to the files in the batch.</p>
+     */
+    private void addParents(Connection connection,
+                            Map<Long, ScannedFile> batch)
+                    throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = prepareBatchStatement(connection,
+                                              SQL_GET_PARENTS_FOR_INODES,
+                                              batch);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                ScannedFile file = batch.get(resultSet.getLong(1));
+                if (file != null) {
+                    file.parent = resultSet.getLong(2);
+                    file.links++;
+                }
+            }
+        } finally {
+            tryToClose(resultSet);
+            tryToClose(statement);
+        }
+    }
+
+    private static PreparedStatement prepareBatchStatement(Connection connection,
+                                                           String query,
+                                                           Map<Long, ScannedFile> batch)
+                    throws SQLException {
+        String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+        PreparedStatement statement = connection.prepareStatement(
+                        String.format(query, placeholders));
+        try {
+            int i = 1;
+            for (Long inumber : batch.keySet()) {
+                statement.setLong(i++, inumber);
+            }
+        } catch (SQLException e) {
+            tryToClose(statement);
+            throw e;
+        }
+        return statement;
+    }
+
+    /**
+     * <p>The access time and retention policy are left undefined if
+     *      the inode does not record them, in which case the file handler
+     *      falls back to fetching all attributes from the namespace.</p>
+     */
+    private static FileAttributes toAttributes(ResultSet resultSet)
+                    throws SQLException {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(new PnfsId(resultSet.getString(2)));
+        attributes.setSize(resultSet.getLong(3));
+        Timestamp accessTime = resultSet.getTimestamp(4);
+        if (accessTime != null) {
+            attributes.setAccessTime(accessTime.getTime());
+        }
+        attributes.setAccessLatency(AccessLatency.getAccessLatency(resultSet.getInt(5)));
+        int retentionPolicy = resultSet.getInt(6);
+        if (!resultSet.wasNull()) {
+            attributes.setRetentionPolicy(RetentionPolicy.getRetentionPolicy(retentionPolicy));
+        }
+        attributes.setLocations(new ArrayList<>());
+        return attributes;
+    }
+
+    private FileAttributes withStorageAttributes(ScannedFile file,
+                                                 Map<Long, FileAttributes> directories)
+                    throws CacheException {
+        FileAttributes attributes = file.attributes;
+        FileAttributes storage = file.isStorageInfoInherited()
+                        ? directories.get(file.parent) : null;
+        if (storage == null) {
+            storage = namespace.getFileAttributes(Subjects.ROOT,
+                                                  attributes.getPnfsId(),
+                                                  STORAGE_ATTRIBUTES);
+            if (file.isStorageInfoInherited()) {
+                directories.put(file.parent, storage);
+            }
+        }
+        if (storage.isDefined(FileAttribute.STORAGECLASS)) {
+            attributes.setStorageClass(storage.getStorageClass());
+        }
+        if (storage.isDefined(FileAttribute.HSM)) {
+            attributes.setHsm(storage.getHsm());
+        }
+        return attributes;
+    }
+
     /**
      * <p>Used by the inaccessible file query.</p>
      *
@@ -305,7 +305,8 @@ public class FileOperationHandler implements CellMessageSender {
      * <p>If the entry is already in the current map, its count is incremented.</p>
      *
      * <p>All attributes of the file that are necessary for resilience
-     *      processing are then fetched.  Preliminary checks run for disqualifying
+     *      processing are then fetched, unless the scan has already provided
+     *      them.  Preliminary checks run for disqualifying
      *      conditions here include whether this is a storage unit modification,
      *      in which case the task is registered if the file has the storage unit
      *      in question. Otherwise, verification proceeds as in the
@@ -318,9 +319,10 @@ public class FileOperationHandler implements CellMessageSender {
         LOGGER.debug("handleScannedLocation {}", data);
 
         /*
-         * Prefetch all necessary file attributes, including current locations.
+         * Prefetch all necessary file attributes, including current locations,
+         * if these were not read together with the pnfsid by the scan.
          */
-        if (!data.validateAttributes(namespace)) {
+        if (data.getAttributes() == null && !data.validateAttributes(namespace)) {
             /*
              * Could be the result of deletion from namespace during the scan.
              */
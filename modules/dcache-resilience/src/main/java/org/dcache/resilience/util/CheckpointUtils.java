@@ -73,6 +73,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -93,7 +94,10 @@ import org.dcache.resilience.handlers.FileOperationHandler;
  *      is not efficient, with large writes (of 1M records or more) taking
  *      on the order of 45 minutes to an hour to complete.</p>
  *
- * <p>This implementation writes out a simple CDL to a text file.</p>
+ * <p>This implementation writes out a simple CDL to a text file.  The file
+ *      is append-only between rewrites:  a later record for a pnfsid
+ *      supersedes an earlier one, and a record consisting of the pnfsid
+ *      alone marks the operation as removed.</p>
  *
  * <p>Also includes load and save methods for recording excluded pools.</p>
  *
@@ -142,11 +146,24 @@ public final class CheckpointUtils {
         current.renameTo(reload);
 
         try (BufferedReader fr = new BufferedReader(new FileReader(reload))) {
+            Map<String, String> records = new LinkedHashMap<>();
             while (pnfsMap.isRunning()) {
                 String line = fr.readLine();
                 if (line == null) {
                     break;
                 }
+                int comma = line.indexOf(',');
+                if (comma < 0) {
+                    records.remove(line);
+                } else {
+                    records.put(line.substring(0, comma), line);
+                }
+            }
+
+            for (String line : records.values()) {
+                if (!pnfsMap.isRunning()) {
+                    break;
+                }
                 try {
                     FileUpdate update = fromString(line, poolInfoMap);
                     if (update != null) {
@@ -240,6 +257,43 @@ public final class CheckpointUtils {
         return count.get();
     }
 
+    /**
+     * <p>Appends the current record of each of the given operations, or
+     *      a removal record if the operation is no longer in the index.</p>
+     *
+     * @param checkpointFilePath where to write.
+     * @param poolInfoMap for translation of indices to names.
+     * @param pnfsIds of the operations which have changed.
+     * @param index of the current operations.
+     * @return number of records written
+     */
+    public static long append(String checkpointFilePath, PoolInfoMap poolInfoMap,
+                              Collection<PnfsId> pnfsIds,
+                              Map<PnfsId, FileOperation> index) {
+        long count = 0;
+        StringBuilder builder = new StringBuilder();
+
+        try (PrintWriter fw = new PrintWriter(new FileWriter(checkpointFilePath, true))) {
+            for (PnfsId pnfsId : pnfsIds) {
+                FileOperation operation = index.get(pnfsId);
+                if (operation == null || !toString(operation, builder, poolInfoMap)) {
+                    builder.setLength(0);
+                    builder.append(pnfsId);
+                }
+                fw.println(builder.toString());
+                builder.setLength(0);
+                ++count;
+            }
+        } catch (FileNotFoundException e) {
+            LOGGER.error("Unable to append to checkpoint file: {}", e.getMessage());
+        } catch (IOException e) {
+            LOGGER.error("Unrecoverable error during append to checkpoint file: {}",
+                            e.getMessage());
+        }
+
+        return count;
+    }
+
     /**
      * <p>Save the excluded pool names to a file.</p>
      *
@@ -304,13 +358,17 @@ public final class CheckpointUtils {
      */
     private static FileUpdate fromString(String line, PoolInfoMap map) {
         String[] parts = line.split("[,]");
-        if (parts.length != 5) {
+        /*
+         *  Older files carry an additional field after the pnfsid.
+         */
+        int offset = parts.length - 4;
+        if (offset != 0 && offset != 1) {
             return null;
         }
         PnfsId pnfsId = new PnfsId(parts[0]);
-        int opCount = Integer.parseInt(parts[2]);
-        Integer gindex = map.getGroupIndex(parts[3]);
-        FileUpdate update = new FileUpdate(pnfsId, parts[4],
+        int opCount = Integer.parseInt(parts[1 + offset]);
+        Integer gindex = map.getGroupIndex(parts[2 + offset]);
+        FileUpdate update = new FileUpdate(pnfsId, parts[3 + offset],
                                            MessageType.ADD_CACHE_LOCATION,
                                            gindex, true);
         update.setCount(opCount);
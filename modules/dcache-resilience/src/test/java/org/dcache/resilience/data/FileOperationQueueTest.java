@@ -0,0 +1,141 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.resilience.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.chimera.InodeId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class FileOperationQueueTest {
+    FileOperationQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new FileOperationQueue();
+    }
+
+    @Test
+    public void shouldPollOperationsOfSamePriorityInOrder() {
+        FileOperation first = givenOperationWithCount(1);
+        FileOperation second = givenOperationWithCount(1);
+        queue.addLast(first);
+        queue.addLast(second);
+        assertEquals(first, queue.poll());
+        assertEquals(second, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldPollOperationWithMoreMissingReplicasFirst() {
+        FileOperation one = givenOperationWithCount(1);
+        FileOperation two = givenOperationWithCount(2);
+        queue.addLast(one);
+        queue.addLast(two);
+        assertEquals(two, queue.poll());
+        assertEquals(one, queue.poll());
+    }
+
+    @Test
+    public void shouldPollRestoredOperationBeforeOthersOfSamePriority() {
+        FileOperation first = givenOperationWithCount(1);
+        FileOperation retried = givenOperationWithCount(1);
+        queue.addLast(first);
+        queue.addFirst(retried);
+        assertEquals(retried, queue.poll());
+        assertEquals(first, queue.poll());
+    }
+
+    @Test
+    public void shouldNotPollRestoredOperationBeforeHigherPriority() {
+        FileOperation two = givenOperationWithCount(2);
+        FileOperation retried = givenOperationWithCount(1);
+        queue.addLast(two);
+        queue.addFirst(retried);
+        assertEquals(two, queue.poll());
+        assertEquals(retried, queue.poll());
+    }
+
+    @Test
+    public void shouldRemoveOnlyMatchingOperations() {
+        FileOperation one = givenOperationWithCount(1);
+        FileOperation two = givenOperationWithCount(2);
+        queue.addLast(one);
+        queue.addLast(two);
+        Collection<FileOperation> removed = new ArrayList<>();
+        queue.remove(o -> o == one, removed);
+        assertEquals(1, queue.size());
+        assertTrue(removed.contains(one));
+        assertEquals(two, queue.poll());
+    }
+
+    private FileOperation givenOperationWithCount(int count) {
+        return new FileOperation(new PnfsId(InodeId.newID(0)), count, 1L);
+    }
+}
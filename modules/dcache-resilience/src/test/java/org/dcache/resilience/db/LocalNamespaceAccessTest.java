@@ -0,0 +1,293 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+package org.dcache.resilience.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.StorageInfo;
+
+import org.dcache.auth.Subjects;
+import org.dcache.chimera.FileSystemProvider;
+import org.dcache.chimera.FsFactory;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.chimera.StorageGenericLocation;
+import org.dcache.chimera.namespace.ChimeraNameSpaceProvider;
+import org.dcache.chimera.namespace.ChimeraOsmStorageInfoExtractor;
+import org.dcache.chimera.store.InodeStorageInformation;
+import org.dcache.namespace.PosixPermissionHandler;
+import org.dcache.resilience.data.FileUpdate;
+import org.dcache.resilience.data.MessageType;
+import org.dcache.resilience.handlers.FileOperationHandler;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class LocalNamespaceAccessTest {
+    private static final String POOL = "pool1";
+
+    HikariDataSource dataSource;
+    FileSystemProvider fs;
+    ChimeraNameSpaceProvider namespace;
+    FileOperationHandler handler;
+    LocalNamespaceAccess access;
+    FsInode data;
+    FsInode other;
+    Map<PnfsId, FileAttributes> scanned;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = FsFactory.getDataSource("jdbc:hsqldb:mem:resilience", "sa", "");
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                            .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                          new ClassLoaderResourceAccessor(), database).update("");
+        }
+        fs = new JdbcFs(dataSource, new DataSourceTransactionManager(dataSource));
+
+        ChimeraNameSpaceProvider provider = new ChimeraNameSpaceProvider();
+        provider.setExtractor(new ChimeraOsmStorageInfoExtractor(StorageInfo.DEFAULT_ACCESS_LATENCY,
+                                                                 StorageInfo.DEFAULT_RETENTION_POLICY));
+        provider.setPermissionHandler(new PosixPermissionHandler());
+        provider.setAclEnabled(false);
+        provider.setFileSystem(fs);
+        namespace = spy(provider);
+
+        scanned = new HashMap<>();
+        handler = mock(FileOperationHandler.class);
+        when(handler.handleScannedLocation(any(), any())).thenAnswer(invocation -> {
+            FileUpdate update = invocation.getArgument(0);
+            scanned.put(update.pnfsId, update.getAttributes());
+            return true;
+        });
+
+        access = new LocalNamespaceAccess();
+        access.setConnectionPool(dataSource);
+        access.setNamespace(namespace);
+        access.setHandler(handler);
+
+        FsInode root = fs.path2inode("/");
+        data = givenADirectoryWithStorageGroup(root, "data", "disk");
+        other = givenADirectoryWithStorageGroup(root, "other", "replica");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().execute("SHUTDOWN;");
+        }
+        dataSource.close();
+        fs.close();
+    }
+
+    @Test
+    public void shouldReadAttributesAndLocationsWithScan() throws Exception {
+        FsInode file = givenAnOnlineFile(data, "file", POOL, "pool2");
+        whenPoolIsScanned();
+        FileAttributes attributes = scanned.get(pnfsIdOf(file));
+        assertEquals(4096L, attributes.getSize());
+        assertEquals(AccessLatency.ONLINE, attributes.getAccessLatency());
+        assertEquals(RetentionPolicy.REPLICA, attributes.getRetentionPolicy());
+        assertTrue(attributes.getAccessTime() > 0);
+        assertThat(attributes.getLocations(), containsInAnyOrder(POOL, "pool2"));
+        assertEquals("test:disk@osm", attributes.getStorageClass());
+        assertEquals("osm", attributes.getHsm());
+    }
+
+    @Test
+    public void shouldScanAllFilesWhenBatchIsSmallerThanPool() throws Exception {
+        access.setFetchSize(2);
+        givenAnOnlineFile(data, "file1", POOL);
+        givenAnOnlineFile(data, "file2", POOL);
+        givenAnOnlineFile(data, "file3", POOL);
+        givenAnOnlineFile(other, "file4", "pool2");
+        whenPoolIsScanned();
+        assertEquals(3, scanned.size());
+    }
+
+    @Test
+    public void shouldRequestStorageAttributesOncePerDirectory() throws Exception {
+        FsInode file1 = givenAnOnlineFile(data, "file1", POOL);
+        FsInode file2 = givenAnOnlineFile(data, "file2", POOL);
+        FsInode file3 = givenAnOnlineFile(other, "file3", POOL);
+        whenPoolIsScanned();
+        verify(namespace, times(2)).getFileAttributes(eq(Subjects.ROOT), any(), anySet());
+        assertEquals("test:disk@osm", scanned.get(pnfsIdOf(file1)).getStorageClass());
+        assertEquals("test:disk@osm", scanned.get(pnfsIdOf(file2)).getStorageClass());
+        assertEquals("test:replica@osm", scanned.get(pnfsIdOf(file3)).getStorageClass());
+    }
+
+    @Test
+    public void shouldRequestStorageAttributesOfFilesOnTapeIndividually() throws Exception {
+        FsInode file1 = givenAnOnlineFile(data, "file1", POOL);
+        FsInode file2 = givenAnOnlineFile(data, "file2", POOL);
+        givenFileIsOnTape(file2, "tape", "raw");
+        whenPoolIsScanned();
+        verify(namespace, times(2)).getFileAttributes(eq(Subjects.ROOT), any(), anySet());
+        assertEquals("test:disk@osm", scanned.get(pnfsIdOf(file1)).getStorageClass());
+        assertEquals("tape:raw@osm", scanned.get(pnfsIdOf(file2)).getStorageClass());
+        assertThat(scanned.get(pnfsIdOf(file2)).getLocations(), containsInAnyOrder(POOL));
+    }
+
+    @Test
+    public void shouldLeaveAttributesToHandlerWithoutAccessTime() throws Exception {
+        FsInode file = givenAnOnlineFile(data, "file", POOL);
+        givenFileHasNoAccessTime(file);
+        whenPoolIsScanned();
+        assertTrue(scanned.containsKey(pnfsIdOf(file)));
+        assertThat(scanned.get(pnfsIdOf(file)), nullValue());
+    }
+
+    @Test
+    public void shouldNotScanNearlineFiles() throws Exception {
+        FsInode file = givenAnOnlineFile(data, "file", POOL);
+        update("UPDATE t_inodes SET iaccess_latency = 0 WHERE inumber = ?", file.ino());
+        whenPoolIsScanned();
+        assertTrue(scanned.isEmpty());
+    }
+
+    private FsInode givenADirectoryWithStorageGroup(FsInode parent, String name, String group)
+                    throws Exception {
+        FsInode dir = fs.mkdir(parent, name);
+        setTag(dir, "OSMTemplate", "StoreName test");
+        setTag(dir, "sGroup", group);
+        return dir;
+    }
+
+    private FsInode givenAnOnlineFile(FsInode dir, String name, String... pools)
+                    throws Exception {
+        FsInode file = fs.createFile(dir, name);
+        update("UPDATE t_inodes SET isize = 4096, iaccess_latency = 1, "
+                               + "iretention_policy = 1 WHERE inumber = ?", file.ino());
+        for (String pool : pools) {
+            fs.addInodeLocation(file, StorageGenericLocation.DISK, pool);
+        }
+        return file;
+    }
+
+    private void givenFileIsOnTape(FsInode file, String store, String group)
+                    throws Exception {
+        fs.setStorageInfo(file, new InodeStorageInformation(file, "osm", store, group));
+        fs.addInodeLocation(file, StorageGenericLocation.TAPE,
+                            "osm://osm/?store=" + store + "&group=" + group + "&bfid=1");
+    }
+
+    private void givenFileHasNoAccessTime(FsInode file) throws SQLException {
+        update("ALTER TABLE t_inodes ALTER COLUMN iatime SET NULL");
+        update("UPDATE t_inodes SET iatime = NULL WHERE inumber = ?", file.ino());
+    }
+
+    private void whenPoolIsScanned() throws CacheException {
+        access.handlePnfsidsForPool(new ScanSummary(POOL, MessageType.POOL_STATUS_UP,
+                                                    null, null, true));
+    }
+
+    private PnfsId pnfsIdOf(FsInode inode) throws Exception {
+        return new PnfsId(inode.getId());
+    }
+
+    private void setTag(FsInode dir, String name, String value) throws Exception {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        fs.createTag(dir, name);
+        fs.setTag(dir, name, bytes, 0, bytes.length);
+    }
+
+    private void update(String sql, Object... arguments) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < arguments.length; i++) {
+                statement.setObject(i + 1, arguments[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+}
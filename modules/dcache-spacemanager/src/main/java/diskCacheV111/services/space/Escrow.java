@@ -0,0 +1,51 @@
+package diskCacheV111.services.space;
+
+/**
+ * A chunk of space taken from a space reservation.
+ *
+ * The escrowed space is accounted as allocated in the reservation. Files
+ * placed in the escrow are not accounted in the reservation individually
+ * until the escrow is reconciled, at which point the escrowed space is
+ * returned to the reservation and the files are accounted instead.
+ */
+public class Escrow
+{
+    private final long id;
+    private final long spaceId;
+    private final long sizeInBytes;
+    private final long creationTime;
+
+    public Escrow(long id, long spaceId, long sizeInBytes, long creationTime)
+    {
+        this.id = id;
+        this.spaceId = spaceId;
+        this.sizeInBytes = sizeInBytes;
+        this.creationTime = creationTime;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public long getSpaceId()
+    {
+        return spaceId;
+    }
+
+    public long getSizeInBytes()
+    {
+        return sizeInBytes;
+    }
+
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Escrow[id=" + id + ",space=" + spaceId + ",size=" + sizeInBytes + ']';
+    }
+}
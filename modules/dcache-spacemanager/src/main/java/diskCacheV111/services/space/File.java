@@ -14,6 +14,7 @@ public class File implements Serializable {
     private long creationTime;
 	private PnfsId pnfsId;
 	private FileState state;
+	private final Long escrowId;
 
 	public File(
 		long id,
@@ -23,7 +24,8 @@ public class File implements Serializable {
 		long sizeInBytes,
 		long creationTime,
 		PnfsId pnfsId,
-		FileState state
+		FileState state,
+		Long escrowId
 		) {
 		this.id = id;
 		this.voGroup = voGroup;
@@ -33,6 +35,7 @@ public class File implements Serializable {
 		this.creationTime = creationTime;
 		this.pnfsId = pnfsId;
 		this.state = state;
+		this.escrowId = escrowId;
 	}
 
 	public FileState getState() {
@@ -56,6 +59,14 @@ public class File implements Serializable {
 		return spaceId;
 	}
 
+	/**
+	 * Returns the id of the escrow the file is placed in, or null if the file
+	 * is accounted against its space reservation directly.
+	 */
+	public Long getEscrowId() {
+		return escrowId;
+	}
+
 	public long getSizeInBytes() {
 		return sizeInBytes;
 	}
@@ -17,6 +17,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -101,9 +102,21 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
      creationtime       | bigint                   | not null
      pnfsid             | character varying(36)    | unique
      state              | integer                  | not null
+     escrowid           | bigint                   |
     */
     private static final String SPACEFILE_TABLE = "srmspacefile";
 
+    /*
+                Table "public.srmspaceescrow"
+           Column       |           Type           | Modifiers
+    --------------------+--------------------------+-----------
+     id                 | bigint                   | not null
+     spacereservationid | bigint                   | not null
+     sizeinbytes        | bigint                   | not null
+     creationtime       | bigint                   | not null
+    */
+    private static final String ESCROW_TABLE = "srmspaceescrow";
+
     public void init() throws DataAccessException
     {
         insertRetentionPolicies();
@@ -520,23 +533,37 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
                            final FileState state)
             throws DataAccessException, SpaceException
     {
-        final long creationTime = System.currentTimeMillis();
-
         Space space = selectSpaceForUpdate(reservationId);
-        long currentTime = System.currentTimeMillis();
-        if (space.getExpirationTime() != null && space.getExpirationTime() <= currentTime) {
-            throw new SpaceExpiredException("space with id=" + reservationId + " has expired");
-        }
-        if (space.getState() == SpaceState.EXPIRED) {
-            throw new SpaceExpiredException("space with id=" + reservationId + " has expired");
-        }
-        if (space.getState() == SpaceState.RELEASED) {
-            throw new SpaceReleasedException("space with id=" + reservationId + " was released");
-        }
-        if (space.getAvailableSpaceInBytes() < sizeInBytes) {
-            throw new NoFreeSpaceException("space with id=" + reservationId + " does not have enough space");
-        }
+        checkAllocatable(space, sizeInBytes);
+        return insertFile(reservationId, null, voGroup, voRole, sizeInBytes, pnfsId, state);
+    }
+
+    @Override
+    public long insertFile(Escrow escrow,
+                           String voGroup,
+                           String voRole,
+                           long sizeInBytes,
+                           PnfsId pnfsId,
+                           FileState state)
+            throws DataAccessException, SpaceException
+    {
+        /* The space was checked to be available when the escrow was created, thus there is
+         * no need to lock the reservation. It may however have expired or been released since.
+         */
+        checkAllocatable(getSpace(escrow.getSpaceId()), 0);
+        return insertFile(escrow.getSpaceId(), escrow.getId(), voGroup, voRole, sizeInBytes, pnfsId, state);
+    }
 
+    private long insertFile(final long reservationId,
+                            final Long escrowId,
+                            final String voGroup,
+                            final String voRole,
+                            final long sizeInBytes,
+                            final PnfsId pnfsId,
+                            final FileState state)
+            throws DataAccessException
+    {
+        final long creationTime = System.currentTimeMillis();
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
         int rc = getJdbcTemplate().update(
@@ -547,8 +574,8 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
                      */
                     PreparedStatement stmt = con.prepareStatement(
                             "INSERT INTO " + SPACEFILE_TABLE
-                                    + " (vogroup,vorole,spacereservationid,sizeinbytes,creationtime,pnfsid,state) "
-                                    + " VALUES  (?,?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS);
+                                    + " (vogroup,vorole,spacereservationid,sizeinbytes,creationtime,pnfsid,state,escrowid) "
+                                    + " VALUES  (?,?,?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS);
                     stmt.setString(1, voGroup);
                     stmt.setString(2, voRole);
                     stmt.setLong(3, reservationId);
@@ -556,6 +583,7 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
                     stmt.setLong(5, creationTime);
                     stmt.setString(6, Objects.toString(pnfsId, null));
                     stmt.setInt(7, state.getStateId());
+                    stmt.setObject(8, escrowId, Types.BIGINT);
                     return stmt;
                 }, keyHolder);
         if (rc != 1) {
@@ -564,6 +592,93 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         return (Long) keyHolder.getKeys().get("id");
     }
 
+    private static void checkAllocatable(Space space, long sizeInBytes) throws SpaceException
+    {
+        long currentTime = System.currentTimeMillis();
+        if (space.getExpirationTime() != null && space.getExpirationTime() <= currentTime) {
+            throw new SpaceExpiredException("space with id=" + space.getId() + " has expired");
+        }
+        if (space.getState() == SpaceState.EXPIRED) {
+            throw new SpaceExpiredException("space with id=" + space.getId() + " has expired");
+        }
+        if (space.getState() == SpaceState.RELEASED) {
+            throw new SpaceReleasedException("space with id=" + space.getId() + " was released");
+        }
+        if (space.getAvailableSpaceInBytes() < sizeInBytes) {
+            throw new NoFreeSpaceException("space with id=" + space.getId() + " does not have enough space");
+        }
+    }
+
+    @Override @Transactional
+    public Escrow insertEscrow(final long reservationId, long minimumSizeInBytes, long maximumSizeInBytes)
+            throws DataAccessException, SpaceException
+    {
+        Space space = selectSpaceForUpdate(reservationId);
+        checkAllocatable(space, minimumSizeInBytes);
+
+        /* Leave half of the available space to other escrows and to uploads not using escrow. */
+        final long sizeInBytes =
+                Math.max(minimumSizeInBytes, Math.min(maximumSizeInBytes, space.getAvailableSpaceInBytes() / 2));
+        final long creationTime = System.currentTimeMillis();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        int rc = getJdbcTemplate().update(
+                con -> {
+                    PreparedStatement stmt = con.prepareStatement(
+                            "INSERT INTO " + ESCROW_TABLE + " (spacereservationid,sizeinbytes,creationtime) VALUES (?,?,?)",
+                            Statement.RETURN_GENERATED_KEYS);
+                    stmt.setLong(1, reservationId);
+                    stmt.setLong(2, sizeInBytes);
+                    stmt.setLong(3, creationTime);
+                    return stmt;
+                }, keyHolder);
+        if (rc != 1) {
+            throw new JdbcUpdateAffectedIncorrectNumberOfRowsException("insert returned row count =" + rc, 1, rc);
+        }
+        return new Escrow((Long) keyHolder.getKeys().get("id"), reservationId, sizeInBytes, creationTime);
+    }
+
+    @Override @Transactional
+    public void shrinkEscrow(long id, long sizeInBytes) throws DataAccessException
+    {
+        getJdbcTemplate().update("UPDATE " + ESCROW_TABLE + " SET sizeinbytes = sizeinbytes - ? WHERE id = ?",
+                                 sizeInBytes, id);
+    }
+
+    @Override @Transactional
+    public void growEscrow(long id, long sizeInBytes) throws DataAccessException
+    {
+        int rc = getJdbcTemplate().update("UPDATE " + ESCROW_TABLE + " SET sizeinbytes = sizeinbytes + ? WHERE id = ?",
+                                          sizeInBytes, id);
+        if (rc != 1) {
+            throw new JdbcUpdateAffectedIncorrectNumberOfRowsException("Update failed, row count=" + rc, 1, rc);
+        }
+    }
+
+    @Override @Transactional
+    public void reconcileEscrow(long id) throws DataAccessException
+    {
+        /* Lock the files before the escrow, as does growing the escrow for a file placed in it. */
+        getJdbcTemplate().queryForList(
+                "SELECT id FROM " + SPACEFILE_TABLE + " WHERE escrowid = ? FOR UPDATE", Long.class, id);
+        /* Lock the escrow to serialize concurrent reconciliation of the same escrow. */
+        List<Long> escrows = getJdbcTemplate().queryForList(
+                "SELECT id FROM " + ESCROW_TABLE + " WHERE id = ? FOR UPDATE", Long.class, id);
+        if (!escrows.isEmpty()) {
+            /* The triggers account the files against the reservation once they leave the escrow,
+             * and return the escrowed space to the reservation once the escrow is deleted.
+             */
+            getJdbcTemplate().update("UPDATE " + SPACEFILE_TABLE + " SET escrowid = NULL WHERE escrowid = ?", id);
+            getJdbcTemplate().update("DELETE FROM " + ESCROW_TABLE + " WHERE id = ?", id);
+        }
+    }
+
+    @Override
+    public List<Long> getEscrowsCreatedBefore(long millis) throws DataAccessException
+    {
+        return getJdbcTemplate().queryForList(
+                "SELECT id FROM " + ESCROW_TABLE + " WHERE creationtime < ?", Long.class, millis);
+    }
+
     @Override
     public void expire(SpaceCriterion criterion)
     {
@@ -754,6 +869,7 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         public SpaceCriterion thatHaveNoFiles()
         {
             addClause("NOT EXISTS (SELECT * FROM " + SPACEFILE_TABLE + " WHERE spacereservationid = srmspace.id)");
+            addClause("NOT EXISTS (SELECT * FROM " + ESCROW_TABLE + " WHERE spacereservationid = srmspace.id)");
             return this;
         }
     }
@@ -862,7 +978,8 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
                         set.getLong("sizeinbytes"),
                         set.getLong("creationtime"),
                         (pnfsId != null) ? new PnfsId(pnfsId) : null,
-                        FileState.valueOf(set.getInt("state")));
+                        FileState.valueOf(set.getInt("state")),
+                        toNull(set.getLong("escrowid"), set.wasNull()));
     }
 
     private static <T> T toNull(T value, boolean makeNull)
@@ -0,0 +1,239 @@
+package diskCacheV111.services.space;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.RetentionPolicy;
+
+import dmg.cells.nucleus.CellInfoProvider;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * In-memory view of link groups and active space reservations.
+ *
+ * Selecting a write pool consults link groups, their VO authorizations and the
+ * space reservation of the upload. Rather than querying the database for every
+ * upload, these are served from this view.
+ *
+ * The view is loaded in full on startup and periodically thereafter. Changes
+ * made by this space manager instance are applied once the transaction making
+ * them commits. Reservations unknown to the view, such as those created by
+ * another space manager instance sharing the database, are loaded on demand.
+ *
+ * The view may thus briefly lag behind the database. This only affects which
+ * pool is selected: whether the upload fits into the reservation is verified
+ * against the database when the transfer starts.
+ */
+public class ReservationView implements CellInfoProvider, Runnable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReservationView.class);
+
+    private volatile Map<Long,LinkGroup> linkGroups = new ConcurrentHashMap<>();
+    private volatile Map<Long,Space> spaces = new ConcurrentHashMap<>();
+    private volatile long loadTime;
+    private volatile long linkGroupUpdateTime;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private SpaceManagerDatabase db;
+    private LinkGroupLoader linkGroupLoader;
+    private long refreshPeriod;
+
+    private ScheduledExecutorService executor;
+
+    @Required
+    public void setDatabase(SpaceManagerDatabase db)
+    {
+        this.db = db;
+    }
+
+    @Required
+    public void setLinkGroupLoader(LinkGroupLoader linkGroupLoader)
+    {
+        this.linkGroupLoader = linkGroupLoader;
+    }
+
+    /**
+     * Time in milliseconds between reloading the view from the database.
+     */
+    @Required
+    public void setRefreshPeriod(long refreshPeriod)
+    {
+        this.refreshPeriod = refreshPeriod;
+    }
+
+    public void start()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("reservation-view").build());
+        executor.scheduleWithFixedDelay(this, 0, refreshPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try {
+            reload();
+        } catch (DataAccessException | TransactionException e) {
+            LOGGER.error("Failed to load link groups and space reservations: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to load link groups and space reservations: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Replaces the view with the current content of the database.
+     */
+    public synchronized void reload() throws DataAccessException
+    {
+        long now = System.currentTimeMillis();
+        long updateTime = linkGroupLoader.getLatestUpdateTime();
+        linkGroups = index(db.get(db.linkGroups()), LinkGroup::getId);
+        spaces = index(db.get(db.spaces().whereStateIsIn(SpaceState.RESERVED), null), Space::getId);
+        loadTime = now;
+        linkGroupUpdateTime = updateTime;
+    }
+
+    private static <T> Map<Long,T> index(List<T> values, Function<T,Long> id)
+    {
+        return values.stream().collect(toMap(id, v -> v, (a, b) -> b, ConcurrentHashMap::new));
+    }
+
+    /**
+     * Returns the space reservation with the given id.
+     *
+     * @throws org.springframework.dao.EmptyResultDataAccessException if no such reservation exists
+     */
+    public Space getSpace(long id) throws DataAccessException
+    {
+        Space space = spaces.get(id);
+        if (space != null) {
+            hits.increment();
+            return space;
+        }
+        misses.increment();
+        space = db.getSpace(id);
+        if (space.getState() == SpaceState.RESERVED) {
+            spaces.put(id, space);
+        }
+        return space;
+    }
+
+    /**
+     * Returns the link group with the given id.
+     *
+     * @throws org.springframework.dao.EmptyResultDataAccessException if no such link group exists
+     */
+    public LinkGroup getLinkGroup(long id) throws DataAccessException
+    {
+        LinkGroup linkGroup = linkGroups.get(id);
+        if (linkGroup != null) {
+            hits.increment();
+            return linkGroup;
+        }
+        misses.increment();
+        linkGroup = db.getLinkGroup(id);
+        linkGroups.put(id, linkGroup);
+        return linkGroup;
+    }
+
+    /**
+     * Returns link groups allowing files with the given access latency and retention
+     * policy and with at least the given amount of space available, ordered by
+     * available space, most space first. Only link groups that were still present
+     * in pool manager at the last link group update are returned.
+     */
+    public List<LinkGroup> getLinkGroups(@Nullable AccessLatency al, @Nullable RetentionPolicy rp,
+                                         long sizeInBytes) throws DataAccessException
+    {
+        long latestUpdateTime = linkGroupLoader.getLatestUpdateTime();
+        if (linkGroupUpdateTime < latestUpdateTime) {
+            reloadIfOlderThan(latestUpdateTime);
+        }
+        return linkGroups.values().stream()
+                .filter(lg -> lg.getUpdateTime() >= latestUpdateTime)
+                .filter(lg -> al == null || lg.isAllowed(al))
+                .filter(lg -> rp == null || lg.isAllowed(rp))
+                .filter(lg -> lg.getAvailableSpace() >= sizeInBytes)
+                .sorted(Comparator.comparing(LinkGroup::getAvailableSpace).reversed())
+                .collect(toList());
+    }
+
+    private synchronized void reloadIfOlderThan(long time) throws DataAccessException
+    {
+        if (linkGroupUpdateTime < time) {
+            reload();
+        }
+    }
+
+    /**
+     * Adds or updates a space reservation once the current transaction commits.
+     */
+    public void update(Space space)
+    {
+        afterCommit(() -> {
+            if (space.getState() == SpaceState.RESERVED) {
+                spaces.put(space.getId(), space);
+            } else {
+                spaces.remove(space.getId());
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action)
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.append("view.refresh-period = ").println(refreshPeriod);
+        pw.append("view.link-groups = ").println(linkGroups.size());
+        pw.append("view.spaces = ").println(spaces.size());
+        pw.append("view.hits = ").println(hits.sum());
+        pw.append("view.misses = ").println(misses.sum());
+        pw.append("view.loaded = ").println(loadTime);
+    }
+}
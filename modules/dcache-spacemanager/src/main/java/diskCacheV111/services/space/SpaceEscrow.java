@@ -0,0 +1,272 @@
+package diskCacheV111.services.space;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntConsumer;
+
+import dmg.cells.nucleus.CellInfoProvider;
+
+/**
+ * Places files in space held in escrow.
+ *
+ * Accounting every file directly against its space reservation serializes all
+ * uploads into a reservation on the database row of the reservation. Instead,
+ * space is taken from the reservation in chunks and files are placed in the
+ * chunk without touching the reservation. Since the chunk is accounted as
+ * allocated in the reservation, the size of the reservation is still enforced.
+ *
+ * The space charged for a file is the size known when it is placed. Should the
+ * file grow, the growth is charged to the chunk in use if the file was placed
+ * in it, and otherwise the chunk of the file takes further space from the
+ * reservation. When a chunk is replaced, its unused space is returned to the
+ * reservation first.
+ *
+ * Chunks are taken and files are charged in the transaction placing the file.
+ * A new chunk is not used for other files until that transaction commits, and
+ * space charged to a chunk is returned to it if the transaction rolls back.
+ *
+ * A chunk is used for placing files for at most its lifetime. Chunks older than
+ * twice their lifetime are reconciled, returning the space of the chunk to the
+ * reservation and accounting the files placed in it instead. This includes
+ * chunks left behind by other space manager instances.
+ */
+public class SpaceEscrow implements CellInfoProvider, Runnable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpaceEscrow.class);
+
+    private final Map<Long,Chunk> chunks = new ConcurrentHashMap<>();
+    private final Striped<Lock> locks = Striped.lock(64);
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder escrowed = new LongAdder();
+    private final LongAdder reconciled = new LongAdder();
+    private final LongAdder grown = new LongAdder();
+
+    private SpaceManagerDatabase db;
+    private long chunkSize;
+    private long lifetime;
+
+    private ScheduledExecutorService executor;
+
+    private static class Chunk
+    {
+        final Escrow escrow;
+        long remaining;
+        boolean isCommitted;
+
+        Chunk(Escrow escrow)
+        {
+            this.escrow = escrow;
+            this.remaining = escrow.getSizeInBytes();
+        }
+
+        boolean isUsable(long now, long lifetime)
+        {
+            return escrow.getCreationTime() > now - lifetime;
+        }
+    }
+
+    @Required
+    public void setDatabase(SpaceManagerDatabase db)
+    {
+        this.db = db;
+    }
+
+    /**
+     * Maximum amount of space taken from a reservation at a time. Zero disables escrow.
+     */
+    @Required
+    public void setChunkSize(long chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Time in milliseconds for which a chunk is used for placing files.
+     */
+    @Required
+    public void setLifetime(long lifetime)
+    {
+        this.lifetime = lifetime;
+    }
+
+    public void start()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("escrow-reconciler").build());
+        executor.scheduleWithFixedDelay(this, lifetime, lifetime, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns an escrow of the space reservation that can hold a file of the given
+     * size. The space is deducted from the escrow. Returns null if the file is to
+     * be accounted against the reservation directly. Must be called in the
+     * transaction placing the file.
+     */
+    @Nullable
+    public Escrow allocate(long spaceId, long sizeInBytes) throws DataAccessException, SpaceException
+    {
+        if (chunkSize == 0 || sizeInBytes > chunkSize) {
+            return null;
+        }
+
+        Lock lock = locks.get(spaceId);
+        lock.lock();
+        try {
+            Chunk chunk = chunks.get(spaceId);
+            if (chunk != null && !chunk.isCommitted) {
+                /* Files cannot refer to the chunk before the transaction taking it commits. */
+                return null;
+            }
+            if (chunk == null || !chunk.isUsable(System.currentTimeMillis(), lifetime) || chunk.remaining < sizeInBytes) {
+                Chunk previous = chunk;
+                long returned = 0;
+                if (previous != null && previous.remaining > 0) {
+                    returned = previous.remaining;
+                    db.shrinkEscrow(previous.escrow.getId(), returned);
+                    previous.remaining = 0;
+                }
+                Chunk taken = new Chunk(db.insertEscrow(spaceId, sizeInBytes, chunkSize));
+                chunks.put(spaceId, taken);
+                escrowed.increment();
+                long unused = returned;
+                afterCompletion(spaceId, status -> {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        taken.isCommitted = true;
+                    } else {
+                        chunks.remove(spaceId, taken);
+                        if (status == TransactionSynchronization.STATUS_ROLLED_BACK && previous != null) {
+                            previous.remaining += unused;
+                            chunks.putIfAbsent(spaceId, previous);
+                        }
+                    }
+                });
+                chunk = taken;
+            } else {
+                Chunk used = chunk;
+                afterCompletion(spaceId, status -> {
+                    if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                        used.remaining += sizeInBytes;
+                    }
+                });
+            }
+            chunk.remaining -= sizeInBytes;
+            placed.increment();
+            return chunk.escrow;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Charges a change in the size of a file placed in the given escrow. Growth
+     * the chunk in use cannot cover is taken from the reservation into the
+     * escrow. Must be called in the transaction updating the file, after
+     * locking the file.
+     */
+    public void charge(long spaceId, long escrowId, long sizeChangeInBytes) throws DataAccessException
+    {
+        long uncharged = sizeChangeInBytes;
+        Lock lock = locks.get(spaceId);
+        lock.lock();
+        try {
+            Chunk chunk = chunks.get(spaceId);
+            if (chunk != null && chunk.escrow.getId() == escrowId) {
+                long charged = Math.min(chunk.remaining, uncharged);
+                chunk.remaining -= charged;
+                uncharged -= charged;
+                afterCompletion(spaceId, status -> {
+                    if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                        chunk.remaining += charged;
+                    }
+                });
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (uncharged > 0) {
+            db.growEscrow(escrowId, uncharged);
+            grown.increment();
+        }
+    }
+
+    /**
+     * Updates the chunks of a space reservation once the current transaction
+     * completes, or right away if there is none.
+     */
+    private void afterCompletion(long spaceId, IntConsumer action)
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    Lock lock = locks.get(spaceId);
+                    lock.lock();
+                    try {
+                        action.accept(status);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+        } else {
+            action.accept(TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        long now = System.currentTimeMillis();
+        chunks.values().removeIf(chunk -> !chunk.isUsable(now, lifetime));
+        try {
+            for (long id : db.getEscrowsCreatedBefore(now - 2 * lifetime)) {
+                db.reconcileEscrow(id);
+                reconciled.increment();
+            }
+        } catch (DataAccessException | TransactionException e) {
+            LOGGER.error("Escrow reconciliation failed: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("Escrow reconciliation failed: " + e.toString(), e);
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.append("escrow.chunk-size = ").println(chunkSize);
+        pw.append("escrow.lifetime = ").println(lifetime);
+        pw.append("escrow.chunks = ").println(chunks.size());
+        pw.append("escrow.created = ").println(escrowed.sum());
+        pw.append("escrow.files = ").println(placed.sum());
+        pw.append("escrow.grown = ").println(grown.sum());
+        pw.append("escrow.reconciled = ").println(reconciled.sum());
+    }
+}
@@ -49,6 +49,7 @@ public class SpaceManagerCommandLineInterface implements CellCommandListener
     private SpaceManagerDatabase db;
     private PnfsHandler pnfs;
     private LinkGroupLoader linkGroupLoader;
+    private ReservationView view;
     private Executor executor;
 
     @Required
@@ -75,6 +76,12 @@ public class SpaceManagerCommandLineInterface implements CellCommandListener
         this.linkGroupLoader = linkGroupLoader;
     }
 
+    @Required
+    public void setReservationView(ReservationView view)
+    {
+        this.view = view;
+    }
+
     @Transactional(rollbackFor = { Exception.class })
     private <T extends Serializable> T callInTransaction(Callable<T> callable) throws Exception
     {
@@ -131,6 +138,7 @@ public class SpaceManagerCommandLineInterface implements CellCommandListener
             Space space = db.selectSpaceForUpdate(token);
             space.setState(SpaceState.RELEASED);
             db.updateSpace(space);
+            view.update(space);
             return space.toString();
         }
     }
@@ -223,6 +231,7 @@ public class SpaceManagerCommandLineInterface implements CellCommandListener
                 space.setDescription(description);
             }
             db.updateSpace(space);
+            view.update(space);
             return space.toString();
         }
     }
@@ -750,6 +759,7 @@ public class SpaceManagerCommandLineInterface implements CellCommandListener
                                          SpaceState.RESERVED,
                                          0,
                                          0);
+            view.update(space);
             return space.toString();
         }
     }
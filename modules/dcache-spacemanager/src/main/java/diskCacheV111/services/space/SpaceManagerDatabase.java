@@ -34,6 +34,50 @@ public interface SpaceManagerDatabase
                     FileState state)
             throws DataAccessException, SpaceException;
 
+    /**
+     * Inserts a file reservation accounted against an escrow rather than
+     * directly against its space reservation. The space reservation row is
+     * not locked.
+     */
+    long insertFile(Escrow escrow,
+                    @Nullable String voGroup,
+                    @Nullable String voRole,
+                    long sizeInBytes,
+                    @Nullable PnfsId pnfsId,
+                    FileState state)
+            throws DataAccessException, SpaceException;
+
+    /**
+     * Takes space from a space reservation into escrow. At least
+     * {@code minimumSizeInBytes} and at most {@code maximumSizeInBytes}
+     * are escrowed, limited to half of the space still available in the
+     * reservation.
+     */
+    Escrow insertEscrow(long reservationId, long minimumSizeInBytes, long maximumSizeInBytes)
+            throws DataAccessException, SpaceException;
+
+    /**
+     * Returns unused space of an escrow to its reservation.
+     */
+    void shrinkEscrow(long id, long sizeInBytes) throws DataAccessException;
+
+    /**
+     * Takes additional space from the reservation into an escrow, to cover
+     * files placed in the escrow that grew beyond the space charged for them.
+     * The reservation limit is not checked, just as it is not for files
+     * accounted directly.
+     */
+    void growEscrow(long id, long sizeInBytes) throws DataAccessException;
+
+    /**
+     * Returns the escrowed space to its reservation and accounts the files
+     * placed in the escrow against the reservation.
+     */
+    void reconcileEscrow(long id) throws DataAccessException;
+
+    /** Return the ids of escrows created before the given time. */
+    List<Long> getEscrowsCreatedBefore(long millis) throws DataAccessException;
+
     void expire(SpaceCriterion criterion);
 
     Space insertSpace(@Nullable String voGroup,
@@ -148,6 +148,8 @@ public final class SpaceManagerService
     private PoolMonitor poolMonitor;
     private SpaceManagerDatabase db;
     private LinkGroupLoader linkGroupLoader;
+    private SpaceEscrow escrow;
+    private ReservationView view;
     private long perishedSpacePurgeDelay;
     private int threads;
     private volatile boolean isStopped;
@@ -253,6 +255,18 @@ public final class SpaceManagerService
         this.linkGroupLoader = linkGroupLoader;
     }
 
+    @Required
+    public void setSpaceEscrow(SpaceEscrow escrow)
+    {
+        this.escrow = escrow;
+    }
+
+    @Required
+    public void setReservationView(ReservationView view)
+    {
+        this.view = view;
+    }
+
     @Required
     public void setPerishedSpacePurgeDelay(long millis)
     {
@@ -592,7 +606,12 @@ public final class SpaceManagerService
             int attempts = 0;
             while (!isSuccessful) {
                 try {
-                    processMessageTransactionally(message);
+                    if (message instanceof PoolMgrSelectWritePoolMsg) {
+                        /* Served from the reservation view; needs no transaction. */
+                        selectPool((PoolMgrSelectWritePoolMsg) message);
+                    } else {
+                        processMessageTransactionally(message);
+                    }
                     isSuccessful = true;
                 } catch (DeadlockLoserDataAccessException e) {
                     LOGGER.debug("Transaction lost deadlock race and will be retried: {}", e.getMessage());
@@ -643,9 +662,7 @@ public final class SpaceManagerService
     @Transactional(rollbackFor = {SpaceException.class})
     private void processMessageTransactionally(Message message) throws SpaceException
     {
-        if (message instanceof PoolMgrSelectWritePoolMsg) {
-            selectPool((PoolMgrSelectWritePoolMsg) message);
-        } else if (message instanceof PoolAcceptFileMessage) {
+        if (message instanceof PoolAcceptFileMessage) {
             PoolAcceptFileMessage poolRequest = (PoolAcceptFileMessage) message;
             if (message.isReply()) {
                 transferStarted(poolRequest.getPnfsId(), poolRequest.getReturnCode() == 0);
@@ -725,6 +742,7 @@ public final class SpaceManagerService
         authorizationPolicy.checkReleasePermission(subject, space);
         space.setState(SpaceState.RELEASED);
         db.updateSpace(space);
+        view.update(space);
     }
 
     private void reserveSpace(Reserve reserve)
@@ -737,6 +755,7 @@ public final class SpaceManagerService
                                    reserve.getRetentionPolicy(),
                                    reserve.getLifetime(),
                                    reserve.getDescription());
+        view.update(space);
         reserve.setSpaceToken(space.getId());
     }
 
@@ -769,14 +788,32 @@ public final class SpaceManagerService
                                          SpaceState.RESERVED,
                                          0,
                                          0);
-            spaceId = space.getId();
+            db.insertFile(space.getId(),
+                          owner.getVoGroup(),
+                          owner.getVoRole(),
+                          sizeInBytes,
+                          pnfsId,
+                          FileState.TRANSFERRING);
+            return;
+        }
+
+        /* Place the file in space held in escrow to avoid locking the space reservation. */
+        Escrow chunk = escrow.allocate(spaceId, sizeInBytes);
+        if (chunk != null) {
+            db.insertFile(chunk,
+                          owner.getVoGroup(),
+                          owner.getVoRole(),
+                          sizeInBytes,
+                          pnfsId,
+                          FileState.TRANSFERRING);
+        } else {
+            db.insertFile(spaceId,
+                          owner.getVoGroup(),
+                          owner.getVoRole(),
+                          sizeInBytes,
+                          pnfsId,
+                          FileState.TRANSFERRING);
         }
-        db.insertFile(spaceId,
-                      owner.getVoGroup(),
-                      owner.getVoRole(),
-                      sizeInBytes,
-                      pnfsId,
-                      FileState.TRANSFERRING);
     }
 
     private void transferStarted(PnfsId pnfsId, boolean success)
@@ -826,7 +863,7 @@ public final class SpaceManagerService
             LOGGER.trace("file transferred, deleting file record");
             db.removeFile(f.getId());
         } else {
-            f.setSizeInBytes(size);
+            setStoredSize(f, size);
             f.setState(FileState.STORED);
             db.updateFile(f);
         }
@@ -866,13 +903,26 @@ public final class SpaceManagerService
                 /* A file must have been stored for it to be flushed. If we didn't do
                  * it during DoorTransferFinished, we do it now.
                  */
-                f.setSizeInBytes(size);
+                setStoredSize(f, size);
                 f.setState(FileState.STORED);
                 db.updateFile(f);
             }
         }
     }
 
+    /**
+     * Sets the size of a file that stays accounted against its reservation. For
+     * a file in escrow, the escrow only covers the size charged when the file
+     * was placed, so any change is charged to the escrow.
+     */
+    private void setStoredSize(File f, long size) throws DataAccessException
+    {
+        if (f.getEscrowId() != null) {
+            escrow.charge(f.getSpaceId(), f.getEscrowId(), size - f.getSizeInBytes());
+        }
+        f.setSizeInBytes(size);
+    }
+
     @Transactional
     private void fileRemoved(PnfsId pnfsId)
     {
@@ -1002,14 +1052,9 @@ public final class SpaceManagerService
         }
 
         List<LinkGroup> linkGroups =
-                db.get(db.linkGroups()
-                               .allowsAccessLatency(fileAttributes.getAccessLatency())
-                               .allowsRetentionPolicy(fileAttributes.getRetentionPolicy())
-                               .hasAvailable(size)
-                               .whereUpdateTimeAfter(linkGroupLoader.getLatestUpdateTime()))
-                        .stream()
-                        .sorted(Comparator.comparing(LinkGroup::getAvailableSpace).reversed())
-                        .collect(toList());
+                view.getLinkGroups(fileAttributes.getAccessLatency(),
+                                   fileAttributes.getRetentionPolicy(),
+                                   size);
 
         if (linkGroups.isEmpty()) {
             if (isWriteableOutsideLinkgroup(protocolInfo, fileAttributes)) {
@@ -1158,11 +1203,11 @@ public final class SpaceManagerService
             LOGGER.trace("selectPool: file is not found, using default space token");
             Space space;
             try {
-                space = db.getSpace(Long.parseLong(defaultSpaceToken));
+                space = view.getSpace(Long.parseLong(defaultSpaceToken));
             } catch (EmptyResultDataAccessException | NumberFormatException e) {
                 throw new IllegalArgumentException("No such space reservation: " + defaultSpaceToken);
             }
-            LinkGroup linkGroup = db.getLinkGroup(space.getLinkGroupId());
+            LinkGroup linkGroup = view.getLinkGroup(space.getLinkGroupId());
             String linkGroupName = linkGroup.getName();
             if (!isWriteableInLinkgroup(protocolInfo, fileAttributes, linkGroupName)) {
                 // FIXME provide better information for the user
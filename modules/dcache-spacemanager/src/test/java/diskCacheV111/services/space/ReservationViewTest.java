@@ -0,0 +1,154 @@
+package diskCacheV111.services.space;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.RetentionPolicy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReservationViewTest
+{
+    private SpaceManagerDatabase db;
+    private LinkGroupLoader linkGroupLoader;
+    private ReservationView view;
+
+    @Before
+    public void setup()
+    {
+        db = mock(SpaceManagerDatabase.class);
+        linkGroupLoader = mock(LinkGroupLoader.class);
+        when(db.linkGroups()).thenReturn(mock(SpaceManagerDatabase.LinkGroupCriterion.class, RETURNS_SELF));
+        when(db.spaces()).thenReturn(mock(SpaceManagerDatabase.SpaceCriterion.class, RETURNS_SELF));
+        when(db.get(any(SpaceManagerDatabase.LinkGroupCriterion.class))).thenReturn(Collections.emptyList());
+        when(db.get(any(SpaceManagerDatabase.SpaceCriterion.class), isNull())).thenReturn(Collections.emptyList());
+        view = new ReservationView();
+        view.setDatabase(db);
+        view.setLinkGroupLoader(linkGroupLoader);
+        view.setRefreshPeriod(30_000);
+    }
+
+    @Test
+    public void shouldServeLoadedSpaceWithoutQuery() throws Exception
+    {
+        Space space = givenSpace(1, SpaceState.RESERVED);
+        when(db.get(any(SpaceManagerDatabase.SpaceCriterion.class), isNull())).thenReturn(Collections.singletonList(space));
+        view.reload();
+
+        assertThat(view.getSpace(1), sameInstance(space));
+        verify(db, never()).getSpace(anyLong());
+    }
+
+    @Test
+    public void shouldLoadUnknownSpaceOnce() throws Exception
+    {
+        Space space = givenSpace(1, SpaceState.RESERVED);
+        when(db.getSpace(1)).thenReturn(space);
+
+        view.getSpace(1);
+        Space second = view.getSpace(1);
+
+        assertThat(second, sameInstance(space));
+        verify(db, times(1)).getSpace(1);
+    }
+
+    @Test
+    public void shouldNotKeepReleasedSpace() throws Exception
+    {
+        Space space = givenSpace(1, SpaceState.RELEASED);
+        when(db.getSpace(1)).thenReturn(space);
+
+        view.getSpace(1);
+        view.getSpace(1);
+
+        verify(db, times(2)).getSpace(1);
+    }
+
+    @Test
+    public void shouldForgetReleasedSpaceOnUpdate() throws Exception
+    {
+        Space space = givenSpace(1, SpaceState.RESERVED);
+        when(db.getSpace(1)).thenReturn(space);
+        view.getSpace(1);
+
+        view.update(givenSpace(1, SpaceState.RELEASED));
+        view.getSpace(1);
+
+        verify(db, times(2)).getSpace(1);
+    }
+
+    @Test
+    public void shouldFilterAndOrderLinkGroups() throws Exception
+    {
+        LinkGroup small = givenLinkGroup(1, 100, 10);
+        LinkGroup large = givenLinkGroup(2, 1000, 10);
+        LinkGroup stale = givenLinkGroup(3, 1000, 5);
+        LinkGroup full = givenLinkGroup(4, 10, 10);
+        when(linkGroupLoader.getLatestUpdateTime()).thenReturn(10L);
+        when(db.get(any(SpaceManagerDatabase.LinkGroupCriterion.class)))
+                .thenReturn(Arrays.asList(small, large, stale, full));
+
+        List<LinkGroup> linkGroups = view.getLinkGroups(AccessLatency.ONLINE, RetentionPolicy.REPLICA, 50);
+
+        assertThat(linkGroups, contains(large, small));
+    }
+
+    @Test
+    public void shouldExcludeLinkGroupsNotAllowingRetentionPolicy() throws Exception
+    {
+        LinkGroup linkGroup = givenLinkGroup(1, 100, 10);
+        when(linkGroupLoader.getLatestUpdateTime()).thenReturn(10L);
+        when(db.get(any(SpaceManagerDatabase.LinkGroupCriterion.class))).thenReturn(Collections.singletonList(linkGroup));
+
+        assertThat(view.getLinkGroups(null, RetentionPolicy.CUSTODIAL, 0), empty());
+    }
+
+    @Test
+    public void shouldReloadAfterLinkGroupUpdate() throws Exception
+    {
+        when(linkGroupLoader.getLatestUpdateTime()).thenReturn(10L);
+        view.getLinkGroups(null, null, 0);
+        view.getLinkGroups(null, null, 0);
+        verify(db, times(1)).get(any(SpaceManagerDatabase.LinkGroupCriterion.class));
+
+        when(linkGroupLoader.getLatestUpdateTime()).thenReturn(20L);
+        view.getLinkGroups(null, null, 0);
+
+        verify(db, times(2)).get(any(SpaceManagerDatabase.LinkGroupCriterion.class));
+    }
+
+    private static Space givenSpace(long id, SpaceState state)
+    {
+        return new Space(id, null, null, RetentionPolicy.REPLICA, AccessLatency.ONLINE, 1,
+                         1000, 0, null, null, state, 0, 0);
+    }
+
+    private static LinkGroup givenLinkGroup(long id, long available, long updateTime)
+    {
+        LinkGroup linkGroup = new LinkGroup();
+        linkGroup.setId(id);
+        linkGroup.setName("lg" + id);
+        linkGroup.setAvailableSpace(available);
+        linkGroup.setUpdateTime(updateTime);
+        linkGroup.setOnlineAllowed(true);
+        linkGroup.setReplicaAllowed(true);
+        return linkGroup;
+    }
+}
@@ -0,0 +1,366 @@
+package diskCacheV111.services.space;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.util.VOInfo;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SpaceEscrowTest
+{
+    private static final long LIFETIME = 10_000;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate tx;
+    private JdbcSpaceManagerDatabase db;
+    private SpaceEscrow escrow;
+    private long linkGroupId;
+    private int nextFile;
+
+    @Before
+    public void setup() throws Exception
+    {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:hsqldb:mem:spacemanager");
+        config.setUsername("sa");
+        config.setPassword("");
+        dataSource = new HikariDataSource(config);
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase("diskCacheV111/services/space/db/spacemanager.changelog-master.xml",
+                          new ClassLoaderResourceAccessor(), database).update("");
+        }
+        jdbc = new JdbcTemplate(dataSource);
+        tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        db = new JdbcSpaceManagerDatabase();
+        db.setDataSource(dataSource);
+        db.init();
+        linkGroupId = db.updateLinkGroup("lg", 1_000_000, System.currentTimeMillis(),
+                                         true, true, true, true, true, new VOInfo[0]);
+
+        escrow = new SpaceEscrow();
+        escrow.setDatabase(db);
+        escrow.setChunkSize(1000);
+        escrow.setLifetime(LIFETIME);
+    }
+
+    @After
+    public void tearDown()
+    {
+        jdbc.execute("SHUTDOWN");
+        dataSource.close();
+    }
+
+    @Test
+    public void shouldPlaceFilesInSameChunk() throws Exception
+    {
+        long space = givenSpace(10_000);
+
+        Escrow first = escrow.allocate(space, 300);
+        Escrow second = escrow.allocate(space, 300);
+
+        assertThat(second, sameInstance(first));
+        assertThat(escrows(), equalTo(1));
+        assertThat(allocated(space), equalTo(1000L));
+    }
+
+    @Test
+    public void shouldTakeNewChunkWhenExhausted() throws Exception
+    {
+        long space = givenSpace(10_000);
+
+        Escrow first = escrow.allocate(space, 600);
+        Escrow second = escrow.allocate(space, 600);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(escrows(), equalTo(2));
+    }
+
+    @Test
+    public void shouldTakeNewChunkAfterLifetime() throws Exception
+    {
+        long space = givenSpace(10_000);
+        escrow.setLifetime(5);
+
+        Escrow first = escrow.allocate(space, 100);
+        Thread.sleep(10);
+        Escrow second = escrow.allocate(space, 100);
+
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    @Test
+    public void shouldNotEscrowFilesLargerThanChunk() throws Exception
+    {
+        long space = givenSpace(10_000);
+
+        Escrow chunk = escrow.allocate(space, 1001);
+
+        assertThat(chunk, nullValue());
+        assertThat(escrows(), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotEscrowWhenDisabled() throws Exception
+    {
+        long space = givenSpace(10_000);
+        escrow.setChunkSize(0);
+
+        Escrow chunk = escrow.allocate(space, 0);
+
+        assertThat(chunk, nullValue());
+        assertThat(escrows(), equalTo(0));
+    }
+
+    @Test(expected = NoFreeSpaceException.class)
+    public void shouldPropagateLackOfSpace() throws Exception
+    {
+        long space = givenSpace(100);
+
+        escrow.allocate(space, 200);
+    }
+
+    @Test
+    public void shouldNotAccountFilesInEscrowAgainstReservation() throws Exception
+    {
+        long space = givenSpace(10_000);
+
+        givenFilePlaced(space, 300);
+        givenFilePlaced(space, 200);
+
+        assertThat(allocated(space), equalTo(1000L));
+        assertThat(used(space), equalTo(0L));
+    }
+
+    @Test
+    public void shouldAccountFilesOnceReconciled() throws Exception
+    {
+        long space = givenSpace(10_000);
+        PnfsId stored = givenFilePlaced(space, 300);
+        givenFilePlaced(space, 200);
+        whenTransferFinished(stored, 300);
+
+        whenEscrowsAreReconciled();
+
+        assertThat(escrows(), equalTo(0));
+        assertThat(allocated(space), equalTo(200L));
+        assertThat(used(space), equalTo(300L));
+    }
+
+    @Test
+    public void shouldChargeGrowthToChunk() throws Exception
+    {
+        long space = givenSpace(10_000);
+        PnfsId file = givenFilePlaced(space, 0);
+
+        whenTransferFinished(file, 600);
+
+        assertThat(allocated(space), equalTo(1000L));
+        assertThat(used(space), equalTo(0L));
+
+        whenEscrowsAreReconciled();
+
+        assertThat(allocated(space), equalTo(0L));
+        assertThat(used(space), equalTo(600L));
+    }
+
+    @Test
+    public void shouldGrowChunkForFileOutgrowingIt() throws Exception
+    {
+        long space = givenSpace(10_000);
+        PnfsId file = givenFilePlaced(space, 0);
+
+        whenTransferFinished(file, 1500);
+
+        assertThat(allocated(space), equalTo(1500L));
+
+        whenEscrowsAreReconciled();
+
+        assertThat(allocated(space), equalTo(0L));
+        assertThat(used(space), equalTo(1500L));
+    }
+
+    @Test
+    public void shouldGrowReplacedChunkForFileOutgrowingIt() throws Exception
+    {
+        long space = givenSpace(10_000);
+        PnfsId file = givenFilePlaced(space, 100);
+        givenFilePlaced(space, 1000);
+
+        whenTransferFinished(file, 400);
+
+        assertThat(allocated(space), equalTo(1400L));
+    }
+
+    @Test(expected = NoFreeSpaceException.class)
+    public void shouldEnforceReservationLimitWhenFilesGrow() throws Exception
+    {
+        long space = givenSpace(2000);
+        PnfsId first = givenFilePlaced(space, 0);
+        whenTransferFinished(first, 1000);
+        PnfsId second = givenFilePlaced(space, 600);
+        whenTransferFinished(second, 1000);
+
+        assertThat(allocated(space), equalTo(2000L));
+
+        escrow.allocate(space, 100);
+    }
+
+    @Test
+    public void shouldReturnRemainderWhenTakingNewChunk() throws Exception
+    {
+        long space = givenSpace(1000);
+        givenFilePlaced(space, 300);
+
+        givenFilePlaced(space, 600);
+
+        assertThat(allocated(space), equalTo(900L));
+    }
+
+    @Test
+    public void shouldContinueToUseChunkAfterReconciliationRun() throws Exception
+    {
+        long space = givenSpace(10_000);
+        Escrow first = escrow.allocate(space, 100);
+
+        escrow.run();
+        Escrow second = escrow.allocate(space, 100);
+
+        assertThat(second, sameInstance(first));
+        assertThat(escrows(), equalTo(1));
+    }
+
+    @Test
+    public void shouldReturnSpaceOfRolledBackPlacementToChunk() throws Exception
+    {
+        long space = givenSpace(10_000);
+        Escrow first = escrow.allocate(space, 300);
+
+        whenRolledBack(() -> escrow.allocate(space, 600));
+        Escrow second = escrow.allocate(space, 700);
+
+        assertThat(second, sameInstance(first));
+        assertThat(escrows(), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotUseChunkTakenInRolledBackTransaction() throws Exception
+    {
+        long space = givenSpace(10_000);
+        Escrow first = escrow.allocate(space, 600);
+
+        whenRolledBack(() -> escrow.allocate(space, 600));
+        Escrow second = escrow.allocate(space, 400);
+
+        assertThat(second, sameInstance(first));
+        assertThat(escrows(), equalTo(1));
+        assertThat(allocated(space), equalTo(1000L));
+    }
+
+    @Test
+    public void shouldNotUseChunkBeforeItIsCommitted() throws Exception
+    {
+        long space = givenSpace(10_000);
+
+        tx.execute(status -> {
+            try {
+                Escrow first = escrow.allocate(space, 100);
+                assertThat(first, not(nullValue()));
+                assertThat(escrow.allocate(space, 100), nullValue());
+            } catch (SpaceException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        });
+        Escrow second = escrow.allocate(space, 100);
+
+        assertThat(second, not(nullValue()));
+        assertThat(escrows(), equalTo(1));
+    }
+
+    private void whenRolledBack(Allocation allocation)
+    {
+        tx.execute(status -> {
+            try {
+                assertThat(allocation.allocate(), not(nullValue()));
+            } catch (SpaceException e) {
+                throw new AssertionError(e);
+            }
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    private interface Allocation
+    {
+        Escrow allocate() throws SpaceException;
+    }
+
+    private long givenSpace(long size)
+    {
+        return db.insertSpace(null, null, RetentionPolicy.REPLICA, AccessLatency.ONLINE,
+                              linkGroupId, size, -1, null, SpaceState.RESERVED, 0, 0).getId();
+    }
+
+    private PnfsId givenFilePlaced(long space, long size) throws Exception
+    {
+        PnfsId pnfsId = new PnfsId(String.format("%036X", ++nextFile));
+        Escrow chunk = escrow.allocate(space, size);
+        db.insertFile(chunk, null, null, size, pnfsId, FileState.TRANSFERRING);
+        return pnfsId;
+    }
+
+    private void whenTransferFinished(PnfsId pnfsId, long size)
+    {
+        File f = db.selectFileForUpdate(pnfsId);
+        escrow.charge(f.getSpaceId(), f.getEscrowId(), size - f.getSizeInBytes());
+        f.setSizeInBytes(size);
+        f.setState(FileState.STORED);
+        db.updateFile(f);
+    }
+
+    private void whenEscrowsAreReconciled()
+    {
+        jdbc.update("UPDATE srmspaceescrow SET creationtime = 0");
+        escrow.run();
+    }
+
+    private int escrows()
+    {
+        return jdbc.queryForObject("SELECT count(*) FROM srmspaceescrow", Integer.class);
+    }
+
+    private long allocated(long space)
+    {
+        return db.getSpace(space).getAllocatedSpaceInBytes();
+    }
+
+    private long used(long space)
+    {
+        return db.getSpace(space).getUsedSizeInBytes();
+    }
+}
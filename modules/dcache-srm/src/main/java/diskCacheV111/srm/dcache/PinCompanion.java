@@ -68,6 +68,8 @@ package diskCacheV111.srm.dcache;
 
 import com.google.common.base.Objects;
 import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +84,7 @@ import diskCacheV111.poolManager.PoolMonitorV5;
 import diskCacheV111.poolManager.RequestContainerV5;
 import diskCacheV111.poolManager.RequestContainerV5.RequestState;
 import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileLocality;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.vehicles.DCapProtocolInfo;
@@ -169,60 +172,105 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin>
         return new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress(_clientHost, 0));
     }
 
+    /**
+     * Returns the attributes needed to pin a file.
+     */
+    public static EnumSet<FileAttribute> getRequiredAttributes()
+    {
+        EnumSet<FileAttribute> attributes =
+            EnumSet.noneOf(FileAttribute.class);
+        attributes.addAll(DcacheFileMetaData.getKnownAttributes());
+        attributes.addAll(PinManagerPinMessage.getRequiredAttributes());
+        attributes.addAll(PoolMonitorV5.getRequiredAttributesForFileLocality());
+        attributes.add(FileAttribute.SIZE);
+        attributes.add(FileAttribute.TYPE);
+        attributes.add(FileAttribute.ACCESS_LATENCY);
+        return attributes;
+    }
+
+    private boolean isDirectory(FileAttributes attributes)
+    {
+        return attributes.getFileType() == FileType.DIR;
+    }
+
+    private boolean isDiskFile(FileAttributes attributes)
+    {
+        return attributes.getAccessLatency() == AccessLatency.ONLINE;
+    }
+
+    private void lookedUp(FileAttributes attributes)
+    {
+        _attributes = attributes;
+
+        if (isDirectory(_attributes)) {
+            setException(new SRMInvalidPathException("Path is a directory."));
+            _state = new FailedState();
+        } else if (!isDiskFile(_attributes) || _isOnlinePinningEnabled) {
+            _state = new PinningState();
+        } else {
+            FileLocality locality =
+                _poolMonitor.getFileLocality(_attributes, _clientHost);
+            switch (locality) {
+            case ONLINE:
+            case ONLINE_AND_NEARLINE:
+                succeed(DISK_PIN_ID);
+                break;
+            case UNAVAILABLE:
+                fail(FILE_NOT_IN_REPOSITORY, "File is not online.");
+                break;
+            case NEARLINE:
+            default:
+                _state = new BringOnlineState();
+                break;
+            }
+        }
+    }
+
     private class LookupState extends CallbackState<PnfsGetFileAttributes>
     {
         public LookupState() {
-            EnumSet<FileAttribute> attributes =
-                EnumSet.noneOf(FileAttribute.class);
-            attributes.addAll(DcacheFileMetaData.getKnownAttributes());
-            attributes.addAll(PinManagerPinMessage.getRequiredAttributes());
-            attributes.addAll(PoolMonitorV5.getRequiredAttributesForFileLocality());
-            attributes.add(FileAttribute.SIZE);
-            attributes.add(FileAttribute.TYPE);
-            attributes.add(FileAttribute.ACCESS_LATENCY);
             PnfsGetFileAttributes msg =
-                new PnfsGetFileAttributes(_path.toString(), attributes);
+                new PnfsGetFileAttributes(_path.toString(), getRequiredAttributes());
             msg.setAccessMask(EnumSet.of(AccessMask.READ_DATA));
             msg.setSubject(_subject);
             CellStub.addCallback(_pnfsStub.send(msg), this, _executor);
         }
 
-        private boolean isDirectory(FileAttributes attributes)
+        @Override
+        public void success(PnfsGetFileAttributes message)
         {
-            return _attributes.getFileType() == FileType.DIR;
+            lookedUp(message.getFileAttributes());
         }
+    }
 
-        private boolean isDiskFile(FileAttributes attributes)
-        {
-            return _attributes.getAccessLatency() == AccessLatency.ONLINE;
+    /**
+     * Waits for the attributes of a bulk lookup issued before the pin was
+     * requested. The prefetched attributes are null if the bulk lookup failed
+     * as a whole, in which case the file is looked up individually.
+     */
+    private class PrefetchedLookupState implements FutureCallback<FileAttributes>
+    {
+        public PrefetchedLookupState(ListenableFuture<FileAttributes> attributes) {
+            Futures.addCallback(attributes, this, _executor);
         }
 
         @Override
-        public void success(PnfsGetFileAttributes message)
+        public void onSuccess(FileAttributes attributes)
         {
-            _attributes = message.getFileAttributes();
+            if (attributes == null) {
+                _state = new LookupState();
+            } else {
+                lookedUp(attributes);
+            }
+        }
 
-            if (isDirectory(_attributes)) {
-                setException(new SRMInvalidPathException("Path is a directory."));
-                _state = new FailedState();
-            } else if (!isDiskFile(_attributes) || _isOnlinePinningEnabled) {
-                _state = new PinningState();
+        @Override
+        public void onFailure(Throwable t)
+        {
+            if (t instanceof CacheException) {
+                fail(((CacheException) t).getRc(), t.getMessage());
             } else {
-                FileLocality locality =
-                    _poolMonitor.getFileLocality(_attributes, _clientHost);
-                switch (locality) {
-                case ONLINE:
-                case ONLINE_AND_NEARLINE:
-                    succeed(DISK_PIN_ID);
-                    break;
-                case UNAVAILABLE:
-                    fail(FILE_NOT_IN_REPOSITORY, "File is not online.");
-                    break;
-                case NEARLINE:
-                default:
-                    _state = new BringOnlineState();
-                    break;
-                }
+                fail(UNEXPECTED_SYSTEM_EXCEPTION, String.valueOf(t));
             }
         }
     }
@@ -295,7 +343,8 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin>
                          PoolMonitor poolMonitor,
                          CellStub pnfsStub,
                          CellStub poolManagerStub,
-                         CellStub pinManagerStub, Executor executor)
+                         CellStub pinManagerStub, Executor executor,
+                         ListenableFuture<FileAttributes> prefetchedAttributes)
     {
         _subject = subject;
         _path = path;
@@ -308,8 +357,10 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin>
         _poolManagerStub = poolManagerStub;
         _pinManagerStub = pinManagerStub;
         _executor = executor;
-        _state = new LookupState();
         _pinningActivityPolicy = pinningActivityPolicy;
+        _state = (prefetchedAttributes == null)
+                 ? new LookupState()
+                 : new PrefetchedLookupState(prefetchedAttributes);
     }
 
     private void succeed(String pinId)
@@ -369,12 +420,14 @@ public class PinCompanion extends AbstractFuture<AbstractStorageElement.Pin>
             CellStub pnfsStub,
             CellStub poolManagerStub,
             CellStub pinManagerStub,
-            Executor executor)
+            Executor executor,
+            ListenableFuture<FileAttributes> prefetchedAttributes)
     {
         return new PinCompanion(subject, path, clientHost,
                                 pinLifetime, requestToken, isOnlinePinningEnabled,
                                 pinningActivityPolicy, poolMonitor,
-                                pnfsStub, poolManagerStub, pinManagerStub, executor);
+                                pnfsStub, poolManagerStub, pinManagerStub, executor,
+                                prefetchedAttributes);
     }
 }
 
@@ -74,11 +74,13 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Range;
 import com.google.common.util.concurrent.CheckedFuture;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import eu.emi.security.authn.x509.X509Credential;
 import org.apache.axis.types.UnsignedLong;
@@ -117,6 +119,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
@@ -226,12 +229,14 @@ import org.dcache.util.list.DirectoryListSource;
 import org.dcache.util.list.DirectoryStream;
 import org.dcache.util.list.NullListPrinter;
 import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesForPaths;
 import org.dcache.vehicles.pool.CacheEntryInfoMessage;
 
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Maps.filterKeys;
 import static com.google.common.util.concurrent.Futures.immediateFailedCheckedFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -255,6 +260,17 @@ public final class Storage
             "space reservation is disabled";
     private static final String SFN_STRING = "SFN=";
 
+    /**
+     * Maximum number of paths resolved by a single bulk lookup.
+     */
+    private static final int PREFETCH_BATCH_SIZE = 500;
+
+    /**
+     * Time in milliseconds for which attributes looked up in bulk are used
+     * to pin files. Files pinned later are looked up individually.
+     */
+    private static final long PREFETCH_LIFETIME = MINUTES.toMillis(1);
+
     private static final LoadingCache<InetAddress,String> GET_HOST_BY_ADDR_CACHE =
             CacheBuilder.newBuilder()
                     .expireAfterWrite(10, MINUTES)
@@ -316,6 +332,13 @@ public final class Storage
      */
     private LoadingCache<GetSpaceTokensKey, long[]> spaceTokens;
 
+    /**
+     * Attributes of the files of get and bring-online requests, looked up in
+     * bulk when the request was scheduled. Keyed by request token.
+     */
+    private final ConcurrentMap<String,PrefetchedRequest> prefetchedRequests =
+            new ConcurrentHashMap<>();
+
     public Storage()
     {
         attributesRequiredForRmdir = EnumSet.of(TYPE);
@@ -570,8 +593,12 @@ public final class Storage
                 ? PinningActivityPolicy.ALLOW_STAGING
                 : PinningActivityPolicy.DENY_STAGING;
         try {
-            return Futures.makeChecked(PinCompanion.pinFile(asDcacheUser(user).getSubject(),
-                                                            getPath(surl),
+            Subject subject = asDcacheUser(user).getSubject();
+            FsPath path = getPath(surl);
+            ListenableFuture<FileAttributes> prefetched =
+                    takePrefetchedAttributes(requestToken, subject, path.toString());
+            return Futures.makeChecked(PinCompanion.pinFile(subject,
+                                                            path,
                                                             clientHost,
                                                             pinLifetime,
                                                             requestToken,
@@ -581,13 +608,131 @@ public final class Storage
                                                             _pnfsStub,
                                                             _poolManagerStub,
                                                             _pinManagerStub,
-                                                            _executor),
+                                                            _executor,
+                                                            prefetched),
                                        new ToSRMException());
         } catch (SRMAuthorizationException | SRMInvalidPathException e) {
             return Futures.immediateFailedCheckedFuture(e);
         }
     }
 
+    /**
+     * File attributes looked up in bulk for the files of one request. An entry
+     * is consumed by the first pin of the file, so that a later lookup of the
+     * same file fetches fresh attributes. The attributes are not used once
+     * PREFETCH_LIFETIME has passed.
+     */
+    private static class PrefetchedRequest
+    {
+        final Subject subject;
+        final long expirationTime;
+        final Map<String,ListenableFuture<FileAttributes>> attributes = new ConcurrentHashMap<>();
+
+        PrefetchedRequest(Subject subject, long expirationTime)
+        {
+            this.subject = subject;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() > expirationTime;
+        }
+    }
+
+    /**
+     * Resolves the paths of the given SURLs in bulk and remembers the result for
+     * the subsequent pinning of the files of the request. Lookups are sent to
+     * PnfsManager in batches of PREFETCH_BATCH_SIZE paths, each resolved in one
+     * transaction.
+     */
+    @Override
+    public void prefetchFileMetaData(SRMUser user, String requestToken, Collection<URI> surls)
+    {
+        prefetchedRequests.values().removeIf(PrefetchedRequest::isExpired);
+
+        Subject subject;
+        try {
+            subject = asDcacheUser(user).getSubject();
+        } catch (SRMAuthorizationException e) {
+            // Reported when the file requests are processed
+            return;
+        }
+        List<String> paths = new ArrayList<>(surls.size());
+        for (URI surl : surls) {
+            try {
+                paths.add(getPath(surl).toString());
+            } catch (SRMInvalidPathException e) {
+                // Reported when the file request is processed
+            }
+        }
+
+        PrefetchedRequest request =
+                new PrefetchedRequest(subject, System.currentTimeMillis() + PREFETCH_LIFETIME);
+        for (List<String> batch : Lists.partition(paths, PREFETCH_BATCH_SIZE)) {
+            PnfsGetFileAttributesForPaths msg =
+                    new PnfsGetFileAttributesForPaths(batch, PinCompanion.getRequiredAttributes());
+            msg.setAccessMask(EnumSet.of(AccessMask.READ_DATA));
+            msg.setSubject(subject);
+            /* If the bulk lookup fails as a whole, the files are looked up
+             * individually when pinned.
+             */
+            ListenableFuture<PnfsGetFileAttributesForPaths> reply =
+                    Futures.catching(_pnfsStub.send(msg), Exception.class, e -> null, directExecutor());
+            for (String path : batch) {
+                request.attributes.put(path, Futures.transformAsync(reply, r -> getPrefetchedAttributes(r, path),
+                                                                    directExecutor()));
+            }
+        }
+        if (!request.attributes.isEmpty()) {
+            prefetchedRequests.put(requestToken, request);
+        }
+    }
+
+    @Override
+    public void discardPrefetchedFileMetaData(String requestToken)
+    {
+        prefetchedRequests.remove(requestToken);
+    }
+
+    /**
+     * Returns the attributes of a file looked up in bulk for the given request,
+     * or null if the file is to be looked up individually.
+     */
+    private ListenableFuture<FileAttributes> takePrefetchedAttributes(String requestToken, Subject subject,
+                                                                      String path)
+    {
+        PrefetchedRequest request = prefetchedRequests.get(requestToken);
+        if (request == null) {
+            return null;
+        }
+        if (request.isExpired()) {
+            prefetchedRequests.remove(requestToken, request);
+            return null;
+        }
+        if (!request.subject.equals(subject)) {
+            return null;
+        }
+        ListenableFuture<FileAttributes> attributes = request.attributes.remove(path);
+        if (request.attributes.isEmpty()) {
+            prefetchedRequests.remove(requestToken, request);
+        }
+        return attributes;
+    }
+
+    private static ListenableFuture<FileAttributes> getPrefetchedAttributes(PnfsGetFileAttributesForPaths reply,
+                                                                            String path)
+    {
+        if (reply == null) {
+            return Futures.immediateFuture(null);
+        }
+        CacheException error = reply.getErrors().get(path);
+        if (error != null) {
+            return Futures.immediateFailedFuture(error);
+        }
+        return Futures.immediateFuture(reply.getFileAttributes().get(path));
+    }
+
     @Override
     public CheckedFuture<String, ? extends SRMException> unPinFile(SRMUser user, String fileId, String pinId)
     {
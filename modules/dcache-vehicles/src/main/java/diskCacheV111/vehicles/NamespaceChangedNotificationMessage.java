@@ -0,0 +1,110 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.vehicles;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+
+import javax.annotation.Nonnull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import diskCacheV111.util.PnfsId;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Notify that some part of the namespace has changed.  This message is
+ * published on a topic so that services holding a cache of namespace
+ * information (e.g., NFS doors) may invalidate the affected entries.
+ * <p>
+ * The message describes objects whose attributes have changed, and
+ * directories in which entries have been added, removed or renamed.  An
+ * overflow notification indicates that the sender was unable to track all
+ * changes and that receivers should discard everything they have cached.
+ */
+public class NamespaceChangedNotificationMessage extends Message
+{
+    private static final long serialVersionUID = 1L;
+
+    private final boolean _overflow;
+    private final HashSet<PnfsId> _modified;
+    private final HashMap<PnfsId,HashSet<String>> _children;
+
+    public static NamespaceChangedNotificationMessage overflow()
+    {
+        return new NamespaceChangedNotificationMessage(true,
+                ImmutableSet.of(), ImmutableSetMultimap.of());
+    }
+
+    public NamespaceChangedNotificationMessage(Collection<PnfsId> modified,
+            SetMultimap<PnfsId,String> children)
+    {
+        this(false, modified, children);
+    }
+
+    private NamespaceChangedNotificationMessage(boolean overflow,
+            Collection<PnfsId> modified, SetMultimap<PnfsId,String> children)
+    {
+        _overflow = overflow;
+        _modified = new HashSet<>(requireNonNull(modified));
+        _children = new HashMap<>();
+        children.asMap().forEach((dir, names) -> _children.put(dir, new HashSet<>(names)));
+    }
+
+    /**
+     * Whether the sender lost track of changes.  If true then receivers
+     * must assume that any namespace object may have changed.
+     */
+    public boolean isOverflow()
+    {
+        return _overflow;
+    }
+
+    /**
+     * The objects whose attributes (or content) have changed.
+     */
+    @Nonnull
+    public Set<PnfsId> getModified()
+    {
+        return _modified;
+    }
+
+    /**
+     * The directories whose content has changed, along with the names of
+     * the directory entries that were added, removed or renamed.
+     */
+    @Nonnull
+    public Map<PnfsId,? extends Set<String>> getChangedChildren()
+    {
+        return _children;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NamespaceChanged[overflow=" + _overflow + ",modified="
+                + _modified.size() + ",directories=" + _children.size() + "]";
+    }
+}
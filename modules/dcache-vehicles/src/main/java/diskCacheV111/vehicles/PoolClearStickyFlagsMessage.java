@@ -0,0 +1,61 @@
+package diskCacheV111.vehicles;
+
+import diskCacheV111.util.PnfsId;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Clears the sticky flags of many files on a pool in a single round trip.
+ *
+ * The i-th flag to clear is the one owned by the i-th owner on the i-th file.
+ * Failing to clear one flag does not fail the message; instead the pool
+ * reports a return code for every file, with zero meaning success.
+ */
+public class PoolClearStickyFlagsMessage extends PoolMessage
+{
+    private static final long serialVersionUID = 2894611538206318329L;
+
+    private final PnfsId[] _pnfsIds;
+    private final String[] _owners;
+    private final int[] _returnCodes;
+
+    public PoolClearStickyFlagsMessage(String poolName, PnfsId[] pnfsIds, String[] owners)
+    {
+        super(poolName);
+        checkArgument(pnfsIds.length == owners.length, "Each file needs an owner");
+        _pnfsIds = pnfsIds;
+        _owners = owners;
+        _returnCodes = new int[pnfsIds.length];
+        setReplyRequired(true);
+    }
+
+    public PnfsId[] getPnfsIds()
+    {
+        return _pnfsIds;
+    }
+
+    public String[] getOwners()
+    {
+        return _owners;
+    }
+
+    /**
+     * Returns the return code of clearing the sticky flag of each file, in
+     * the order the files were provided.
+     */
+    public int[] getReturnCodes()
+    {
+        return _returnCodes;
+    }
+
+    public void setReturnCode(int index, int rc)
+    {
+        _returnCodes[index] = rc;
+    }
+
+    @Override
+    public String toString()
+    {
+        return super.toString() + ";ClearStickyFlags=" + _pnfsIds.length;
+    }
+}
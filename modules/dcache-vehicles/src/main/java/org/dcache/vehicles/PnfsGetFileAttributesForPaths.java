@@ -0,0 +1,91 @@
+package org.dcache.vehicles;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.PnfsMessage;
+
+import org.dcache.namespace.FileAttribute;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Vehicle for resolving many paths and fetching their attributes in a
+ * single round trip to PnfsManager.
+ *
+ * Each path is resolved and authorized as if requested with an individual
+ * {@link PnfsGetFileAttributes} message carrying the subject, restriction
+ * and access mask of this message. Failing to resolve one path does not
+ * fail the message; instead the error is reported for that path alone.
+ */
+public class PnfsGetFileAttributesForPaths extends PnfsMessage
+{
+    private static final long serialVersionUID = 3461983925874052836L;
+
+    private final List<String> _paths;
+    private final Set<FileAttribute> _attributes;
+    private final Map<String,FileAttributes> _fileAttributes = new HashMap<>();
+    private final Map<String,CacheException> _errors = new HashMap<>();
+
+    public PnfsGetFileAttributesForPaths(Collection<String> paths, Set<FileAttribute> attributes)
+    {
+        _paths = new ArrayList<>(paths);
+        _attributes = requireNonNull(attributes);
+        setReplyRequired(true);
+    }
+
+    public List<String> getPaths()
+    {
+        return _paths;
+    }
+
+    public Set<FileAttribute> getRequestedAttributes()
+    {
+        return _attributes;
+    }
+
+    public void setFileAttributes(String path, FileAttributes attributes)
+    {
+        _fileAttributes.put(path, attributes);
+    }
+
+    public void setError(String path, CacheException error)
+    {
+        _errors.put(path, error);
+    }
+
+    /**
+     * Returns the attributes of the paths that were resolved successfully.
+     */
+    public Map<String,FileAttributes> getFileAttributes()
+    {
+        return _fileAttributes;
+    }
+
+    /**
+     * Returns the errors of the paths that could not be resolved.
+     */
+    public Map<String,CacheException> getErrors()
+    {
+        return _errors;
+    }
+
+    @Override
+    public boolean invalidates(Message message)
+    {
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return super.toString() + ";paths=" + _paths.size() +
+               ";resolved=" + _fileAttributes.size() + ";failed=" + _errors.size();
+    }
+}
@@ -35,6 +35,7 @@ public class PnfsListDirectoryMessage extends PnfsMessage
     private final BoundType _upperBoundType;
     private final UUID _uuid = UUID.randomUUID();
     private final Set<FileAttribute> _requestedAttributes;
+    private final String _after;
     private Collection<DirectoryEntry> _entries = new ArrayList<>();
 
     /**
@@ -65,6 +66,34 @@ public class PnfsListDirectoryMessage extends PnfsMessage
         _lowerBoundType = range.hasLowerBound() ? range.lowerBoundType() : null;
         _upperBoundType = range.hasUpperBound() ? range.upperBoundType() : null;
         _requestedAttributes = attr;
+        _after = null;
+    }
+
+    /**
+     * Constructs a new message for a listing in lexicographic order of
+     * the entry names.
+     *
+     * @param path The full PNFS path of the directory to list
+     * @param pattern Optional glob pattern for filtering the result
+     * @param after Name after which the listing starts; null or empty
+     * to start with the first entry
+     * @param range Range for bracketing the result following {@code after}
+     * @param attr The file attributes to include for each entry
+     * @see diskCacheV111.namespace.NameSpaceProvider#listAfter
+     */
+    public PnfsListDirectoryMessage(String path, Glob pattern, String after,
+                                    Range<Integer> range,
+                                    Set<FileAttribute> attr)
+    {
+        setPnfsPath(requireNonNull(path));
+        setReplyRequired(true);
+        _pattern = pattern;
+        _lower = range.hasLowerBound() ? range.lowerEndpoint() : null;
+        _upper = range.hasUpperBound() ? range.upperEndpoint() : null;
+        _lowerBoundType = range.hasLowerBound() ? range.lowerBoundType() : null;
+        _upperBoundType = range.hasUpperBound() ? range.upperBoundType() : null;
+        _requestedAttributes = attr;
+        _after = (after == null) ? "" : after;
     }
 
     /** Returns the UUID identifying this request. */
@@ -94,6 +123,15 @@ public class PnfsListDirectoryMessage extends PnfsMessage
         }
     }
 
+    /**
+     * Returns the name after which a sorted listing starts, or null if
+     * the listing is not sorted.
+     */
+    public String getAfter()
+    {
+        return _after;
+    }
+
     /** True if and only if the reply should include file meta data. */
     public Set<FileAttribute> getRequestedAttributes()
     {
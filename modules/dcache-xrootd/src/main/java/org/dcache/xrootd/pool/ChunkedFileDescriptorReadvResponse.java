@@ -6,24 +6,102 @@ import io.netty.util.ReferenceCountUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.protocol.messages.GenericReadRequestMessage.EmbeddedReadRequest;
 import org.dcache.xrootd.protocol.messages.ReadVRequest;
 import org.dcache.xrootd.stream.AbstractChunkedReadvResponse;
 
+import static org.dcache.util.ByteUnit.KiB;
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_FileNotOpen;
 
+/**
+ * Vector read response.
+ *
+ * The segments of the request are answered in the order requested by
+ * the client. To avoid one small random read per segment, the segments
+ * are sorted by offset and adjacent, overlapping or nearby segments are
+ * coalesced into larger ranges. When a segment is not in the read-ahead
+ * cache of its file, the ranges from that segment onwards are loaded
+ * into the cache in offset order.
+ */
 public class ChunkedFileDescriptorReadvResponse extends AbstractChunkedReadvResponse
 {
+    /**
+     * Segments separated by at most this many bytes are coalesced; reading
+     * the gap is cheaper than a separate request to the disk.
+     */
+    private static final int MAX_GAP = KiB.toBytes(16);
+
+    /**
+     * Segments are not coalesced into ranges larger than this.
+     */
+    private static final int MAX_RANGE = KiB.toBytes(256);
+
     private final List<FileDescriptor> descriptors;
 
+    /**
+     * For each file handle, the coalesced ranges of the request as a map
+     * from offset to length.
+     */
+    private final Map<Integer,NavigableMap<Long,Integer>> ranges;
+
     public ChunkedFileDescriptorReadvResponse(ReadVRequest request,
                                               int maxFrameSize,
                                               List<FileDescriptor> descriptors)
     {
         super(request, maxFrameSize);
         this.descriptors = descriptors;
+        this.ranges = coalesce(request.getReadRequestList(), MAX_RANGE);
+    }
+
+    /**
+     * Sorts the segments by file handle and offset and merges those that
+     * overlap or are at most MAX_GAP bytes apart, as long as the merged
+     * range does not exceed maxLength bytes.
+     */
+    static Map<Integer,NavigableMap<Long,Integer>> coalesce(EmbeddedReadRequest[] segments,
+                                                           int maxLength)
+    {
+        EmbeddedReadRequest[] sorted = segments.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(EmbeddedReadRequest::getFileHandle)
+                .thenComparingLong(EmbeddedReadRequest::getOffset));
+
+        Map<Integer,NavigableMap<Long,Integer>> result = new HashMap<>();
+        NavigableMap<Long,Integer> current = null;
+        int fd = -1;
+        long start = 0;
+        long end = 0;
+        for (EmbeddedReadRequest segment : sorted) {
+            long offset = segment.getOffset();
+            long segmentEnd = offset + segment.BytesToRead();
+            if (current != null && segment.getFileHandle() == fd
+                    && offset <= end + MAX_GAP
+                    && Math.max(end, segmentEnd) - start <= maxLength) {
+                end = Math.max(end, segmentEnd);
+            } else {
+                if (current != null) {
+                    current.put(start, (int) (end - start));
+                }
+                if (segment.getFileHandle() != fd) {
+                    fd = segment.getFileHandle();
+                    current = result.computeIfAbsent(fd, k -> new TreeMap<>());
+                }
+                start = offset;
+                end = segmentEnd;
+            }
+        }
+        if (current != null) {
+            current.put(start, (int) (end - start));
+        }
+        return result;
     }
 
     @Override
@@ -44,6 +122,10 @@ public class ChunkedFileDescriptorReadvResponse extends AbstractChunkedReadvResp
         }
 
         FileDescriptor descriptor = descriptors.get(fd);
+        NavigableMap<Long,Integer> fileRanges = ranges.get(fd);
+        if (descriptor instanceof ReadDescriptor && fileRanges != null) {
+            ((ReadDescriptor) descriptor).prefetch(fileRanges, position, length);
+        }
 
         ByteBuf chunk = alloc.ioBuffer(length);
         try {
@@ -0,0 +1,300 @@
+package org.dcache.xrootd.pool;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static org.dcache.util.ByteUnit.KiB;
+
+/**
+ * A small read-ahead cache for a file opened for reading.
+ *
+ * The cache holds a few disjoint ranges of the file in memory. Ranges
+ * are loaded either explicitly, e.g. for the coalesced segments of a
+ * vector read, or by adaptive prefetch when the client reads the file
+ * sequentially. The prefetch window doubles with every sequential read
+ * that misses the cache and is reset by a random read. Once the cached
+ * data exceeds the capacity, the oldest ranges are discarded. A read
+ * may be served from several adjacent ranges.
+ *
+ * Ranges are held in buffers taken from a pooled allocator when they
+ * are loaded. The buffers are returned to the allocator when ranges
+ * are discarded and when the cache is released, so files that are not
+ * read through the cache do not hold any memory.
+ *
+ * The class is thread safe.
+ */
+public class ReadAheadCache
+{
+    /**
+     * Initial size of the prefetch window for sequential reads.
+     */
+    private static final int MIN_WINDOW = KiB.toBytes(64);
+
+    /**
+     * Counters shared by the read-ahead caches of several files.
+     */
+    public static class Statistics
+    {
+        private final LongAdder _hits = new LongAdder();
+        private final LongAdder _misses = new LongAdder();
+        private final LongAdder _loaded = new LongAdder();
+
+        /** Returns the number of reads served from a cache. */
+        public long getHits()
+        {
+            return _hits.sum();
+        }
+
+        /** Returns the number of reads not served from a cache. */
+        public long getMisses()
+        {
+            return _misses.sum();
+        }
+
+        /** Returns the number of bytes read into caches. */
+        public long getLoaded()
+        {
+            return _loaded.sum();
+        }
+    }
+
+    private static class Range
+    {
+        final long offset;
+        final ByteBuf buffer;
+        final ByteBuffer data;
+        final boolean eof;
+
+        Range(long offset, ByteBuf buffer, ByteBuffer data, boolean eof)
+        {
+            this.offset = offset;
+            this.buffer = buffer;
+            this.data = data;
+            this.eof = eof;
+        }
+
+        long end()
+        {
+            return offset + data.limit();
+        }
+    }
+
+    private final RepositoryChannel _channel;
+    private final int _capacity;
+    private final ByteBufAllocator _allocator;
+    private final Statistics _statistics;
+
+    private final NavigableMap<Long,Range> _ranges = new TreeMap<>();
+    private final Deque<Range> _loadOrder = new ArrayDeque<>();
+    private long _size;
+    private boolean _released;
+
+    /** The position following the last read; -1 if nothing was read. */
+    private long _sequentialEnd = -1;
+
+    private int _window;
+
+    public ReadAheadCache(RepositoryChannel channel, int capacity,
+                          ByteBufAllocator allocator, Statistics statistics)
+    {
+        _channel = channel;
+        _capacity = capacity;
+        _allocator = allocator;
+        _statistics = statistics;
+    }
+
+    /**
+     * Reads data from the file. Reads until the buffer is full or the
+     * end of file has been reached.
+     */
+    public synchronized void read(ByteBuffer buffer, long position) throws IOException
+    {
+        int length = buffer.remaining();
+        boolean isSequential = position == _sequentialEnd;
+        _sequentialEnd = position + length;
+
+        if (copy(buffer, position)) {
+            _statistics._hits.increment();
+            return;
+        }
+        _statistics._misses.increment();
+
+        if (!isSequential) {
+            _window = 0;
+        } else if (length <= _capacity / 2 && !_released) {
+            _window = Math.min(Math.max(_window * 2, MIN_WINDOW), _capacity / 2);
+            load(position, Math.max(length, _window));
+            if (copy(buffer, position)) {
+                return;
+            }
+        }
+        readFully(buffer, position);
+    }
+
+    /**
+     * Loads the given ranges in offset order, skipping ranges that are
+     * already cached. Stops once the capacity of the cache has been
+     * consumed, such that ranges loaded earlier by the same call are
+     * not discarded.
+     *
+     * @param ranges map from offset to length of the ranges to load
+     */
+    public synchronized void prefetch(NavigableMap<Long,Integer> ranges) throws IOException
+    {
+        long budget = _capacity;
+        for (Map.Entry<Long,Integer> range : ranges.entrySet()) {
+            int length = range.getValue();
+            if (length > budget || _released) {
+                break;
+            }
+            if (!isCached(range.getKey(), length)) {
+                load(range.getKey(), length);
+            }
+            budget -= length;
+        }
+    }
+
+    /**
+     * Returns true if the given range of the file is fully cached.
+     */
+    public synchronized boolean isCached(long position, int length)
+    {
+        long end = position + length;
+        Map.Entry<Long,Range> entry = _ranges.floorEntry(position);
+        while (entry != null) {
+            Range range = entry.getValue();
+            if (range.end() >= end || (range.eof && range.end() >= position)) {
+                return true;
+            }
+            if (range.end() <= position) {
+                return false;
+            }
+            position = range.end();
+            entry = _ranges.ceilingEntry(position);
+            if (entry != null && entry.getKey() != position) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Discards all cached ranges and returns their memory to the
+     * allocator. Subsequent reads bypass the cache.
+     */
+    public synchronized void release()
+    {
+        _released = true;
+        _ranges.clear();
+        _loadOrder.forEach(r -> r.buffer.release());
+        _loadOrder.clear();
+        _size = 0;
+    }
+
+    /**
+     * Copies the given position of the file to the buffer if it is
+     * fully cached.
+     */
+    private boolean copy(ByteBuffer buffer, long position)
+    {
+        if (!isCached(position, buffer.remaining())) {
+            return false;
+        }
+        Range range = _ranges.floorEntry(position).getValue();
+        while (buffer.hasRemaining() && position < range.end()) {
+            ByteBuffer data = range.data.duplicate();
+            data.position((int) (position - range.offset));
+            if (data.remaining() > buffer.remaining()) {
+                data.limit(data.position() + buffer.remaining());
+            }
+            position += data.remaining();
+            buffer.put(data);
+            if (buffer.hasRemaining()) {
+                Range next = _ranges.get(position);
+                if (next == null) {
+                    break;
+                }
+                range = next;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads the given range of the file. Any part of the range already
+     * covered by the preceding range is skipped and cached ranges
+     * starting within the range are replaced, such that cached ranges
+     * never overlap.
+     */
+    private void load(long position, int length) throws IOException
+    {
+        long end = position + length;
+        Map.Entry<Long,Range> prev = _ranges.lowerEntry(position);
+        if (prev != null && prev.getValue().end() > position) {
+            if (prev.getValue().eof) {
+                return;
+            }
+            position = prev.getValue().end();
+        }
+        if (position >= end) {
+            return;
+        }
+        for (Range overlapping : _ranges.subMap(position, true, end, false).values().toArray(new Range[0])) {
+            discard(overlapping);
+        }
+
+        int size = (int) (end - position);
+        ByteBuf buffer = _allocator.ioBuffer(size, size);
+        ByteBuffer data;
+        try {
+            data = buffer.nioBuffer(0, size);
+            readFully(data, position);
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        boolean eof = data.hasRemaining();
+        data.flip();
+        _statistics._loaded.add(data.limit());
+
+        Range range = new Range(position, buffer, data, eof);
+        _ranges.put(position, range);
+        _loadOrder.addLast(range);
+        _size += data.capacity();
+
+        while (_size > _capacity && _loadOrder.size() > 1) {
+            discard(_loadOrder.peekFirst());
+        }
+    }
+
+    private void discard(Range range)
+    {
+        _ranges.remove(range.offset, range);
+        _loadOrder.remove(range);
+        _size -= range.data.capacity();
+        range.buffer.release();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            /* use position independent thread safe call */
+            int bytes = _channel.read(buffer, position);
+            if (bytes < 0) {
+                break;
+            }
+            position += bytes;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.dcache.xrootd.pool;
 
+import io.netty.buffer.PooledByteBufAllocator;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.NavigableMap;
 
 import org.dcache.pool.movers.NettyTransferService;
 import org.dcache.vehicles.XrootdProtocolInfo;
@@ -20,14 +23,37 @@ public class ReadDescriptor implements FileDescriptor
      */
     protected NettyTransferService<XrootdProtocolInfo>.NettyMoverChannel _channel;
 
+    /**
+     * Read-ahead cache for the file; null if disabled.
+     */
+    private final ReadAheadCache _cache;
+
     public ReadDescriptor(NettyTransferService<XrootdProtocolInfo>.NettyMoverChannel channel)
+    {
+        this(channel, 0, null);
+    }
+
+    /**
+     * @param readAhead capacity of the read-ahead cache in bytes; zero
+     *                  disables the cache
+     * @param statistics counters to which the read-ahead cache reports
+     */
+    public ReadDescriptor(NettyTransferService<XrootdProtocolInfo>.NettyMoverChannel channel,
+                          int readAhead, ReadAheadCache.Statistics statistics)
     {
         _channel = channel;
+        _cache = (readAhead > 0)
+                ? new ReadAheadCache(channel, readAhead, PooledByteBufAllocator.DEFAULT, statistics)
+                : null;
     }
 
     @Override
     public void read(ByteBuffer buffer, long position) throws IOException
     {
+        if (_cache != null) {
+            _cache.read(buffer, position);
+            return;
+        }
         while (buffer.hasRemaining()) {
             /* use position independent thread safe call */
             int bytes = _channel.read(buffer, position);
@@ -38,6 +64,34 @@ public class ReadDescriptor implements FileDescriptor
         }
     }
 
+    /**
+     * Loads the given ranges of the file into the read-ahead cache,
+     * unless the range at position is already cached. Ranges are read
+     * in offset order, starting with the range containing position.
+     *
+     * @param ranges map from offset to length of ranges sorted by
+     *               offset, not overlapping
+     */
+    public void prefetch(NavigableMap<Long,Integer> ranges, long position, int length)
+            throws IOException
+    {
+        if (_cache != null && !_cache.isCached(position, length)) {
+            Long start = ranges.floorKey(position);
+            _cache.prefetch(start == null ? ranges : ranges.tailMap(start, true));
+        }
+    }
+
+    /**
+     * Returns the memory held by the read-ahead cache. Must be called
+     * when the file is closed.
+     */
+    public void releaseCache()
+    {
+        if (_cache != null) {
+            _cache.release();
+        }
+    }
+
     @Override
     public XrootdResponse<SyncRequest> sync(SyncRequest msg) throws IOException,
                     InterruptedException
@@ -142,6 +142,12 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
      */
     private final int _maxFrameSize;
 
+    /**
+     * Capacity in bytes of the read-ahead cache of files opened for
+     * reading.
+     */
+    private final int _readAhead;
+
     /**
      * Custom entries for kXR_Qconfig requests.
      */
@@ -149,10 +155,12 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
 
     public XrootdPoolRequestHandler(XrootdTransferService server,
                                     int maxFrameSize,
+                                    int readAhead,
                                     Map<String, String> queryConfig)
     {
         _server = server;
         _maxFrameSize = maxFrameSize;
+        _readAhead = readAhead;
         _queryConfig = queryConfig;
     }
 
@@ -183,6 +191,8 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
             if (descriptor != null) {
                 if (descriptor instanceof TpcWriteDescriptor) {
                     ((TpcWriteDescriptor)descriptor).shutDown();
+                } else if (descriptor instanceof ReadDescriptor) {
+                    ((ReadDescriptor)descriptor).releaseCache();
                 }
 
                 if (descriptor.isPersistOnSuccessfulClose()) {
@@ -217,6 +227,8 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
                     if (descriptor instanceof TpcWriteDescriptor) {
                         ((TpcWriteDescriptor)descriptor).fireDelayedSync(kXR_error,
                                                                          t.getMessage());
+                    } else if (descriptor instanceof ReadDescriptor) {
+                        ((ReadDescriptor)descriptor).releaseCache();
                     }
                 }
             }
@@ -357,7 +369,8 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
                         descriptor = new WriteDescriptor(file, posc);
                     }
                 } else {
-                    descriptor = new ReadDescriptor(file);
+                    descriptor = new ReadDescriptor(file, _readAhead,
+                                                    _server.getReadAheadStatistics());
                 }
 
                 FileStatus stat = msg.isRetStat() ? stat(file) : null;
@@ -694,7 +707,11 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
                              "open file.");
         }
 
-        ListenableFuture<Void> future = _descriptors.get(fd).getChannel().release();
+        FileDescriptor descriptor = _descriptors.get(fd);
+        if (descriptor instanceof ReadDescriptor) {
+            ((ReadDescriptor)descriptor).releaseCache();
+        }
+        ListenableFuture<Void> future = descriptor.getChannel().release();
         future.addListener(() -> {
             try {
                 Uninterruptibles.getUninterruptibly(future);
@@ -31,6 +31,7 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
+import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
@@ -46,6 +47,7 @@ import java.util.concurrent.TimeUnit;
 import diskCacheV111.util.CacheException;
 
 import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellPath;
 import dmg.util.command.Argument;
 import dmg.util.command.Command;
@@ -109,7 +111,7 @@ import static org.dcache.xrootd.plugins.XrootdTLSHandlerFactory.SERVER_TLS;
  *   third-party embedded clients.
  */
 public class XrootdTransferService extends NettyTransferService<XrootdProtocolInfo>
-                implements CellCommandListener
+                implements CellCommandListener, CellInfoProvider
 {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(XrootdTransferService.class);
@@ -142,6 +144,9 @@ public class XrootdTransferService extends NettyTransferService<XrootdProtocolIn
     }
 
     private int                         maxFrameSize;
+    private int                         readAhead;
+    private final ReadAheadCache.Statistics readAheadStatistics =
+            new ReadAheadCache.Statistics();
     private List<ChannelHandlerFactory> plugins;
     private List<ChannelHandlerFactory> accessLogPlugins;
     private List<ChannelHandlerFactory> tpcClientPlugins;
@@ -258,6 +263,36 @@ public class XrootdTransferService extends NettyTransferService<XrootdProtocolIn
         return maxFrameSize;
     }
 
+    /**
+     * Sets the capacity in bytes of the per-file read-ahead cache used
+     * for reads and vector reads. Zero disables the cache.
+     */
+    public void setReadAhead(int readAhead)
+    {
+        this.readAhead = readAhead;
+    }
+
+    public int getReadAhead()
+    {
+        return readAhead;
+    }
+
+    public ReadAheadCache.Statistics getReadAheadStatistics()
+    {
+        return readAheadStatistics;
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        if (readAhead > 0) {
+            pw.println("Read-ahead cache size : " + readAhead);
+            pw.println("Read-ahead cache hits : " + readAheadStatistics.getHits());
+            pw.println("Read-ahead cache misses : " + readAheadStatistics.getMisses());
+            pw.println("Read-ahead bytes loaded : " + readAheadStatistics.getLoaded());
+        }
+    }
+
     public Map<String, String> getQueryConfig()
     {
         return queryConfig;
@@ -347,6 +382,7 @@ public class XrootdTransferService extends NettyTransferService<XrootdProtocolIn
         XrootdPoolRequestHandler handler
                         = new XrootdPoolRequestHandler(this,
                                                        maxFrameSize,
+                                                       readAhead,
                                                        queryConfig);
         handler.setSigningPolicy(signingPolicy);
         handler.setTlsSessionInfo(tlsSessionInfo);
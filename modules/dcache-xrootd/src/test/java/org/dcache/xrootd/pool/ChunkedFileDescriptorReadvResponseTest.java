@@ -0,0 +1,110 @@
+package org.dcache.xrootd.pool;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.dcache.xrootd.protocol.messages.GenericReadRequestMessage.EmbeddedReadRequest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChunkedFileDescriptorReadvResponseTest
+{
+    @Test
+    public void shouldSortAndMergeAdjacentSegments()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(0, 200, 100),
+                        segment(0, 0, 100),
+                        segment(0, 100, 100)), 1000);
+
+        assertThat(ranges.get(0), aMapWithSize(1));
+        assertThat(ranges.get(0), hasEntry(0L, 300));
+    }
+
+    @Test
+    public void shouldMergeOverlappingSegments()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(0, 0, 100),
+                        segment(0, 50, 20),
+                        segment(0, 80, 100)), 1000);
+
+        assertThat(ranges.get(0), aMapWithSize(1));
+        assertThat(ranges.get(0), hasEntry(0L, 180));
+    }
+
+    @Test
+    public void shouldMergeSegmentsSeparatedBySmallGap()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(0, 0, 100),
+                        segment(0, 1100, 100)), 100_000);
+
+        assertThat(ranges.get(0), aMapWithSize(1));
+        assertThat(ranges.get(0), hasEntry(0L, 1200));
+    }
+
+    @Test
+    public void shouldNotMergeDistantSegments()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(0, 0, 100),
+                        segment(0, 1_000_000, 100)), 100_000);
+
+        assertThat(ranges.get(0), aMapWithSize(2));
+        assertThat(ranges.get(0), hasEntry(0L, 100));
+        assertThat(ranges.get(0), hasEntry(1_000_000L, 100));
+    }
+
+    @Test
+    public void shouldNotMergeBeyondMaximumLength()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(0, 0, 100),
+                        segment(0, 100, 100),
+                        segment(0, 200, 100)), 200);
+
+        assertThat(ranges.get(0), aMapWithSize(2));
+        assertThat(ranges.get(0), hasEntry(0L, 200));
+        assertThat(ranges.get(0), hasEntry(200L, 100));
+    }
+
+    @Test
+    public void shouldKeepFilesApart()
+    {
+        Map<Integer,NavigableMap<Long,Integer>> ranges =
+                ChunkedFileDescriptorReadvResponse.coalesce(segments(
+                        segment(1, 100, 100),
+                        segment(0, 0, 100),
+                        segment(1, 0, 100)), 1000);
+
+        assertThat(ranges, aMapWithSize(2));
+        assertThat(ranges.get(0), hasEntry(0L, 100));
+        assertThat(ranges.get(1), hasEntry(0L, 200));
+    }
+
+    private static EmbeddedReadRequest[] segments(EmbeddedReadRequest... segments)
+    {
+        return segments;
+    }
+
+    private static EmbeddedReadRequest segment(int fd, long offset, int length)
+    {
+        EmbeddedReadRequest segment = mock(EmbeddedReadRequest.class);
+        when(segment.getFileHandle()).thenReturn(fd);
+        when(segment.getOffset()).thenReturn(offset);
+        when(segment.BytesToRead()).thenReturn(length);
+        return segment;
+    }
+}
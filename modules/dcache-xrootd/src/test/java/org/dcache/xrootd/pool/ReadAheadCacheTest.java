@@ -0,0 +1,206 @@
+package org.dcache.xrootd.pool;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class ReadAheadCacheTest
+{
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final int CAPACITY = 256 * 1024;
+
+    /**
+     * Allocator remembering the buffers it handed out.
+     */
+    private static class RecordingAllocator extends UnpooledByteBufAllocator
+    {
+        final List<ByteBuf> buffers = new ArrayList<>();
+
+        RecordingAllocator()
+        {
+            super(false);
+        }
+
+        @Override
+        public ByteBuf ioBuffer(int initialCapacity, int maxCapacity)
+        {
+            ByteBuf buffer = super.ioBuffer(initialCapacity, maxCapacity);
+            buffers.add(buffer);
+            return buffer;
+        }
+    }
+
+    private Path file;
+    private RepositoryChannel channel;
+    private RecordingAllocator allocator;
+    private ReadAheadCache.Statistics statistics;
+    private ReadAheadCache cache;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("read-ahead", null);
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(file, content);
+        channel = spy(new FileRepositoryChannel(file, EnumSet.of(READ)));
+        allocator = new RecordingAllocator();
+        statistics = new ReadAheadCache.Statistics();
+        cache = new ReadAheadCache(channel, CAPACITY, allocator, statistics);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        channel.close();
+        Files.delete(file);
+    }
+
+    @Test
+    public void shouldReadFileContent() throws IOException
+    {
+        assertContent(read(1000, 5000), 1000);
+        assertContent(read(6000, 5000), 6000);
+        assertContent(read(FILE_SIZE - 10, 100), FILE_SIZE - 10);
+    }
+
+    @Test
+    public void shouldPrefetchOnSequentialRead() throws IOException
+    {
+        read(0, 1024);
+        read(1024, 1024);
+        clearInvocations(channel);
+
+        assertContent(read(2048, 1024), 2048);
+
+        verify(channel, never()).read(any(ByteBuffer.class), anyLong());
+        assertThat(statistics.getHits(), is(1L));
+        assertThat(statistics.getMisses(), is(2L));
+    }
+
+    @Test
+    public void shouldNotPrefetchOnRandomRead() throws IOException
+    {
+        read(100_000, 1024);
+        read(500_000, 1024);
+
+        assertThat(allocator.buffers.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldServeReadSpanningAdjacentRanges() throws IOException
+    {
+        cache.prefetch(ranges(0, 1000, 1000, 1000));
+        clearInvocations(channel);
+
+        assertContent(read(500, 1000), 500);
+
+        verify(channel, never()).read(any(ByteBuffer.class), anyLong());
+        assertThat(cache.isCached(0, 2000), is(true));
+        assertThat(cache.isCached(0, 2001), is(false));
+    }
+
+    @Test
+    public void shouldNotCacheOverlappingRangesTwice() throws IOException
+    {
+        cache.prefetch(ranges(1000, 1000));
+        cache.prefetch(ranges(500, 2000));
+
+        assertThat(cache.isCached(500, 2000), is(true));
+        assertThat(allocator.buffers.get(0).refCnt(), is(0));
+        assertContent(read(500, 2000), 500);
+    }
+
+    @Test
+    public void shouldServeShortReadAtEndOfFile() throws IOException
+    {
+        cache.prefetch(ranges(FILE_SIZE - 100, 200));
+        clearInvocations(channel);
+
+        ByteBuffer buffer = read(FILE_SIZE - 50, 100);
+
+        assertThat(buffer.remaining(), is(50));
+        verify(channel, never()).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldStayWithinCapacity() throws IOException
+    {
+        cache.prefetch(ranges(0, CAPACITY / 2));
+        cache.prefetch(ranges(CAPACITY, CAPACITY / 2));
+        cache.prefetch(ranges(2 * CAPACITY, CAPACITY / 2));
+
+        assertThat(cache.isCached(0, 1), is(false));
+        assertThat(cache.isCached(CAPACITY, CAPACITY / 2), is(true));
+        assertThat(cache.isCached(2 * CAPACITY, CAPACITY / 2), is(true));
+        assertThat(allocator.buffers.get(0).refCnt(), is(0));
+    }
+
+    @Test
+    public void shouldReleaseBuffersOnRelease() throws IOException
+    {
+        cache.prefetch(ranges(0, 1000, 5000, 1000));
+
+        cache.release();
+
+        assertThat(allocator.buffers.size(), is(2));
+        assertThat(allocator.buffers.stream().map(ByteBuf::refCnt).collect(toList()),
+                   everyItem(equalTo(0)));
+        assertContent(read(0, 1000), 0);
+        assertThat(allocator.buffers.size(), is(2));
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        cache.read(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static TreeMap<Long,Integer> ranges(long... offsetsAndLengths)
+    {
+        TreeMap<Long,Integer> ranges = new TreeMap<>();
+        for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+            ranges.put(offsetsAndLengths[i], (int) offsetsAndLengths[i + 1]);
+        }
+        return ranges;
+    }
+
+    private static void assertContent(ByteBuffer buffer, long position)
+    {
+        while (buffer.hasRemaining()) {
+            assertThat(buffer.get(), is((byte) position));
+            position++;
+        }
+    }
+}
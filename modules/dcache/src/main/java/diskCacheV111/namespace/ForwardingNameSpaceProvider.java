@@ -25,6 +25,7 @@ import javax.security.auth.Subject;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
@@ -163,6 +164,14 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider
         return delegate().getFileAttributes(subject, pnfsId, attr);
     }
 
+    @Override
+    public void getFileAttributesForPaths(Subject subject, Collection<String> paths,
+            Set<FileAttribute> attr, BiConsumer<String,FileAttributes> onSuccess,
+            BiConsumer<String,CacheException> onFailure)
+    {
+        delegate().getFileAttributesForPaths(subject, paths, attr, onSuccess, onFailure);
+    }
+
     @Override
     public FileAttributes setFileAttributes(Subject subject, PnfsId pnfsId,
             FileAttributes attr, Set<FileAttribute> fetch) throws CacheException
@@ -177,6 +186,14 @@ public abstract class ForwardingNameSpaceProvider implements NameSpaceProvider
         delegate().list(subject, path, glob, range, attrs, handler);
     }
 
+    @Override
+    public void listAfter(Subject subject, String path, Glob glob, String after,
+            Range<Integer> range, Set<FileAttribute> attrs, ListHandler handler)
+            throws CacheException
+    {
+        delegate().listAfter(subject, path, glob, after, range, attrs, handler);
+    }
+
     @Override
     public FsPath createUploadPath(Subject subject, FsPath path, FsPath rootPath,
             Long size, AccessLatency al, RetentionPolicy rp, String spaceToken,
@@ -0,0 +1,66 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.namespace;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.namespace.FileType;
+import org.dcache.namespace.events.EventType;
+
+/**
+ * An EventReceiver that forwards all events to a fixed list of other
+ * EventReceivers.
+ */
+public class MulticastEventReceiver implements EventReceiver
+{
+    private final List<EventReceiver> receivers;
+
+    public MulticastEventReceiver(List<EventReceiver> receivers)
+    {
+        this.receivers = ImmutableList.copyOf(receivers);
+    }
+
+    @Override
+    public void notifySelfEvent(EventType eventType, PnfsId target, FileType fileType)
+    {
+        for (EventReceiver receiver : receivers) {
+            receiver.notifySelfEvent(eventType, target, fileType);
+        }
+    }
+
+    @Override
+    public void notifyChildEvent(EventType eventType, PnfsId target, String name, FileType fileType)
+    {
+        for (EventReceiver receiver : receivers) {
+            receiver.notifyChildEvent(eventType, target, name, fileType);
+        }
+    }
+
+    @Override
+    public void notifyMovedEvent(EventType eventType, PnfsId target, String name, String cookie, FileType fileType)
+    {
+        for (EventReceiver receiver : receivers) {
+            receiver.notifyMovedEvent(eventType, target, name, cookie, fileType);
+        }
+    }
+}
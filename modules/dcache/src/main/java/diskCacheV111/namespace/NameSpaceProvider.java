@@ -8,6 +8,7 @@ import javax.security.auth.Subject;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
@@ -261,6 +262,34 @@ public interface NameSpaceProvider
                                      Set<FileAttribute> attr)
         throws CacheException;
 
+    /**
+     * Get the attributes defined by <code>attr</code> of many files identified
+     * by path. The result for each path is the same as that of pathToPnfsid
+     * followed by getFileAttributes, but implementations may share work between
+     * paths, such as resolving and authorizing a common parent directory.
+     * Failing to resolve one path does not affect the others.
+     *
+     * @param subject Subject of user who invoked this method.
+     * @param paths of the files
+     * @param attr array of requested attributes
+     * @param onSuccess called with the attributes of every resolved path
+     * @param onFailure called with the error of every path that could not be resolved
+     */
+    default void getFileAttributesForPaths(Subject subject, Collection<String> paths,
+                                           Set<FileAttribute> attr,
+                                           BiConsumer<String,FileAttributes> onSuccess,
+                                           BiConsumer<String,CacheException> onFailure)
+    {
+        for (String path : paths) {
+            try {
+                PnfsId pnfsId = pathToPnfsid(subject, path, true);
+                onSuccess.accept(path, getFileAttributes(subject, pnfsId, attr));
+            } catch (CacheException e) {
+                onFailure.accept(path, e);
+            }
+        }
+    }
+
     /**
      * Set files attributes defined by <code>attr</code>.
      *
@@ -305,6 +334,31 @@ public interface NameSpaceProvider
               Set<FileAttribute> attrs, ListHandler handler)
         throws CacheException;
 
+    /**
+     * Lists the content of a directory in lexicographic order of the
+     * entry names, starting after the given name. Unlike the range of
+     * {@link #list}, the name remains a valid position when entries are
+     * added to or deleted from the directory, thus a client may list a
+     * large directory in pages by passing the last name of the previous
+     * page.
+     *
+     * The optional range is applied to the entries following
+     * {@code after} that match the glob.
+     *
+     * @param subject Subject of user who invoked this method
+     * @param path Path to directory to list
+     * @param glob Pattern to limit the result set; may be null
+     * @param after Name after which to start; may be null or empty to
+     * start with the first entry
+     * @param range The range of entries to return; may be null
+     * @param attrs The file attributes to query for each entry
+     * @param handler Handler called for each entry
+     */
+    void listAfter(Subject subject, String path, Glob glob, String after,
+                   Range<Integer> range, Set<FileAttribute> attrs,
+                   ListHandler handler)
+        throws CacheException;
+
     /**
      * Set up a temporary upload location for a file.
      *
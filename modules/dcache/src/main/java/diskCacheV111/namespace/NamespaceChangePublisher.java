@@ -0,0 +1,186 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.namespace;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.NamespaceChangedNotificationMessage;
+
+import dmg.cells.nucleus.CellLifeCycleAware;
+
+import org.dcache.cells.CellStub;
+import org.dcache.namespace.FileType;
+import org.dcache.namespace.events.EventType;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.dcache.namespace.events.EventType.*;
+
+/**
+ * This class accepts inotify-like events and publishes a compact summary of
+ * namespace modifications on a topic.  Services that cache namespace
+ * information (such as the NFS door) subscribe to this topic and invalidate
+ * the affected entries, allowing them to use long cache lifetimes without
+ * serving stale information.
+ * <p>
+ * Events are accumulated for a short period and sent as a single message.
+ * Only events that modify the namespace are considered; events describing
+ * read activity (IN_ACCESS, IN_OPEN and IN_CLOSE_NOWRITE) are ignored.  If
+ * more changes accumulate than are allowed in one message then an overflow
+ * notification is sent instead, requiring subscribers to drop their caches.
+ * <p>
+ * As with all EventReceiver implementations, accepting an event never blocks
+ * on I/O.
+ */
+public class NamespaceChangePublisher implements EventReceiver, CellLifeCycleAware
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NamespaceChangePublisher.class);
+
+    private static final Set<EventType> IGNORED_EVENTS =
+            EnumSet.of(IN_ACCESS, IN_OPEN, IN_CLOSE_NOWRITE);
+
+    private CellStub topic;
+    private ScheduledExecutorService executor;
+    private long delay;
+    private TimeUnit delayUnit;
+    private int maximumChanges;
+
+    private Set<PnfsId> modified = new HashSet<>();
+    private SetMultimap<PnfsId,String> children = HashMultimap.create();
+    private boolean overflow;
+    private ScheduledFuture<?> flushTask;
+
+    @Required
+    public void setTopic(CellStub topic)
+    {
+        this.topic = topic;
+    }
+
+    @Required
+    public void setExecutor(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    @Required
+    public void setDelay(long delay)
+    {
+        checkArgument(delay >= 0, "Cannot be negative");
+        this.delay = delay;
+    }
+
+    @Required
+    public void setDelayUnit(TimeUnit unit)
+    {
+        delayUnit = unit;
+    }
+
+    @Required
+    public void setMaximumChanges(int maximum)
+    {
+        checkArgument(maximum > 0, "Cannot be zero or negative value");
+        maximumChanges = maximum;
+    }
+
+    @Override
+    public void beforeStop()
+    {
+        flush();
+    }
+
+    @Override
+    public void notifySelfEvent(EventType eventType, PnfsId target, FileType fileType)
+    {
+        if (!IGNORED_EVENTS.contains(eventType)) {
+            recordModified(target);
+        }
+    }
+
+    @Override
+    public void notifyChildEvent(EventType eventType, PnfsId target, String name, FileType fileType)
+    {
+        if (!IGNORED_EVENTS.contains(eventType)) {
+            recordChild(target, name);
+        }
+    }
+
+    @Override
+    public void notifyMovedEvent(EventType eventType, PnfsId target, String name, String cookie, FileType fileType)
+    {
+        recordChild(target, name);
+    }
+
+    private synchronized void recordModified(PnfsId target)
+    {
+        if (!overflow && modified.add(target)) {
+            afterChange();
+        }
+    }
+
+    private synchronized void recordChild(PnfsId directory, String name)
+    {
+        if (!overflow && children.put(directory, name)) {
+            afterChange();
+        }
+    }
+
+    private void afterChange()
+    {
+        if (modified.size() + children.size() > maximumChanges) {
+            LOGGER.debug("Too many namespace changes; sending overflow");
+            overflow = true;
+            modified = new HashSet<>();
+            children = HashMultimap.create();
+        }
+        if (flushTask == null) {
+            flushTask = executor.schedule(this::flush, delay, delayUnit);
+        }
+    }
+
+    private void flush()
+    {
+        NamespaceChangedNotificationMessage message;
+        synchronized (this) {
+            flushTask = null;
+            if (overflow) {
+                message = NamespaceChangedNotificationMessage.overflow();
+            } else if (!modified.isEmpty() || !children.isEmpty()) {
+                message = new NamespaceChangedNotificationMessage(modified, children);
+            } else {
+                return;
+            }
+            overflow = false;
+            modified = new HashSet<>();
+            children = HashMultimap.create();
+        }
+        LOGGER.debug("Publishing {}", message);
+        topic.notify(message);
+    }
+}
@@ -111,6 +111,7 @@ import org.dcache.util.TimeUtils;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsCreateSymLinkMessage;
 import org.dcache.vehicles.PnfsGetFileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributesForPaths;
 import org.dcache.vehicles.PnfsListDirectoryMessage;
 import org.dcache.vehicles.PnfsRemoveChecksumMessage;
 import org.dcache.vehicles.PnfsSetFileAttributes;
@@ -153,6 +154,7 @@ public class PnfsManagerV3
         PnfsCreateEntryMessage.class,
         PnfsCreateUploadPath.class,
         PnfsGetFileAttributes.class,
+        PnfsGetFileAttributesForPaths.class,
         PnfsListDirectoryMessage.class
     };
 
@@ -223,6 +225,7 @@ public class PnfsManagerV3
         _gauges.addGauge(PnfsGetParentMessage.class);
         _gauges.addGauge(PnfsSetFileAttributes.class);
         _gauges.addGauge(PnfsGetFileAttributes.class);
+        _gauges.addGauge(PnfsGetFileAttributesForPaths.class);
         _gauges.addGauge(PnfsListDirectoryMessage.class);
         _gauges.addGauge(PnfsRemoveChecksumMessage.class);
         _gauges.addGauge(PnfsCreateSymLinkMessage.class);
@@ -1755,11 +1758,20 @@ public class PnfsManagerV3
             ListHandlerImpl handler =
                 new ListHandlerImpl(source, envelope.getUOID(),
                                     msg, initialDelay, delay);
-            _nameSpaceProvider.list(msg.getSubject(), path,
-                                    msg.getPattern(),
-                                    msg.getRange(),
-                                    msg.getRequestedAttributes(),
-                                    handler);
+            if (msg.getAfter() == null) {
+                _nameSpaceProvider.list(msg.getSubject(), path,
+                                        msg.getPattern(),
+                                        msg.getRange(),
+                                        msg.getRequestedAttributes(),
+                                        handler);
+            } else {
+                _nameSpaceProvider.listAfter(msg.getSubject(), path,
+                                             msg.getPattern(),
+                                             msg.getAfter(),
+                                             msg.getRange(),
+                                             msg.getRequestedAttributes(),
+                                             handler);
+            }
             msg.setSucceeded(handler.getMessageCount() + 1);
         } catch (FileNotFoundCacheException | NotDirCacheException e) {
             msg.setFailed(e.getRc(), e.getMessage());
@@ -1984,6 +1996,8 @@ public class PnfsManagerV3
             listDirectory(message, (PnfsListDirectoryMessage) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsGetFileAttributes) {
             getFileAttributes((PnfsGetFileAttributes) pnfsMessage);
+        } else if (pnfsMessage instanceof PnfsGetFileAttributesForPaths) {
+            getFileAttributesForPaths((PnfsGetFileAttributesForPaths) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsSetFileAttributes) {
             setFileAttributes((PnfsSetFileAttributes) pnfsMessage);
         } else if (pnfsMessage instanceof PnfsRemoveChecksumMessage) {
@@ -2199,19 +2213,7 @@ public class PnfsManagerV3
                                                      pnfsId,
                                                      requested);
 
-            if (attrs.isDefined(FileAttribute.STORAGEINFO)) {
-                StorageInfo storageInfo = attrs.getStorageInfo();
-                if (storageInfo.getKey("path") == null) {
-                    storageInfo.setKey("path", message.getPnfsPath());
-                }
-                storageInfo.setKey("uid", Integer.toString(attrs.getOwner()));
-                storageInfo.setKey("gid", Integer.toString(attrs.getGroup()));
-
-                // REVISIT: consider removing xattr injection once pools can accept FileAttribute.XATTR
-                if (attrs.isDefined(XATTR)) {
-                    attrs.getXattrs().forEach((k,v) -> storageInfo.setKey(STORAGE_INFO_XATTR_PREFIX+k, v));
-                }
-            }
+            populateStorageInfo(attrs, message.getPnfsPath());
 
             message.setFileAttributes(attrs);
             message.setSucceeded();
@@ -2233,6 +2235,75 @@ public class PnfsManagerV3
         }
     }
 
+    private static void populateStorageInfo(FileAttributes attrs, String path)
+    {
+        if (attrs.isDefined(FileAttribute.STORAGEINFO)) {
+            StorageInfo storageInfo = attrs.getStorageInfo();
+            if (storageInfo.getKey("path") == null) {
+                storageInfo.setKey("path", path);
+            }
+            storageInfo.setKey("uid", Integer.toString(attrs.getOwner()));
+            storageInfo.setKey("gid", Integer.toString(attrs.getGroup()));
+
+            // REVISIT: consider removing xattr injection once pools can accept FileAttribute.XATTR
+            if (attrs.isDefined(XATTR)) {
+                attrs.getXattrs().forEach((k,v) -> storageInfo.setKey(STORAGE_INFO_XATTR_PREFIX+k, v));
+            }
+        }
+    }
+
+    /**
+     * Resolves all paths of the message within the current transaction. The
+     * name space provider is asked for the attributes of all paths at once,
+     * including those needed to check the access mask, so the files are not
+     * fetched a second time for authorization. Permission checks, restrictions
+     * and errors are otherwise the same as for individual PnfsGetFileAttributes
+     * messages. Errors are reported per path.
+     */
+    public void getFileAttributesForPaths(PnfsGetFileAttributesForPaths message)
+    {
+        try {
+            Subject subject = message.getSubject();
+            Set<AccessMask> mask = message.getAccessMask();
+            List<String> paths = new ArrayList<>(message.getPaths().size());
+            for (String path : message.getPaths()) {
+                try {
+                    checkRestriction(message, READ_METADATA, FsPath.create(path));
+                    paths.add(path);
+                } catch (PermissionDeniedCacheException e) {
+                    message.setError(path, e);
+                }
+            }
+
+            Set<FileAttribute> requested = EnumSet.of(PNFSID);
+            requested.addAll(message.getRequestedAttributes());
+            if (!Subjects.isRoot(subject) && !mask.isEmpty()) {
+                requested.addAll(_permissionHandler.getRequiredAttributes());
+            }
+            if (requested.contains(FileAttribute.STORAGEINFO)) {
+                /* See getFileAttributes. */
+                requested.add(FileAttribute.OWNER);
+                requested.add(FileAttribute.OWNER_GROUP);
+                requested.add(FileAttribute.XATTR);
+            }
+
+            _nameSpaceProvider.getFileAttributesForPaths(subject, paths, requested,
+                    (path, attrs) -> {
+                        if (!Subjects.isRoot(subject) && !mask.isEmpty() && !checkMask(subject, mask, attrs)) {
+                            message.setError(path, new PermissionDeniedCacheException("Access denied"));
+                        } else {
+                            populateStorageInfo(attrs, path);
+                            message.setFileAttributes(path, attrs);
+                        }
+                    },
+                    message::setError);
+            message.setSucceeded();
+        } catch (RuntimeException e) {
+            _log.error("Error while retrieving file attributes: " + e.getMessage(), e);
+            message.setFailed(CacheException.UNEXPECTED_SYSTEM_EXCEPTION, e);
+        }
+    }
+
     public void setFileAttributes(PnfsSetFileAttributes message)
     {
         try {
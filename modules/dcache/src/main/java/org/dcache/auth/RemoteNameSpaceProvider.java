@@ -222,6 +222,20 @@ public class RemoteNameSpaceProvider implements NameSpaceProvider
         }
     }
 
+    @Override
+    public void listAfter(Subject subject, String path, Glob glob, String after,
+            Range<Integer> range, Set<FileAttribute> attrs, ListHandler handler)
+            throws CacheException
+    {
+        try (DirectoryStream stream = _handler.listAfter(subject, Restrictions.none(), FsPath.create(path), glob, after, range, attrs)) {
+            for (DirectoryEntry entry : stream) {
+                handler.addEntry(entry.getName(), entry.getFileAttributes());
+            }
+        } catch (InterruptedException e) {
+            throw new TimeoutCacheException(e.getMessage());
+        }
+    }
+
     @Override
     public FsPath createUploadPath(Subject subject, FsPath path, FsPath rootPath,
                                    Long size, AccessLatency al, RetentionPolicy rp, String spaceToken,
@@ -36,6 +36,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -230,6 +231,18 @@ public class JdbcDao extends JdbcDaoSupport implements PinDao
             return this;
         }
 
+        @Override
+        public JdbcPinCriterion ids(Collection<Long> ids)
+        {
+            if (ids.isEmpty()) {
+                addClause("false");
+            } else {
+                addClause("id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")",
+                          ids.toArray());
+            }
+            return this;
+        }
+
         @Override
         public JdbcPinCriterion pnfsId(PnfsId id)
         {
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.security.auth.Subject;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -137,6 +138,13 @@ public class LoggingDao implements PinDao
             return wrap(inner.id(id));
         }
 
+        @Override
+        public UniquePinCriterion ids(Collection<Long> ids)
+        {
+            description().append("with one of ").append(ids.size()).append(" ids");
+            return wrap(inner.ids(ids));
+        }
+
         @Override
         public UniquePinCriterion pnfsId(PnfsId id)
         {
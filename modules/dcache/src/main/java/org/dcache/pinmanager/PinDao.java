@@ -7,6 +7,7 @@ import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.security.auth.Subject;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -121,6 +122,8 @@ public interface PinDao
     {
         UniquePinCriterion id(long id);
 
+        PinCriterion ids(Collection<Long> ids);
+
         PnfsIdPinCriterion pnfsId(PnfsId id);
 
         RequestIdPinCriterion requestId(String requestId);
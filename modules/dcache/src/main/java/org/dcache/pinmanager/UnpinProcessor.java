@@ -8,6 +8,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.jdo.JDOException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -16,6 +20,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import diskCacheV111.poolManager.PoolSelectionUnit;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.PoolClearStickyFlagsMessage;
 import diskCacheV111.vehicles.PoolSetStickyMessage;
 
 import dmg.cells.nucleus.CellPath;
@@ -27,6 +33,8 @@ import org.dcache.poolmanager.PoolMonitor;
 import org.dcache.util.CDCExecutorServiceDecorator;
 import org.dcache.util.NDC;
 
+import static java.util.stream.Collectors.toList;
+
 import static org.dcache.pinmanager.model.Pin.State.FAILED_TO_UNPIN;
 import static org.dcache.pinmanager.model.Pin.State.READY_TO_UNPIN;
 import static org.dcache.pinmanager.model.Pin.State.UNPINNING;
@@ -39,13 +47,16 @@ import static org.dcache.pinmanager.model.Pin.State.UNPINNING;
  * independently of the unpin request.
  *
  * This class attempts to unpin a limited number of files
- * per run which are in state READY_TO_UNPIN.
+ * per run which are in state READY_TO_UNPIN. Pins are grouped by
+ * pool such that the sticky flags of many files are cleared with
+ * a single message and the pins are removed with a single query.
  */
 public class UnpinProcessor implements Runnable
 {
     private static final Logger _logger = LoggerFactory.getLogger(UnpinProcessor.class);
 
     private static final int MAX_RUNNING = 1000;
+    private static final int MAX_FILES_PER_MESSAGE = 200;
     private static final int NO_UNPIN_LIMIT_PER_RUN = -1;
 
     private final PinDao _dao;
@@ -90,47 +101,156 @@ public class UnpinProcessor implements Runnable
     @Transactional
     protected void unpin(final Semaphore idle, final Executor executor) throws InterruptedException
     {
+        List<Pin> withoutPool = new ArrayList<>();
+        Map<String,List<Pin>> byPool = new HashMap<>();
+        PinDao.InterruptibleConsumer<Pin> collect = pin -> {
+            if (pin.getPool() == null) {
+                withoutPool.add(pin);
+                if (withoutPool.size() == MAX_FILES_PER_MESSAGE) {
+                    deleteWithoutPool(withoutPool);
+                    withoutPool.clear();
+                }
+            } else {
+                List<Pin> batch = byPool.computeIfAbsent(pin.getPool(), p -> new ArrayList<>());
+                batch.add(pin);
+                if (batch.size() == MAX_FILES_PER_MESSAGE) {
+                    byPool.remove(pin.getPool());
+                    clearStickyFlags(idle, pin.getPool(), batch, executor);
+                }
+            }
+        };
+
         if (_maxUnpinsPerRun == NO_UNPIN_LIMIT_PER_RUN) {
-            _dao.foreach(_dao.where().state(READY_TO_UNPIN), pin -> upin(idle, executor, pin));
+            _dao.foreach(_dao.where().state(READY_TO_UNPIN), collect);
         } else {
-            _dao.foreach(_dao.where().state(READY_TO_UNPIN), pin -> upin(idle, executor, pin), _maxUnpinsPerRun);
+            _dao.foreach(_dao.where().state(READY_TO_UNPIN), collect, _maxUnpinsPerRun);
+        }
+
+        if (!withoutPool.isEmpty()) {
+            deleteWithoutPool(withoutPool);
+        }
+        for (Map.Entry<String,List<Pin>> batch : byPool.entrySet()) {
+            clearStickyFlags(idle, batch.getKey(), batch.getValue(), executor);
         }
     }
 
-    private void upin(Semaphore idle, Executor executor, Pin pin) throws InterruptedException
+    private void deleteWithoutPool(List<Pin> pins)
     {
-        if (pin.getPool() == null) {
-            _logger.debug("No pool found for pin {}, pnfsid {}; no sticky flags to clear", pin.getPinId(), pin.getPnfsId());
-            _dao.delete(pin);
-        } else {
-            _logger.debug("Clearing sticky flag for pin {}, pnfsid {} on pool {}", pin.getPinId(), pin.getPnfsId(), pin.getPool());
-            _dao.update(pin, _dao.set().state(UNPINNING));
-            clearStickyFlag(idle, pin, executor);
+        _logger.debug("No pool found for {} pins; no sticky flags to clear", pins.size());
+        delete(ids(pins));
+    }
+
+    private static List<Long> ids(List<Pin> pins)
+    {
+        return pins.stream().map(Pin::getPinId).collect(toList());
+    }
+
+    private void delete(List<Long> ids)
+    {
+        if (!ids.isEmpty()) {
+            _dao.delete(_dao.where().ids(ids));
         }
     }
 
-    private void failedToUnpin(Pin pin)
+    private void failedToUnpin(List<Long> ids)
     {
-        _dao.update(pin, _dao.set().state(FAILED_TO_UNPIN));
+        if (!ids.isEmpty()) {
+            _dao.update(_dao.where().ids(ids), _dao.set().state(FAILED_TO_UNPIN));
+        }
     }
 
-    private void clearStickyFlag(final Semaphore idle, final Pin pin, Executor executor) throws InterruptedException
+    /**
+     * Clears the sticky flags of a batch of pins on the same pool with a
+     * single message. One permit of {@code idle} is held for every pin until
+     * its sticky flag has been dealt with.
+     */
+    private void clearStickyFlags(Semaphore idle, String poolName, List<Pin> pins, Executor executor)
+            throws InterruptedException
     {
-        PoolSelectionUnit.SelectionPool pool = _poolMonitor.getPoolSelectionUnit().getPool(pin.getPool());
+        List<Long> ids = ids(pins);
+        PoolSelectionUnit.SelectionPool pool = _poolMonitor.getPoolSelectionUnit().getPool(poolName);
         if (pool == null || !pool.isActive()) {
-            _logger.warn("Unable to clear sticky flag for pin {} on pnfsid {} because pool {} is unavailable", pin.getPinId(), pin.getPnfsId(), pin.getPool());
-            failedToUnpin(pin);
+            _logger.warn("Unable to clear sticky flags for {} pins because pool {} is unavailable", pins.size(), poolName);
+            failedToUnpin(ids);
             return;
         }
 
-        idle.acquire();
+        _logger.debug("Clearing sticky flags for {} pins on pool {}", pins.size(), poolName);
+        _dao.update(_dao.where().ids(ids), _dao.set().state(UNPINNING));
+
+        idle.acquire(pins.size());
+        CellPath path = new CellPath(pool.getAddress());
+        PoolClearStickyFlagsMessage msg =
+            new PoolClearStickyFlagsMessage(poolName,
+                                            pins.stream().map(Pin::getPnfsId).toArray(PnfsId[]::new),
+                                            pins.stream().map(Pin::getSticky).toArray(String[]::new));
+        CellStub.addCallback(_poolStub.send(path, msg),
+                             new AbstractMessageCallback<PoolClearStickyFlagsMessage>()
+                             {
+                                 @Override
+                                 public void success(PoolClearStickyFlagsMessage msg)
+                                 {
+                                     idle.release(pins.size());
+                                     int[] rcs = msg.getReturnCodes();
+                                     List<Long> cleared = new ArrayList<>();
+                                     List<Long> failed = new ArrayList<>();
+                                     for (int i = 0; i < rcs.length; i++) {
+                                         Pin pin = pins.get(i);
+                                         switch (rcs[i]) {
+                                         case 0:
+                                         case CacheException.FILE_NOT_IN_REPOSITORY:
+                                             cleared.add(pin.getPinId());
+                                             break;
+                                         default:
+                                             _logger.warn("Failed to clear sticky flag for pin {} on pnfsid {}: [{}]",
+                                                          pin.getPinId(), pin.getPnfsId(), rcs[i]);
+                                             failed.add(pin.getPinId());
+                                             break;
+                                         }
+                                     }
+                                     delete(cleared);
+                                     failedToUnpin(failed);
+                                 }
+
+                                 @Override
+                                 public void failure(int rc, Object error)
+                                 {
+                                     switch (rc) {
+                                     case CacheException.TIMEOUT:
+                                     case CacheException.POOL_DISABLED:
+                                         idle.release(pins.size());
+                                         _logger.warn("Failed to clear sticky flags on pool {}: {} [{}]", poolName, error, rc);
+                                         failedToUnpin(ids);
+                                         break;
+                                     default:
+                                         /* Pools predating batched clearing reject the message; the
+                                          * permits already held are passed on to the individual
+                                          * requests.
+                                          */
+                                         _logger.debug("Failed to clear sticky flags in bulk on pool {}, " +
+                                                       "clearing them one by one: {} [{}]", poolName, error, rc);
+                                         for (Pin pin : pins) {
+                                             clearStickyFlag(idle, path, pin, executor);
+                                         }
+                                         break;
+                                     }
+                                 }
+                             }, executor);
+    }
+
+    /**
+     * Clears the sticky flag of a single pin. The caller must hold a permit
+     * of {@code idle} on behalf of the pin.
+     */
+    private void clearStickyFlag(final Semaphore idle, CellPath path, final Pin pin, Executor executor)
+    {
         PoolSetStickyMessage msg =
             new PoolSetStickyMessage(pin.getPool(),
                                      pin.getPnfsId(),
                                      false,
                                      pin.getSticky(),
                                      0);
-        CellStub.addCallback(_poolStub.send(new CellPath(pool.getAddress()), msg),
+        CellStub.addCallback(_poolStub.send(path, msg),
                              new AbstractMessageCallback<PoolSetStickyMessage>()
                              {
                                  @Override
@@ -150,10 +270,10 @@ public class UnpinProcessor implements Runnable
                                          break;
                                      default:
                                          _logger.warn("Failed to clear sticky flag: {} [{}]", error, rc);
-                                         failedToUnpin(pin);
+                                         _dao.update(pin, _dao.set().state(FAILED_TO_UNPIN));
                                          break;
                                      }
                                  }
                              }, executor);
     }
-}
\ No newline at end of file
+}
@@ -62,6 +62,7 @@ import diskCacheV111.vehicles.DCapProtocolInfo;
 import diskCacheV111.vehicles.Pool2PoolTransferMsg;
 import diskCacheV111.vehicles.PoolAcceptFileMessage;
 import diskCacheV111.vehicles.PoolCheckFreeSpaceMessage;
+import diskCacheV111.vehicles.PoolClearStickyFlagsMessage;
 import diskCacheV111.vehicles.PoolDeliverFileMessage;
 import diskCacheV111.vehicles.PoolFetchFileMessage;
 import diskCacheV111.vehicles.PoolIoFileMessage;
@@ -1289,6 +1290,27 @@ public class PoolV4
         return msg;
     }
 
+    public PoolClearStickyFlagsMessage messageArrived(PoolClearStickyFlagsMessage msg)
+        throws CacheException, InterruptedException
+    {
+        if (_poolMode.isDisabled(PoolV2Mode.DISABLED_STRICT)) {
+            LOGGER.warn("PoolClearStickyFlagsMessage request rejected due to {}", _poolMode);
+            throw new CacheException(CacheException.POOL_DISABLED, "Pool is disabled");
+        }
+
+        PnfsId[] pnfsIds = msg.getPnfsIds();
+        String[] owners = msg.getOwners();
+        for (int i = 0; i < pnfsIds.length; i++) {
+            try {
+                _repository.setSticky(pnfsIds[i], owners[i], 0, true);
+            } catch (CacheException e) {
+                msg.setReturnCode(i, e.getRc());
+            }
+        }
+        msg.setSucceeded();
+        return msg;
+    }
+
     public CacheRepositoryEntryInfo getCacheRepositoryEntryInfo(PnfsId pnfsid)
             throws CacheException, InterruptedException
     {
@@ -0,0 +1,283 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.blockcache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import diskCacheV111.util.PnfsId;
+
+import dmg.cells.nucleus.CellInfoProvider;
+
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static org.dcache.util.Strings.describeSize;
+
+/**
+ * A size bounded, off-heap cache of the content of small replicas.
+ *
+ * Replicas are only admitted to the cache if they are not larger than the
+ * maximum file size and have been opened for reading at least a given
+ * number of times within the admission period. Once admitted, the complete
+ * replica is held in a direct buffer and subsequent reads are served from
+ * memory. The least recently used replicas are evicted once the total size
+ * exceeds the capacity.
+ *
+ * Replicas in the pool are immutable, so cached content only needs to be
+ * discarded when the replica is removed. Cache entries are keyed by PNFS ID
+ * and record the creation time of the replica to guard against a replica
+ * being recreated.
+ */
+public class BlockCache implements CellInfoProvider
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockCache.class);
+
+    /**
+     * Maximum number of replicas for which accesses are counted.
+     */
+    private static final int MAX_TRACKED_REPLICAS = 100_000;
+
+    /**
+     * Cached content of a replica.
+     */
+    private static class Content
+    {
+        final long creationTime;
+        final ByteBuffer data;
+
+        Content(long creationTime, ByteBuffer data)
+        {
+            this.creationTime = creationTime;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Number of times a replica was opened within the admission period.
+     */
+    private static class Accesses
+    {
+        final long creationTime;
+        final AtomicInteger count = new AtomicInteger();
+
+        Accesses(long creationTime)
+        {
+            this.creationTime = creationTime;
+        }
+    }
+
+    private long _capacity;
+    private long _maximumFileSize;
+    private int _admissionAccesses;
+    private long _admissionPeriod;
+    private TimeUnit _admissionPeriodUnit;
+
+    private Cache<PnfsId,Content> _content;
+    private Cache<PnfsId,Accesses> _accesses;
+
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _admissions = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+
+    @Required
+    public void setCapacity(long capacity)
+    {
+        _capacity = capacity;
+    }
+
+    @Required
+    public void setMaximumFileSize(long size)
+    {
+        _maximumFileSize = size;
+    }
+
+    @Required
+    public void setAdmissionAccesses(int accesses)
+    {
+        _admissionAccesses = accesses;
+    }
+
+    @Required
+    public void setAdmissionPeriod(long period)
+    {
+        _admissionPeriod = period;
+    }
+
+    @Required
+    public void setAdmissionPeriodUnit(TimeUnit unit)
+    {
+        _admissionPeriodUnit = unit;
+    }
+
+    public void init()
+    {
+        _content = CacheBuilder.newBuilder()
+                .maximumWeight(_capacity)
+                .<PnfsId,Content>weigher((k, v) -> v.data.capacity())
+                .removalListener(n -> {
+                            if (n.getCause() == RemovalCause.SIZE) {
+                                _evictions.increment();
+                            }
+                        })
+                .build();
+        _accesses = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TRACKED_REPLICAS)
+                .expireAfterWrite(_admissionPeriod, _admissionPeriodUnit)
+                .build();
+    }
+
+    public boolean isEnabled()
+    {
+        return _capacity > 0;
+    }
+
+    /**
+     * Opens a channel to read the given replica. If the replica is cached
+     * or is admitted to the cache, the channel serves the content from
+     * memory. Otherwise the channel is opened with the given opener.
+     */
+    public RepositoryChannel open(ReplicaRecord record, ChannelOpener opener)
+            throws IOException
+    {
+        PnfsId id = record.getPnfsId();
+        long creationTime = record.getCreationTime();
+        Content content = _content.getIfPresent(id);
+        if (content != null) {
+            if (content.creationTime == creationTime) {
+                _hits.increment();
+                return new CachedRepositoryChannel(content.data);
+            }
+            _content.asMap().remove(id, content);
+        }
+        _misses.increment();
+
+        long size = record.getReplicaSize();
+        if (size > _maximumFileSize || size > _capacity || size > Integer.MAX_VALUE
+                || !isAdmitted(id, creationTime)) {
+            return opener.open();
+        }
+
+        ByteBuffer data;
+        try (RepositoryChannel channel = opener.open()) {
+            data = load(channel, size);
+        }
+        content = new Content(creationTime, data);
+        Content existing = _content.asMap().putIfAbsent(id, content);
+        if (existing != null && existing.creationTime == creationTime) {
+            data = existing.data;
+        } else {
+            if (existing != null) {
+                _content.put(id, content);
+            }
+            _admissions.increment();
+            _accesses.invalidate(id);
+        }
+        return new CachedRepositoryChannel(data);
+    }
+
+    private boolean isAdmitted(PnfsId id, long creationTime)
+    {
+        Accesses accesses = _accesses.asMap().compute(id,
+                (k, v) -> (v == null || v.creationTime != creationTime) ? new Accesses(creationTime) : v);
+        return accesses.count.incrementAndGet() >= _admissionAccesses;
+    }
+
+    private static ByteBuffer load(RepositoryChannel channel, long size) throws IOException
+    {
+        ByteBuffer data = ByteBuffer.allocateDirect((int) size);
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position()) < 0) {
+                throw new EOFException("Replica is shorter than expected");
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Discards any cached content of the given replica.
+     */
+    public void invalidate(PnfsId id)
+    {
+        _content.invalidate(id);
+        _accesses.invalidate(id);
+    }
+
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        if (!isEnabled()) {
+            pw.println("Block cache : disabled");
+            return;
+        }
+        long hits = _hits.sum();
+        long requests = hits + _misses.sum();
+        long used = _content.asMap().values().stream().mapToLong(c -> c.data.capacity()).sum();
+        pw.println("Block cache");
+        pw.println("    Capacity      : " + describeSize(_capacity));
+        pw.println("    Used          : " + describeSize(used) + " in "
+                   + _content.size() + " replicas");
+        pw.println("    Max file size : " + describeSize(_maximumFileSize));
+        pw.println("    Admission     : " + _admissionAccesses + " accesses within "
+                   + _admissionPeriod + " " + _admissionPeriodUnit.name().toLowerCase());
+        pw.println("    Hits          : " + hits);
+        pw.println("    Misses        : " + _misses.sum());
+        pw.println("    Hit ratio     : " + (requests == 0 ? "-"
+                   : String.format("%.1f%%", 100.0 * hits / requests)));
+        pw.println("    Admissions    : " + _admissions.sum());
+        pw.println("    Evictions     : " + _evictions.sum());
+    }
+
+    /**
+     * Opens a channel to the replica on disk.
+     */
+    @FunctionalInterface
+    public interface ChannelOpener
+    {
+        RepositoryChannel open() throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.blockcache;
+
+import java.io.IOException;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.pool.repository.DuplicateEntryException;
+import org.dcache.pool.repository.ForwardingReplicaRecord;
+import org.dcache.pool.repository.ForwardingReplicaStore;
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.ReplicaState;
+import org.dcache.pool.repository.ReplicaStore;
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wrap some existing ReplicaStore and serve reads of small, frequently
+ * read replicas from a BlockCache.
+ */
+public class BlockCacheReplicaStore extends ForwardingReplicaStore
+{
+    private final ReplicaStore inner;
+    private final BlockCache cache;
+
+    /**
+     * A ReplicaRecord that opens channels for reading complete replicas
+     * through the block cache.
+     */
+    private class BlockCacheReplicaRecord extends ForwardingReplicaRecord
+    {
+        private final ReplicaRecord record;
+
+        BlockCacheReplicaRecord(ReplicaRecord record)
+        {
+            this.record = record;
+        }
+
+        @Override
+        protected ReplicaRecord delegate()
+        {
+            return record;
+        }
+
+        @Override
+        public RepositoryChannel openChannel(Set<? extends OpenOption> mode)
+                throws IOException
+        {
+            if (mode.contains(StandardOpenOption.WRITE) || !isComplete(getState())) {
+                return super.openChannel(mode);
+            }
+            return cache.open(this, () -> super.openChannel(mode));
+        }
+    }
+
+    public BlockCacheReplicaStore(ReplicaStore inner, BlockCache cache)
+    {
+        this.inner = requireNonNull(inner);
+        this.cache = requireNonNull(cache);
+    }
+
+    @Override
+    protected ReplicaStore delegate()
+    {
+        return inner;
+    }
+
+    private static boolean isComplete(ReplicaState state)
+    {
+        return state == ReplicaState.CACHED || state == ReplicaState.PRECIOUS;
+    }
+
+    private ReplicaRecord wrap(ReplicaRecord record)
+    {
+        return cache.isEnabled() ? new BlockCacheReplicaRecord(record) : record;
+    }
+
+    @Override
+    public ReplicaRecord get(PnfsId id) throws CacheException
+    {
+        ReplicaRecord record = super.get(id);
+        return record == null ? null : wrap(record);
+    }
+
+    @Override
+    public ReplicaRecord create(PnfsId id, Set<? extends OpenOption> flags)
+            throws DuplicateEntryException, CacheException
+    {
+        return wrap(super.create(id, flags));
+    }
+
+    @Override
+    public void remove(PnfsId id) throws CacheException
+    {
+        cache.invalidate(id);
+        super.remove(id);
+    }
+}
@@ -0,0 +1,203 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2021 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.repository.blockcache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A read-only RepositoryChannel serving the content of a replica from
+ * memory.
+ */
+class CachedRepositoryChannel implements RepositoryChannel
+{
+    /**
+     * Read-only view of the replica content. The position of this buffer
+     * is the position of the channel.
+     */
+    private final ByteBuffer _data;
+
+    private volatile boolean _open = true;
+
+    CachedRepositoryChannel(ByteBuffer data)
+    {
+        _data = data.asReadOnlyBuffer();
+        _data.clear();
+    }
+
+    private void checkOpen() throws ClosedChannelException
+    {
+        if (!_open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Returns a view of the given region of the content, limited to the
+     * end of the content.
+     */
+    private ByteBuffer slice(long position, long count)
+    {
+        ByteBuffer slice = _data.duplicate();
+        int start = (int) Math.min(position, _data.capacity());
+        slice.limit((int) Math.min(start + count, _data.capacity()));
+        slice.position(start);
+        return slice;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buffer, long position) throws IOException
+    {
+        checkOpen();
+        checkArgument(position >= 0, "Negative position");
+        if (position >= _data.capacity()) {
+            return -1;
+        }
+        ByteBuffer slice = slice(position, buffer.remaining());
+        int length = slice.remaining();
+        buffer.put(slice);
+        return length;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException
+    {
+        int length = read(dst, _data.position());
+        if (length > 0) {
+            _data.position(_data.position() + length);
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+    {
+        checkOpen();
+        if (!_data.hasRemaining()) {
+            return -1;
+        }
+        long total = 0;
+        for (int i = offset; i < offset + length && _data.hasRemaining(); i++) {
+            total += read(dsts[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts) throws IOException
+    {
+        return read(dsts, 0, dsts.length);
+    }
+
+    @Override
+    public synchronized long transferTo(long position, long count, WritableByteChannel target)
+            throws IOException
+    {
+        checkOpen();
+        checkArgument(position >= 0, "Negative position");
+        if (position >= _data.capacity()) {
+            return 0;
+        }
+        return target.write(slice(position, count));
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer buffer, long position)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void sync()
+    {
+    }
+
+    @Override
+    public synchronized long position() throws IOException
+    {
+        checkOpen();
+        return _data.position();
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException
+    {
+        checkOpen();
+        checkArgument(newPosition >= 0, "Negative position");
+        _data.position((int) Math.min(newPosition, _data.capacity()));
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        checkOpen();
+        return _data.capacity();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return _open;
+    }
+
+    @Override
+    public void close()
+    {
+        _open = false;
+    }
+}
@@ -11,12 +11,12 @@ import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.compiler.STException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -27,6 +27,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import diskCacheV111.cells.DateRenderer;
@@ -51,8 +52,6 @@ import org.dcache.services.billing.text.StringTemplateInfoMessageVisitor;
 import org.dcache.util.Args;
 import org.dcache.util.Slf4jSTErrorListener;
 
-import static java.nio.file.StandardOpenOption.*;
-
 /**
  * This class is responsible for the processing of messages from other
  * domains regarding transfers and pool usage.
@@ -76,6 +75,7 @@ public final class BillingCell
 
     private final STGroup _templateGroup = new STGroup('$', '$');
     private final Map<String,String> _formats = new HashMap<>();
+    private final Map<String,ST> _templates = new HashMap<>();
 
     private final Map<String,int[]> _map = Maps.newHashMap();
     private final Map<String,long[]> _poolStatistics = Maps.newHashMap();
@@ -84,6 +84,7 @@ public final class BillingCell
     private int _requests;
     private int _failed;
     private Path _currentDbFile;
+    private BillingTextWriter _writer;
 
     /*
      * Injected
@@ -92,6 +93,12 @@ public final class BillingCell
     private Path _logsDir;
     private boolean _enableText;
     private boolean _flatTextDir;
+    private int _maxQueueSize;
+    private int _maxBatchSize;
+    private long _flushInterval;
+    private TimeUnit _flushIntervalUnit;
+    private long _idleTimeout;
+    private TimeUnit _idleTimeoutUnit;
 
     public BillingCell()
     {
@@ -111,6 +118,13 @@ public final class BillingCell
                 String format = Formats.replaceKeywords(String.valueOf(e.getValue()), replaceable);
                 String clazz = CaseFormat.LOWER_HYPHEN.to(CaseFormat.UPPER_CAMEL, key.substring(FORMAT_PREFIX.length()));
                 _formats.put(clazz, format);
+                if (!Strings.isNullOrEmpty(format)) {
+                    try {
+                        _templates.put(clazz, new ST(_templateGroup, format));
+                    } catch (STException ex) {
+                        _log.error("Unable to compile format '{}'.", format);
+                    }
+                }
             }
         }
     }
@@ -128,6 +142,9 @@ public final class BillingCell
     @Override
     public void getInfo(PrintWriter pw) {
         pw.format("%20s : %6d / %d\n", "Requests", _requests, _failed);
+        if (_writer != null) {
+            pw.format("%20s : %6d\n", "Queued", _writer.getQueueSize());
+        }
         for (Map.Entry<String,int[]> entry: _map.entrySet()) {
             int[] values = entry.getValue();
             pw.format("%20s : %6d / %d\n",
@@ -142,6 +159,19 @@ public final class BillingCell
             String ext = getFilenameExtension(new Date());
             appendHeaders(getBillingPath(ext));
             appendHeaders(getErrorPath(ext));
+            _writer = new BillingTextWriter(_maxQueueSize, _maxBatchSize,
+                                            _flushInterval, _flushIntervalUnit,
+                                            _idleTimeout, _idleTimeoutUnit,
+                                            this::getFormatHeaders);
+            _writer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException
+    {
+        if (_writer != null) {
+            _writer.stop();
         }
     }
 
@@ -162,7 +192,7 @@ public final class BillingCell
      * option sets, it either processes the message for persistent storage or
      * logs the message to a text file (or both).
      */
-    public void messageArrived(InfoMessage info) {
+    public void messageArrived(InfoMessage info) throws InterruptedException {
         /*
          * currently we have to ignore 'check'
          */
@@ -180,9 +210,9 @@ public final class BillingCell
             String output = getFormattedMessage(info);
             if (!output.isEmpty()) {
                 String ext = getFilenameExtension(new Date(info.getTimestamp()));
-                log(getBillingPath(ext), output);
+                _writer.append(getBillingPath(ext), output);
                 if (info.getResultCode() != 0) {
-                    log(getErrorPath(ext), output);
+                    _writer.append(getErrorPath(ext), output);
                 }
             }
         }
@@ -201,14 +231,16 @@ public final class BillingCell
     }
 
     private String getFormattedMessage(InfoMessage msg) {
-        String format = _formats.get(msg.getClass().getSimpleName());
-        if (!Strings.isNullOrEmpty(format)) {
+        String name = msg.getClass().getSimpleName();
+        ST compiled = _templates.get(name);
+        if (compiled != null) {
             try {
-                ST template = new ST(_templateGroup, format);
+                /* Copying shares the compiled template with the prototype. */
+                ST template = new ST(compiled);
                 msg.accept(new StringTemplateInfoMessageVisitor(template));
                 return template.render();
             } catch (STException e) {
-                _log.error("Unable to render format '{}'.", format);
+                _log.error("Unable to render format '{}'.", _formats.get(name));
             }
         }
         return "";
@@ -325,34 +357,16 @@ public final class BillingCell
             return _fileNameFormat.format(dateOfEvent);
         } else {
             Date now = new Date();
-            _currentDbFile = _logsDir.resolve(_directoryNameFormat.format(now));
-            try {
-                Files.createDirectories(_currentDbFile);
-            } catch (IOException e) {
-                _log.error("Failed to create directory {}: {}", _currentDbFile, e.toString());
-            }
-            return _fileNameFormat.format(now);
-        }
-    }
-
-    private void log(Path path, String output)
-    {
-        byte[] outputBytes = (output + "\n").getBytes(StandardCharsets.UTF_8);
-        try {
-            try {
-                Files.write(path, outputBytes, WRITE, APPEND);
-            } catch (NoSuchFileException f) {
-                String outputWithHeader = getFormatHeaders() + output + '\n';
+            Path directory = _logsDir.resolve(_directoryNameFormat.format(now));
+            if (!directory.equals(_currentDbFile)) {
                 try {
-                    Files.write(path, outputWithHeader.getBytes(StandardCharsets.UTF_8),
-                            WRITE, CREATE_NEW);
-                } catch (FileAlreadyExistsException e) {
-                    // Lost the race, so try appending again
-                    Files.write(path, outputBytes, WRITE, APPEND);
+                    Files.createDirectories(directory);
+                } catch (IOException e) {
+                    _log.error("Failed to create directory {}: {}", directory, e.toString());
                 }
+                _currentDbFile = directory;
             }
-        } catch (IOException e) {
-            _log.warn("Can't write billing [{}] : {}", path, e.toString());
+            return _fileNameFormat.format(now);
         }
     }
 
@@ -457,4 +471,34 @@ public final class BillingCell
         _enableText = enableText;
     }
 
+    @Required
+    public void setMaxQueueSize(int maxQueueSize) {
+        _maxQueueSize = maxQueueSize;
+    }
+
+    @Required
+    public void setMaxBatchSize(int maxBatchSize) {
+        _maxBatchSize = maxBatchSize;
+    }
+
+    @Required
+    public void setFlushInterval(long flushInterval) {
+        _flushInterval = flushInterval;
+    }
+
+    @Required
+    public void setFlushIntervalUnit(TimeUnit flushIntervalUnit) {
+        _flushIntervalUnit = flushIntervalUnit;
+    }
+
+    @Required
+    public void setIdleTimeout(long idleTimeout) {
+        _idleTimeout = idleTimeout;
+    }
+
+    @Required
+    public void setIdleTimeoutUnit(TimeUnit idleTimeoutUnit) {
+        _idleTimeoutUnit = idleTimeoutUnit;
+    }
+
 }
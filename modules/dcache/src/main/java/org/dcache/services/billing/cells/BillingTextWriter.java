@@ -0,0 +1,252 @@
+package org.dcache.services.billing.cells;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Appends billing records to the plain text billing files.
+ *
+ * Records are queued in memory and written by a single thread. The writer
+ * collects records until either the batch is full or the flush interval has
+ * passed since the first record of the batch was queued, and then appends
+ * all records of a file with a single write. Files stay open while records
+ * keep arriving; a file is closed once no record has been written to it for
+ * the idle timeout. As the name of a billing file contains the date, the
+ * files of the previous day are thus closed shortly after the change of the
+ * date.
+ *
+ * If the queue is full, adding a record blocks until the writer catches up.
+ */
+class BillingTextWriter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BillingTextWriter.class);
+
+    private final BlockingQueue<Record> queue;
+    private final int maxBatchSize;
+    private final long flushInterval;
+    private final long idleTimeout;
+    private final Supplier<String> headers;
+    private final Map<Path,OpenFile> files = new HashMap<>();
+    private final Thread thread;
+
+    /**
+     * Queued by {@link #stop} to make the writer exit once all records
+     * queued before it have been written.
+     */
+    private static final Record STOP = new Record(null, null);
+
+    private static class Record
+    {
+        final Path path;
+        final String line;
+
+        Record(Path path, String line)
+        {
+            this.path = path;
+            this.line = line;
+        }
+    }
+
+    private static class OpenFile
+    {
+        final FileChannel channel;
+        long lastWritten;
+
+        OpenFile(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * @param maxQueueSize maximum number of records waiting to be written
+     * @param maxBatchSize maximum number of records written at once
+     * @param flushInterval maximum time a record waits for its batch to fill
+     * @param flushIntervalUnit unit of the flush interval
+     * @param idleTimeout time after which a file no longer written to is closed
+     * @param idleTimeoutUnit unit of the idle timeout
+     * @param headers provides the headers written to new files
+     */
+    BillingTextWriter(int maxQueueSize, int maxBatchSize,
+                      long flushInterval, TimeUnit flushIntervalUnit,
+                      long idleTimeout, TimeUnit idleTimeoutUnit,
+                      Supplier<String> headers)
+    {
+        this.queue = new LinkedBlockingQueue<>(maxQueueSize);
+        this.maxBatchSize = maxBatchSize;
+        this.flushInterval = flushIntervalUnit.toNanos(flushInterval);
+        this.idleTimeout = idleTimeoutUnit.toNanos(idleTimeout);
+        this.headers = headers;
+        this.thread = new Thread(this::run, "billing-text-writer");
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    /**
+     * Stops the writer after writing all records queued so far.
+     */
+    void stop() throws InterruptedException
+    {
+        if (thread.isAlive()) {
+            queue.put(STOP);
+            thread.join();
+        }
+    }
+
+    /**
+     * Queues a line to be appended to a billing file.
+     */
+    void append(Path path, String line) throws InterruptedException
+    {
+        queue.put(new Record(path, line));
+    }
+
+    int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    private void run()
+    {
+        List<Record> batch = new ArrayList<>(maxBatchSize);
+        boolean isStopped = false;
+        try {
+            while (!isStopped) {
+                Record first = files.isEmpty()
+                        ? queue.take()
+                        : queue.poll(idleTimeout, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushInterval;
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    while (batch.size() < maxBatchSize && !batch.contains(STOP)) {
+                        Record record = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (record == null) {
+                            break;
+                        }
+                        batch.add(record);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                    isStopped = batch.remove(STOP);
+                    write(batch);
+                    batch.clear();
+                }
+                closeIdle();
+            }
+        } catch (InterruptedException e) {
+            queue.drainTo(batch);
+            batch.remove(STOP);
+            write(batch);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void write(List<Record> batch)
+    {
+        Map<Path,StringBuilder> output = new LinkedHashMap<>();
+        for (Record record : batch) {
+            output.computeIfAbsent(record.path, p -> new StringBuilder()).append(record.line).append('\n');
+        }
+
+        for (Map.Entry<Path,StringBuilder> entry : output.entrySet()) {
+            Path path = entry.getKey();
+            try {
+                OpenFile file = files.get(path);
+                if (file == null) {
+                    file = new OpenFile(open(path));
+                    files.put(path, file);
+                }
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(entry.getValue().toString());
+                while (buffer.hasRemaining()) {
+                    file.channel.write(buffer);
+                }
+                file.lastWritten = System.nanoTime();
+            } catch (IOException e) {
+                LOGGER.warn("Can't write billing [{}] : {}", path, e.toString());
+                OpenFile file = files.remove(path);
+                if (file != null) {
+                    close(path, file.channel);
+                }
+            }
+        }
+    }
+
+    private FileChannel open(Path path) throws IOException
+    {
+        try {
+            return FileChannel.open(path, WRITE, APPEND);
+        } catch (NoSuchFileException e) {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(path, WRITE, APPEND, CREATE_NEW);
+            } catch (FileAlreadyExistsException f) {
+                // Lost the race, so try appending again
+                return FileChannel.open(path, WRITE, APPEND);
+            }
+            try {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(headers.get());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException f) {
+                close(path, channel);
+                throw f;
+            }
+            return channel;
+        }
+    }
+
+    private void closeIdle()
+    {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path,OpenFile>> open = files.entrySet().iterator();
+        while (open.hasNext()) {
+            Map.Entry<Path,OpenFile> entry = open.next();
+            if (now - entry.getValue().lastWritten >= idleTimeout) {
+                close(entry.getKey(), entry.getValue().channel);
+                open.remove();
+            }
+        }
+    }
+
+    private void closeAll()
+    {
+        files.forEach((path, file) -> close(path, file.channel));
+        files.clear();
+    }
+
+    private void close(Path path, FileChannel channel)
+    {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close billing file [{}] : {}", path, e.toString());
+        }
+    }
+}
@@ -315,7 +315,8 @@ public final class BillingDataRequestReceiver implements CellMessageReceiver {
     /**
      * <p>The hourly data is kept in memory, so the aggregate data handler
      * is called instead of the database access in that case.  Otherwise,
-     * this is essentially a JDOQL pass-through.</p>
+     * this is essentially a JDOQL pass-through, completed by the data
+     * of the current day.</p>
      */
     private <T extends BaseEntry> Collection<IHistogramData> getData(
                     Class<T> dataClass,
@@ -333,6 +334,16 @@ public final class BillingDataRequestReceiver implements CellMessageReceiver {
                                      timeFrame.getLow(), timeFrame.getHigh());
         Collection<IHistogramData> plotData = new ArrayList<>();
         plotData.addAll(c);
+
+        /*
+         * The daily tables only hold completed days; the current day
+         * is taken from the rollup kept in memory.
+         */
+        IHistogramData today = hourlyAggregateDataHandler.getToday(dataClass);
+        if (today != null && !today.timestamp().before(timeFrame.getLow())
+                        && !today.timestamp().after(timeFrame.getHigh())) {
+            plotData.add(today);
+        }
         return plotData;
     }
 
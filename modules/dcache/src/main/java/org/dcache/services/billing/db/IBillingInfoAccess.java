@@ -62,6 +62,7 @@ package org.dcache.services.billing.db;
 import java.util.Collection;
 
 import org.dcache.services.billing.db.data.IHistogramData;
+import org.dcache.services.billing.db.exceptions.RetryException;
 
 /**
  * Defines DAO API for interacting with billing information.
@@ -72,6 +73,14 @@ public interface IBillingInfoAccess {
 
     void close();
 
+    /**
+     * Stores the data in a single transaction, bypassing the insert queue.
+     *
+     * @param data
+     *            mapped types to be stored
+     */
+    void commit(Collection<IHistogramData> data) throws RetryException;
+
     /**
      * @param type
      *            class of object to be retrieved
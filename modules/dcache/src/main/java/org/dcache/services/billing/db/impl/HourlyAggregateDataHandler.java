@@ -62,6 +62,7 @@ package org.dcache.services.billing.db.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -69,24 +70,34 @@ import java.util.Date;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.dcache.services.billing.db.IBillingInfoAccess;
 import org.dcache.services.billing.db.data.BaseEntry;
+import org.dcache.services.billing.db.data.DcacheReadsDaily;
 import org.dcache.services.billing.db.data.DcacheReadsHourly;
+import org.dcache.services.billing.db.data.DcacheTimeDaily;
 import org.dcache.services.billing.db.data.DcacheTimeHourly;
+import org.dcache.services.billing.db.data.DcacheWritesDaily;
 import org.dcache.services.billing.db.data.DcacheWritesHourly;
+import org.dcache.services.billing.db.data.HSMReadsDaily;
 import org.dcache.services.billing.db.data.HSMReadsHourly;
+import org.dcache.services.billing.db.data.HSMWritesDaily;
 import org.dcache.services.billing.db.data.HSMWritesHourly;
+import org.dcache.services.billing.db.data.HitsDaily;
 import org.dcache.services.billing.db.data.HitsHourly;
 import org.dcache.services.billing.db.data.MissesHourly;
 import org.dcache.services.billing.db.data.MoverData;
 import org.dcache.services.billing.db.data.PoolHitData;
 import org.dcache.services.billing.db.data.PoolHitsHourly;
+import org.dcache.services.billing.db.data.PoolToPoolTransfersDaily;
 import org.dcache.services.billing.db.data.PoolToPoolTransfersHourly;
 import org.dcache.services.billing.db.data.StorageData;
 import org.dcache.services.billing.db.data.IHistogramData;
+import org.dcache.services.billing.db.exceptions.RetryException;
 
 /**
  * <p>Stores hourly billing data in memory in a circular buffer (linked deque)
@@ -96,6 +107,19 @@ import org.dcache.services.billing.db.data.IHistogramData;
  *    to initialize the buffer, but thereafter all updates and fetches
  *    are directly to and from the buffer.</p>
  *
+ * <p>In addition, the data of the current day is rolled up in a daily bin.
+ *    The bin is seeded from the hourly bins since midnight and is written
+ *    to the daily tables once the day is over, so that the daily summary
+ *    does not have to scan the fine grained tables for days during which
+ *    this service was running.</p>
+ *
+ * <p>The daily summary (<code>f_billing_daily_summary</code>) fills the
+ *    day following the latest row of a daily table. A finished day is
+ *    therefore only written if it is exactly that day, which is the day the
+ *    summary would fill next; otherwise the summary is left to catch up
+ *    on its own. Writing the day uses the executor of the summary, so
+ *    that the two never run concurrently.</p>
+ *
  * <p>Implemented in the interest of shortening latency on histogram fetches
  *    (for plotting).</p>
  */
@@ -106,9 +130,9 @@ public final class HourlyAggregateDataHandler {
     private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
 
     /**
-     * <p>Data object held by the circular buffer.</p>
+     * <p>Data object held by the circular buffer and by the daily bin.</p>
      */
-    static final class HourlyAggregateData {
+    static final class AggregateData {
         final Date timestamp;
 
         long bytesRead;
@@ -117,6 +141,10 @@ public final class HourlyAggregateDataHandler {
         long bytesStored;
         long bytesRestored;
 
+        long sizeRead;
+        long sizeWritten;
+        long sizeP2p;
+
         long maxConnectionTime;
         long minConnectionTime;
 
@@ -131,9 +159,36 @@ public final class HourlyAggregateDataHandler {
 
         double avgConnectionTime;
 
-        HourlyAggregateData(long now) {
+        /*
+         *  Connection times of the successful movers other than pool to
+         *  pool transfers, from which the daily summary computes the daily
+         *  time row.  These are only known for live data.
+         */
+        long maxTransferTime;
+        long minTransferTime;
+        long transferCount;
+        double avgTransferTime;
+
+        /*
+         *  Whether connection times were seeded from the hourly view, which
+         *  does not separate pool to pool transfers from other movers.
+         */
+        boolean hasSeededTimes;
+
+        static AggregateData hour(long now) {
+            return new AggregateData(now, false);
+        }
+
+        static AggregateData day(long now) {
+            return new AggregateData(now, true);
+        }
+
+        private AggregateData(long now, boolean daily) {
             Calendar cal = Calendar.getInstance();
             cal.setTimeInMillis(now);
+            if (daily) {
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+            }
             cal.set(Calendar.MINUTE, 0);
             cal.set(Calendar.SECOND, 0);
             cal.set(Calendar.MILLISECOND, 0);
@@ -146,6 +201,11 @@ public final class HourlyAggregateDataHandler {
             avgConnectionTime = 0.0;
             maxConnectionTime = 0L;
             minConnectionTime = Long.MAX_VALUE;
+            avgTransferTime = 0.0;
+            maxTransferTime = 0L;
+            minTransferTime = Long.MAX_VALUE;
+            transferCount = 0L;
+            hasSeededTimes = false;
             cacheHits = 0L;
             cacheMisses = 0L;
             readCount = 0L;
@@ -155,6 +215,116 @@ public final class HourlyAggregateDataHandler {
             restoreCount = 0L;
         }
 
+        /**
+         * <p>Adds the data of a bin falling within the period of this
+         *    bin.</p>
+         */
+        void merge(AggregateData other) {
+            synchronized (other) {
+                synchronized (this) {
+                    bytesRead += other.bytesRead;
+                    bytesWritten += other.bytesWritten;
+                    bytesP2p += other.bytesP2p;
+                    bytesStored += other.bytesStored;
+                    bytesRestored += other.bytesRestored;
+                    sizeRead += other.sizeRead;
+                    sizeWritten += other.sizeWritten;
+                    sizeP2p += other.sizeP2p;
+                    readCount += other.readCount;
+                    writeCount += other.writeCount;
+                    p2pCount += other.p2pCount;
+                    storeCount += other.storeCount;
+                    restoreCount += other.restoreCount;
+                    cacheHits += other.cacheHits;
+                    cacheMisses += other.cacheMisses;
+                    maxConnectionTime = Math.max(maxConnectionTime, other.maxConnectionTime);
+                    minConnectionTime = Math.min(minConnectionTime, other.minConnectionTime);
+                    long total = moverCount + other.moverCount;
+                    if (total > 0) {
+                        avgConnectionTime = (moverCount * avgConnectionTime
+                                        + other.moverCount * other.avgConnectionTime) / total;
+                    }
+                    moverCount = total;
+                    maxTransferTime = Math.max(maxTransferTime, other.maxTransferTime);
+                    minTransferTime = Math.min(minTransferTime, other.minTransferTime);
+                    total = transferCount + other.transferCount;
+                    if (total > 0) {
+                        avgTransferTime = (transferCount * avgTransferTime
+                                        + other.transferCount * other.avgTransferTime) / total;
+                    }
+                    transferCount = total;
+                    hasSeededTimes |= other.hasSeededTimes;
+                }
+            }
+        }
+
+        /**
+         * <p>The rows of the daily tables for the period of this bin.</p>
+         */
+        synchronized Collection<IHistogramData> getDaily() {
+            DcacheReadsDaily reads = new DcacheReadsDaily();
+            reads.setDate(timestamp);
+            reads.setCount(readCount);
+            reads.setSize(sizeRead);
+            reads.setTransferred(bytesRead);
+
+            DcacheWritesDaily writes = new DcacheWritesDaily();
+            writes.setDate(timestamp);
+            writes.setCount(writeCount);
+            writes.setSize(sizeWritten);
+            writes.setTransferred(bytesWritten);
+
+            PoolToPoolTransfersDaily p2ps = new PoolToPoolTransfersDaily();
+            p2ps.setDate(timestamp);
+            p2ps.setCount(p2pCount);
+            p2ps.setSize(sizeP2p);
+            p2ps.setTransferred(bytesP2p);
+
+            DcacheTimeDaily time = new DcacheTimeDaily();
+            time.setDate(timestamp);
+            time.setCount(transferCount);
+            time.setMinimum(minTransferTime == Long.MAX_VALUE ? 0L : minTransferTime);
+            time.setMaximum(maxTransferTime);
+            time.setAverage(avgTransferTime);
+
+            HSMReadsDaily restores = new HSMReadsDaily();
+            restores.setDate(timestamp);
+            restores.setCount(restoreCount);
+            restores.setSize(bytesRestored);
+
+            HSMWritesDaily stores = new HSMWritesDaily();
+            stores.setDate(timestamp);
+            stores.setCount(storeCount);
+            stores.setSize(bytesStored);
+
+            HitsDaily hits = new HitsDaily();
+            hits.setDate(timestamp);
+            hits.setCount(cacheHits + cacheMisses);
+            hits.setCached(cacheHits);
+            hits.setNotcached(cacheMisses);
+
+            return Arrays.asList(reads, writes, p2ps, time, restores, stores, hits);
+        }
+
+        /**
+         * <p>Whether the daily time row holds all transfers of the period
+         *    of this bin, i.e., no connection times were seeded from the
+         *    hourly view.</p>
+         */
+        synchronized boolean hasTransferTimes() {
+            return !hasSeededTimes;
+        }
+
+        /**
+         * <p>The row of the given daily table for the period of this bin.</p>
+         */
+        IHistogramData getDaily(Class<?> type) {
+            return getDaily().stream()
+                             .filter(type::isInstance)
+                             .findFirst()
+                             .orElse(null);
+        }
+
         synchronized IHistogramData getHourlyConnectionTime() {
             DcacheTimeHourly entry = new DcacheTimeHourly();
             entry.setCount(moverCount);
@@ -222,7 +392,7 @@ public final class HourlyAggregateDataHandler {
             long mintime = minConnectionTime == Long.MAX_VALUE ? 0L
                             : minConnectionTime;
 
-            return "HourlyAggregateData"
+            return "AggregateData"
                             + "(" + timestamp + ")"
                             + "(rd b " + bytesRead + ")"
                             + "(rd t " + readCount + ")"
@@ -270,16 +440,19 @@ public final class HourlyAggregateDataHandler {
 
         private void update(DcacheReadsHourly data) {
             readCount += data.getCount();
+            sizeRead += data.getSize();
             bytesRead += data.getTransferred();
         }
 
         private void update(DcacheWritesHourly data) {
             writeCount += data.getCount();
+            sizeWritten += data.getSize();
             bytesWritten += data.getTransferred();
         }
 
         private void update(PoolToPoolTransfersHourly data) {
             p2pCount += data.getCount();
+            sizeP2p += data.getSize();
             bytesP2p += data.getTransferred();
         }
 
@@ -288,6 +461,7 @@ public final class HourlyAggregateDataHandler {
             maxConnectionTime = Math.max(maxConnectionTime, data.getMaximum());
             minConnectionTime = Math.min(minConnectionTime, data.getMinimum());
             avgConnectionTime += data.getAverage();
+            hasSeededTimes |= data.getCount() > 0;
         }
 
         private void update(HSMReadsHourly data) {
@@ -313,14 +487,18 @@ public final class HourlyAggregateDataHandler {
                 return;
             }
 
+            long size = data.getFullSize() == null ? 0L : data.getFullSize();
             if (data.isP2p()) {
                 bytesP2p += data.getTransferSize();
+                sizeP2p += size;
                 ++p2pCount;
             } else if (data.getIsNew()) {
                 bytesWritten += data.getTransferSize();
+                sizeWritten += size;
                 ++writeCount;
             } else {
                 bytesRead += data.getTransferSize();
+                sizeRead += size;
                 ++readCount;
             }
 
@@ -331,6 +509,14 @@ public final class HourlyAggregateDataHandler {
             double currentTotal = moverCount*avgConnectionTime;
             ++moverCount;
             avgConnectionTime = (currentTotal + (double)t)/moverCount;
+
+            if (!data.isP2p()) {
+                maxTransferTime = Math.max(maxTransferTime, t);
+                minTransferTime = Math.min(minTransferTime, t);
+                currentTotal = transferCount*avgTransferTime;
+                ++transferCount;
+                avgTransferTime = (currentTotal + (double)t)/transferCount;
+            }
         }
 
         private void update(StorageData data) {
@@ -363,13 +549,30 @@ public final class HourlyAggregateDataHandler {
     /**
      * <p>Circular buffer holding 24 1-hour bins.</p>
      */
-    private final Deque<HourlyAggregateData> deque = new ConcurrentLinkedDeque<>();
+    private final Deque<AggregateData> deque = new ConcurrentLinkedDeque<>();
+
+    /**
+     * <p>Bin holding the data of the current day.</p>
+     */
+    private volatile AggregateData today;
+
+    /**
+     * <p>Whether the daily bin holds all data of its day. This is not the
+     *    case until the bin has been seeded from the hourly views.</p>
+     */
+    private volatile boolean todayIsComplete;
 
     /**
-     * <p>Needed only to populate the buffer at startup.</p>
+     * <p>Needed to populate the buffer at startup and to store the
+     *    finished days.</p>
      */
     private IBillingInfoAccess access;
 
+    /**
+     * <p>Runs the database operations.  Shared with the daily summary.</p>
+     */
+    private Executor executor;
+
     public void initialize() {
         /*
          *  Seed the deque so that it contains the bins for the current
@@ -380,10 +583,12 @@ public final class HourlyAggregateDataHandler {
         long now = System.currentTimeMillis();
         for (int i = 0; i < 24; i++) {
             long binTime = now - TimeUnit.HOURS.toMillis(i);
-            deque.addFirst(new HourlyAggregateData(binTime));
+            deque.addFirst(AggregateData.hour(binTime));
         }
+        today = AggregateData.day(now);
+        todayIsComplete = false;
 
-        new Thread(this::populateFromViews, "View-initializer").start();
+        executor.execute(this::populateFromViews);
     }
 
     /**
@@ -395,12 +600,31 @@ public final class HourlyAggregateDataHandler {
         Date timestamp = newData.timestamp();
         timestamp = timestamp == null ? new Date() : timestamp;
 
-        HourlyAggregateData bin = getBin(timestamp.getTime());
+        synchronized (this) {
+            updateHourly(timestamp, newData);
 
-        if (bin != null) {
-            LOGGER.trace("update bin {}, data {}.", bin, newData);
-            bin.update(newData);
+            AggregateData day = getDayBin(timestamp.getTime());
+            if (day != null) {
+                day.update(newData);
+            }
+        }
+    }
+
+    /**
+     * <p>Serves up the data of the current day.</p>
+     *
+     * @param type specifies which daily data to fetch.
+     * @return the partial daily histogram of the given type for today,
+     *         or null if not available.
+     */
+    public <T extends BaseEntry> IHistogramData getToday(Class<T> type) {
+        rollOverIfDayIsOver();
+        AggregateData day = today;
+        if (!todayIsComplete
+                        || type.equals(DcacheTimeDaily.class) && !day.hasTransferTimes()) {
+            return null;
         }
+        return day.getDaily(type);
     }
 
     /**
@@ -412,25 +636,25 @@ public final class HourlyAggregateDataHandler {
     public <T extends BaseEntry> Collection<IHistogramData> get(Class<T> type) {
         Collection<IHistogramData> data = Collections.emptyList();
         if (type.equals(DcacheReadsHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyReads)
+            data = deque.stream().map(AggregateData::getHourlyReads)
                                  .collect(Collectors.toList());
         } else if (type.equals(DcacheWritesHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyWrites)
+            data = deque.stream().map(AggregateData::getHourlyWrites)
                                  .collect(Collectors.toList());
         } else if (type.equals(PoolToPoolTransfersHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyP2ps)
+            data = deque.stream().map(AggregateData::getHourlyP2ps)
                                  .collect(Collectors.toList());
         } else if (type.equals(DcacheTimeHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyConnectionTime)
+            data = deque.stream().map(AggregateData::getHourlyConnectionTime)
                                  .collect(Collectors.toList());
         } else if (type.equals(HSMReadsHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyRestores)
+            data = deque.stream().map(AggregateData::getHourlyRestores)
                                  .collect(Collectors.toList());
         } else if (type.equals(HSMWritesHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getHourlyStores)
+            data = deque.stream().map(AggregateData::getHourlyStores)
                                  .collect(Collectors.toList());
         } else if (type.equals(PoolHitsHourly.class)) {
-            data = deque.stream().map(HourlyAggregateData::getPoolHits)
+            data = deque.stream().map(AggregateData::getPoolHits)
                                  .collect(Collectors.toList());
         }
 
@@ -442,7 +666,134 @@ public final class HourlyAggregateDataHandler {
         this.access = access;
     }
 
-    private HourlyAggregateData getBin(long timestamp) {
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    private void updateHourly(Date timestamp, IHistogramData newData) {
+        AggregateData bin = getBin(timestamp.getTime());
+
+        if (bin != null) {
+            LOGGER.trace("update bin {}, data {}.", bin, newData);
+            bin.update(newData);
+        }
+    }
+
+    private void updateHourly(IHistogramData newData) {
+        updateHourly(newData.timestamp() == null ? new Date() : newData.timestamp(),
+                     newData);
+    }
+
+    private AggregateData getDayBin(long timestamp) {
+        rollOverIfDayIsOver();
+        AggregateData day = today;
+        long start = day.timestamp.getTime();
+        if (timestamp < start || timestamp >= start + TimeUnit.DAYS.toMillis(1)) {
+            return null;
+        }
+        return day;
+    }
+
+    private void rollOverIfDayIsOver() {
+        rollOverIfDayIsOver(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Replaces the daily bin once its day is over. The data of the
+     *    finished day is written to the daily tables if it is complete.</p>
+     */
+    void rollOverIfDayIsOver(long now) {
+        AggregateData finished;
+        boolean isComplete;
+        synchronized (this) {
+            AggregateData current = today;
+            AggregateData next = AggregateData.day(now);
+            if (!next.timestamp.after(current.timestamp)) {
+                return;
+            }
+            finished = current;
+            isComplete = todayIsComplete;
+            today = next;
+        }
+
+        if (isComplete) {
+            try {
+                executor.execute(() -> store(finished));
+            } catch (RejectedExecutionException e) {
+                LOGGER.info("Daily data for {} was not stored: {}",
+                            finished.timestamp, e.toString());
+            }
+        } else {
+            LOGGER.info("Daily data for {} is incomplete; leaving it to the "
+                                        + "daily summary.", finished.timestamp);
+        }
+    }
+
+    /**
+     * <p>Writes the rows of each group of daily tables the summary fills
+     *    together, provided the summary would fill this day next.</p>
+     */
+    private void store(AggregateData day) {
+        Collection<IHistogramData> rows = day.getDaily();
+        if (day.hasTransferTimes()) {
+            store(day, DcacheWritesDaily.class, rows.stream()
+                            .filter(r -> r instanceof DcacheReadsDaily
+                                            || r instanceof DcacheWritesDaily
+                                            || r instanceof PoolToPoolTransfersDaily
+                                            || r instanceof DcacheTimeDaily)
+                            .collect(Collectors.toList()));
+        } else {
+            LOGGER.info("Connection times for {} include pool to pool "
+                                        + "transfers; leaving transfers to the "
+                                        + "daily summary.", day.timestamp);
+        }
+        store(day, HSMReadsDaily.class, rows.stream()
+                        .filter(r -> r instanceof HSMReadsDaily
+                                        || r instanceof HSMWritesDaily)
+                        .collect(Collectors.toList()));
+        store(day, HitsDaily.class, rows.stream()
+                        .filter(r -> r instanceof HitsDaily)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * @param day the finished day
+     * @param latest the daily table from which the summary determines the
+     *               next day to fill
+     * @param rows of the finished day for the tables filled together with
+     *             <code>latest</code>
+     */
+    private void store(AggregateData day, Class<?> latest,
+                       Collection<IHistogramData> rows) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(day.timestamp);
+        cal.add(Calendar.DAY_OF_MONTH, -1);
+        Date previous = cal.getTime();
+
+        try {
+            Collection<?> existing = access.get(latest, "date >= date1",
+                                                "java.util.Date date1", previous);
+            boolean isNext = !existing.isEmpty() && existing.stream()
+                            .map(IHistogramData.class::cast)
+                            .allMatch(r -> r.timestamp().before(day.timestamp));
+            if (!isNext) {
+                LOGGER.info("Daily data for {} is left to the daily summary, "
+                                            + "as {} does not end with the "
+                                            + "previous day.", day.timestamp,
+                            latest.getSimpleName());
+                return;
+            }
+            access.commit(rows);
+            LOGGER.info("Stored daily data for {} in {}.", day.timestamp,
+                        rows.stream().map(r -> r.getClass().getSimpleName())
+                            .collect(Collectors.toList()));
+        } catch (RetryException | RuntimeException e) {
+            LOGGER.warn("Daily data for {} was not stored in {}: {}",
+                        day.timestamp, latest.getSimpleName(), e.toString());
+        }
+    }
+
+    private AggregateData getBin(long timestamp) {
         shiftBufferIfLastBinIsStale();
 
         long earliest = deque.peekFirst().timestamp.getTime();
@@ -457,7 +808,7 @@ public final class HourlyAggregateDataHandler {
             return null;
         }
 
-        Iterator<HourlyAggregateData> i = deque.descendingIterator();
+        Iterator<AggregateData> i = deque.descendingIterator();
 
         /*
          * There should always be 24 bins.  If there aren't, the
@@ -471,7 +822,7 @@ public final class HourlyAggregateDataHandler {
          * On initialization, we need to search for the correct bin as
          * the view might have gaps.
          */
-        HourlyAggregateData next = i.next();
+        AggregateData next = i.next();
 
         do {
             if (timestamp >= next.timestamp.getTime()) {
@@ -488,14 +839,28 @@ public final class HourlyAggregateDataHandler {
          *  The classes here are mapped to the database views.
          *  These are only accessed once, on startup.
          */
-        access.get(DcacheReadsHourly.class).stream().forEach(this::update);
-        access.get(DcacheWritesHourly.class).stream().forEach(this::update);
-        access.get(PoolToPoolTransfersHourly.class).stream().forEach(this::update);
-        access.get(DcacheTimeHourly.class).stream().forEach(this::update);
-        access.get(HSMReadsHourly.class).stream().forEach(this::update);
-        access.get(HSMWritesHourly.class).stream().forEach(this::update);
-        access.get(HitsHourly.class).stream().forEach(this::update);
-        access.get(MissesHourly.class).stream().forEach(this::update);
+        access.get(DcacheReadsHourly.class).stream().forEach(this::updateHourly);
+        access.get(DcacheWritesHourly.class).stream().forEach(this::updateHourly);
+        access.get(PoolToPoolTransfersHourly.class).stream().forEach(this::updateHourly);
+        access.get(DcacheTimeHourly.class).stream().forEach(this::updateHourly);
+        access.get(HSMReadsHourly.class).stream().forEach(this::updateHourly);
+        access.get(HSMWritesHourly.class).stream().forEach(this::updateHourly);
+        access.get(HitsHourly.class).stream().forEach(this::updateHourly);
+        access.get(MissesHourly.class).stream().forEach(this::updateHourly);
+
+        /*
+         *  The data of the current day so far is found in the hourly bins
+         *  since midnight, including the live data received until now.
+         */
+        synchronized (this) {
+            AggregateData day = AggregateData.day(today.timestamp.getTime());
+            long start = day.timestamp.getTime();
+            deque.stream()
+                 .filter(bin -> bin.timestamp.getTime() >= start)
+                 .forEach(day::merge);
+            today = day;
+            todayIsComplete = true;
+        }
     }
 
     private void shiftBufferIfLastBinIsStale() {
@@ -504,7 +869,7 @@ public final class HourlyAggregateDataHandler {
         if (System.currentTimeMillis() - latest > HOUR_IN_MILLIS) {
             deque.removeFirst();
             latest += HOUR_IN_MILLIS;
-            deque.addLast(new HourlyAggregateData(latest));
+            deque.addLast(AggregateData.hour(latest));
         }
     }
 }
@@ -100,9 +100,36 @@ public class ListDirectoryHandler
                 Range<Integer> range, Set<FileAttribute> attributes)
                 throws InterruptedException, CacheException
     {
-        String dir = path.toString();
-        PnfsListDirectoryMessage msg =
-            new PnfsListDirectoryMessage(dir, pattern, range, attributes);
+        return list(subject, restriction,
+                    new PnfsListDirectoryMessage(path.toString(), pattern, range, attributes));
+    }
+
+    /**
+     * Sends a request for a directory listing in lexicographic order of
+     * the entry names to PnfsManager. The listing starts after the given
+     * name and the range is applied to the entries following that name.
+     * This allows a large directory to be listed in pages: the last name
+     * of one page is the starting point of the next.
+     * <p>
+     * Like {@link #list}, the method blocks until the first set of
+     * directory entries have been received from the server.
+     *
+     * @see diskCacheV111.namespace.NameSpaceProvider#listAfter
+     */
+    public DirectoryStream
+        listAfter(Subject subject, Restriction restriction, FsPath path, Glob pattern,
+                  String after, Range<Integer> range, Set<FileAttribute> attributes)
+                throws InterruptedException, CacheException
+    {
+        return list(subject, restriction,
+                    new PnfsListDirectoryMessage(path.toString(), pattern, after, range, attributes));
+    }
+
+    private DirectoryStream list(Subject subject, Restriction restriction,
+                                 PnfsListDirectoryMessage msg)
+                throws InterruptedException, CacheException
+    {
+        String dir = msg.getPnfsPath();
         UUID uuid = msg.getUUID();
         boolean success = false;
         Stream stream = new Stream(dir, uuid);
@@ -12,6 +12,7 @@ import javax.security.auth.Subject;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -42,6 +43,7 @@ import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.DCapProtocolInfo;
 import diskCacheV111.vehicles.GenericStorageInfo;
 import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.PoolClearStickyFlagsMessage;
 import diskCacheV111.vehicles.PoolIoFileMessage;
 import diskCacheV111.vehicles.PoolManagerMessage;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
@@ -73,6 +75,7 @@ import org.dcache.vehicles.FileAttributes;
 
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
+import static org.dcache.pinmanager.model.Pin.State.FAILED_TO_UNPIN;
 import static org.dcache.pinmanager.model.Pin.State.PINNED;
 import static org.dcache.pinmanager.model.Pin.State.READY_TO_UNPIN;
 import static org.junit.Assert.*;
@@ -306,6 +309,92 @@ public class PinManagerTests
         assertEquals(pin.getSticky(), newPin.getSticky());
     }
 
+    @Test
+    public void testUnpinningClearsStickyFlagsInOneMessagePerPool()
+    {
+        TestDao dao = new TestDao();
+        dao.create(dao.set()
+                           .subject(Subjects.ROOT)
+                           .requestId(REQUEST_ID1)
+                           .pnfsId(PNFS_ID1)
+                           .pool(POOL1.getName())
+                           .sticky(STICKY1)
+                           .state(READY_TO_UNPIN));
+        dao.create(dao.set()
+                           .subject(Subjects.ROOT)
+                           .pnfsId(PNFS_ID2)
+                           .pool(POOL1.getName())
+                           .sticky(STICKY1)
+                           .state(READY_TO_UNPIN));
+        dao.create(dao.set()
+                           .subject(Subjects.ROOT)
+                           .pnfsId(PNFS_ID2)
+                           .state(READY_TO_UNPIN));
+
+        Pool pool = new Pool(POOL1.getName());
+        pool.setActive(true);
+        pool.setAddress(POOL1.getAddress());
+        PoolMonitor poolMonitor = mock(PoolMonitor.class, RETURNS_DEEP_STUBS);
+        when(poolMonitor.getPoolSelectionUnit().getPool(POOL1.getName())).thenReturn(pool);
+
+        List<PoolClearStickyFlagsMessage> messages = new ArrayList<>();
+        UnpinProcessor processor = new UnpinProcessor(dao, new TestStub(new CellAddressCore("PinManager")) {
+                public PoolClearStickyFlagsMessage messageArrived(PoolClearStickyFlagsMessage msg)
+                {
+                    messages.add(msg);
+                    return msg;
+                }
+            }, poolMonitor, -1);
+        processor.run();
+
+        assertEquals(1, messages.size());
+        assertEquals(2, messages.get(0).getPnfsIds().length);
+        assertEquals(0, dao.count(dao.where()));
+    }
+
+    @Test
+    public void testUnpinningMarksPinsFailedOnPerFileError()
+    {
+        TestDao dao = new TestDao();
+        Pin pin1 = dao.create(dao.set()
+                                      .subject(Subjects.ROOT)
+                                      .pnfsId(PNFS_ID1)
+                                      .pool(POOL1.getName())
+                                      .sticky(STICKY1)
+                                      .state(READY_TO_UNPIN));
+        Pin pin2 = dao.create(dao.set()
+                                      .subject(Subjects.ROOT)
+                                      .pnfsId(PNFS_ID2)
+                                      .pool(POOL1.getName())
+                                      .sticky(STICKY1)
+                                      .state(READY_TO_UNPIN));
+
+        Pool pool = new Pool(POOL1.getName());
+        pool.setActive(true);
+        pool.setAddress(POOL1.getAddress());
+        PoolMonitor poolMonitor = mock(PoolMonitor.class, RETURNS_DEEP_STUBS);
+        when(poolMonitor.getPoolSelectionUnit().getPool(POOL1.getName())).thenReturn(pool);
+
+        UnpinProcessor processor = new UnpinProcessor(dao, new TestStub(new CellAddressCore("PinManager")) {
+                public PoolClearStickyFlagsMessage messageArrived(PoolClearStickyFlagsMessage msg)
+                {
+                    PnfsId[] pnfsIds = msg.getPnfsIds();
+                    for (int i = 0; i < pnfsIds.length; i++) {
+                        if (pnfsIds[i].equals(PNFS_ID1)) {
+                            msg.setReturnCode(i, CacheException.LOCKED);
+                        } else {
+                            msg.setReturnCode(i, CacheException.FILE_NOT_IN_REPOSITORY);
+                        }
+                    }
+                    return msg;
+                }
+            }, poolMonitor, -1);
+        processor.run();
+
+        assertEquals(FAILED_TO_UNPIN, dao.get(dao.where().id(pin1.getPinId())).getState());
+        assertNull(dao.get(dao.where().id(pin2.getPinId())));
+    }
+
     <T extends Comparable<T>> void assertBetween(T lower, T upper, T actual)
     {
         String message =
@@ -471,6 +560,12 @@ class TestDao implements PinDao
             return add(p -> p.getPinId() == id);
         }
 
+        @Override
+        public TestCriterion ids(Collection<Long> ids)
+        {
+            return add(p -> ids.contains(p.getPinId()));
+        }
+
         @Override
         public TestCriterion pnfsId(PnfsId id)
         {
@@ -0,0 +1,148 @@
+package org.dcache.pool.repository.blockcache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.pool.repository.ReplicaRecord;
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlockCacheTest {
+    private static final PnfsId ID = new PnfsId("000000000000000000000000000000000001");
+    private static final byte[] CONTENT = "calibration data".getBytes();
+
+    private BlockCache cache;
+    private ReplicaRecord record;
+    private AtomicInteger diskOpens;
+
+    @Before
+    public void setUp() {
+        cache = new BlockCache();
+        cache.setCapacity(1024);
+        cache.setMaximumFileSize(512);
+        cache.setAdmissionAccesses(2);
+        cache.setAdmissionPeriod(1);
+        cache.setAdmissionPeriodUnit(TimeUnit.HOURS);
+        cache.init();
+
+        record = givenReplica(ID, CONTENT.length);
+        diskOpens = new AtomicInteger();
+    }
+
+    private static ReplicaRecord givenReplica(PnfsId id, long size) {
+        ReplicaRecord record = mock(ReplicaRecord.class);
+        when(record.getPnfsId()).thenReturn(id);
+        when(record.getCreationTime()).thenReturn(1L);
+        when(record.getReplicaSize()).thenReturn(size);
+        return record;
+    }
+
+    private RepositoryChannel diskChannel() throws IOException {
+        diskOpens.incrementAndGet();
+        RepositoryChannel channel = mock(RepositoryChannel.class);
+        when(channel.read(any(ByteBuffer.class), anyLong())).thenAnswer(i -> {
+                    ByteBuffer buffer = i.getArgument(0);
+                    long position = i.getArgument(1);
+                    if (position >= CONTENT.length) {
+                        return -1;
+                    }
+                    int length = (int) Math.min(buffer.remaining(), CONTENT.length - position);
+                    buffer.put(CONTENT, (int) position, length);
+                    return length;
+                });
+        return channel;
+    }
+
+    private byte[] readAll(RepositoryChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.read(buffer, 0);
+        return buffer.array();
+    }
+
+    @Test
+    public void shouldNotAdmitBeforeEnoughAccesses() throws Exception {
+        cache.open(record, this::diskChannel);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(1, diskOpens.get());
+    }
+
+    @Test
+    public void shouldServeFromMemoryOnceAdmitted() throws Exception {
+        cache.open(record, this::diskChannel);
+        cache.open(record, this::diskChannel);
+        RepositoryChannel channel = cache.open(record, this::diskChannel);
+
+        assertEquals(2, diskOpens.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(CONTENT.length, channel.size());
+        assertArrayEquals(CONTENT, readAll(channel));
+    }
+
+    @Test
+    public void shouldNotAdmitLargeReplicas() throws Exception {
+        ReplicaRecord large = givenReplica(ID, 513);
+        for (int i = 0; i < 5; i++) {
+            cache.open(large, this::diskChannel);
+        }
+
+        assertEquals(5, diskOpens.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void shouldDiscardContentOnInvalidate() throws Exception {
+        cache.open(record, this::diskChannel);
+        cache.open(record, this::diskChannel);
+
+        cache.invalidate(ID);
+        cache.open(record, this::diskChannel);
+
+        assertEquals(3, diskOpens.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void shouldNotServeContentOfRecreatedReplica() throws Exception {
+        cache.open(record, this::diskChannel);
+        cache.open(record, this::diskChannel);
+
+        ReplicaRecord recreated = givenReplica(ID, CONTENT.length);
+        when(recreated.getCreationTime()).thenReturn(2L);
+        cache.open(recreated, this::diskChannel);
+
+        assertEquals(3, diskOpens.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void shouldTrackPositionOfCachedChannel() throws Exception {
+        cache.open(record, this::diskChannel);
+        RepositoryChannel channel = cache.open(record, this::diskChannel);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        channel.position(12);
+        assertEquals(4, channel.read(buffer));
+        assertEquals("data", new String(buffer.array()));
+        assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertTrue(cache.isEnabled());
+    }
+}
@@ -0,0 +1,135 @@
+package org.dcache.services.billing.cells;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+
+public class BillingTextWriterTest
+{
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BillingTextWriter writer;
+    private Path billing;
+    private Path errors;
+
+    @Before
+    public void setup() throws Exception
+    {
+        billing = folder.getRoot().toPath().resolve("billing-2020.01.01");
+        errors = folder.getRoot().toPath().resolve("billing-error-2020.01.01");
+    }
+
+    private void givenWriter(long flushInterval, long idleTimeout)
+    {
+        writer = new BillingTextWriter(100, 2, flushInterval, TimeUnit.MILLISECONDS,
+                                       idleTimeout, TimeUnit.MILLISECONDS,
+                                       () -> "## header\n");
+        writer.start();
+    }
+
+    @Test
+    public void shouldWriteHeadersToNewFiles() throws Exception
+    {
+        givenWriter(HOUR, HOUR);
+
+        writer.append(billing, "first");
+        writer.append(errors, "failed");
+        writer.append(billing, "second");
+        writer.stop();
+
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8),
+                   contains("## header", "first", "second"));
+        assertThat(Files.readAllLines(errors, StandardCharsets.UTF_8),
+                   contains("## header", "failed"));
+    }
+
+    @Test
+    public void shouldAppendToExistingFiles() throws Exception
+    {
+        Files.write(billing, "existing\n".getBytes(StandardCharsets.UTF_8));
+        givenWriter(HOUR, HOUR);
+
+        writer.append(billing, "first");
+        writer.append(billing, "second");
+        writer.append(billing, "third");
+        writer.stop();
+
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8),
+                   contains("existing", "first", "second", "third"));
+    }
+
+    @Test
+    public void shouldWriteAllQueuedRecordsOnStop() throws Exception
+    {
+        givenWriter(HOUR, HOUR);
+
+        for (int i = 0; i < 50; i++) {
+            writer.append(billing, "record");
+        }
+        writer.stop();
+
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8), hasSize(51));
+    }
+
+    @Test
+    public void shouldKeepFileOpenWhileNotIdle() throws Exception
+    {
+        givenWriter(1, HOUR);
+        Path rotated = folder.getRoot().toPath().resolve("rotated");
+
+        writer.append(billing, "first");
+        awaitContent(billing, "## header", "first");
+        Files.move(billing, rotated);
+        writer.append(billing, "second");
+        writer.stop();
+
+        assertThat(Files.readAllLines(rotated, StandardCharsets.UTF_8),
+                   contains("## header", "first", "second"));
+    }
+
+    @Test
+    public void shouldCloseIdleFiles() throws Exception
+    {
+        givenWriter(1, 10);
+        Path rotated = folder.getRoot().toPath().resolve("rotated");
+
+        writer.append(billing, "first");
+        awaitContent(billing, "## header", "first");
+        Thread.sleep(500);
+        Files.move(billing, rotated);
+        writer.append(billing, "second");
+        writer.stop();
+
+        assertThat(Files.readAllLines(rotated, StandardCharsets.UTF_8),
+                   contains("## header", "first"));
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8),
+                   contains("## header", "second"));
+    }
+
+    private static void awaitContent(Path path, String... lines) throws Exception
+    {
+        List<String> expected = Arrays.asList(lines);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(path) || !Files.readAllLines(path, StandardCharsets.UTF_8).equals(expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + expected + " in " + path);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
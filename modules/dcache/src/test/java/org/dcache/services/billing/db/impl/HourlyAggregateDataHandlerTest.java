@@ -0,0 +1,261 @@
+package org.dcache.services.billing.db.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.dcache.services.billing.db.IBillingInfoAccess;
+import org.dcache.services.billing.db.data.DcacheTimeDaily;
+import org.dcache.services.billing.db.data.DcacheTimeHourly;
+import org.dcache.services.billing.db.data.DcacheWritesDaily;
+import org.dcache.services.billing.db.data.DcacheWritesHourly;
+import org.dcache.services.billing.db.data.HSMReadsDaily;
+import org.dcache.services.billing.db.data.HitsDaily;
+import org.dcache.services.billing.db.data.HitsHourly;
+import org.dcache.services.billing.db.data.IHistogramData;
+import org.dcache.services.billing.db.data.MoverData;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class HourlyAggregateDataHandlerTest {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private IBillingInfoAccess access;
+    private HourlyAggregateDataHandler handler;
+    private long now;
+    private Date today;
+    private Date yesterday;
+
+    @Before
+    public void setup() {
+        now = System.currentTimeMillis();
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        today = cal.getTime();
+        cal.add(Calendar.DAY_OF_MONTH, -1);
+        yesterday = cal.getTime();
+
+        access = mock(IBillingInfoAccess.class);
+        handler = new HourlyAggregateDataHandler();
+        handler.setAccess(access);
+        handler.setExecutor(tasks::add);
+        handler.initialize();
+    }
+
+    @Test
+    public void shouldServeTodayOnceSeededFromViews() {
+        assertThat(handler.getToday(DcacheWritesDaily.class), is(nullValue()));
+
+        runTasks();
+
+        assertThat(handler.getToday(DcacheWritesDaily.class), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldStoreDayFollowingLatestDailyRows() throws Exception {
+        runTasks();
+        givenLatestDailyRows(yesterday);
+        givenWrites(2, 100L);
+        givenHits(3);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        verify(access, never()).commit(any());
+        runTasks();
+
+        List<IHistogramData> rows = committedRows(3);
+        assertThat(rows.stream().map(r -> r.getClass().getSimpleName())
+                       .collect(Collectors.toList()),
+                   containsInAnyOrder("DcacheReadsDaily", "DcacheWritesDaily",
+                                      "PoolToPoolTransfersDaily", "DcacheTimeDaily",
+                                      "HSMReadsDaily", "HSMWritesDaily",
+                                      "HitsDaily"));
+        DcacheWritesDaily writes = rows.stream()
+                                       .filter(DcacheWritesDaily.class::isInstance)
+                                       .map(DcacheWritesDaily.class::cast)
+                                       .findFirst().get();
+        assertThat(writes.getDate(), is(equalTo(today)));
+        assertThat(writes.getCount(), is(2L));
+        assertThat(writes.getSize(), is(100L));
+        HitsDaily hits = rows.stream()
+                             .filter(HitsDaily.class::isInstance)
+                             .map(HitsDaily.class::cast)
+                             .findFirst().get();
+        assertThat(hits.getCached(), is(3L));
+    }
+
+    @Test
+    public void shouldExcludePoolToPoolTransfersFromDailyTime() throws Exception {
+        runTasks();
+        givenLatestDailyRows(yesterday);
+        givenMover(false, false, 10L);
+        givenMover(false, true, 30L);
+        givenMover(true, false, 1L);
+        givenMover(true, false, 500L);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        DcacheTimeDaily time = committedRows(3).stream()
+                                               .filter(DcacheTimeDaily.class::isInstance)
+                                               .map(DcacheTimeDaily.class::cast)
+                                               .findFirst().get();
+        assertThat(time.getDate(), is(equalTo(today)));
+        assertThat(time.getCount(), is(2L));
+        assertThat(time.getMinimum(), is(10L));
+        assertThat(time.getMaximum(), is(30L));
+        assertThat(time.getAverage(), is(closeTo(20.0, 0.001)));
+    }
+
+    @Test
+    public void shouldLeaveTransfersToSummaryWhenTimesWereSeeded() throws Exception {
+        DcacheTimeHourly seeded = new DcacheTimeHourly();
+        seeded.setDate(new Date(now));
+        seeded.setCount(1L);
+        seeded.setMinimum(5L);
+        seeded.setMaximum(5L);
+        seeded.setAverage(5.0);
+        doReturn(Arrays.asList(seeded)).when(access).get(DcacheTimeHourly.class);
+        runTasks();
+        givenLatestDailyRows(yesterday);
+
+        assertThat(handler.getToday(DcacheTimeDaily.class), is(nullValue()));
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        List<IHistogramData> rows = committedRows(2);
+        assertThat(rows.stream().map(r -> r.getClass().getSimpleName())
+                       .collect(Collectors.toList()),
+                   containsInAnyOrder("HSMReadsDaily", "HSMWritesDaily",
+                                      "HitsDaily"));
+    }
+
+    @Test
+    public void shouldNotStoreDayAlreadySummarized() throws Exception {
+        runTasks();
+        givenLatestDailyRows(yesterday, today);
+        givenWrites(2, 100L);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        verify(access, never()).commit(any());
+    }
+
+    @Test
+    public void shouldLeaveDayToSummaryAfterGap() throws Exception {
+        runTasks();
+        givenWrites(2, 100L);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        verify(access, never()).commit(any());
+    }
+
+    @Test
+    public void shouldNotStoreIncompleteDay() throws Exception {
+        givenLatestDailyRows(yesterday);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        verify(access, never()).commit(any());
+    }
+
+    @Test
+    public void shouldStoreEachDayOnce() throws Exception {
+        runTasks();
+        givenLatestDailyRows(yesterday);
+
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        handler.rollOverIfDayIsOver(now + TimeUnit.DAYS.toMillis(1));
+        runTasks();
+
+        committedRows(3);
+    }
+
+    private void givenLatestDailyRows(Date... dates) {
+        List<Class<?>> latest = Arrays.asList(DcacheWritesDaily.class,
+                                              HSMReadsDaily.class,
+                                              HitsDaily.class);
+        for (Class<?> type : latest) {
+            Collection<DcacheWritesDaily> rows = Arrays.stream(dates)
+                            .map(date -> {
+                                DcacheWritesDaily row = new DcacheWritesDaily();
+                                row.setDate(date);
+                                return row;
+                            })
+                            .collect(Collectors.toList());
+            doReturn(rows).when(access).get(eq(type), anyString(), anyString(), any());
+        }
+    }
+
+    private void givenWrites(long count, long size) {
+        DcacheWritesHourly writes = new DcacheWritesHourly();
+        writes.setDate(new Date(now));
+        writes.setCount(count);
+        writes.setSize(size);
+        handler.update(writes);
+    }
+
+    private void givenMover(boolean isP2p, boolean isNew, long connectionTime) {
+        MoverData mover = new MoverData();
+        mover.setDateStamp(new Date(now));
+        mover.setP2p(isP2p);
+        mover.setIsNew(isNew);
+        mover.setConnectionTime(connectionTime);
+        handler.update(mover);
+    }
+
+    private void givenHits(long count) {
+        HitsHourly hits = new HitsHourly();
+        hits.setDate(new Date(now));
+        hits.setCount(count);
+        handler.update(hits);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<IHistogramData> committedRows(int commits) throws Exception {
+        ArgumentCaptor<Collection<IHistogramData>> captor
+                        = ArgumentCaptor.forClass(Collection.class);
+        verify(access, times(commits)).commit(captor.capture());
+        return captor.getAllValues().stream()
+                     .flatMap(Collection::stream)
+                     .collect(Collectors.toList());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -16,12 +16,16 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.security.Principal;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -108,6 +112,18 @@ public class GplazmaMultiMapFile
             }
         }
 
+        /**
+         * Returns the name of the principals the matcher built from value
+         * may match.  Rules are indexed by this name.
+         */
+        public String indexKey(String value) throws GplazmaParseMapFileException
+        {
+            if (GroupPrincipal.class.isAssignableFrom(groupType) && !value.contains(",")) {
+                return value;
+            }
+            return buildPrincipal(value).getName();
+        }
+
         public PrincipalMatcher buildMatcher(String value)
                 throws GplazmaParseMapFileException
         {
@@ -125,6 +141,60 @@ public class GplazmaMultiMapFile
         boolean matches(Principal principal);
     }
 
+    /**
+     * A line of the map file.
+     */
+    private static class Rule
+    {
+        private final int index;
+        private final PrincipalMatcher matcher;
+        private final Set<Principal> mappedPrincipals;
+
+        Rule(int index, PrincipalMatcher matcher, Set<Principal> mappedPrincipals)
+        {
+            this.index = index;
+            this.matcher = matcher;
+            this.mappedPrincipals = mappedPrincipals;
+        }
+    }
+
+    /**
+     * The rules of a map file, indexed by principal type and name.  Finding
+     * the rules that match a set of principals takes time proportional to the
+     * number of principals rather than to the number of rules.  A Mapping is
+     * immutable; a modified map file results in a new Mapping.
+     */
+    private static class Mapping
+    {
+        private static final Mapping EMPTY = new Mapping(new EnumMap<>(MappablePrincipal.class));
+
+        private final Map<MappablePrincipal,Map<String,List<Rule>>> rules;
+
+        Mapping(Map<MappablePrincipal,Map<String,List<Rule>>> rules)
+        {
+            this.rules = rules;
+        }
+
+        List<Set<Principal>> mappedPrincipals(Collection<? extends Principal> principals)
+        {
+            SortedMap<Integer,Rule> matching = new TreeMap<>();
+            for (Principal principal : principals) {
+                for (Map.Entry<MappablePrincipal,Map<String,List<Rule>>> e : rules.entrySet()) {
+                    if (e.getKey().groupType.isInstance(principal)) {
+                        for (Rule rule : e.getValue().getOrDefault(principal.getName(), Collections.emptyList())) {
+                            if (rule.matcher.matches(principal)) {
+                                matching.put(rule.index, rule);
+                            }
+                        }
+                    }
+                }
+            }
+            return matching.values().stream()
+                    .map(r -> r.mappedPrincipals)
+                    .collect(Collectors.toList());
+        }
+    }
+
     private static final Logger LOGGER = LoggerFactory.getLogger(GplazmaMultiMapFile.class);
     private static final Map<String,MappablePrincipal> LABEL_TO_PRINCIPAL;
 
@@ -141,7 +211,7 @@ public class GplazmaMultiMapFile
     private Instant nextStat = Instant.now();
     private Consumer<String> warningsConsumer = LOGGER::warn;
 
-    private Map<PrincipalMatcher,Set<Principal>> map = Collections.emptyMap();
+    private Mapping mapping = Mapping.EMPTY;
 
     public GplazmaMultiMapFile(Path file)
     {
@@ -153,8 +223,18 @@ public class GplazmaMultiMapFile
         warningsConsumer = consumer;
     }
 
-    public synchronized Map<PrincipalMatcher,Set<Principal>> mapping()
+    /**
+     * Returns the principals mapped by the lines of the map file that match
+     * any of the given principals.  Each element of the returned list holds
+     * the principals of one line, in the order of the lines in the file.
+     */
+    public List<Set<Principal>> mappedPrincipals(Collection<? extends Principal> principals)
             throws AuthenticationException
+    {
+        return mapping().mappedPrincipals(principals);
+    }
+
+    private synchronized Mapping mapping() throws AuthenticationException
     {
         if (!Instant.now().isBefore(nextStat)) {
             nextStat = Instant.now().plusMillis(100);
@@ -165,7 +245,7 @@ public class GplazmaMultiMapFile
 
                 if (!lastLoaded.equals(mtime)) {
                     lastLoaded = mtime;
-                    map = parseMapFile();
+                    mapping = parseMapFile();
                 }
             } catch (IOException e) {
                  throw new AuthenticationException("failed to read " + file + ": "
@@ -173,14 +253,14 @@ public class GplazmaMultiMapFile
             }
         }
 
-        return map;
+        return mapping;
     }
 
-    private Map<PrincipalMatcher,Set<Principal>> parseMapFile() throws IOException
+    private Mapping parseMapFile() throws IOException
     {
         LOGGER.debug("Reading file {}", file);
 
-        Map<PrincipalMatcher,Set<Principal>> map = new LinkedHashMap<>();
+        Map<MappablePrincipal,Map<String,List<Rule>>> rules = new EnumMap<>(MappablePrincipal.class);
 
         int lineCount = 0;
         for (String line : Files.readAllLines(file)) {
@@ -193,18 +273,18 @@ public class GplazmaMultiMapFile
                     checkFormat(args.argc() > 1, "Missing mapped principals");
                     String matcherDescription = args.argv(0);
                     List<String> mappedPrincipalDescriptions = args.getArguments().subList(1, args.argc());
-                    map.put(asMatcher(matcherDescription),
-                            asPrincipals(mappedPrincipalDescriptions));
+                    addRule(rules, lineCount, matcherDescription, mappedPrincipalDescriptions);
                 } catch (GplazmaParseMapFileException e) {
                     warningsConsumer.accept(file.getFileName() + ":" + lineCount + ": " + e.getMessage());
                 }
             }
         }
 
-        return map;
+        return new Mapping(rules);
     }
 
-    private static PrincipalMatcher asMatcher(String description)
+    private static void addRule(Map<MappablePrincipal,Map<String,List<Rule>>> rules,
+            int index, String description, List<String> mappedPrincipalDescriptions)
             throws GplazmaParseMapFileException
     {
         List<String> parts = Splitter.on(':').limit(2).splitToList(description);
@@ -214,7 +294,13 @@ public class GplazmaMultiMapFile
         MappablePrincipal p = LABEL_TO_PRINCIPAL.get(type);
         checkFormat(p != null, "Unknown principal type \"%s\" in \"%s\"", type,
                 description);
-        return p.buildMatcher(parts.get(1));
+        String value = parts.get(1);
+        PrincipalMatcher matcher = p.buildMatcher(value);
+        String key = p.indexKey(value);
+        Rule rule = new Rule(index, matcher, asPrincipals(mappedPrincipalDescriptions));
+        rules.computeIfAbsent(p, k -> new HashMap<>())
+                .computeIfAbsent(key, k -> new ArrayList<>(1))
+                .add(rule);
     }
 
     private static Set<Principal> asPrincipals(List<String> descriptions)
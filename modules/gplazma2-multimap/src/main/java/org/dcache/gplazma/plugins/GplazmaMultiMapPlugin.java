@@ -10,13 +10,11 @@ import org.dcache.gplazma.AuthenticationException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.dcache.auth.GidPrincipal;
-import org.dcache.gplazma.plugins.GplazmaMultiMapFile.PrincipalMatcher;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.dcache.gplazma.util.Preconditions.checkAuthentication;
@@ -41,12 +39,8 @@ public class GplazmaMultiMapPlugin implements GPlazmaMappingPlugin
     @Override
     public void map(Set<Principal> principals) throws AuthenticationException
     {
-        Map<PrincipalMatcher,Set<Principal>> mapping = mapFile.mapping();
-
         // List of mapped principals in file order.
-        List<Principal> mappedPrincipals = mapping.entrySet().stream()
-                                                    .filter(e -> principals.stream().anyMatch(e.getKey()::matches))
-                                                    .map(Map.Entry::getValue)
+        List<Principal> mappedPrincipals = mapFile.mappedPrincipals(principals).stream()
                                                     .flatMap(Set::stream)
                                                     .collect(Collectors.toList());
 
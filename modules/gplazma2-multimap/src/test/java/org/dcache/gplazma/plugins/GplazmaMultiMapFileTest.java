@@ -322,6 +322,47 @@ public class GplazmaMultiMapFileTest {
         assertThat(mappedPrincipals, hasItem(new UidPrincipal(2000)));
     }
 
+    @Test
+    public void shouldReturnMatchingLinesInFileOrder() throws Exception {
+        givenConfig("oidcgrp:Users gid:1000\n"
+                + "email:kermit@dcache.org username:kermit\n"
+                + "oidcgrp:Developers gid:2000\n"
+                + "oidcgrp:Guests gid:3000\n");
+
+        List<Set<Principal>> mappings = mapFile.mappedPrincipals(List.of(
+                new OpenIdGroupPrincipal("Developers"),
+                new EmailAddressPrincipal("kermit@dcache.org"),
+                new OpenIdGroupPrincipal("Users")));
+
+        assertThat(warnings, is(empty()));
+        assertThat(mappings, contains(
+                Set.<Principal>of(new GidPrincipal(1000, false)),
+                Set.<Principal>of(new UserNamePrincipal("kermit")),
+                Set.<Principal>of(new GidPrincipal(2000, false))));
+    }
+
+    @Test
+    public void shouldReturnEveryLineMatchingPrincipal() throws Exception {
+        givenConfig("email:kermit@dcache.org username:kermit\n"
+                + "email:kermit@dcache.org uid:1000\n");
+
+        List<Set<Principal>> mappings = mapFile.mappedPrincipals(
+                Set.of(new EmailAddressPrincipal("kermit@dcache.org")));
+
+        assertThat(mappings, contains(
+                Set.<Principal>of(new UserNamePrincipal("kermit")),
+                Set.<Principal>of(new UidPrincipal(1000))));
+    }
+
+    @Test
+    public void shouldNotMatchPrincipalOfDifferentTypeWithSameName() throws Exception {
+        givenConfig("username:kermit uid:1000");
+
+        whenMapping(new GroupNamePrincipal("kermit"));
+
+        assertThat(mappedPrincipals, is(empty()));
+    }
+
     /*----------------------- Helpers -----------------------------*/
 
     private void givenConfig(String mapping) throws Exception
@@ -337,14 +378,12 @@ public class GplazmaMultiMapFileTest {
 
     private void givenConfigHasBeenRead() throws Exception
     {
-        mapFile.mapping();
+        mapFile.mappedPrincipals(Collections.emptySet());
     }
 
     private void whenMapping(Principal principal) throws Exception
     {
-        mappedPrincipals = mapFile.mapping().entrySet().stream()
-                .filter(e -> e.getKey().matches(principal))
-                .map(e -> e.getValue())
+        mappedPrincipals = mapFile.mappedPrincipals(Collections.singleton(principal)).stream()
                 .findFirst()
                 .orElse(Collections.emptySet());
     }
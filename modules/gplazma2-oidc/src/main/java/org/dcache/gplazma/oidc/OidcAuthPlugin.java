@@ -13,14 +13,17 @@ import com.google.common.net.InternetDomainName;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.Principal;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,6 +52,7 @@ import org.dcache.auth.LoA;
 import org.dcache.auth.LoAPrincipal;
 import org.dcache.auth.OidcSubjectPrincipal;
 import org.dcache.auth.OpenIdGroupPrincipal;
+import org.dcache.commons.stats.RequestExecutionTimeGaugeImpl;
 import org.dcache.gplazma.AuthenticationException;
 import org.dcache.gplazma.oidc.exceptions.OidcException;
 import org.dcache.gplazma.oidc.helpers.JsonHttpClient;
@@ -120,11 +124,38 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
             .put("https://aai.egi.eu/LoA#High", LoA.EGI_HIGH)
             .build();
 
+    /**
+     * Shared by all instances, as a gauge registers itself with JMX only if
+     * no gauge of that name is registered.
+     */
+    private static final RequestExecutionTimeGaugeImpl USER_INFO_LOOKUP_TIME =
+            new RequestExecutionTimeGaugeImpl("user-info-lookup", "OidcAuthPlugin");
+
+    /**
+     * The outcome of asking the OPs about an access token.
+     */
+    private static class TokenInfo
+    {
+        private final List<LookupResult> results;
+        private final Optional<Instant> expiry;
+
+        TokenInfo(List<LookupResult> results, Optional<Instant> expiry)
+        {
+            this.results = results;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired()
+        {
+            return expiry.isPresent() && !Instant.now().isBefore(expiry.get());
+        }
+    }
+
     private final ExecutorService executor;
 
     private final Map<URI,IdentityProvider> providersByIssuer;
     private final LoadingCache<IdentityProvider, JsonNode> discoveryCache;
-    private final LoadingCache<String,List<LookupResult>> userInfoCache;
+    private final LoadingCache<String,TokenInfo> userInfoCache;
     private final Random random = new Random();
     private final JsonHttpClient jsonHttpClient;
     private final Duration slowLookupThreshold;
@@ -156,12 +187,37 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
     }
 
 
+    /**
+     * Fetch the discovery documents in the background, so that the first
+     * logins do not wait for them.  The documents are subsequently
+     * refreshed in the background, while the cached copy is still used.
+     */
+    @Override
+    public void start()
+    {
+        for (IdentityProvider provider : providersByIssuer.values()) {
+            executor.execute(() -> discoveryCache.refresh(provider));
+        }
+    }
+
     @Override
     public void stop()
     {
         executor.shutdownNow();
     }
 
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.append("    Discovery cache: ").println(discoveryCache.stats());
+        pw.append("    User-info cache: ").println(userInfoCache.stats());
+        if (USER_INFO_LOOKUP_TIME.getUpdateNum() > 0) {
+            pw.printf("    User-info lookup time: %.0f ms average, %d ms maximum%n",
+                    USER_INFO_LOOKUP_TIME.getAverageExecutionTime(),
+                    USER_INFO_LOOKUP_TIME.getMaxExecutionTime());
+        }
+    }
+
     @VisibleForTesting
     OidcAuthPlugin(Properties properties, JsonHttpClient client)
     {
@@ -229,6 +285,7 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
         return CacheBuilder.newBuilder()
                            .maximumSize(100)
                            .refreshAfterWrite(refresh, refreshUnits)
+                           .recordStats()
                            .build(
                                    new CacheLoader<IdentityProvider, JsonNode>() {
                                        @Override
@@ -257,16 +314,17 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
                                  );
     }
 
-    private LoadingCache<String,List<LookupResult>> createUserInfoCache(int size,
+    private LoadingCache<String,TokenInfo> createUserInfoCache(int size,
             int refresh, TimeUnit refreshUnits, int expire, TimeUnit expireUnits)
     {
         return CacheBuilder.newBuilder()
                 .maximumSize(size)
                 .refreshAfterWrite(refresh, refreshUnits)
                 .expireAfterWrite(expire, expireUnits)
-                .build(new CacheLoader<String, List<LookupResult>>()
+                .recordStats()
+                .build(new CacheLoader<String, TokenInfo>()
                         {
-                            private ListenableFuture<List<LookupResult>> asyncFetch(String token)
+                            private ListenableFuture<TokenInfo> asyncFetch(String token)
                                     throws AuthenticationException
                             {
                                 List<ListenableFuture<LookupResult>> futures =
@@ -284,11 +342,14 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
                                     futures.add(lookupTask);
                                 }
 
-                                return Futures.allAsList(futures);
+                                Optional<Instant> expiry = JsonWebToken.expiryOf(token);
+                                return Futures.transform(Futures.allAsList(futures),
+                                        results -> new TokenInfo(results, expiry),
+                                        MoreExecutors.directExecutor());
                             }
 
                             @Override
-                            public List<LookupResult> load(String token)
+                            public TokenInfo load(String token)
                                     throws InterruptedException, AuthenticationException
                             {
                                 if (LOG.isDebugEnabled()) {
@@ -307,8 +368,8 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
                             }
 
                             @Override
-                            public ListenableFuture<List<LookupResult>> reload(String token,
-                                    List<LookupResult> results) throws AuthenticationException
+                            public ListenableFuture<TokenInfo> reload(String token,
+                                    TokenInfo info) throws AuthenticationException
                             {
                                 if (LOG.isDebugEnabled()) {
                                     LOG.debug("Refreshing user-info for token {}", describe(token, 20));
@@ -346,7 +407,13 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
         List<LookupResult> allResults;
 
         try {
-            allResults = userInfoCache.get(token);
+            TokenInfo info = userInfoCache.get(token);
+            if (info.isExpired()) {
+                /* Ask the OPs again, rather than accepting an expired token. */
+                userInfoCache.asMap().remove(token, info);
+                info = userInfoCache.get(token);
+            }
+            allResults = info.results;
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             Throwables.throwIfInstanceOf(cause, AuthenticationException.class);
@@ -412,6 +479,7 @@ public class OidcAuthPlugin implements GPlazmaAuthenticationPlugin
         } finally {
             if (userinfoLookupTiming != null) {
                 userinfoLookupTiming.stop();
+                USER_INFO_LOOKUP_TIME.update(userinfoLookupTiming.elapsed(TimeUnit.MILLISECONDS));
 
                 if (userinfoLookupTiming.elapsed().compareTo(slowLookupThreshold) > 0) {
                     LOG.warn("OpenID-Connect user-info endpoint {} took {} to return",
@@ -9,8 +9,11 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URI;
 import java.security.Principal;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
@@ -28,6 +31,7 @@ import org.dcache.gplazma.oidc.exceptions.OidcException;
 import org.dcache.gplazma.oidc.helpers.JsonHttpClient;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
 
@@ -209,6 +213,31 @@ public class OidcAuthPluginTest {
         assertThat(principals, not(hasLoA(LoA.REFEDS_IAP_LOCAL_ENTERPRISE)));
     }
 
+    @Test
+    public void shouldQueryUserInfoOnceForRepeatedToken() throws Exception
+    {
+        givenPrefixConfig("IAM", "idc-iam.example.org");
+        OidcAuthPlugin plugin = new OidcAuthPlugin(givenConfiguration, httpClient);
+        Mockito.doReturn(withDiscoveryDoc("{ \"userinfo_endpoint\":\"https://idc-iam.example.org/userinfo\"}"))
+                .when(httpClient).doGet(Mockito.any(URI.class));
+        Mockito.doReturn(withUserInfo("{\"sub\":\"214234823942934792371\"}"))
+                .when(httpClient).doGetWithToken(Mockito.anyString(), Mockito.anyString());
+
+        Set<Principal> first = new HashSet<>();
+        plugin.authenticate(new HashSet<>(), Collections.<Object>singleton(withBearerToken("validtoken")), first);
+        Set<Principal> second = new HashSet<>();
+        plugin.authenticate(new HashSet<>(), Collections.<Object>singleton(withBearerToken("validtoken")), second);
+        plugin.stop();
+
+        assertThat(first, hasSubject("214234823942934792371"));
+        assertThat(second, hasSubject("214234823942934792371"));
+        Mockito.verify(httpClient, Mockito.times(1)).doGetWithToken(Mockito.anyString(), Mockito.anyString());
+
+        StringWriter info = new StringWriter();
+        plugin.getInfo(new PrintWriter(info));
+        assertThat(info.toString(), containsString("User-info cache: CacheStats{hitCount=1,"));
+    }
+
     /*-------------------------------- Helpers --------------------------------------*/
 
     private void givenHostnameConfig(String config)
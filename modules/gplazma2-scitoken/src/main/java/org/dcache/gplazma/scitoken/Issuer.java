@@ -40,7 +40,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
-import java.util.function.Supplier;
 
 import diskCacheV111.util.FsPath;
 
@@ -58,6 +57,12 @@ public class Issuer
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(Issuer.class);
 
+    /**
+     * How long before the public keys expire they are fetched again by
+     * {@link #prefetchKeys}.
+     */
+    private static final Duration PREFETCH_MARGIN = Duration.ofMinutes(1);
+
     private final String id;
     private final String endpoint;
     private final Set<Principal> identity;
@@ -68,7 +73,7 @@ public class Issuer
     private final JsonNode jwks;
 
 
-    private Supplier<Map<String,PublicKey>> keys = MemoizeMapWithExpiry.memorize(this::parseJwks)
+    private final MemoizeMapWithExpiry<Map<String,PublicKey>> keys = MemoizeMapWithExpiry.memorize(this::parseJwks)
             .whenEmptyFor(Duration.ofMinutes(1))
             .whenNonEmptyFor(Duration.ofMinutes(10))
             .build();
@@ -210,6 +215,16 @@ public class Issuer
         }
     }
 
+    /**
+     * Fetch the issuer's public keys, if they are about to expire, without
+     * blocking authentication requests.  The discovery document is fetched
+     * again along with the keys once it has expired.
+     */
+    public void prefetchKeys()
+    {
+        keys.refreshIfExpiringWithin(PREFETCH_MARGIN);
+    }
+
     public void checkIssued(JsonWebToken token) throws AuthenticationException
     {
         Map<String,PublicKey> keyMap = keys.get();
@@ -223,15 +238,23 @@ public class Issuer
             checkAuthentication(keyMap.values().stream().anyMatch(token::isSignedBy),
                     "Invalid signature");
         }
+    }
 
+    /**
+     * Check that a token with the given "jti" claim has not been presented
+     * before, if this issuer keeps a history of tokens.  This check is
+     * required every time a token is used, even if the token was previously
+     * found to be valid.
+     */
+    public void checkNotReplayed(String jti) throws AuthenticationException
+    {
         if (previousJtis != null) {
-            Optional<String> jtiClaim = token.getPayloadString("jti");
-            if (jtiClaim.isPresent()) {
-                String jti = jtiClaim.get();
-                boolean isReplayAttack = previousJtis.contains(jti);
+            boolean isReplayAttack;
+            synchronized (previousJtis) {
+                isReplayAttack = previousJtis.contains(jti);
                 previousJtis.add(jti);
-                checkAuthentication(!isReplayAttack, "token reuse");
             }
+            checkAuthentication(!isReplayAttack, "token reuse");
         }
     }
 }
@@ -25,7 +25,9 @@ import java.util.function.Supplier;
 /**
  * Provide access to a Map, obtained from some supplier where the value is
  * cached for a configurable duration.  The cached duration may be different
- * depending on whether the Map is empty.
+ * depending on whether the Map is empty.  The value may also be refreshed
+ * ahead of time, allowing the supplier to be called in the background
+ * rather than when the value is next needed.
  */
 public class MemoizeMapWithExpiry<C extends Map<?,?>> implements Supplier<C>
 {
@@ -57,6 +59,32 @@ public class MemoizeMapWithExpiry<C extends Map<?,?>> implements Supplier<C>
         return value;
     }
 
+    /**
+     * Obtain a new value from the supplier if the current value expires
+     * within the given duration.  The current value is returned by {@link #get}
+     * while the new value is obtained.  An empty new value does not replace
+     * a non-empty current value, which is kept until it expires.
+     */
+    public void refreshIfExpiringWithin(Duration margin)
+    {
+        Instant now = Instant.now();
+        synchronized (this) {
+            if (nextCheck != null && now.plus(margin).isBefore(nextCheck)) {
+                return;
+            }
+        }
+
+        C newValue = supplier.get();
+        boolean isEmpty = newValue == null || newValue.isEmpty();
+
+        synchronized (this) {
+            if (!isEmpty || value == null || value.isEmpty()) {
+                value = newValue;
+                nextCheck = now.plus(isEmpty ? whenEmpty : whenNonEmpty);
+            }
+        }
+    }
+
     public static <C extends Map<?,?>> Builder memorize(Supplier<C> supplier)
     {
         return new Builder(supplier);
@@ -17,15 +17,21 @@
  */
 package org.dcache.gplazma.scitoken;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,6 +42,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import diskCacheV111.util.FsPath;
@@ -51,6 +60,7 @@ import org.dcache.auth.attributes.Restriction;
 import org.dcache.gplazma.AuthenticationException;
 import org.dcache.gplazma.plugins.GPlazmaAuthenticationPlugin;
 import org.dcache.gplazma.util.JsonWebToken;
+import org.dcache.gplazma.util.VerifiedTokenCache;
 import org.dcache.util.Args;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -64,11 +74,39 @@ public class SciTokenPlugin implements GPlazmaAuthenticationPlugin
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(SciTokenPlugin.class);
 
+    /**
+     * How often the public keys of the issuers are checked and, if about to
+     * expire, fetched again.
+     */
+    private static final Duration PREFETCH_PERIOD = Duration.ofSeconds(15);
+
+    /**
+     * The outcome of successfully verifying a token.
+     */
+    private static class VerifiedToken
+    {
+        private final Issuer issuer;
+        private final String jti;
+        private final Set<Principal> principals;
+        private final Restriction restriction;
+
+        VerifiedToken(Issuer issuer, @Nullable String jti,
+                Collection<Principal> principals, Restriction restriction)
+        {
+            this.issuer = issuer;
+            this.jti = jti;
+            this.principals = ImmutableSet.copyOf(principals);
+            this.restriction = restriction;
+        }
+    }
+
     private final HttpClient client;
     private final Map<String,Issuer> issuersByEndpoint;
     private final Set<String> audienceTargets;
+    private final VerifiedTokenCache<VerifiedToken> verifiedTokens;
 
     private int tokenHistory = 0;
+    private ScheduledExecutorService prefetcher;
 
     public SciTokenPlugin(Properties properties)
     {
@@ -88,6 +126,12 @@ public class SciTokenPlugin implements GPlazmaAuthenticationPlugin
 
         String targets = properties.getProperty("gplazma.scitoken.audience-targets");
         audienceTargets = ImmutableSet.copyOf(Splitter.on(' ').trimResults().split(targets));
+
+        int cacheSize = Integer.parseInt(properties.getProperty("gplazma.scitoken.token-cache.size"));
+        TimeUnit lifetimeUnit = TimeUnit.valueOf(properties.getProperty("gplazma.scitoken.token-cache.lifetime.unit"));
+        Duration cacheLifetime = Duration.ofMillis(lifetimeUnit.toMillis(
+                Long.parseLong(properties.getProperty("gplazma.scitoken.token-cache.lifetime"))));
+        verifiedTokens = new VerifiedTokenCache<>("SciTokenPlugin", cacheSize, cacheLifetime);
     }
 
     private boolean isIssuer(Object key)
@@ -114,6 +158,45 @@ public class SciTokenPlugin implements GPlazmaAuthenticationPlugin
         return new Issuer(client, id, endpoint, prefix, principals, issuerTokenHistory);
     }
 
+    @Override
+    public void start()
+    {
+        prefetcher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("scitoken-prefetch-%d").setDaemon(true).build());
+        prefetcher.scheduleWithFixedDelay(this::prefetch, 0,
+                PREFETCH_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetch the public keys of all issuers that are about to expire.
+     */
+    @VisibleForTesting
+    void prefetch()
+    {
+        for (Issuer issuer : issuersByEndpoint.values()) {
+            try {
+                issuer.prefetchKeys();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to prefetch keys of issuer {}: {}",
+                        issuer.getId(), e.toString());
+            }
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        verifiedTokens.getInfo(pw);
+    }
+
     @Override
     public void authenticate(Set<Object> publicCredentials, Set<Object> privateCredentials,
             Set<Principal> identifiedPrincipals, Set<Restriction> restrictions)
@@ -129,8 +212,20 @@ public class SciTokenPlugin implements GPlazmaAuthenticationPlugin
         checkAuthentication(!tokens.isEmpty(), "no JWT bearer token");
         checkAuthentication(tokens.size() == 1, "multiple JWT bearer tokens");
 
+        VerifiedToken token = verifiedTokens.get(tokens.get(0), this::verify);
+        if (token.jti != null) {
+            token.issuer.checkNotReplayed(token.jti);
+        }
+
+        identifiedPrincipals.addAll(token.principals);
+        LOGGER.debug("Authenticated user with restriction: {}", token.restriction);
+        restrictions.add(token.restriction);
+    }
+
+    private VerifiedToken verify(String encodedToken) throws AuthenticationException
+    {
         try {
-            JsonWebToken token = checkValid(new JsonWebToken(tokens.get(0)));
+            JsonWebToken token = checkValid(new JsonWebToken(encodedToken));
             Issuer issuer = issuerOf(token);
 
             Collection<Principal> principals = new ArrayList<>();
@@ -153,10 +248,8 @@ public class SciTokenPlugin implements GPlazmaAuthenticationPlugin
                     .orElseThrow(() -> new AuthenticationException("missing scope claim"));
             List<AuthorisationSupplier> scopes = parseScope(scope);
             checkAuthentication(!scopes.isEmpty(), "not a SciToken: found no SciToken scope terms.");
-            identifiedPrincipals.addAll(principals);
             Restriction r = buildRestriction(issuer.getPrefix(), scopes);
-            LOGGER.debug("Authenticated user with restriction: {}", r);
-            restrictions.add(r);
+            return new VerifiedToken(issuer, jti.orElse(null), principals, r);
         } catch (IOException e) {
             throw new AuthenticationException(e.getMessage());
         }
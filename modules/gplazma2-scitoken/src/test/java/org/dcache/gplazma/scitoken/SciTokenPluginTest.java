@@ -33,6 +33,8 @@ import org.mockito.ArgumentMatcher;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.math.BigInteger;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -79,6 +81,7 @@ import static java.time.temporal.ChronoUnit.MINUTES;
 import static java.util.Objects.requireNonNull;
 import static org.dcache.auth.attributes.Activity.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItems;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -170,6 +173,9 @@ public class SciTokenPluginTest
         properties.setProperty("gplazma.scitoken.issuer!EXAMPLE", "https://example.org/ /prefix/path uid:1000 gid:1000");
         properties.setProperty("gplazma.scitoken.token-history", "0");
         properties.setProperty("gplazma.scitoken.audience-targets", "");
+        properties.setProperty("gplazma.scitoken.token-cache.size", "100");
+        properties.setProperty("gplazma.scitoken.token-cache.lifetime", "10");
+        properties.setProperty("gplazma.scitoken.token-cache.lifetime.unit", "MINUTES");
 
         SciTokenPlugin ignored = new SciTokenPlugin(properties, client);
     }
@@ -791,6 +797,69 @@ public class SciTokenPluginTest
         whenAuthenticatingWith(jwt);
     }
 
+    @Test
+    public void shouldAcceptSameJwtTwice() throws Exception
+    {
+        given(aSciTokenPlugin().withProperty("gplazma.scitoken.issuer!EXAMPLE", "https://example.org/ /prefix/path uid:1000 gid:1000"));
+        givenThat("OP1", isAnIssuer().withURL("https://example.org/").withKey("key1", rsa256Keys()));
+
+        String sub = UUID.randomUUID().toString();
+        String jwt = aJwtToken()
+                .withClaim("sub", sub)
+                .withClaim("scope", "read:/")
+                .issuedBy("OP1").usingKey("key1").build();
+        givenAlreadyAuthenticatedWith(jwt);
+
+        whenAuthenticatingWith(jwt);
+
+        assertThat(identifiedPrincipals, hasItems(new UidPrincipal(1000),
+                new GidPrincipal(1000, true), new JwtSubPrincipal("EXAMPLE", sub)));
+        assertFalse(resultingRestriction.isRestricted(DOWNLOAD, FsPath.create("/prefix/path/my-file.dat")));
+        assertTrue(resultingRestriction.isRestricted(UPLOAD, FsPath.create("/prefix/path/my-file.dat")));
+        assertThat(info(), containsString("1 hits, 1 misses"));
+    }
+
+    @Test(expected=AuthenticationException.class)
+    public void shouldRejectSecondUsageOfCachedJwt() throws Exception
+    {
+        given(aSciTokenPlugin()
+                .withProperty("gplazma.scitoken.issuer!EXAMPLE", "https://example.org/ /prefix/path uid:1000 gid:1000 -tokenHistory=10"));
+        givenThat("OP1", isAnIssuer().withURL("https://example.org/").withKey("key1", rsa256Keys()));
+
+        String jwt = aJwtToken()
+                .withRandomJti()
+                .withRandomSub()
+                .withClaim("scope", "read:/")
+                .issuedBy("OP1").usingKey("key1").build();
+        givenAlreadyAuthenticatedWith(jwt);
+
+        try {
+            whenAuthenticatingWith(jwt);
+        } finally {
+            assertThat(info(), containsString("1 hits, 1 misses"));
+        }
+    }
+
+    @Test
+    public void shouldPrefetchIssuerKeys() throws Exception
+    {
+        given(aSciTokenPlugin().withProperty("gplazma.scitoken.issuer!EXAMPLE", "https://example.org/ /prefix/path uid:1000 gid:1000"));
+        givenThat("OP1", isAnIssuer().withURL("https://example.org/").withKey("key1", rsa256Keys()));
+
+        plugin.prefetch();
+
+        // Fetched the discovery document and the JWKS.
+        verify(client, times(2)).execute(any(HttpUriRequest.class));
+
+        whenAuthenticatingWith(aJwtToken()
+                .withRandomSub()
+                .withClaim("scope", "read:/")
+                .issuedBy("OP1").usingKey("key1"));
+
+        verify(client, times(2)).execute(any(HttpUriRequest.class));
+        assertThat(identifiedPrincipals, hasItems(new UidPrincipal(1000)));
+    }
+
     @Test
     public void shouldAllowWriteOnlyAccess() throws Exception
     {
@@ -1175,6 +1244,13 @@ public class SciTokenPluginTest
         return new PrincipalSetMaker();
     }
 
+    private String info()
+    {
+        StringWriter info = new StringWriter();
+        plugin.getInfo(new PrintWriter(info));
+        return info.toString();
+    }
+
     private void given(SciTokenPluginBuilder builder)
     {
         plugin = builder.build();
@@ -1208,6 +1284,9 @@ public class SciTokenPluginTest
             // Add default values
             properties.setProperty("gplazma.scitoken.token-history", "0");
             properties.setProperty("gplazma.scitoken.audience-targets", "");
+            properties.setProperty("gplazma.scitoken.token-cache.size", "100");
+            properties.setProperty("gplazma.scitoken.token-cache.lifetime", "10");
+            properties.setProperty("gplazma.scitoken.token-cache.lifetime.unit", "MINUTES");
         }
 
         public SciTokenPluginBuilder withProperty(String key, String value)
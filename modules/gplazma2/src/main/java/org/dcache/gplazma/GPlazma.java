@@ -1,6 +1,8 @@
 package org.dcache.gplazma;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Service;
 import com.google.common.util.concurrent.ServiceManager;
 import org.globus.gsi.gssapi.jaas.SimplePrincipal;
@@ -9,6 +11,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.security.auth.Subject;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.Modifier;
 import java.security.Principal;
 import java.util.ArrayList;
@@ -18,7 +22,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.dcache.auth.BearerTokenCredential;
 import org.dcache.auth.LoginNamePrincipal;
@@ -75,20 +84,42 @@ public class GPlazma
     private static final LoginMonitor LOGGING_LOGIN_MONITOR =
             new LoggingLoginMonitor();
 
+    /**
+     * How often the configuration is checked for updates.
+     */
+    private static final long CONFIGURATION_CHECK_PERIOD_MILLIS =
+            TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * How long a replaced setup is kept running for logins still using it.
+     */
+    private static final long RETIRED_SETUP_GRACE_PERIOD_MILLIS =
+            TimeUnit.MINUTES.toMillis(1);
+
     private KnownFailedLogins _failedLogins = new KnownFailedLogins();
 
     private Properties _globalProperties;
-    private boolean _globalPropertiesHaveUpdated;
 
     private final PluginFactory _customPluginFactory;
 
-    private GPlazmaInternalException _lastLoadPluginsProblem;
+    private final Executor _authExecutor;
+
+    /**
+     * Checks for configuration updates.  Logins never wait for the
+     * configuration to be checked or reloaded; they use whichever setup
+     * was most recently published.
+     */
+    private final ScheduledExecutorService _configurationWatcher;
+
+    private final Set<Setup> _retiredSetups = ConcurrentHashMap.newKeySet();
+
+    private volatile GPlazmaInternalException _lastLoadPluginsProblem;
 
     private final ConfigurationLoadingStrategy configurationLoadingStrategy;
 
-    private ValidationStrategy validationStrategy;
+    private volatile ValidationStrategy validationStrategy;
 
-    private Setup setup;
+    private volatile Setup setup;
 
     /**
      * Storage class for failed login attempts.  This allows gPlazma to
@@ -203,10 +234,28 @@ public class GPlazma
      */
     public GPlazma(ConfigurationLoadingStrategy configurationLoadingStrategy,
                    Properties properties, PluginFactory factory)
+    {
+        this(configurationLoadingStrategy, properties, factory, null);
+    }
+
+    /**
+     * @param configurationLoadingStrategy The strategy for loading the plugin configuration.
+     * @param properties General configuration for plugins
+     * @param factory Custom PluginFactory to allow customisation of plugins
+     * @param authExecutor Executor for calling auth plugins concurrently, or
+     * null to call them one after another
+     * @see AuthenticationStrategy#setExecutor
+     */
+    public GPlazma(ConfigurationLoadingStrategy configurationLoadingStrategy,
+                   Properties properties, PluginFactory factory, Executor authExecutor)
     {
         this.configurationLoadingStrategy = configurationLoadingStrategy;
         _globalProperties = properties;
         _customPluginFactory = factory;
+        _authExecutor = authExecutor;
+        _configurationWatcher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("gplazma-configuration-watcher")
+                        .setDaemon(true).build());
         try {
             reload();
         } catch (GPlazmaInternalException e) {
@@ -215,16 +264,38 @@ public class GPlazma
              * problem if configuration file is edited.
              */
         }
+        _configurationWatcher.scheduleWithFixedDelay(this::checkPluginConfig,
+                CONFIGURATION_CHECK_PERIOD_MILLIS, CONFIGURATION_CHECK_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
     }
 
     public void shutdown()
     {
+        _configurationWatcher.shutdownNow();
+        try {
+            _configurationWatcher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _retiredSetups.forEach(Setup::stop);
+        _retiredSetups.clear();
         Setup setup = this.setup;
         if (setup != null) {
             setup.stop();
         }
     }
 
+    /**
+     * Provide information from the plugins of the current setup.
+     */
+    public void getInfo(PrintWriter pw)
+    {
+        Setup setup = this.setup;
+        if (setup != null) {
+            setup.getInfo(pw);
+        }
+    }
+
     public LoginReply login(Subject subject) throws AuthenticationException
     {
         RecordingLoginMonitor record = new RecordingLoginMonitor();
@@ -260,15 +331,10 @@ public class GPlazma
         requireNonNull(subject, "subject is null");
 
         Setup setup;
-
-        synchronized (configurationLoadingStrategy) {
-            try {
-                checkPluginConfig();
-            } catch(GPlazmaInternalException e) {
-                throw new AuthenticationException("internal gPlazma error: " + e.getMessage());
-            }
-
-            setup = this.setup;
+        try {
+            setup = getSetup();
+        } catch(GPlazmaInternalException e) {
+            throw new AuthenticationException("internal gPlazma error: " + e.getMessage());
         }
 
         Set<Principal> principals = new HashSet<>();
@@ -343,10 +409,20 @@ public class GPlazma
 
     private IdentityStrategy getIdentityStrategy() throws GPlazmaInternalException
     {
-        synchronized (configurationLoadingStrategy) {
-            checkPluginConfig();
-            return setup.identityStrategy;
+        return getSetup().identityStrategy;
+    }
+
+    /**
+     * Returns the current setup, or the problem that prevented the current
+     * configuration from being loaded.
+     */
+    private Setup getSetup() throws GPlazmaInternalException
+    {
+        GPlazmaInternalException problem = _lastLoadPluginsProblem;
+        if (problem != null) {
+            throw problem;
         }
+        return setup;
     }
 
     private void reload() throws GPlazmaInternalException
@@ -357,6 +433,7 @@ public class GPlazma
             validationStrategy = ValidationStrategyFactory.getInstance().newValidationStrategy();
 
             Setup newSetup = buildSetup();
+            newSetup.authStrategy.setExecutor(_authExecutor);
             try {
                 newSetup.start();
             } catch (GPlazmaInternalException e) {
@@ -365,10 +442,10 @@ public class GPlazma
             }
 
             Setup oldSetup = this.setup;
+            this.setup = newSetup;
             if (oldSetup != null) {
-                oldSetup.stop();
+                retire(oldSetup);
             }
-            this.setup = newSetup;
 
             if(isPreviousLoadPluginsProblematic()) {
                 /* FIXME: this should be logged at info level but we want it to
@@ -383,6 +460,21 @@ public class GPlazma
         }
     }
 
+    /**
+     * Stops a setup that is no longer current.  Logins that started before
+     * the new setup was published may still be using the old setup, so
+     * stopping its plugins is delayed.
+     */
+    private void retire(Setup oldSetup)
+    {
+        _retiredSetups.add(oldSetup);
+        _configurationWatcher.schedule(() -> {
+                    if (_retiredSetups.remove(oldSetup)) {
+                        oldSetup.stop();
+                    }
+                }, RETIRED_SETUP_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
     private Setup buildSetup() throws GPlazmaInternalException
     {
         PluginLoader pluginLoader = XmlResourcePluginLoader.newPluginLoader();
@@ -418,16 +510,22 @@ public class GPlazma
         return setup.build();
     }
 
-    private void checkPluginConfig() throws GPlazmaInternalException
+    /**
+     * Reloads the configuration if it has changed.  Called periodically by
+     * the configuration watcher, which is the only thread to reload the
+     * configuration after construction.
+     */
+    private void checkPluginConfig()
     {
-        if (_globalPropertiesHaveUpdated || configurationLoadingStrategy.hasUpdated()) {
-            _globalPropertiesHaveUpdated = false;
-            _failedLogins.clear();
-            reload();
-        }
-
-        if(isPreviousLoadPluginsProblematic()) {
-            throw _lastLoadPluginsProblem;
+        try {
+            if (configurationLoadingStrategy.hasUpdated()) {
+                _failedLogins.clear();
+                reload();
+            }
+        } catch (GPlazmaInternalException e) {
+            // Already logged and reported to subsequent logins by reload.
+        } catch (RuntimeException e) {
+            LOGGER.error("Bug detected while reloading the configuration: {}", e.toString(), e);
         }
     }
 
@@ -503,6 +601,7 @@ public class GPlazma
         private final SessionStrategy sessionStrategy;
         private final IdentityStrategy identityStrategy;
 
+        private final List<GPlazmaPluginService<?>> services;
         private final ServiceManager manager;
         private Throwable failure;
 
@@ -522,8 +621,9 @@ public class GPlazma
             accountStrategy.setPlugins(accountPlugins);
             sessionStrategy.setPlugins(sessionPlugins);
             identityStrategy.setPlugins(identityPlugins);
-            manager = new ServiceManager(
+            services = ImmutableList.copyOf(
                     concat(authenticationPlugins, mappingPlugins, accountPlugins, sessionPlugins, identityPlugins));
+            manager = new ServiceManager(services);
             manager.addListener(this);
         }
 
@@ -550,6 +650,18 @@ public class GPlazma
             manager.stopAsync().awaitStopped();
         }
 
+        void getInfo(PrintWriter pw)
+        {
+            for (GPlazmaPluginService<?> service : services) {
+                StringWriter info = new StringWriter();
+                service.getPlugin().getInfo(new PrintWriter(info));
+                if (info.getBuffer().length() > 0) {
+                    pw.append("Plugin ").append(service.getName()).println(':');
+                    pw.print(info);
+                }
+            }
+        }
+
         void doAuthPhase(LoginMonitor monitor, Subject subject, Set<Principal> principals,
                 Set<Restriction> restrictionStore) throws AuthenticationException
         {
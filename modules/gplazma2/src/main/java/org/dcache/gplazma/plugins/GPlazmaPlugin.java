@@ -1,5 +1,7 @@
 package org.dcache.gplazma.plugins;
 
+import java.io.PrintWriter;
+
 public interface GPlazmaPlugin
 {
     default void start() throws Exception
@@ -9,4 +11,12 @@ public interface GPlazmaPlugin
     default void stop() throws Exception
     {
     }
+
+    /**
+     * Provide information about the plugin's current state, such as cache
+     * statistics.  The default implementation provides no information.
+     */
+    default void getInfo(PrintWriter pw)
+    {
+    }
 }
@@ -2,6 +2,7 @@ package org.dcache.gplazma.strategies;
 
 import java.security.Principal;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.dcache.auth.attributes.Restriction;
 import org.dcache.gplazma.AuthenticationException;
@@ -20,4 +21,12 @@ public interface AuthenticationStrategy
                       Set<Principal> identifiedPrincipals,
                       Set<Restriction> restrictionStore)
                 throws AuthenticationException;
+
+    /**
+     * Provides an executor with which the strategy may call plugins
+     * concurrently.  If null, which is the default, plugins are called by
+     * the thread that is logging in.
+     */
+    default void setExecutor(Executor executor) {
+    }
 }
@@ -4,21 +4,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.Principal;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.dcache.auth.attributes.Restriction;
 import org.dcache.gplazma.AuthenticationException;
+import org.dcache.gplazma.configuration.ConfigurationItemControl;
 import org.dcache.gplazma.monitor.LoginMonitor;
 import org.dcache.gplazma.monitor.LoginMonitor.Result;
 import org.dcache.gplazma.plugins.GPlazmaAuthenticationPlugin;
 import org.dcache.gplazma.plugins.GPlazmaPlugin;
+import org.dcache.util.NDC;
+
+import static org.dcache.gplazma.configuration.ConfigurationItemControl.OPTIONAL;
+import static org.dcache.gplazma.configuration.ConfigurationItemControl.SUFFICIENT;
 
 /**
  * This class provides support for the AUTH phase of logging in.  It tries
  * the first plugin.  For each plugin, it either tries the following plugin (if
  * one is available) or returns depending on the plugin's result and the
  * configured control (OPTIONAL, REQUIRED, etc).
+ * <p>
+ * If an executor is provided, consecutive OPTIONAL and SUFFICIENT plugins
+ * are called concurrently.  Each plugin of such a group sees the principals
+ * identified before the group and the results are applied in configuration
+ * order, so the outcome is the same as when calling the plugins one after
+ * another, provided no plugin of the group depends on principals identified
+ * by another plugin of the same group.  Since the failure of such plugins
+ * does not fail the login, this suits plugins that each recognise a
+ * different kind of credential, in particular those that validate
+ * credentials with external services.
  */
 public class DefaultAuthenticationStrategy implements AuthenticationStrategy
 {
@@ -27,12 +49,36 @@ public class DefaultAuthenticationStrategy implements AuthenticationStrategy
 
     private volatile PAMStyleStrategy<GPlazmaAuthenticationPlugin> pamStyleAuthentiationStrategy;
 
+    private volatile Executor executor;
+
+    /**
+     * The result of calling a plugin on behalf of the login thread.
+     */
+    private static class Outcome
+    {
+        private final Set<Principal> principals;
+        private final Set<Restriction> restrictions = new HashSet<>();
+        private AuthenticationException failure;
+        private RuntimeException bug;
+
+        Outcome(Set<Principal> principals)
+        {
+            this.principals = new HashSet<>(principals);
+        }
+    }
+
     @Override
     public void setPlugins(List<GPlazmaPluginService<GPlazmaAuthenticationPlugin>> plugins)
     {
         pamStyleAuthentiationStrategy = new PAMStyleStrategy<>(plugins);
     }
 
+    @Override
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
     /**
      * Devegates execution of the
      * {@link GPlazmaAuthenticationPlugin#authenticate(SessionID, Set<Object>,Set<Object>, Set<Principal>) GPlazmaAuthenticationPlugin.authenticate}
@@ -54,27 +100,167 @@ public class DefaultAuthenticationStrategy implements AuthenticationStrategy
             final Set<Restriction> restrictionStore)
             throws AuthenticationException
     {
-        pamStyleAuthentiationStrategy.callPlugins(service -> {
-            monitor.authPluginBegins(service.getName(), service.getControl(),
-                    publicCredential, privateCredential,
-                    identifiedPrincipals);
+        PAMStyleStrategy<GPlazmaAuthenticationPlugin> strategy = pamStyleAuthentiationStrategy;
+        Executor executor = this.executor;
+
+        if (executor == null) {
+            strategy.callPlugins(service -> call(monitor, service, publicCredential,
+                    privateCredential, identifiedPrincipals, restrictionStore));
+            return;
+        }
+
+        List<GPlazmaPluginService<GPlazmaAuthenticationPlugin>> plugins = strategy.pluginElements;
+        Map<GPlazmaPluginService<GPlazmaAuthenticationPlugin>,CompletableFuture<Outcome>> outcomes =
+                new IdentityHashMap<>();
+        try {
+            strategy.callPlugins(service -> {
+                CompletableFuture<Outcome> future = outcomes.get(service);
+                if (future == null) {
+                    int start = indexOf(plugins, service);
+                    int end = start;
+                    while (end < plugins.size() && isConcurrent(plugins.get(end).getControl())) {
+                        end++;
+                    }
+                    if (end - start < 2) {
+                        call(monitor, service, publicCredential, privateCredential,
+                                identifiedPrincipals, restrictionStore);
+                        return;
+                    }
+                    for (GPlazmaPluginService<GPlazmaAuthenticationPlugin> plugin : plugins.subList(start, end)) {
+                        outcomes.put(plugin, callAsync(executor, plugin, publicCredential,
+                                privateCredential, identifiedPrincipals));
+                    }
+                    future = outcomes.get(service);
+                }
 
-            GPlazmaAuthenticationPlugin plugin = service.getPlugin();
-
-            Result result = Result.FAIL;
-            String error = null;
-            try {
-                plugin.authenticate(publicCredential, privateCredential,
-                        identifiedPrincipals, restrictionStore);
-                result = Result.SUCCESS;
-            } catch(AuthenticationException e) {
-                error = e.getMessage();
-                throw e;
-            } finally {
-                monitor.authPluginEnds(service.getName(), service.getControl(),
-                        result, error, publicCredential, privateCredential,
+                monitor.authPluginBegins(service.getName(), service.getControl(),
+                        publicCredential, privateCredential,
                         identifiedPrincipals);
+
+                Result result = Result.FAIL;
+                String error = null;
+                try {
+                    Outcome outcome = getOutcome(service, future);
+                    if (outcome.bug != null) {
+                        throw outcome.bug;
+                    }
+                    if (outcome.failure != null) {
+                        throw outcome.failure;
+                    }
+                    identifiedPrincipals.addAll(outcome.principals);
+                    restrictionStore.addAll(outcome.restrictions);
+                    result = Result.SUCCESS;
+                } catch(AuthenticationException e) {
+                    error = e.getMessage();
+                    throw e;
+                } finally {
+                    monitor.authPluginEnds(service.getName(), service.getControl(),
+                            result, error, publicCredential, privateCredential,
+                            identifiedPrincipals);
+                }
+            });
+        } finally {
+            /* A SUFFICIENT plugin may end the phase before the outcome of
+             * later plugins is needed.
+             */
+            outcomes.values().forEach(f -> f.cancel(false));
+        }
+    }
+
+    private static void call(LoginMonitor monitor,
+            GPlazmaPluginService<GPlazmaAuthenticationPlugin> service,
+            Set<Object> publicCredential, Set<Object> privateCredential,
+            Set<Principal> identifiedPrincipals, Set<Restriction> restrictionStore)
+            throws AuthenticationException
+    {
+        monitor.authPluginBegins(service.getName(), service.getControl(),
+                publicCredential, privateCredential,
+                identifiedPrincipals);
+
+        GPlazmaAuthenticationPlugin plugin = service.getPlugin();
+
+        Result result = Result.FAIL;
+        String error = null;
+        try {
+            plugin.authenticate(publicCredential, privateCredential,
+                    identifiedPrincipals, restrictionStore);
+            result = Result.SUCCESS;
+        } catch(AuthenticationException e) {
+            error = e.getMessage();
+            throw e;
+        } finally {
+            monitor.authPluginEnds(service.getName(), service.getControl(),
+                    result, error, publicCredential, privateCredential,
+                    identifiedPrincipals);
+        }
+    }
+
+    private static boolean isConcurrent(ConfigurationItemControl control)
+    {
+        return control == OPTIONAL || control == SUFFICIENT;
+    }
+
+    private static int indexOf(List<GPlazmaPluginService<GPlazmaAuthenticationPlugin>> plugins,
+            GPlazmaPluginService<GPlazmaAuthenticationPlugin> service)
+    {
+        for (int i = 0; i < plugins.size(); i++) {
+            if (plugins.get(i) == service) {
+                return i;
             }
-        });
+        }
+        throw new IllegalArgumentException("Unknown plugin " + service.getName());
+    }
+
+    private static CompletableFuture<Outcome> callAsync(Executor executor,
+            GPlazmaPluginService<GPlazmaAuthenticationPlugin> service,
+            Set<Object> publicCredential, Set<Object> privateCredential,
+            Set<Principal> principals)
+    {
+        Outcome outcome = new Outcome(principals);
+        NDC ndc = NDC.cloneNdc();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                        NDC.set(ndc);
+                        NDC.push(service.getName());
+                        try {
+                            return call(service, publicCredential, privateCredential, outcome);
+                        } finally {
+                            NDC.clear();
+                        }
+                    }, executor);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Calling plugin {} directly: {}", service.getName(), e.getMessage());
+            return CompletableFuture.completedFuture(call(service, publicCredential,
+                    privateCredential, outcome));
+        }
+    }
+
+    private static Outcome call(GPlazmaPluginService<GPlazmaAuthenticationPlugin> service,
+            Set<Object> publicCredential, Set<Object> privateCredential,
+            Outcome outcome)
+    {
+        try {
+            service.getPlugin().authenticate(publicCredential, privateCredential,
+                    outcome.principals, outcome.restrictions);
+        } catch (AuthenticationException e) {
+            outcome.failure = e;
+        } catch (RuntimeException e) {
+            outcome.bug = e;
+        }
+        return outcome;
+    }
+
+    private static Outcome getOutcome(GPlazmaPluginService<GPlazmaAuthenticationPlugin> service,
+            CompletableFuture<Outcome> future) throws AuthenticationException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationException("interrupted while waiting for "
+                    + service.getName());
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
     }
 }
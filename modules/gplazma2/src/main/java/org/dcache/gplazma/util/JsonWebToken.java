@@ -69,6 +69,23 @@ public class JsonWebToken
         return elements.size() == 3 && elements.stream().allMatch(JsonWebToken::isBase64Encoded);
     }
 
+    /**
+     * Returns when the token expires, if the token is a JWT with an "exp"
+     * claim.  The token's signature is not verified.
+     */
+    public static Optional<Instant> expiryOf(String token)
+    {
+        if (!isCompatibleFormat(token)) {
+            return Optional.empty();
+        }
+        try {
+            return new JsonWebToken(token).getPayloadInstant("exp");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Failed to parse JWT: {}", e.toString());
+            return Optional.empty();
+        }
+    }
+
     private static boolean isBase64Encoded(String data)
     {
         try {
@@ -0,0 +1,172 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.gplazma.util;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.commons.stats.RequestExecutionTimeGaugeImpl;
+import org.dcache.gplazma.AuthenticationException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded cache of the outcome of successfully verifying bearer tokens.
+ * Clients often present the same token many times, so caching avoids
+ * repeating the signature verification and claim parsing.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the token, so the cache does not
+ * hold the tokens themselves.  An entry is kept for at most the configured
+ * lifetime and is never used once the token's "exp" claim has passed.
+ * Failed verifications are not cached.  Concurrent requests with the same
+ * token share a single verification.
+ * <p>
+ * The cache records its hit rate and the time taken to verify tokens that
+ * were not found in the cache.
+ */
+public class VerifiedTokenCache<T>
+{
+    /**
+     * Verifies a token, returning the information derived from it.
+     */
+    @FunctionalInterface
+    public interface Verifier<T>
+    {
+        T verify(String token) throws AuthenticationException;
+    }
+
+    private static class Entry<T>
+    {
+        private final T value;
+        private final Optional<Instant> expiry;
+
+        Entry(T value, Optional<Instant> expiry)
+        {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(Instant now)
+        {
+            return expiry.isPresent() && !now.isBefore(expiry.get());
+        }
+    }
+
+    /**
+     * Verification times by cache name.  A gauge registers itself with JMX
+     * only if no gauge of that name is registered, so the caches of a
+     * reloaded plugin share the gauge of the cache they replace.
+     */
+    private static final ConcurrentMap<String,RequestExecutionTimeGaugeImpl> VERIFICATION_TIMES =
+            new ConcurrentHashMap<>();
+
+    private final Cache<HashCode,Entry<T>> cache;
+    private final RequestExecutionTimeGaugeImpl verificationTime;
+    private final Clock clock;
+
+    /**
+     * @param name identifies the cache in the metrics exported via JMX
+     * @param size the maximum number of cached tokens
+     * @param lifetime the maximum time a verified token is cached
+     */
+    public VerifiedTokenCache(String name, int size, Duration lifetime)
+    {
+        this(name, size, lifetime, Clock.systemUTC());
+    }
+
+    VerifiedTokenCache(String name, int size, Duration lifetime, Clock clock)
+    {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(lifetime.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.verificationTime = VERIFICATION_TIMES.computeIfAbsent(name,
+                n -> new RequestExecutionTimeGaugeImpl("token-verification", n));
+        this.clock = requireNonNull(clock);
+    }
+
+    /**
+     * Returns the result of verifying the token.  The supplied verifier is
+     * called only if the token is not already in the cache.
+     */
+    public T get(String token, Verifier<T> verifier) throws AuthenticationException
+    {
+        HashCode key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+        try {
+            Entry<T> entry = cache.get(key, () -> verify(token, verifier));
+            if (entry.isExpired(clock.instant())) {
+                /* The verifier is expected to reject the expired token. */
+                cache.asMap().remove(key, entry);
+                entry = cache.get(key, () -> verify(token, verifier));
+            }
+            return entry.value;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            Throwables.throwIfInstanceOf(cause, AuthenticationException.class);
+            Throwables.throwIfUnchecked(cause);
+            throw new RuntimeException("Unexpected exception", e);
+        }
+    }
+
+    private Entry<T> verify(String token, Verifier<T> verifier) throws AuthenticationException
+    {
+        Stopwatch watch = Stopwatch.createStarted();
+        try {
+            return new Entry<>(verifier.verify(token), JsonWebToken.expiryOf(token));
+        } finally {
+            verificationTime.update(watch.elapsed(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    public void getInfo(PrintWriter pw)
+    {
+        CacheStats stats = cache.stats();
+        pw.printf("    Cached tokens: %d%n", cache.size());
+        pw.printf("    Hit rate: %.1f%% (%d hits, %d misses)%n",
+                stats.hitRate() * 100, stats.hitCount(), stats.missCount());
+        if (verificationTime.getUpdateNum() > 0) {
+            pw.printf("    Verification time: %.0f µs average, %d µs maximum%n",
+                    verificationTime.getAverageExecutionTime(),
+                    verificationTime.getMaxExecutionTime());
+        }
+    }
+}
@@ -3,12 +3,17 @@ package org.dcache.gplazma.strategies;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.security.Principal;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.dcache.auth.attributes.Restriction;
 import org.dcache.gplazma.AuthenticationException;
@@ -18,7 +23,10 @@ import org.dcache.gplazma.monitor.LoginMonitor;
 import org.dcache.gplazma.plugins.GPlazmaAuthenticationPlugin;
 
 import static org.dcache.gplazma.configuration.ConfigurationItemControl.*;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 
 /**
  *
@@ -96,10 +104,19 @@ public class AuthenticationStrategyTests
             new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowRuntimeExceptionStrategy(),"throw-run",REQUIRED)
         );
 
+    private ExecutorService executor;
+
     @Before
     public void setup() throws FactoryConfigurationException
     {
         strategyFactory = StrategyFactory.getInstance(DefaultStrategyFactory);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
     }
 
 
@@ -304,6 +321,84 @@ public class AuthenticationStrategyTests
                 privateCredential, identifiedPrincipals, restrictions);
     }
 
+    @Test
+    public void testConcurrentOptionalPluginsAreCalledConcurrently() throws AuthenticationException
+    {
+        CountDownLatch latch = new CountDownLatch(2);
+        AuthenticationStrategy strategy =
+                strategyFactory.newAuthenticationStrategy();
+        strategy.setExecutor(executor);
+        strategy.setPlugins(ImmutableList.of(
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new AwaitOthersStrategy(latch),"await1",OPTIONAL),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new AwaitOthersStrategy(latch),"await2",OPTIONAL),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new AlwaysAuthenticateStrategy(),"always",REQUIRED)));
+        Set<Principal> identifiedPrincipals = Sets.newHashSet();
+        strategy.authenticate(IGNORING_LOGIN_MONITOR, Sets.newHashSet(),
+                Sets.newHashSet(), identifiedPrincipals, Sets.newHashSet());
+
+        assertThat(identifiedPrincipals, contains(instanceOf(TestPrincipal.class)));
+    }
+
+    @Test
+    public void testConcurrentSufficientPluginFollowedByFailedConfig() throws AuthenticationException
+    {
+        AuthenticationStrategy strategy =
+                strategyFactory.newAuthenticationStrategy();
+        strategy.setExecutor(executor);
+        strategy.setPlugins(ImmutableList.of(
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowAuthenticationExceptionStrategy(),"throw-auth",OPTIONAL),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new AlwaysAuthenticateStrategy(),"always",SUFFICIENT),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowRuntimeExceptionStrategy(),"throw-run",SUFFICIENT),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowRuntimeExceptionStrategy(),"throw-run",REQUIRED)));
+        Set<Principal> identifiedPrincipals = Sets.newHashSet();
+        strategy.authenticate(IGNORING_LOGIN_MONITOR, Sets.newHashSet(),
+                Sets.newHashSet(), identifiedPrincipals, Sets.newHashSet());
+
+        assertThat(identifiedPrincipals, contains(instanceOf(TestPrincipal.class)));
+    }
+
+    @Test (expected=TestAuthenticationException.class)
+    public void testConcurrentRequesiteConfig() throws AuthenticationException
+    {
+        AuthenticationStrategy strategy =
+                strategyFactory.newAuthenticationStrategy();
+        strategy.setExecutor(executor);
+        strategy.setPlugins(ImmutableList.of(
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowTestAuthenticationExceptionStrategy(),"throw-test-auth",REQUIRED),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowRuntimeExceptionStrategy(),"throw-run",OPTIONAL),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new DoNotingStrategy(),"nothing",OPTIONAL),
+                new GPlazmaPluginService<GPlazmaAuthenticationPlugin>(new ThrowAuthenticationExceptionStrategy(),"throw-auth",REQUISITE)));
+        strategy.authenticate(IGNORING_LOGIN_MONITOR, Sets.newHashSet(),
+                Sets.newHashSet(), Sets.newHashSet(), Sets.newHashSet());
+    }
+
+    private static final class AwaitOthersStrategy
+            implements GPlazmaAuthenticationPlugin
+    {
+        private final CountDownLatch latch;
+
+        AwaitOthersStrategy(CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        public void authenticate(Set<Object> publicCredentials,
+                Set<Object> privateCredentials,
+                Set<Principal> identifiedPrincipals)
+                throws AuthenticationException
+        {
+            latch.countDown();
+            try {
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    throw new AuthenticationException("not called concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new AuthenticationException("interrupted");
+            }
+        }
+    }
+
     private static final class DoNotingStrategy
             implements GPlazmaAuthenticationPlugin
     {
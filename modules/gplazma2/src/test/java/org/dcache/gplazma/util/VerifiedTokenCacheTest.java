@@ -0,0 +1,160 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2020 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.gplazma.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcache.gplazma.AuthenticationException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class VerifiedTokenCacheTest
+{
+    /* PAYLOAD contains "exp": 1552298417 */
+    private static final String JWT = "eyJraWQiOiJyc2ExIiwiYWxnIjoiUlMyNT"
+            + "YifQ.eyJzdWIiOiJlYTFhM2U1Ny0yMTU1LTQ4OTUtOWRjNy03N2MzMjgyYWE3MWI"
+            + "iLCJpc3MiOiJodHRwczpcL1wvaWFtLmV4dHJlbWUtZGF0YWNsb3VkLmV1XC8iLCJ"
+            + "leHAiOjE1NTIyOTg0MTcsImlhdCI6MTU1MjI5NDgxNywianRpIjoiY2M5YjZhNWM"
+            + "tODI0MC00NTVjLTk4ZGItNzgxM2MyYWJjZWZjIn0.Rmc16S2Y-Eae8zLXQJq-_C4"
+            + "xsV9SikWpbn9J2lRVBKGEBp_8UvZgv6CdTfvhaRS7JBmAioc_ubLFqh2sBt478xg"
+            + "jBFVEiSol5uAMtdxjZSxFZeVCRPXPbgvQLpHIo9jhpWl-YfC18wW_Js9grL8IcZf"
+            + "b87_sT-dtXL_ctFHvmic";
+    private static final Instant JWT_EXPIRY = Instant.ofEpochSecond(1552298417);
+
+    private final AtomicInteger verifications = new AtomicInteger();
+    private AdjustableClock clock;
+    private VerifiedTokenCache<String> cache;
+
+    @Before
+    public void setup()
+    {
+        clock = new AdjustableClock(JWT_EXPIRY.minusSeconds(60));
+        cache = new VerifiedTokenCache<>("test", 10, Duration.ofMinutes(10), clock);
+    }
+
+    @Test
+    public void shouldVerifyTokenOnlyOnce() throws Exception
+    {
+        String first = cache.get("opaque-token", this::accept);
+        String second = cache.get("opaque-token", this::accept);
+
+        assertThat(first, equalTo("verified opaque-token"));
+        assertThat(second, equalTo("verified opaque-token"));
+        assertThat(verifications.get(), equalTo(1));
+        assertThat(cache.stats().hitCount(), equalTo(1L));
+        assertThat(cache.stats().missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldVerifyDifferentTokensSeparately() throws Exception
+    {
+        cache.get("token-1", this::accept);
+        String result = cache.get("token-2", this::accept);
+
+        assertThat(result, equalTo("verified token-2"));
+        assertThat(verifications.get(), equalTo(2));
+    }
+
+    @Test
+    public void shouldNotCacheFailedVerification() throws Exception
+    {
+        try {
+            cache.get("opaque-token", this::reject);
+        } catch (AuthenticationException expected) {
+        }
+
+        String result = cache.get("opaque-token", this::accept);
+
+        assertThat(result, equalTo("verified opaque-token"));
+        assertThat(verifications.get(), equalTo(2));
+    }
+
+    @Test
+    public void shouldUseCachedJwtBeforeExpiry() throws Exception
+    {
+        cache.get(JWT, this::accept);
+        clock.advance(Duration.ofSeconds(30));
+
+        cache.get(JWT, this::accept);
+
+        assertThat(verifications.get(), equalTo(1));
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void shouldVerifyCachedJwtAgainAfterExpiry() throws Exception
+    {
+        cache.get(JWT, this::accept);
+        clock.advance(Duration.ofSeconds(61));
+
+        cache.get(JWT, this::reject);
+    }
+
+    private String accept(String token)
+    {
+        verifications.incrementAndGet();
+        return "verified " + token;
+    }
+
+    private String reject(String token) throws AuthenticationException
+    {
+        verifications.incrementAndGet();
+        throw new AuthenticationException("rejected");
+    }
+
+    private static class AdjustableClock extends Clock
+    {
+        private Instant now;
+
+        AdjustableClock(Instant now)
+        {
+            this.now = now;
+        }
+
+        void advance(Duration duration)
+        {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return now;
+        }
+    }
+}
@@ -72,6 +72,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -204,6 +205,30 @@ public interface AbstractStorageElement {
                                                        String requestToken,
                                                        boolean allowStaging);
 
+    /**
+     * Hints that the given SURLs are about to be pinned on behalf of the
+     * user as part of a request. The storage element may resolve the SURLs
+     * in bulk to speed up the individual pin operations of the request that
+     * follow.
+     *
+     * @param user user ID
+     * @param requestToken the token of the request pinning the files
+     * @param surls site URLs
+     */
+    default void prefetchFileMetaData(SRMUser user, String requestToken, Collection<URI> surls)
+    {
+    }
+
+    /**
+     * Hints that the request will not pin any further files, so that any
+     * information prefetched for the request may be discarded.
+     *
+     * @param requestToken the token of the request
+     */
+    default void discardPrefetchedFileMetaData(String requestToken)
+    {
+    }
+
     /**
      * Contains the result of a pin operation.
      */
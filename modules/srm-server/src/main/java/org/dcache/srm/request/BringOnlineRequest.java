@@ -83,6 +83,7 @@ import java.net.URI;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.dcache.srm.SRMFileRequestNotFoundException;
@@ -183,6 +184,12 @@ public final class BringOnlineRequest extends ContainerRequest<BringOnlineFileRe
         // scheduled, and the saved state needs to be consistent
         saveJob(true);
 
+        // resolve all files in bulk rather than one by one when each is pinned
+        getStorage().prefetchFileMetaData(getUser(), String.valueOf(getId()),
+                                          getFileRequests().stream()
+                                                  .map(BringOnlineFileRequest::getSurl)
+                                                  .collect(Collectors.toList()));
+
         for (BringOnlineFileRequest request : getFileRequests()) {
             request.scheduleWith(scheduler);
         }
@@ -232,6 +239,7 @@ public final class BringOnlineRequest extends ContainerRequest<BringOnlineFileRe
                     fr.wunlock();
                 }
             }
+            getStorage().discardPrefetchedFileMetaData(String.valueOf(getId()));
         }
 
         super.processStateChange(newState, description);
@@ -84,6 +84,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.dcache.srm.SRMFileRequestNotFoundException;
@@ -174,6 +175,12 @@ public final class GetRequest extends ContainerRequest<GetFileRequest> {
         // scheduled, and the saved state needs to be consistent
         saveJob(true);
 
+        // resolve all files in bulk rather than one by one when each is pinned
+        getStorage().prefetchFileMetaData(getUser(), String.valueOf(getId()),
+                                          getFileRequests().stream()
+                                                  .map(GetFileRequest::getSurl)
+                                                  .collect(Collectors.toList()));
+
         for (GetFileRequest request : getFileRequests()) {
             request.scheduleWith(scheduler);
         }
@@ -215,6 +222,7 @@ public final class GetRequest extends ContainerRequest<GetFileRequest> {
                     request.wunlock();
                 }
             }
+            getStorage().discardPrefetchedFileMetaData(String.valueOf(getId()));
         }
 
         super.processStateChange(newState, description);
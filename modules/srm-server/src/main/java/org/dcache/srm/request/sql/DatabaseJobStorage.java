@@ -80,9 +80,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -90,7 +94,7 @@ import java.util.stream.Collectors;
 
 import org.dcache.util.SqlHelper;
 import org.dcache.srm.request.Job;
-import org.dcache.srm.scheduler.JobStorage;
+import org.dcache.srm.scheduler.BatchJobStorage;
 import org.dcache.srm.scheduler.State;
 import org.dcache.srm.util.Configuration;
 
@@ -98,7 +102,7 @@ import org.dcache.srm.util.Configuration;
  *
  * @author  timur
  */
-public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>, Runnable {
+public abstract class DatabaseJobStorage<J extends Job> implements BatchJobStorage<J>, Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseJobStorage.class);
 
     private final Configuration.DatabaseParameters configuration;
@@ -195,17 +199,25 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
 
     private void saveHistory(Connection connection, Job job,
                              List<Job.JobHistory> history) throws SQLException
+    {
+        saveHistory(connection, Collections.singletonMap(job, history));
+    }
+
+    private void saveHistory(Connection connection,
+                             Map<? extends Job,List<Job.JobHistory>> histories) throws SQLException
     {
         PreparedStatement stmt =
                 connection.prepareStatement("INSERT INTO " + getHistoryTableName() + " VALUES (?,?,?,?,?)");
         try {
-            for (Job.JobHistory element : history) {
-                stmt.setLong(1, element.getId());
-                stmt.setLong(2, job.getId());
-                stmt.setInt(3, element.getState().getStateId());
-                stmt.setLong(4, element.getTransitionTime());
-                stmt.setString(5, element.getDescription());
-                stmt.addBatch();
+            for (Map.Entry<? extends Job,List<Job.JobHistory>> entry : histories.entrySet()) {
+                for (Job.JobHistory element : entry.getValue()) {
+                    stmt.setLong(1, element.getId());
+                    stmt.setLong(2, entry.getKey().getId());
+                    stmt.setInt(3, element.getState().getStateId());
+                    stmt.setLong(4, element.getTransitionTime());
+                    stmt.setString(5, element.getDescription());
+                    stmt.addBatch();
+                }
             }
             stmt.executeBatch();
         } finally {
@@ -266,6 +278,69 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         markHistoryAsSaved(savedHistory);
     }
 
+    /**
+     * Saves several jobs in one transaction. The statements of all jobs are
+     * executed as JDBC batches: one batch updates the existing rows, one inserts
+     * the rows of new jobs and one inserts the history of all jobs.
+     */
+    @Override
+    public void saveJobs(Collection<J> jobs) throws TransactionException
+    {
+        Map<J,List<Job.JobHistory>> savedHistory =
+                transactionTemplate.execute(status -> jdbcTemplate.execute((Connection con) -> {
+                    Map<J,List<Job.JobHistory>> histories = new LinkedHashMap<>();
+                    try (StatementCachingConnection statements = new StatementCachingConnection(con)) {
+                        Connection batchConnection = statements.getConnection();
+
+                        PreparedStatement updateStatement = null;
+                        for (J job : jobs) {
+                            job.rlock();
+                            try {
+                                histories.put(job, getJobHistoriesToSave(job));
+                                updateStatement = getUpdateStatement(batchConnection, job);
+                                updateStatement.addBatch();
+                            } finally {
+                                job.runlock();
+                            }
+                        }
+                        if (updateStatement == null) {
+                            return histories;
+                        }
+                        int[] rowCounts = updateStatement.executeBatch();
+
+                        PreparedStatement createStatement = null;
+                        Set<PreparedStatement> batchCreateStatements = new LinkedHashSet<>();
+                        int i = 0;
+                        for (J job : histories.keySet()) {
+                            if (rowCounts[i++] == 0) {
+                                job.rlock();
+                                try {
+                                    createStatement = getCreateStatement(batchConnection, job);
+                                    createStatement.addBatch();
+                                    PreparedStatement batchCreateStatement =
+                                            getBatchCreateStatement(batchConnection, job);
+                                    if (batchCreateStatement != null) {
+                                        batchCreateStatements.add(batchCreateStatement);
+                                    }
+                                } finally {
+                                    job.runlock();
+                                }
+                            }
+                        }
+                        if (createStatement != null) {
+                            createStatement.executeBatch();
+                        }
+                        for (PreparedStatement batchCreateStatement : batchCreateStatements) {
+                            batchCreateStatement.executeBatch();
+                        }
+
+                        saveHistory(con, histories);
+                    }
+                    return histories;
+                }));
+        savedHistory.values().forEach(this::markHistoryAsSaved);
+    }
+
     protected PreparedStatement getBatchCreateStatement(Connection connection, Job job)
             throws SQLException
     {
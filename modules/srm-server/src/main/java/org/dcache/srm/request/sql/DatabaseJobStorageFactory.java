@@ -8,9 +8,11 @@ import javax.annotation.Nonnull;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -37,6 +39,7 @@ import org.dcache.srm.request.ReserveSpaceRequest;
 import org.dcache.srm.scheduler.AsynchronousSaveJobStorage;
 import org.dcache.srm.scheduler.CanonicalizingJobStorage;
 import org.dcache.srm.scheduler.ForceOnlyJobStorageDecorator;
+import org.dcache.srm.scheduler.GroupCommitJobStorage;
 import org.dcache.srm.scheduler.JobStorage;
 import org.dcache.srm.scheduler.JobStorageFactory;
 import org.dcache.srm.scheduler.NoopJobStorage;
@@ -56,11 +59,15 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
             Collections.unmodifiableMap(jobStorageMap);
     private final Map<Class<? extends Job>, DatabaseParameters> configurations =
             new HashMap<>();
+    private final List<GroupCommitJobStorage<?>> groupCommitStorages = new ArrayList<>();
     private final ExecutorService executor;
     private final ScheduledExecutorService scheduledExecutor;
+    private final ScheduledExecutorService batchExecutor;
+    private final long batchWindow;
+    private final int batchSize;
 
     private <J extends Job> void add(DatabaseParameters config, Class<J> entityClass,
-                     Supplier<JobStorage<J>> storageFactory)
+                     Supplier<DatabaseJobStorage<J>> storageFactory)
             throws InstantiationException,
                    IllegalAccessException,
                    IllegalArgumentException,
@@ -70,7 +77,15 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
     {
         JobStorage<J> js;
         if (config.isDatabaseEnabled()) {
-            js = storageFactory.get();
+            DatabaseJobStorage<J> storage = storageFactory.get();
+            if (batchWindow > 0) {
+                GroupCommitJobStorage<J> groupCommitStorage =
+                        new GroupCommitJobStorage<>(storage, batchExecutor, batchWindow, TimeUnit.MILLISECONDS, batchSize);
+                groupCommitStorages.add(groupCommitStorage);
+                js = groupCommitStorage;
+            } else {
+                js = storage;
+            }
             js = new AsynchronousSaveJobStorage<>(js, executor);
             if (config.getStoreCompletedRequestsOnly()) {
                 js = new ForceOnlyJobStorageDecorator<>(js);
@@ -94,6 +109,11 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
                 new ThreadFactoryBuilder().setNameFormat("srm-db-save-%d").build());
         scheduledExecutor =
                 Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("srm-db-gc-%d").build());
+        batchExecutor =
+                Executors.newScheduledThreadPool(config.getJdbcExecutionThreadNum(),
+                                                 new ThreadFactoryBuilder().setNameFormat("srm-db-batch-%d").build());
+        batchWindow = config.getJdbcBatchWindow();
+        batchSize = config.getJdbcBatchSize();
         try {
             add(config.getDatabaseParametersForBringOnline(),
                 BringOnlineFileRequest.class,
@@ -162,11 +182,14 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
         scheduledExecutor.shutdown();
         executor.shutdown();
         try {
-            if (scheduledExecutor.awaitTermination(3, TimeUnit.SECONDS)) {
-                executor.awaitTermination(3, TimeUnit.SECONDS);
+            if (scheduledExecutor.awaitTermination(3, TimeUnit.SECONDS) &&
+                    executor.awaitTermination(3, TimeUnit.SECONDS)) {
+                groupCommitStorages.forEach(GroupCommitJobStorage::flush);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            batchExecutor.shutdownNow();
         }
     }
 
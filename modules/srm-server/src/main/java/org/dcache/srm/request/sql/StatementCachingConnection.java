@@ -0,0 +1,66 @@
+package org.dcache.srm.request.sql;
+
+import com.google.common.reflect.AbstractInvocationHandler;
+import com.google.common.reflect.Reflection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dcache.util.SqlHelper;
+
+/**
+ * Provides a Connection that returns the same PreparedStatement whenever the
+ * same SQL is prepared again.
+ *
+ * This allows statements that are built one job at a time to be collected
+ * into a single JDBC batch: after preparing and filling in the statement for a
+ * job, the caller adds it to the batch before preparing the statement for the
+ * next job. Statements are not closed by the caller but by closing this object.
+ */
+class StatementCachingConnection extends AbstractInvocationHandler implements AutoCloseable
+{
+    private final Connection connection;
+    private final Connection proxy;
+    private final Map<String,PreparedStatement> statements = new HashMap<>();
+
+    StatementCachingConnection(Connection connection)
+    {
+        this.connection = connection;
+        this.proxy = Reflection.newProxy(Connection.class, this);
+    }
+
+    public Connection getConnection()
+    {
+        return proxy;
+    }
+
+    @Override
+    protected Object handleInvocation(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        if (method.getName().equals("prepareStatement") && args.length == 1) {
+            String sql = (String) args[0];
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        statements.values().forEach(SqlHelper::tryToClose);
+        statements.clear();
+    }
+}
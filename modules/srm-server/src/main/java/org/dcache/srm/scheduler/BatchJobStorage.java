@@ -0,0 +1,22 @@
+package org.dcache.srm.scheduler;
+
+import org.springframework.transaction.TransactionException;
+
+import java.util.Collection;
+
+import org.dcache.srm.request.Job;
+
+/**
+ * A JobStorage able to save several jobs at once.
+ */
+public interface BatchJobStorage<J extends Job> extends JobStorage<J>
+{
+    /**
+     * Saves all jobs in a single transaction. Either all jobs are
+     * saved or none is.
+     *
+     * @param jobs Jobs to save
+     * @throws TransactionException if there was a problem
+     */
+    void saveJobs(Collection<J> jobs) throws TransactionException;
+}
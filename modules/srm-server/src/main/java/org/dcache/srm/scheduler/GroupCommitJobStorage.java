@@ -0,0 +1,233 @@
+package org.dcache.srm.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.srm.request.Job;
+import org.dcache.srm.util.JDC;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * JobStorage decorator that writes the saves of many jobs in a single
+ * transaction.
+ *
+ * Saves are collected for a short batch window before being written together.
+ * Repeated saves of the same job within the window are written once. A batch
+ * is written early when it reaches the maximum batch size.
+ *
+ * Unforced saves return immediately. A forced save writes the current batch
+ * at once and only returns once the batch has been committed, thus forced saves
+ * are as durable as when writing each job in its own transaction. While a batch
+ * is being written, other saves accumulate in the next batch, so under load
+ * every transaction carries many jobs.
+ *
+ * Batches are written one at a time and in order, thus a job is never
+ * written with an older state after a newer state has been committed. If
+ * writing a batch fails, its jobs are saved individually such that a single
+ * bad job does not prevent the others from being saved.
+ */
+public class GroupCommitJobStorage<J extends Job> implements JobStorage<J>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitJobStorage.class);
+
+    private final BatchJobStorage<J> storage;
+    private final ScheduledExecutorService executor;
+    private final long window;
+    private final int maxBatchSize;
+
+    /**
+     * Serialises writing of batches. Replacing the current batch and writing
+     * it happen while holding this lock.
+     */
+    private final Object writeLock = new Object();
+
+    @GuardedBy("this")
+    private Batch batch = new Batch();
+
+    public GroupCommitJobStorage(BatchJobStorage<J> storage, ScheduledExecutorService executor,
+                                 long window, TimeUnit unit, int maxBatchSize)
+    {
+        this.storage = storage;
+        this.executor = executor;
+        this.window = unit.toMillis(window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void init() throws DataAccessException
+    {
+        storage.init();
+    }
+
+    @Override
+    public J getJob(long jobId) throws DataAccessException
+    {
+        return storage.getJob(jobId);
+    }
+
+    @Override
+    public J getJob(long jobId, Connection connection) throws SQLException
+    {
+        return storage.getJob(jobId, connection);
+    }
+
+    @Override
+    public void saveJob(J job, boolean force) throws TransactionException
+    {
+        Batch current;
+        boolean isFirst;
+        boolean isFull;
+        synchronized (this) {
+            current = batch;
+            isFirst = current.isEmpty();
+            isFull = current.add(job, force) && current.size() == maxBatchSize;
+        }
+
+        if (force) {
+            write(current);
+            current.checkSaved(job);
+        } else if (isFull) {
+            write(current);
+        } else if (isFirst) {
+            try {
+                executor.schedule(() -> write(current), window, MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                write(current);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending saves.
+     */
+    public void flush()
+    {
+        Batch current;
+        synchronized (this) {
+            current = batch;
+        }
+        write(current);
+    }
+
+    private void write(Batch current)
+    {
+        synchronized (writeLock) {
+            synchronized (this) {
+                if (batch != current) {
+                    /* Another thread already wrote this batch. */
+                    return;
+                }
+                batch = new Batch();
+            }
+            if (!current.isEmpty()) {
+                current.write();
+            }
+        }
+    }
+
+    @Override
+    public Set<Long> getLatestCompletedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCompletedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestFailedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestFailedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestCanceledJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCanceledJobIds(maxNum);
+    }
+
+    @Override
+    public Set<J> getActiveJobs() throws DataAccessException
+    {
+        return storage.getActiveJobs();
+    }
+
+    /**
+     * Saves to be written in the same transaction. A batch is only modified
+     * while it is the current batch and only written once it no longer is.
+     */
+    private class Batch
+    {
+        private final Map<Long,J> jobs = new LinkedHashMap<>();
+        private final Set<Long> forced = new HashSet<>();
+        private final Map<Long,RuntimeException> failures = new ConcurrentHashMap<>();
+
+        /**
+         * Adds a job to the batch. Returns true if the job was not already
+         * part of the batch.
+         */
+        boolean add(J job, boolean force)
+        {
+            if (force) {
+                forced.add(job.getId());
+            }
+            return jobs.put(job.getId(), job) == null;
+        }
+
+        boolean isEmpty()
+        {
+            return jobs.isEmpty();
+        }
+
+        int size()
+        {
+            return jobs.size();
+        }
+
+        void write()
+        {
+            try {
+                storage.saveJobs(jobs.values());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to save {} requests in one transaction, saving them one by one: {}",
+                            jobs.size(), e.getMessage());
+                for (J job : jobs.values()) {
+                    try (JDC ignored = job.applyJdc()) {
+                        storage.saveJob(job, forced.contains(job.getId()));
+                    } catch (RuntimeException e1) {
+                        if (forced.contains(job.getId())) {
+                            failures.put(job.getId(), e1);
+                        } else {
+                            LOGGER.error("SQL statement failed: {}", e1.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Throws the exception that caused the forced save of the given job
+         * to fail, if any. Must only be called once the batch has been written.
+         */
+        void checkSaved(J job)
+        {
+            RuntimeException failure = failures.get(job.getId());
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
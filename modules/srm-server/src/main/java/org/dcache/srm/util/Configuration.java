@@ -153,6 +153,8 @@ public class Configuration {
     protected String qosConfigFile = null;
     private Integer maxQueuedJdbcTasksNum ; //null by default
     private Integer jdbcExecutionThreadNum;//null by default
+    private long jdbcBatchWindow = 0;
+    private int jdbcBatchSize = 1000;
     private String credentialsDirectory="/opt/d-cache/credentials";
     private boolean overwrite = false;
     private boolean overwrite_by_default = false;
@@ -696,6 +698,26 @@ public class Configuration {
         this.jdbcExecutionThreadNum = jdbcExecutionThreadNum;
     }
 
+    /**
+     * Time in milliseconds during which request updates are collected to be
+     * written in a single transaction. Zero disables batching.
+     */
+    public long getJdbcBatchWindow() {
+        return jdbcBatchWindow;
+    }
+
+    public void setJdbcBatchWindow(long jdbcBatchWindow) {
+        this.jdbcBatchWindow = jdbcBatchWindow;
+    }
+
+    public int getJdbcBatchSize() {
+        return jdbcBatchSize;
+    }
+
+    public void setJdbcBatchSize(int jdbcBatchSize) {
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
      public Integer getMaxQueuedJdbcTasksNum() {
         return maxQueuedJdbcTasksNum;
     }
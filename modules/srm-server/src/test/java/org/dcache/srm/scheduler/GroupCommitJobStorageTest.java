@@ -0,0 +1,124 @@
+package org.dcache.srm.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.srm.request.Job;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class GroupCommitJobStorageTest
+{
+    private BatchJobStorage<Job> storage;
+    private ScheduledExecutorService executor;
+    private GroupCommitJobStorage<Job> groupCommitStorage;
+    private Job job1;
+    private Job job2;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        storage = mock(BatchJobStorage.class);
+        executor = mock(ScheduledExecutorService.class);
+        groupCommitStorage = new GroupCommitJobStorage<>(storage, executor, 50, TimeUnit.MILLISECONDS, 3);
+        job1 = givenJob(1);
+        job2 = givenJob(2);
+    }
+
+    private static Job givenJob(long id)
+    {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(id);
+        return job;
+    }
+
+    @Test
+    public void whenSavingWithoutForceThenSaveIsDeferred() throws Exception
+    {
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.saveJob(job2, false);
+
+        verify(executor).schedule(any(Runnable.class), eq(50L), eq(TimeUnit.MILLISECONDS));
+        verifyZeroInteractions(storage);
+    }
+
+    @Test
+    public void whenBatchWindowEndsThenJobsAreSavedTogether() throws Exception
+    {
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.saveJob(job2, false);
+        groupCommitStorage.saveJob(job1, false);
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run();
+
+        assertThat(savedBatch(), contains(job1, job2));
+    }
+
+    @Test
+    public void whenSavingWithForceThenBatchIsWrittenImmediately() throws Exception
+    {
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.saveJob(job2, true);
+
+        assertThat(savedBatch(), contains(job1, job2));
+    }
+
+    @Test
+    public void whenBatchIsFullThenBatchIsWrittenImmediately() throws Exception
+    {
+        Job job3 = givenJob(3);
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.saveJob(job2, false);
+        groupCommitStorage.saveJob(job3, false);
+
+        assertThat(savedBatch(), contains(job1, job2, job3));
+    }
+
+    @Test
+    public void whenBatchFailsThenJobsAreSavedIndividually() throws Exception
+    {
+        doThrow(new TransactionSystemException("failed")).when(storage).saveJobs(any());
+
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.saveJob(job2, true);
+
+        verify(storage).saveJob(job1, false);
+        verify(storage).saveJob(job2, true);
+    }
+
+    @Test(expected = TransactionSystemException.class)
+    public void whenForcedSaveFailsThenFailureIsPropagated() throws Exception
+    {
+        doThrow(new TransactionSystemException("failed")).when(storage).saveJobs(any());
+        doThrow(new TransactionSystemException("failed")).when(storage).saveJob(job1, true);
+
+        groupCommitStorage.saveJob(job1, true);
+    }
+
+    @Test
+    public void whenFlushingThenPendingJobsAreSaved() throws Exception
+    {
+        groupCommitStorage.saveJob(job1, false);
+        groupCommitStorage.flush();
+
+        assertThat(savedBatch(), contains(job1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Job> savedBatch()
+    {
+        ArgumentCaptor<Collection> jobs = ArgumentCaptor.forClass(Collection.class);
+        verify(storage).saveJobs(jobs.capture());
+        return jobs.getValue();
+    }
+}